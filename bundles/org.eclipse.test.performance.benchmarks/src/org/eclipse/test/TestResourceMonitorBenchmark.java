@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Overhead that the resource monitor adds to every test run by the
+ * EclipseTestRunner: a start/end pair for an empty test, and the lookup of the
+ * usage by the result formatter. The benchmark is in the package of the
+ * monitor, which is not public.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations= 5, time= 1)
+@Measurement(iterations= 10, time= 1)
+@Fork(1)
+public class TestResourceMonitorBenchmark {
+
+	private TestResourceMonitor fMonitor;
+	private TestCase fTest;
+
+	@Setup
+	public void setUp() {
+		fMonitor= new TestResourceMonitor();
+		fTest= new TestCase("empty") { //$NON-NLS-1$
+			// never run
+		};
+	}
+
+	@TearDown
+	public void tearDown() {
+		fMonitor.dispose();
+	}
+
+	@Benchmark
+	public long startEnd() {
+		fMonitor.startTest(fTest);
+		fMonitor.endTest(fTest);
+		return fMonitor.getUsage(fTest).fWallTime;
+	}
+}
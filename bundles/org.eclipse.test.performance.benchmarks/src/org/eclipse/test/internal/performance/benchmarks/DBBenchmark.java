@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test.internal.performance.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.test.internal.performance.PerformanceTestPlugin;
+import org.eclipse.test.internal.performance.data.DataPoint;
+import org.eclipse.test.internal.performance.data.Sample;
+import org.eclipse.test.internal.performance.db.DB;
+import org.eclipse.test.internal.performance.db.Scenario;
+import org.eclipse.test.internal.performance.db.Variations;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Storing and querying samples in an embedded Derby database that is seeded
+ * with {@link #BUILDS} builds of {@link #SCENARIOS} scenarios each.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations= 3, time= 2)
+@Measurement(iterations= 5, time= 2)
+@Fork(1)
+public class DBBenchmark {
+
+	private static final String CONFIG= "benchmark"; //$NON-NLS-1$
+	private static final String STORE_CONFIG= "benchmarkStore"; //$NON-NLS-1$
+	private static final int BUILDS= 20;
+	private static final int SCENARIOS= 10;
+	private static final int ITERATIONS= 10;
+
+	private Variations fStoreVariations;
+	private Variations fQueryVariations;
+	private Variations fSeriesVariations;
+	private Sample fSample;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		File location= new File(System.getProperty("java.io.tmpdir"), "perfBenchmarkDBs"); //$NON-NLS-1$ //$NON-NLS-2$
+		System.setProperty("eclipse.perf.dbloc", location.getAbsolutePath() + ";dbname=benchDB_" + System.currentTimeMillis()); //$NON-NLS-1$ //$NON-NLS-2$
+
+		for (int b= 0; b < BUILDS; b++) {
+			Variations variations= createVariations(CONFIG, getBuildName(b));
+			for (int s= 0; s < SCENARIOS; s++)
+				DB.store(variations, SyntheticData.createSample(getScenarioName(s), ITERATIONS, b * SCENARIOS + s));
+		}
+
+		// stored samples go to a separate config, so that they do not change the queried series
+		fStoreVariations= createVariations(STORE_CONFIG, getBuildName(0));
+		fQueryVariations= createVariations(CONFIG, getBuildName(BUILDS / 2));
+		fSeriesVariations= createVariations(CONFIG, "I%"); //$NON-NLS-1$
+		fSample= SyntheticData.createSample(getScenarioName(0), ITERATIONS, -1);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		DB.shutdown();
+	}
+
+	@Benchmark
+	public boolean store() {
+		return DB.store(fStoreVariations, fSample);
+	}
+
+	@Benchmark
+	public DataPoint[] queryDataPoints() {
+		return DB.queryDataPoints(fQueryVariations, getScenarioName(SCENARIOS / 2), null);
+	}
+
+	/*
+	 * Scenario.loadSessions() runs when the dimensions of a new scenario are first requested.
+	 */
+	@Benchmark
+	public Object loadSessions() {
+		Scenario[] scenarios= DB.queryScenarios(fSeriesVariations, getScenarioName(SCENARIOS / 2), PerformanceTestPlugin.BUILD, null);
+		return scenarios[0].getDimensions();
+	}
+
+	/*
+	 * The same series, read from the per build summaries.
+	 */
+	@Benchmark
+	public Object loadSummaries() {
+		Scenario[] scenarios= DB.queryScenarioSummaries(fSeriesVariations, getScenarioName(SCENARIOS / 2), PerformanceTestPlugin.BUILD, null);
+		return scenarios[0].getDimensions();
+	}
+
+	/*
+	 * The last two builds of the same series.
+	 */
+	@Benchmark
+	public Object loadWindow() {
+		Scenario[] scenarios= DB.queryScenarios(fSeriesVariations, getScenarioName(SCENARIOS / 2), PerformanceTestPlugin.BUILD, null, null, null, 2);
+		return scenarios[0].getDimensions();
+	}
+
+	private static Variations createVariations(String config, String build) {
+		Variations variations= new Variations();
+		variations.put(PerformanceTestPlugin.CONFIG, config);
+		variations.put(PerformanceTestPlugin.BUILD, build);
+		return variations;
+	}
+
+	private static String getBuildName(int build) {
+		return "I20130101-" + (1000 + build); //$NON-NLS-1$
+	}
+
+	private static String getScenarioName(int scenario) {
+		return "org.eclipse.benchmark.Scenario#test" + scenario + "()"; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}
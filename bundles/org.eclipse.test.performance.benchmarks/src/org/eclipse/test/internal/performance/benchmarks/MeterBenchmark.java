@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test.internal.performance.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.test.internal.performance.OSPerformanceMeter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Overhead of an empty start/stop pair of the OS performance meter. The meter
+ * keeps every data point, so it is replaced after a fixed number of pairs to
+ * keep its memory, and the garbage collections it causes, from growing during
+ * an iteration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations= 5, time= 1)
+@Measurement(iterations= 10, time= 1)
+@Fork(1)
+public class MeterBenchmark {
+
+	private static final int PAIRS_PER_METER= 1000;
+
+	private OSPerformanceMeter fMeter;
+	private int fPairs;
+
+	@Setup(Level.Iteration)
+	public void setUp() {
+		fMeter= new OSPerformanceMeter("MeterBenchmark#startStop()"); //$NON-NLS-1$
+		fPairs= 0;
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() {
+		fMeter.dispose();
+	}
+
+	@Benchmark
+	public void startStop() {
+		if (fPairs == PAIRS_PER_METER) {
+			tearDown();
+			setUp();
+		}
+		fPairs++;
+		fMeter.start();
+		fMeter.stop();
+	}
+}
@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test.internal.performance.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.test.internal.performance.InternalDimensions;
+import org.eclipse.test.internal.performance.data.DataPoint;
+import org.eclipse.test.internal.performance.eval.StatisticsSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of aggregating the data points of one sample.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations= 5, time= 1)
+@Measurement(iterations= 10, time= 1)
+@Fork(1)
+public class StatisticsSessionBenchmark {
+
+	@Param({ "10", "100" })
+	public int iterations;
+
+	private DataPoint[] fDataPoints;
+
+	@Setup
+	public void setUp() {
+		fDataPoints= SyntheticData.createDataPoints(iterations, 42);
+	}
+
+	@Benchmark
+	public void aggregate(Blackhole blackhole) {
+		StatisticsSession session= new StatisticsSession(fDataPoints);
+		blackhole.consume(session.getAverage(InternalDimensions.CPU_TIME));
+		blackhole.consume(session.getStddev(InternalDimensions.CPU_TIME));
+		blackhole.consume(session.getAverage(InternalDimensions.USED_JAVA_HEAP));
+	}
+}
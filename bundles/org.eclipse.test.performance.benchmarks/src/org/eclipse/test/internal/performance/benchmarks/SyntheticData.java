@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test.internal.performance.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.eclipse.test.internal.performance.InternalDimensions;
+import org.eclipse.test.internal.performance.InternalPerformanceMeter;
+import org.eclipse.test.internal.performance.data.DataPoint;
+import org.eclipse.test.internal.performance.data.Dim;
+import org.eclipse.test.internal.performance.data.Sample;
+import org.eclipse.test.internal.performance.data.Scalar;
+
+/**
+ * Creates reproducible measurements resembling those of an OS performance meter.
+ */
+class SyntheticData {
+
+	private static final Dim[] DIMENSIONS= {
+		InternalDimensions.CPU_TIME,
+		InternalDimensions.ELAPSED_PROCESS,
+		InternalDimensions.USED_JAVA_HEAP,
+		InternalDimensions.WORKING_SET,
+	};
+
+	private static final long[] TYPICAL_DELTAS= { 200, 250, 1000000, 2000000 };
+
+	static DataPoint[] createDataPoints(int iterations, long seed) {
+		Random random= new Random(seed);
+		long[] values= new long[DIMENSIONS.length];
+		DataPoint[] dataPoints= new DataPoint[2 * iterations];
+		for (int i= 0; i < iterations; i++) {
+			dataPoints[2 * i]= createDataPoint(InternalPerformanceMeter.BEFORE, values);
+			for (int d= 0; d < values.length; d++)
+				values[d]+= TYPICAL_DELTAS[d] + random.nextInt((int) (TYPICAL_DELTAS[d] / 10) + 1);
+			dataPoints[2 * i + 1]= createDataPoint(InternalPerformanceMeter.AFTER, values);
+		}
+		return dataPoints;
+	}
+
+	static Sample createSample(String scenarioId, int iterations, long seed) {
+		return new Sample(scenarioId, System.currentTimeMillis(), new HashMap<String, String>(), createDataPoints(iterations, seed));
+	}
+
+	private static DataPoint createDataPoint(int step, long[] values) {
+		Map<Dim, Scalar> scalars= new HashMap<Dim, Scalar>();
+		for (int d= 0; d < DIMENSIONS.length; d++)
+			scalars.put(DIMENSIONS[d], new Scalar(DIMENSIONS[d], values[d]));
+		return new DataPoint(step, scalars);
+	}
+}
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test.internal.performance.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.test.internal.performance.db.Variations;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of converting variations into their database representation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations= 5, time= 1)
+@Measurement(iterations= 10, time= 1)
+@Fork(1)
+public class VariationsBenchmark {
+
+	private Variations fVariations;
+
+	@Setup
+	public void setUp() {
+		fVariations= new Variations("config=eclipseperflnx3;build=I20130515-2000;jvm=sun1.6;os=linux"); //$NON-NLS-1$
+	}
+
+	@Benchmark
+	public String toExactMatchString() {
+		return fVariations.toExactMatchString();
+	}
+
+	/*
+	 * Changing the series value before every query, as Scenario does for every build.
+	 */
+	@Benchmark
+	public String putAndToExactMatchString() {
+		fVariations.put("build", "I20130515-2000"); //$NON-NLS-1$ //$NON-NLS-2$
+		return fVariations.toExactMatchString();
+	}
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test.internal.performance;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.test.internal.performance.data.DataPoint;
+import org.eclipse.test.internal.performance.data.Sample;
+import org.eclipse.test.internal.performance.data.Scalar;
+
+/**
+ * Performance meter that records the average time of a single operation per
+ * iteration, as reported by a {@link BenchmarkRunner}. Every iteration is stored
+ * as a pair of data points, so that benchmark results are stored and evaluated
+ * like any other scenario.
+ * <p>
+ * When used with {@link #start()} and {@link #stop()} every measurement counts
+ * as one operation.
+ * </p>
+ */
+public class BenchmarkPerformanceMeter extends InternalPerformanceMeter {
+
+	private static final long NANOS_PER_MILLI= 1000000;
+
+	private long fStartDate;
+	private long fStartTime;
+	private List fDataPoints= new ArrayList();
+
+	/**
+	 * @param scenarioId the scenario id
+	 */
+	public BenchmarkPerformanceMeter(String scenarioId) {
+		super(scenarioId);
+		fStartDate= System.currentTimeMillis();
+	}
+
+	/*
+	 * @see org.eclipse.test.performance.PerformanceMeter#start()
+	 */
+	public void start() {
+		fStartTime= System.currentTimeMillis();
+	}
+
+	/*
+	 * @see org.eclipse.test.performance.PerformanceMeter#stop()
+	 */
+	public void stop() {
+		addIteration(1, System.currentTimeMillis() - fStartTime);
+	}
+
+	/**
+	 * Records one measured iteration.
+	 *
+	 * @param operations the number of operations run during the iteration
+	 * @param elapsedMillis the duration of the iteration in milliseconds
+	 */
+	public void addIteration(long operations, long elapsedMillis) {
+		long operationTime= operations > 0 ? elapsedMillis * NANOS_PER_MILLI / operations : 0;
+		fDataPoints.add(createDataPoint(BEFORE, 0, 0));
+		fDataPoints.add(createDataPoint(AFTER, operationTime, operations));
+	}
+
+	/*
+	 * @see org.eclipse.test.internal.performance.InternalPerformanceMeter#getDataPoints()
+	 */
+	protected DataPoint[] getDataPoints() {
+		return (DataPoint[]) fDataPoints.toArray(new DataPoint[fDataPoints.size()]);
+	}
+
+	/*
+	 * @see org.eclipse.test.internal.performance.InternalPerformanceMeter#getSample()
+	 */
+	public Sample getSample() {
+		return new Sample(getScenarioName(), fStartDate, new HashMap(), getDataPoints());
+	}
+
+	/*
+	 * @see org.eclipse.test.performance.PerformanceMeter#dispose()
+	 */
+	public void dispose() {
+		fDataPoints= null;
+		super.dispose();
+	}
+
+	private DataPoint createDataPoint(int step, long operationTime, long operations) {
+		Map scalars= new HashMap();
+		scalars.put(InternalDimensions.OPERATION_TIME, new Scalar(InternalDimensions.OPERATION_TIME, operationTime));
+		scalars.put(InternalDimensions.INVOCATION_COUNT, new Scalar(InternalDimensions.INVOCATION_COUNT, operations));
+		return new DataPoint(step, scalars);
+	}
+}
@@ -0,0 +1,24 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test.internal.performance;
+
+import org.eclipse.test.performance.PerformanceMeter;
+
+/**
+ * Creates {@link BenchmarkPerformanceMeter}s. Selected with
+ * <code>-DPerformanceMeterFactory=org.eclipse.test.internal.performance.BenchmarkPerformanceMeterFactory</code>.
+ */
+public class BenchmarkPerformanceMeterFactory extends PerformanceMeterFactory {
+
+	protected PerformanceMeter doCreatePerformanceMeter(String scenario) {
+		return new BenchmarkPerformanceMeter(scenario);
+	}
+}
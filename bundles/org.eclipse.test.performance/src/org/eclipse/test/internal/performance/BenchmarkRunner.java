@@ -0,0 +1,272 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test.internal.performance;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.eclipse.test.performance.Blackhole;
+import org.eclipse.test.performance.Performance;
+import org.eclipse.test.performance.PerformanceMeter;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Runs benchmark methods in-process and records their results with a
+ * {@link PerformanceMeter}.
+ * <p>
+ * A benchmark method is a public instance method whose name starts with
+ * <code>bench</code> and that takes no parameters or a single {@link Blackhole}.
+ * Values returned by a benchmark method are consumed by the blackhole, so that
+ * the computation cannot be eliminated as dead code. Public <code>setUp()</code>
+ * and <code>tearDown()</code> methods are called around each benchmark method.
+ * </p>
+ * <p>
+ * A benchmark method is first run for a number of unrecorded warmup iterations.
+ * Then each measured iteration invokes it in batches until the iteration time
+ * has passed, and the average time per operation is recorded. The iterations
+ * are configured with the <code>eclipse.perf.bench.warmupIterations</code>,
+ * <code>eclipse.perf.bench.iterations</code> and <code>eclipse.perf.bench.iterationTime</code>
+ * system properties.
+ * </p>
+ * <p>
+ * The results are asserted with {@link Performance#assertPerformance(PerformanceMeter)},
+ * unless <code>eclipse.perf.bench.maxDegradation</code> gives the percentage by which
+ * the operation time may exceed the one of the reference.
+ * </p>
+ * <pre>
+ * public class StringBenchmarks {
+ * 	public static Test suite() {
+ * 		return BenchmarkRunner.suite(StringBenchmarks.class);
+ * 	}
+ * 	public int benchHashCode() {
+ * 		return "benchmark".hashCode();
+ * 	}
+ * }
+ * </pre>
+ */
+public class BenchmarkRunner {
+
+	public static final String BENCHMARK_METHOD_PREFIX= "bench"; //$NON-NLS-1$
+
+	private static final String SET_UP_METHOD= "setUp"; //$NON-NLS-1$
+	private static final String TEAR_DOWN_METHOD= "tearDown"; //$NON-NLS-1$
+
+	private final Object fBenchmark;
+	private final Method fMethod;
+	private final Object[] fArguments;
+	private final Blackhole fBlackhole= new Blackhole();
+
+	private int fWarmupIterations= PerformanceTestPlugin.getBenchmarkWarmupIterations();
+	private int fIterations= PerformanceTestPlugin.getBenchmarkIterations();
+	private long fIterationTime= PerformanceTestPlugin.getBenchmarkIterationTime();
+	private long fBatchSize= 1;
+
+	/**
+	 * @param benchmark the object to invoke the benchmark method on
+	 * @param method the benchmark method
+	 */
+	public BenchmarkRunner(Object benchmark, Method method) {
+		fBenchmark= benchmark;
+		fMethod= method;
+		fArguments= method.getParameterTypes().length == 0 ? new Object[0] : new Object[] { fBlackhole };
+	}
+
+	public void setWarmupIterations(int warmupIterations) {
+		fWarmupIterations= warmupIterations;
+	}
+
+	public void setIterations(int iterations) {
+		fIterations= iterations;
+	}
+
+	public void setIterationTime(long iterationTime) {
+		fIterationTime= iterationTime;
+	}
+
+	/**
+	 * Runs the benchmark method and records the measured iterations with the given meter.
+	 * A {@link BenchmarkPerformanceMeter} records the average time per operation of
+	 * every iteration; any other meter measures single invocations.
+	 *
+	 * @param meter the meter to record the measurements with
+	 * @throws Exception if the benchmark method fails
+	 */
+	public void run(PerformanceMeter meter) throws Exception {
+		long[] operations= new long[1];
+		for (int i= 0; i < fWarmupIterations; i++) {
+			long elapsed= runIteration(operations);
+			if (elapsed > 0)
+				fBatchSize= Math.max(1, operations[0] / elapsed);
+		}
+		if (meter instanceof BenchmarkPerformanceMeter) {
+			BenchmarkPerformanceMeter benchmarkMeter= (BenchmarkPerformanceMeter) meter;
+			for (int i= 0; i < fIterations; i++) {
+				long elapsed= runIteration(operations);
+				benchmarkMeter.addIteration(operations[0], elapsed);
+			}
+		} else {
+			for (int i= 0; i < fIterations; i++) {
+				meter.start();
+				invoke();
+				meter.stop();
+			}
+		}
+	}
+
+	/*
+	 * Invokes the benchmark method in batches of fBatchSize until the iteration time has passed.
+	 * Returns the elapsed time in milliseconds and stores the number of invocations in operations[0].
+	 */
+	private long runIteration(long[] operations) throws Exception {
+		long count= 0;
+		long start= System.currentTimeMillis();
+		long end= start + fIterationTime;
+		long now;
+		do {
+			for (long i= 0; i < fBatchSize; i++)
+				invoke();
+			count+= fBatchSize;
+			now= System.currentTimeMillis();
+		} while (now < end);
+		operations[0]= count;
+		return now - start;
+	}
+
+	private void invoke() throws Exception {
+		Object result= invoke(fBenchmark, fMethod, fArguments);
+		if (result != null)
+			fBlackhole.consume(result);
+	}
+
+	/**
+	 * Returns the benchmark methods of the given class, sorted by name.
+	 *
+	 * @param benchmarkClass the class declaring the benchmark methods
+	 * @return the benchmark methods
+	 */
+	public static Method[] getBenchmarkMethods(Class benchmarkClass) {
+		Method[] methods= benchmarkClass.getMethods();
+		List benchmarks= new ArrayList();
+		for (int i= 0; i < methods.length; i++) {
+			Method method= methods[i];
+			if (isBenchmarkMethod(method))
+				benchmarks.add(method);
+		}
+		Method[] result= (Method[]) benchmarks.toArray(new Method[benchmarks.size()]);
+		Arrays.sort(result, new Comparator() {
+			public int compare(Object o1, Object o2) {
+				return ((Method) o1).getName().compareTo(((Method) o2).getName());
+			}
+		});
+		return result;
+	}
+
+	private static boolean isBenchmarkMethod(Method method) {
+		if (!method.getName().startsWith(BENCHMARK_METHOD_PREFIX) || Modifier.isStatic(method.getModifiers()))
+			return false;
+		Class[] parameterTypes= method.getParameterTypes();
+		return parameterTypes.length == 0 || (parameterTypes.length == 1 && parameterTypes[0] == Blackhole.class);
+	}
+
+	/**
+	 * Returns the scenario id of the given benchmark method. The id has the same
+	 * form as {@link Performance#getDefaultScenarioId(TestCase)}.
+	 *
+	 * @param benchmarkClass the class declaring the benchmark method
+	 * @param method the benchmark method
+	 * @return the scenario id
+	 */
+	public static String getScenarioId(Class benchmarkClass, Method method) {
+		return benchmarkClass.getName() + '#' + method.getName() + "()"; //$NON-NLS-1$
+	}
+
+	/**
+	 * Returns a test suite with one test per benchmark method of the given class.
+	 * Each test measures its benchmark method with a performance meter created
+	 * by the configured performance meter factory, commits the measurements and
+	 * asserts the performance against the reference.
+	 *
+	 * @param benchmarkClass the class declaring the benchmark methods
+	 * @return the test suite
+	 */
+	public static Test suite(Class benchmarkClass) {
+		TestSuite suite= new TestSuite(benchmarkClass.getName());
+		Method[] methods= getBenchmarkMethods(benchmarkClass);
+		for (int i= 0; i < methods.length; i++)
+			suite.addTest(new BenchmarkTest(benchmarkClass, methods[i]));
+		return suite;
+	}
+
+	private static Object invoke(Object target, Method method, Object[] arguments) throws Exception {
+		try {
+			return method.invoke(target, arguments);
+		} catch (InvocationTargetException e) {
+			Throwable t= e.getTargetException();
+			if (t instanceof Exception)
+				throw (Exception) t;
+			if (t instanceof Error)
+				throw (Error) t;
+			throw e;
+		}
+	}
+
+	private static void invokeIfPresent(Object target, String methodName) throws Exception {
+		Method method;
+		try {
+			method= target.getClass().getMethod(methodName, new Class[0]);
+		} catch (NoSuchMethodException e) {
+			return;
+		}
+		invoke(target, method, new Object[0]);
+	}
+
+	private static class BenchmarkTest extends TestCase {
+
+		private final Class fBenchmarkClass;
+		private final Method fMethod;
+
+		BenchmarkTest(Class benchmarkClass, Method method) {
+			super(method.getName());
+			fBenchmarkClass= benchmarkClass;
+			fMethod= method;
+		}
+
+		protected void runTest() throws Throwable {
+			Object benchmark= fBenchmarkClass.newInstance();
+			Performance performance= Performance.getDefault();
+			PerformanceMeter meter= performance.createPerformanceMeter(getScenarioId(fBenchmarkClass, fMethod));
+			try {
+				invokeIfPresent(benchmark, SET_UP_METHOD);
+				try {
+					new BenchmarkRunner(benchmark, fMethod).run(meter);
+				} finally {
+					invokeIfPresent(benchmark, TEAR_DOWN_METHOD);
+				}
+				meter.commit();
+				int maxDegradation= PerformanceTestPlugin.getBenchmarkMaxDegradation();
+				if (meter instanceof BenchmarkPerformanceMeter && maxDegradation >= 0)
+					performance.assertPerformanceInRelativeBand(meter, InternalDimensions.OPERATION_TIME, -100, maxDegradation);
+				else
+					performance.assertPerformance(meter);
+			} finally {
+				meter.dispose();
+			}
+		}
+	}
+}
@@ -27,7 +27,8 @@ public interface InternalDimensions {
 //    		USER_TIME= new Dim(10, Unit.SECOND, 1000),			// the amount of elapsed user time. "User time"
     			KERNEL_TIME= new Dim(11, Unit.SECOND, 1000),		// the amount of elapsed kernel time. "Kernel time"
     			CPU_TIME= new Dim(20, Unit.SECOND, 1000), 			// the amount of CPU time we have used so far. "CPU Time"
-    			INVOCATION_COUNT= new Dim(52, Unit.INVOCATION, 1);	// the number of method invocations. "Invocation Count"
+    			INVOCATION_COUNT= new Dim(52, Unit.INVOCATION, 1),	// the number of method invocations. "Invocation Count"
+    			OPERATION_TIME= new Dim(53, Unit.SECOND, 1000000000);	// the average time of a single benchmark operation in nanoseconds. "Operation Time"
 
 //  	OS Info:
     		Dim
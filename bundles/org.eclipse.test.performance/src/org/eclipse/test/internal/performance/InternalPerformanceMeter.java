@@ -19,11 +19,13 @@ import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.test.internal.performance.data.DataPoint;
 import org.eclipse.test.internal.performance.data.Dim;
 import org.eclipse.test.internal.performance.data.Sample;
+import org.eclipse.test.internal.performance.data.Scalar;
 import org.eclipse.test.internal.performance.db.DB;
 import org.eclipse.test.internal.performance.db.Variations;
 import org.eclipse.test.internal.performance.eval.StatisticsSession;
@@ -47,9 +49,22 @@ public abstract class InternalPerformanceMeter extends PerformanceMeter {
 	public static final int AVERAGE= -3;
 	public static final int SIZE= -4;
 	public static final int STDEV= -5;
+	/**
+	 * The step of the data point that holds the meter overhead subtracted from the aggregates of a sample.
+	 */
+	public static final int OVERHEAD= -6;
+	/**
+	 * The step of the data point that holds the number of warmup iterations discarded from a sample.
+	 */
+	public static final int WARMUP= -7;
     public static final int BEFORE= 0;
     public static final int AFTER= 1;
     
+    /**
+     * The minimum number of iterations needed to compute a confidence interval.
+     */
+    public static final int MIN_CONFIDENCE_ITERATIONS= 3;
+
     protected static final String VERBOSE_PERFORMANCE_METER_PROPERTY= "InternalPrintPerformanceResults"; //$NON-NLS-1$
 
 	private String fScenarioId;
@@ -59,6 +74,7 @@ public abstract class InternalPerformanceMeter extends PerformanceMeter {
 	private boolean fSummaryIsGlobal;
 	private int fCommentType;
 	private String fComment;
+	private boolean fDiscardWarmup= PerformanceTestPlugin.isDiscardWarmup();
 
 	
 	public InternalPerformanceMeter(String scenarioId) {
@@ -83,7 +99,7 @@ public abstract class InternalPerformanceMeter extends PerformanceMeter {
 	 * @see org.eclipse.test.performance.PerformanceMeter#commit()
 	 */
 	public void commit() {
-		Sample sample= getSample();
+		Sample sample= getCommittedSample();
 		if (sample != null) {
 			if (fSummaryDimensions != null) {
 				sample.tagAsSummary(fSummaryIsGlobal, fShortName, fSummaryDimensions, fCommentType, fComment);
@@ -104,7 +120,7 @@ public abstract class InternalPerformanceMeter extends PerformanceMeter {
 		ps.print("Scenario '" + getScenarioName() + "' "); //$NON-NLS-1$ //$NON-NLS-2$
 		DataPoint[] dataPoints= sample.getDataPoints();
 		if (dataPoints.length > 0) {
-			StatisticsSession s= new StatisticsSession(dataPoints);
+			StatisticsSession s= new StatisticsSession(dataPoints, sample.getMeterOverheadToSubtract());
 			Dim[] dimensions= dataPoints[0].getDimensions();
 			Arrays.sort(dimensions, new DimensionComparator());
 			if (dimensions.length > 0) {
@@ -114,7 +130,10 @@ public abstract class InternalPerformanceMeter extends PerformanceMeter {
 
 				String spaces= "                                                                                                       "; //$NON-NLS-1$
 
-				ps.println("(average over " + n + " samples):"); //$NON-NLS-1$ //$NON-NLS-2$
+				if (sample.getWarmupIterations() > 0)
+					ps.println("(average over " + n + " samples, " + sample.getWarmupIterations() + " warmup iterations discarded):"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				else
+					ps.println("(average over " + n + " samples):"); //$NON-NLS-1$ //$NON-NLS-2$
 				for (int i= 0; i < dimensions.length; i++) {
 					Dim dimension= dimensions[i];
 					double mean= s.getAverage(dimension);
@@ -174,8 +193,9 @@ public abstract class InternalPerformanceMeter extends PerformanceMeter {
 		double stdev= s.getStddev(dimension);
 		double mean= s.getAverage(dimension);
 		
+		String overheadMsg= getOverheadMessage(sample, dimension);
 		if (stdev == 0)
-			return ""; //$NON-NLS-1$
+			return overheadMsg;
 		
 		// measurable effect size
 		// sampleSize= 16 * stdev^2 / effect^2
@@ -204,7 +224,21 @@ public abstract class InternalPerformanceMeter extends PerformanceMeter {
 		if (fivePercentEffect < effectSize)
 			measurableMsg += " (required sample size for an effect of 5% of " + baseName + ": " + requiredSampleSizeForFivePercentEffect + ")"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 		
-		return measurableMsg;
+		return measurableMsg + overheadMsg;
+	}
+
+	private String getOverheadMessage(Sample sample, Dim dimension) {
+		Map meterOverhead= sample.getMeterOverhead();
+		if (meterOverhead != null) {
+			Scalar overhead= (Scalar) meterOverhead.get(dimension);
+			if (overhead != null && overhead.getMagnitude() != 0) {
+				String overheadMsg= " Meter overhead: " + dimension.getDisplayValue(overhead); //$NON-NLS-1$
+				if (sample.getMeterOverheadToSubtract() != null)
+					overheadMsg += " (subtracted)"; //$NON-NLS-1$
+				return overheadMsg;
+			}
+		}
+		return ""; //$NON-NLS-1$
 	}
 
 	private int firstNonDigit(String string) {
@@ -249,6 +283,121 @@ public abstract class InternalPerformanceMeter extends PerformanceMeter {
 		}
 	}
 
+	/**
+	 * Returns the sample as {@link #commit()} stores it: without the warmup
+	 * iterations if they are discarded.
+	 * 
+	 * @return the sample, or <code>null</code> if there is none
+	 */
+	public Sample getCommittedSample() {
+		Sample sample= getSample();
+		if (sample != null && fDiscardWarmup)
+			sample.discardWarmup(getWarmupIterations(sample.getDataPoints()));
+		return sample;
+	}
+
+	/**
+	 * Returns the data points captured so far. Subclasses that keep their
+	 * data points should override this to avoid creating a complete sample.
+	 * 
+	 * @return the data points captured so far
+	 */
+	protected DataPoint[] getDataPoints() {
+		Sample sample= getSample();
+		if (sample == null)
+			return new DataPoint[0];
+		return sample.getDataPoints();
+	}
+
+	/**
+	 * Returns the number of start/stop pairs measured so far.
+	 * 
+	 * @return the number of iterations
+	 */
+	public int getIterationCount() {
+		return getDataPoints().length / 2;
+	}
+
+	/**
+	 * Returns whether the iterations measured so far have reached a steady state.
+	 * 
+	 * @return <code>true</code> if a steady state has been reached
+	 * @see StatisticsUtil#getWarmupIterations(long[], int, double)
+	 */
+	public boolean isSteadyState() {
+		return getWarmupIterations(getDataPoints()) >= 0;
+	}
+
+	/**
+	 * Controls whether the iterations measured before the steady state was reached
+	 * are excluded from the committed sample.
+	 * 
+	 * @param discardWarmup <code>true</code> to discard the warmup iterations
+	 */
+	public void setDiscardWarmup(boolean discardWarmup) {
+		fDiscardWarmup= discardWarmup;
+	}
+
+	/**
+	 * Returns the half-width of the 95% confidence interval of the mean of the
+	 * iterations measured so far, relative to the mean. If warmup iterations are
+	 * discarded, only the steady-state iterations are considered.
+	 * 
+	 * @return the relative half-width, e.g. <code>0.05</code> for &plusmn;5%, or
+	 *         {@link Double#POSITIVE_INFINITY} if it cannot be computed yet
+	 */
+	public double getRelativeConfidenceIntervalHalfWidth() {
+		DataPoint[] dataPoints= getDataPoints();
+		if (fDiscardWarmup) {
+			Sample sample= new Sample(dataPoints);
+			sample.discardWarmup(getWarmupIterations(dataPoints));
+			dataPoints= sample.getDataPoints();
+		}
+		if (dataPoints.length < 2 * MIN_CONFIDENCE_ITERATIONS || dataPoints[0].getStep() != BEFORE)
+			return Double.POSITIVE_INFINITY;
+		Dim dimension= getSteadyStateDimension(dataPoints[0]);
+		if (dimension == null)
+			return Double.POSITIVE_INFINITY;
+		StatisticsSession s= new StatisticsSession(dataPoints);
+		double[] confidenceInterval= s.getConfidenceInterval(dimension, StatisticsUtil.T95);
+		double halfWidth= (confidenceInterval[1] - confidenceInterval[0]) / 2;
+		if (halfWidth == 0)
+			return 0;
+		double mean= s.getAverage(dimension);
+		if (mean == 0 || Double.isNaN(halfWidth))
+			return Double.POSITIVE_INFINITY;
+		return halfWidth / Math.abs(mean);
+	}
+
+	private static int getWarmupIterations(DataPoint[] dataPoints) {
+		if (dataPoints.length < 2 || dataPoints[0].getStep() != BEFORE)
+			return -1;
+		Dim dimension= getSteadyStateDimension(dataPoints[0]);
+		if (dimension == null)
+			return -1;
+		int count= dataPoints.length / 2;
+		long[] deltas= new long[count];
+		for (int i= 0; i < count; i++) {
+			Scalar before= dataPoints[2 * i].getScalar(dimension);
+			Scalar after= dataPoints[2 * i + 1].getScalar(dimension);
+			if (before == null || after == null)
+				return -1;
+			deltas[i]= after.getMagnitude() - before.getMagnitude();
+		}
+		return StatisticsUtil.getWarmupIterations(deltas, PerformanceTestPlugin.getWarmupWindow(), PerformanceTestPlugin.getWarmupCoefficientOfVariation());
+	}
+
+	private static Dim getSteadyStateDimension(DataPoint dataPoint) {
+		Dimension defaultDimension= PerformanceTestPlugin.getDefaultDimension();
+		if (defaultDimension instanceof Dim && dataPoint.contains((Dim) defaultDimension))
+			return (Dim) defaultDimension;
+		Dim[] candidates= { InternalDimensions.ELAPSED_PROCESS, InternalDimensions.SYSTEM_TIME, InternalDimensions.CPU_TIME, InternalDimensions.OPERATION_TIME };
+		for (int i= 0; i < candidates.length; i++)
+			if (dataPoint.contains(candidates[i]))
+				return candidates[i];
+		return null;
+	}
+
     public void tagAsSummary(boolean global, String shortName, Dimension[] dims) {
         fSummaryIsGlobal= global;
         fShortName= shortName;
@@ -14,8 +14,13 @@ package org.eclipse.test.internal.performance;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
 import org.eclipse.test.internal.performance.data.DataPoint;
+import org.eclipse.test.internal.performance.data.Dim;
 import org.eclipse.test.internal.performance.data.Sample;
+import org.eclipse.test.internal.performance.data.Scalar;
+import org.eclipse.test.internal.performance.eval.StatisticsSession;
 
 
 /**
@@ -23,6 +28,18 @@ import org.eclipse.test.internal.performance.data.Sample;
  */
 public class OSPerformanceMeter extends InternalPerformanceMeter {
 
+	/**
+	 * Number of empty start/stop pairs used to determine the meter overhead.
+	 */
+	private static final int CALIBRATION_RUNS= 50;
+	/**
+	 * Number of empty start/stop pairs executed before calibrating.
+	 */
+	private static final int CALIBRATION_WARMUP_RUNS= 10;
+
+	/** The cost of an empty start/stop pair per dimension, computed once per VM */
+	private static Map fgMeterOverhead;
+
 	private PerformanceMonitor fPerformanceMonitor;
 	private long fStartTime;
 	private List fDataPoints= new ArrayList();    
@@ -66,19 +83,65 @@ public class OSPerformanceMeter extends InternalPerformanceMeter {
 	    if (fDataPoints != null) {
 	        HashMap runProperties= new HashMap();
 	        collectRunInfo(runProperties);
-	        return new Sample(getScenarioName(), fStartTime, runProperties, (DataPoint[]) fDataPoints.toArray(new DataPoint[fDataPoints.size()]));
+	        Sample sample= new Sample(getScenarioName(), fStartTime, runProperties, (DataPoint[]) fDataPoints.toArray(new DataPoint[fDataPoints.size()]));
+	        sample.setMeterOverhead(getMeterOverhead(fPerformanceMonitor));
+	        return sample;
 	    }
 	    return null;
 	}
 	
+	/*
+	 * @see org.eclipse.test.internal.performance.InternalPerformanceMeter#getDataPoints()
+	 */
+	protected DataPoint[] getDataPoints() {
+	    if (fDataPoints == null)
+	        return new DataPoint[0];
+	    return (DataPoint[]) fDataPoints.toArray(new DataPoint[fDataPoints.size()]);
+	}
+	
 	//---- private stuff ------
 	
     private void snapshot(int step) {
+	    fDataPoints.add(createDataPoint(fPerformanceMonitor, step));
+    }
+
+    private static DataPoint createDataPoint(PerformanceMonitor performanceMonitor, int step) {
 	    HashMap map= new HashMap();
-	    fPerformanceMonitor.collectOperatingSystemCounters(map);
-	    fDataPoints.add(new DataPoint(step, map));
+	    performanceMonitor.collectOperatingSystemCounters(map);
+	    return new DataPoint(step, map);
     }
 
+	/**
+	 * Returns the average cost of an empty start/stop pair for each dimension.
+	 * The calibration runs only once per VM, the first time the overhead is
+	 * requested.
+	 * 
+	 * @param performanceMonitor the monitor used to take the snapshots
+	 * @return a map from {@link Dim} to {@link Scalar}
+	 */
+	static synchronized Map getMeterOverhead(PerformanceMonitor performanceMonitor) {
+		if (fgMeterOverhead == null) {
+			for (int i= 0; i < CALIBRATION_WARMUP_RUNS; i++) {
+				createDataPoint(performanceMonitor, BEFORE);
+				createDataPoint(performanceMonitor, AFTER);
+			}
+			DataPoint[] dataPoints= new DataPoint[2 * CALIBRATION_RUNS];
+			for (int i= 0; i < CALIBRATION_RUNS; i++) {
+				dataPoints[2 * i]= createDataPoint(performanceMonitor, BEFORE);
+				dataPoints[2 * i + 1]= createDataPoint(performanceMonitor, AFTER);
+			}
+			StatisticsSession stats= new StatisticsSession(dataPoints);
+			Dim[] dimensions= dataPoints[0].getDimensions();
+			Map overhead= new HashMap();
+			for (int i= 0; i < dimensions.length; i++) {
+				Dim dimension= dimensions[i];
+				overhead.put(dimension, new Scalar(dimension, Math.round(stats.getAverage(dimension))));
+			}
+			fgMeterOverhead= overhead;
+		}
+		return fgMeterOverhead;
+	}
+
 	/**
 	 * Write out the run element if it hasn't been written out yet.
 	 * @param runProperties
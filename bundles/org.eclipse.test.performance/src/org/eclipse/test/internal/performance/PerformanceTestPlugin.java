@@ -50,6 +50,16 @@ public class PerformanceTestPlugin extends Plugin {
     private static final String ECLIPSE_PERF_DEFAULT_DIM = "eclipse.perf.default.dim"; //$NON-NLS-1$
     private static final String ECLIPSE_PERF_RESULTS_DIMENSIONS = "eclipse.perf.results.dimensions"; //$NON-NLS-1$
     private static final String ECLIPSE_PERF_CONFIGS_DESCRIPTOR = "eclipse.perf.configs.descriptor"; //$NON-NLS-1$
+    private static final String ECLIPSE_PERF_SUBTRACT_OVERHEAD = "eclipse.perf.subtractOverhead"; //$NON-NLS-1$
+    private static final String ECLIPSE_PERF_DISCARD_WARMUP = "eclipse.perf.discardWarmup"; //$NON-NLS-1$
+    private static final String ECLIPSE_PERF_WARMUP_WINDOW = "eclipse.perf.warmup.window"; //$NON-NLS-1$
+    private static final String ECLIPSE_PERF_WARMUP_CV = "eclipse.perf.warmup.cv"; //$NON-NLS-1$
+    private static final String ECLIPSE_PERF_BENCH_WARMUP_ITERATIONS = "eclipse.perf.bench.warmupIterations"; //$NON-NLS-1$
+    private static final String ECLIPSE_PERF_BENCH_ITERATIONS = "eclipse.perf.bench.iterations"; //$NON-NLS-1$
+    private static final String ECLIPSE_PERF_BENCH_ITERATION_TIME = "eclipse.perf.bench.iterationTime"; //$NON-NLS-1$
+    private static final String ECLIPSE_PERF_BENCH_MAX_DEGRADATION = "eclipse.perf.bench.maxDegradation"; //$NON-NLS-1$
+    private static final String ECLIPSE_PERF_CACHELOC = "eclipse.perf.cacheloc"; //$NON-NLS-1$
+    private static final String ECLIPSE_PERF_CACHE_SIZE = "eclipse.perf.cacheSize"; //$NON-NLS-1$
 
 	/**
 	 * Supported dimensions.
@@ -109,6 +119,36 @@ public class PerformanceTestPlugin extends Plugin {
 		InternalDimensions.CPU_TIME,
 	};
 
+	/**
+	 * Default number of consecutive iterations that must be stable to end the warmup phase.
+	 */
+	private static final int DEFAULT_WARMUP_WINDOW = 5;
+
+	/**
+	 * Default maximum coefficient of variation of a stable window of iterations.
+	 */
+	private static final double DEFAULT_WARMUP_CV = 0.05;
+
+	/**
+	 * Default number of unrecorded iterations run before a benchmark method is measured.
+	 */
+	private static final int DEFAULT_BENCH_WARMUP_ITERATIONS = 5;
+
+	/**
+	 * Default number of measured iterations of a benchmark method.
+	 */
+	private static final int DEFAULT_BENCH_ITERATIONS = 10;
+
+	/**
+	 * Default duration of a single benchmark iteration in milliseconds.
+	 */
+	private static final long DEFAULT_BENCH_ITERATION_TIME = 500;
+
+	/**
+	 * Default maximum size of the query result cache in bytes.
+	 */
+	private static final long DEFAULT_CACHE_SIZE = 64 * 1024 * 1024;
+
 	/**
 	 * The plug-in ID
 	 */
@@ -342,6 +382,91 @@ public class PerformanceTestPlugin extends Plugin {
 	    return null;
 	}
 
+	/*
+	 * -Declipse.perf.subtractOverhead=true
+	 * Returns true if the calibrated cost of an empty start/stop pair is to be
+	 * subtracted from every measured delta.
+	 */
+	public static boolean isSubtractMeterOverhead() {
+		return Boolean.getBoolean(ECLIPSE_PERF_SUBTRACT_OVERHEAD);
+	}
+
+	/*
+	 * -Declipse.perf.discardWarmup=true
+	 * Returns true if the iterations measured before the steady state was
+	 * reached are to be excluded from the aggregates of every performance meter.
+	 */
+	public static boolean isDiscardWarmup() {
+		return Boolean.getBoolean(ECLIPSE_PERF_DISCARD_WARMUP);
+	}
+
+	/*
+	 * -Declipse.perf.warmup.window=<number of iterations>
+	 */
+	public static int getWarmupWindow() {
+		return Integer.getInteger(ECLIPSE_PERF_WARMUP_WINDOW, DEFAULT_WARMUP_WINDOW).intValue();
+	}
+
+	/*
+	 * -Declipse.perf.warmup.cv=<maximum coefficient of variation>
+	 */
+	public static double getWarmupCoefficientOfVariation() {
+		String cv= System.getProperty(ECLIPSE_PERF_WARMUP_CV);
+		if (cv != null) {
+			try {
+				return Double.parseDouble(cv);
+			} catch (NumberFormatException e) {
+				System.err.println("Skip invalid coefficient of variation found in system property '"+ECLIPSE_PERF_WARMUP_CV+"': "+cv); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		}
+		return DEFAULT_WARMUP_CV;
+	}
+
+	/*
+	 * -Declipse.perf.bench.warmupIterations=<number of iterations>
+	 */
+	public static int getBenchmarkWarmupIterations() {
+		return Integer.getInteger(ECLIPSE_PERF_BENCH_WARMUP_ITERATIONS, DEFAULT_BENCH_WARMUP_ITERATIONS).intValue();
+	}
+
+	/*
+	 * -Declipse.perf.bench.iterations=<number of iterations>
+	 */
+	public static int getBenchmarkIterations() {
+		return Integer.getInteger(ECLIPSE_PERF_BENCH_ITERATIONS, DEFAULT_BENCH_ITERATIONS).intValue();
+	}
+
+	/*
+	 * -Declipse.perf.bench.iterationTime=<milliseconds>
+	 */
+	public static long getBenchmarkIterationTime() {
+		return Long.getLong(ECLIPSE_PERF_BENCH_ITERATION_TIME, DEFAULT_BENCH_ITERATION_TIME).longValue();
+	}
+
+	/*
+	 * -Declipse.perf.bench.maxDegradation=<percent>
+	 * Returns the percentage by which the operation time of a benchmark may exceed the reference,
+	 * or -1 if benchmarks are asserted like other performance tests.
+	 */
+	public static int getBenchmarkMaxDegradation() {
+		return Integer.getInteger(ECLIPSE_PERF_BENCH_MAX_DEGRADATION, -1).intValue();
+	}
+
+	/*
+	 * -Declipse.perf.cacheloc=<directory>
+	 * Returns the directory of the query result cache, or null if query results are not cached.
+	 */
+	public static String getCacheLocation() {
+		return System.getProperty(ECLIPSE_PERF_CACHELOC);
+	}
+
+	/*
+	 * -Declipse.perf.cacheSize=<bytes>
+	 */
+	public static long getCacheSize() {
+		return Long.getLong(ECLIPSE_PERF_CACHE_SIZE, DEFAULT_CACHE_SIZE).longValue();
+	}
+
 	// logging
 
 	public static void logError(String message) {
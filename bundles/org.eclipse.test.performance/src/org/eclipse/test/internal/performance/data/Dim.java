@@ -101,10 +101,23 @@ public class Dim implements Dimension {
 	}
 
 	public String getDisplayValue(Scalar scalar) {
+		if (isBelowMillisecond(scalar.getMagnitude()))
+			return Unit.formatedNanoTime(scalar.getMagnitude());
 		return this.fUnit.getDisplayValue1(scalar.getMagnitude(), this.fMultiplier);
 	}
 
 	public String getDisplayValue(double scalar) {
+		if (isBelowMillisecond(scalar))
+			return Unit.formatedNanoTime((long) scalar);
 		return this.fUnit.getDisplayValue1(scalar / this.fMultiplier);
 	}
+
+	/*
+	 * Only the operation time of benchmarks, which is in nanoseconds, is shown
+	 * in ns or us, the other times keep their millisecond display.
+	 */
+	private boolean isBelowMillisecond(double magnitude) {
+		return this == InternalDimensions.OPERATION_TIME && magnitude != 0
+				&& Math.abs(magnitude) < 1000000;
+	}
 }
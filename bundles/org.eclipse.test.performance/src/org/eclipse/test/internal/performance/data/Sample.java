@@ -13,6 +13,7 @@ package org.eclipse.test.internal.performance.data;
 import java.util.Map;
 import java.util.Set;
 
+import org.eclipse.test.internal.performance.PerformanceTestPlugin;
 import org.eclipse.test.performance.Dimension;
 
 import junit.framework.Assert;
@@ -32,6 +33,8 @@ public class Sample {
 	Dimension[] fSummaryDimensions;
 	int fCommentType;
 	String fComment;
+	Map fMeterOverhead;
+	int fWarmupIterations;
 	
 	
 	public Sample(String scenarioID, long starttime, Map properties, DataPoint[] dataPoints) {
@@ -46,6 +49,30 @@ public class Sample {
         fDataPoints= dataPoints;
     }
 
+    /**
+     * Sets the cost of an empty start/stop pair of the meter that produced this sample.
+     * 
+     * @param meterOverhead a map from {@link Dim} to {@link Scalar}, or <code>null</code>
+     */
+    public void setMeterOverhead(Map meterOverhead) {
+        fMeterOverhead= meterOverhead;
+    }
+
+    /**
+     * Removes the data points of the given number of leading start/stop pairs
+     * and records how many were discarded.
+     * 
+     * @param iterations the number of warmup iterations to discard
+     */
+    public void discardWarmup(int iterations) {
+        if (iterations <= 0 || 2 * iterations >= fDataPoints.length)
+            return;
+        DataPoint[] dataPoints= new DataPoint[fDataPoints.length - 2 * iterations];
+        System.arraycopy(fDataPoints, 2 * iterations, dataPoints, 0, dataPoints.length);
+        fDataPoints= dataPoints;
+        fWarmupIterations+= iterations;
+    }
+
     public void setComment(int commentType, String comment) {
         fCommentType= commentType;
         fComment= comment;
@@ -112,4 +139,34 @@ public class Sample {
 	public String getComment() {
 		return fComment;
 	}
+
+	/**
+	 * Returns the cost of an empty start/stop pair of the meter that produced this sample.
+	 * 
+	 * @return a map from {@link Dim} to {@link Scalar}, or <code>null</code> if the meter was not calibrated
+	 */
+	public Map getMeterOverhead() {
+		return fMeterOverhead;
+	}
+
+	/**
+	 * Returns the number of warmup iterations that were discarded from this sample.
+	 * 
+	 * @return the number of discarded start/stop pairs
+	 */
+	public int getWarmupIterations() {
+		return fWarmupIterations;
+	}
+
+	/**
+	 * Returns the meter overhead to subtract from the measurements of this sample.
+	 * 
+	 * @return the meter overhead, or <code>null</code> if the overhead is not to be subtracted
+	 * @see PerformanceTestPlugin#isSubtractMeterOverhead()
+	 */
+	public Map getMeterOverheadToSubtract() {
+		if (PerformanceTestPlugin.isSubtractMeterOverhead())
+			return fMeterOverhead;
+		return null;
+	}
 }
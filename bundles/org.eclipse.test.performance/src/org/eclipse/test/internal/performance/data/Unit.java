@@ -131,6 +131,24 @@ public class Unit {
 		return nf.format(sign * d) + "d"; //$NON-NLS-1$
 	}
 	
+	/**
+	 * Answer a formatted string for a time below one millisecond.
+	 * 
+	 * @param diff time in nanoseconds
+	 * @return the formatted time
+	 */
+	public static String formatedNanoTime(long diff) {
+		long sign= diff < 0 ? -1 : 1;
+		diff = Math.abs(diff);
+		
+		if (diff < 1000)
+			return String.valueOf(sign * diff) + "ns"; //$NON-NLS-1$
+		
+		NumberFormat nf= NumberFormat.getInstance();
+		nf.setMaximumFractionDigits(2);
+		return nf.format(sign * (diff / 1000.0)) + "us"; //$NON-NLS-1$
+	}
+	
 	/**
 	 * Answer a number formatted using engineering conventions, K thousands, M millions,
 	 * G billions and T trillions.
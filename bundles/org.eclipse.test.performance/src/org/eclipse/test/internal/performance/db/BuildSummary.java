@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test.internal.performance.db;
+
+/**
+ * The running mean, count, and sum of squared deviations (M2) of one dimension
+ * of a scenario in one build, as stored in SCENARIO_BUILD_SUMMARY.
+ * Partial results are combined with the parallel algorithm of Chan et al.,
+ * so that a summary can be updated with a new sample without reading
+ * the samples it already contains.
+ */
+class BuildSummary {
+
+    private double fMean;
+    private long fCount;
+    private double fM2;
+
+    /**
+     * Adds the statistics of a sample.
+     * @param mean the mean of the sample
+     * @param stddev the unbiased standard deviation of the sample
+     * @param count the size of the sample
+     */
+    void addSample(double mean, double stddev, long count) {
+        double m2= count > 1 ? stddev * stddev * (count - 1) : 0;
+        add(mean, count, m2);
+    }
+
+    /**
+     * Adds a partial result.
+     * @param mean the mean of the partial result
+     * @param count the size of the partial result
+     * @param m2 the sum of squared deviations from the mean of the partial result
+     */
+    void add(double mean, long count, double m2) {
+        if (count <= 0)
+            return;
+        if (fCount == 0) {
+            fMean= mean;
+            fCount= count;
+            fM2= m2;
+            return;
+        }
+        long n= fCount + count;
+        double delta= mean - fMean;
+        fMean+= delta * count / n;
+        fM2+= m2 + delta * delta * ((double) fCount * count / n);
+        fCount= n;
+    }
+
+    double getMean() {
+        return fMean;
+    }
+
+    long getCount() {
+        return fCount;
+    }
+
+    double getM2() {
+        return fM2;
+    }
+
+    /**
+     * Returns the unbiased standard deviation, like StatisticsSession does.
+     * @return the standard deviation, or 0 for less than two values
+     */
+    double getStddev() {
+        if (fCount < 2)
+            return 0;
+        return Math.sqrt(fM2 / (fCount - 1));
+    }
+}
@@ -21,11 +21,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import junit.framework.Assert;
 
@@ -35,6 +36,7 @@ import org.eclipse.test.internal.performance.data.DataPoint;
 import org.eclipse.test.internal.performance.data.Dim;
 import org.eclipse.test.internal.performance.data.Sample;
 import org.eclipse.test.internal.performance.data.Scalar;
+import org.eclipse.test.internal.performance.eval.Evaluator;
 import org.eclipse.test.internal.performance.eval.StatisticsSession;
 import org.eclipse.test.performance.Dimension;
 import org.eclipse.test.performance.Performance;
@@ -50,6 +52,22 @@ public class DB {
         
     private static DB fgDefault;
     
+    // orders series values chronologically, like the database does for a single pattern
+    static final Comparator SERIES_VALUE_ORDER= new Comparator() {
+        public int compare(Object o1, Object o2) {
+            String s1= (String)o1;
+            String s2= (String)o2;
+            long t1= SQL.getBuildTime(s1);
+            long t2= SQL.getBuildTime(s2);
+            if (t1 != t2)
+                return t1 < t2 ? -1 : 1;
+            return s1.compareTo(s2);
+        }
+    };
+    
+    // COMMENT rows are never updated, so their kind and text are cached by id while connected
+    private static Map fgComments= new HashMap();
+    
     private Connection fConnection;
     private SQL fSQL;
     private int fStoredSamples;
@@ -62,6 +80,16 @@ public class DB {
     public static DataPoint[] queryDataPoints(Variations variations, String scenarioName, Set dims) {
         return getDefault().internalQueryDataPoints(variations, scenarioName, dims);
     }
+    
+    /**
+     * Returns the data points of all scenarios of the given variation with a single query.
+     * @param variations the variation, whose values may contain patterns
+     * @param dims the dimensions to return, or <code>null</code> for all
+     * @return a map from scenario name to DataPoint[], or <code>null</code> if an error occured
+     */
+    public static Map queryAllDataPoints(Variations variations, Set dims) {
+        return getDefault().internalQueryAllDataPoints(variations, dims);
+    }
    
     // Scenarios
     /**
@@ -131,6 +159,64 @@ public class DB {
         return tables;
     }
 
+    /**
+     * Like queryScenarios(Variations, String, String, Dim[]), but the series of every Scenario are
+     * restricted to the values between firstValue and lastValue, and only the last windowSize values
+     * are loaded when the time series are first requested. Older values are loaded with
+     * Scenario.loadHistory(int).
+     * @param variations
+     * @param scenarioPattern
+     * @param seriesKey
+     * @param dimensions
+     * @param firstValue the oldest series value, or <code>null</code>
+     * @param lastValue the newest series value, or <code>null</code>
+     * @param windowSize the number of series values to load initially, or 0 for all
+     * @return array of scenarios
+     */
+    public static Scenario[] queryScenarios(Variations variations, String scenarioPattern, String seriesKey, Dim[] dimensions, String firstValue, String lastValue, int windowSize) {
+        String[] scenarioNames= getDefault().internalQueryScenarioNames(variations, scenarioPattern); // get all Scenario names
+        if (scenarioNames == null)
+            return new Scenario[0];
+        Scenario.SharedState ss= new Scenario.SharedState(variations, scenarioPattern, seriesKey, dimensions);
+        ss.setWindow(firstValue, lastValue, windowSize);
+        Scenario[] tables= new Scenario[scenarioNames.length];
+        for (int i= 0; i < scenarioNames.length; i++)
+            tables[i]= new Scenario(scenarioNames[i], ss);
+        return tables;
+    }
+
+    /**
+     * Like queryScenarios(Variations, String, String, Dim[]), but the time series of the
+     * returned Scenarios are read from the per build summaries maintained when samples are stored,
+     * instead of being aggregated from the samples. All Scenarios are loaded with a single query.
+     * @param variations
+     * @param scenarioPattern
+     * @param seriesKey
+     * @param dimensions
+     * @return array of scenarios
+     */
+    public static Scenario[] queryScenarioSummaries(Variations variations, String scenarioPattern, String seriesKey, Dim[] dimensions) {
+        Scenario.SharedState ss= new Scenario.SharedState(variations, scenarioPattern, seriesKey, dimensions, true);
+        String[] scenarioNames= ss.getSummaryScenarioNames();
+        Scenario[] tables= new Scenario[scenarioNames.length];
+        for (int i= 0; i < scenarioNames.length; i++)
+            tables[i]= new Scenario(scenarioNames[i], ss);
+        return tables;
+    }
+
+    /**
+     * Returns the per build summaries of all scenarios matching the given pattern.
+     * @param variations
+     * @param scenarioPattern
+     * @param seriesKey
+     * @param dims the dimensions to return, or <code>null</code> for all dimensions
+     * @return a map from scenario name to a map from series value (in series order) to a map from
+     *         Dim to BuildSummary, or <code>null</code> if an error occured.
+     */
+    static Map queryBuildSummaries(Variations variations, String scenarioPattern, String seriesKey, Set dims) {
+        return getDefault().internalQueryBuildSummaries(variations, scenarioPattern, seriesKey, dims);
+    }
+
     /**
      * Returns all summaries that match the given variation and scenario patterns.
      * If scenarioPattern is null, all summary scenarios are returned that are marked as "global".
@@ -183,27 +269,35 @@ public class DB {
     public static Map queryFailure(String scenarioPattern, Variations variations) {
         return getDefault().internalQueryFailure(scenarioPattern, variations);
     }
+    
+    /**
+     * Returns the failure messages of all values of the series key with a single query.
+     * @param scenarioPattern
+     * @param variations
+     * @param seriesKey
+     * @return a map from series value to a map from scenario name to failure message,
+     *         or <code>null</code> if an error occured.
+     */
+    public static Map querySeriesFailures(String scenarioPattern, Variations variations, String seriesKey) {
+        return getDefault().internalQuerySeriesFailures(scenarioPattern, variations, seriesKey);
+    }
         
     private static String findClosest(String[] names, String name) {
         for (int i= 0; i < names.length; i++)
             if (names[i].equals(name))
                 return name;
             
-        Pattern pattern= Pattern.compile("200[3-9][01][0-9][0-3][0-9]"); //$NON-NLS-1$
-        Matcher matcher= pattern.matcher(name);
-        
-        if (!matcher.find())
+        long x= SQL.getBuildTime(name);
+        if (x == 0)
             return name;
             
-        int x= Integer.parseInt(name.substring(matcher.start(), matcher.end()));
         int ix= -1;
-        int mind= 0;
+        long mind= 0;
             
         for (int i= 0; i < names.length; i++) {
-            matcher.reset(names[i]);
-            if (matcher.find()) {
-                int y= Integer.parseInt(names[i].substring(matcher.start(), matcher.end()));
-                int d= Math.abs(y-x);
+            long y= SQL.getBuildTime(names[i]);
+            if (y != 0) {
+                long d= Math.abs(y-x);
                 if (ix < 0 || d < mind) {
                     mind= d;
                     ix= i;
@@ -216,6 +310,18 @@ public class DB {
         return name;
     }
 
+    /**
+     * Returns the number of samples and the largest sample id of every variation of the given scenario.
+     * Both change whenever a sample is added to a variation.
+     * @param variationPatterns
+     * @param scenarioName
+     * @return a map from the exact match string of a variation to a long[2] with the sample count
+     *         and the last sample id, or <code>null</code> if an error occured.
+     */
+    static Map querySampleStamps(Variations variationPatterns, String scenarioName) {
+        return getDefault().internalQuerySampleStamps(variationPatterns, scenarioName);
+    }
+
     /**
      * Store the data contained in the given sample in the database.
      * The data is tagged with key/value pairs from variations.
@@ -277,6 +383,10 @@ public class DB {
             fgDefault.disconnect();
             fgDefault= null;
         }
+        synchronized (fgComments) {
+            fgComments.clear();
+        }
+        Evaluator.clearReferenceData();
     }
    
     SQL getSQL() {
@@ -350,7 +460,7 @@ public class DB {
             int sample_id= fSQL.createSample(variation_id, scenario_id, new Timestamp(sample.getStartTime()));
 
             if (AGGREGATE) {
-                StatisticsSession stats= new StatisticsSession(dataPoints);
+                StatisticsSession stats= new StatisticsSession(dataPoints, sample.getMeterOverheadToSubtract());
                 Dim[] dims= dataPoints[0].getDimensions();
 
                 int datapoint_id= fSQL.createDataPoint(sample_id, 0, InternalPerformanceMeter.AVERAGE);
@@ -372,6 +482,29 @@ public class DB {
                     Dim dim= dims[i];
                     fSQL.insertScalar(datapoint_id, dim.getId(), stats.getCount(dim));
                 }
+                
+                // adjusted aggregates must not look like raw ones
+                Map overhead= sample.getMeterOverheadToSubtract();
+                if (overhead != null) {
+                    datapoint_id= fSQL.createDataPoint(sample_id, 0, InternalPerformanceMeter.OVERHEAD);
+                    for (int i= 0; i < dims.length; i++) {
+                        Scalar scalar= (Scalar) overhead.get(dims[i]);
+                        if (scalar != null)
+                            fSQL.insertScalar(datapoint_id, dims[i].getId(), scalar.getMagnitude());
+                    }
+                }
+                
+                int warmupIterations= sample.getWarmupIterations();
+                if (warmupIterations > 0) {
+                    datapoint_id= fSQL.createDataPoint(sample_id, 0, InternalPerformanceMeter.WARMUP);
+                    for (int i= 0; i < dims.length; i++)
+                        fSQL.insertScalar(datapoint_id, dims[i].getId(), warmupIterations);
+                }
+                
+                for (int i= 0; i < dims.length; i++) {
+                    Dim dim= dims[i];
+                    storeBuildSummary(variation_id, scenario_id, dim.getId(), stats.getAverage(dim), stats.getStddev(dim), stats.getCount(dim));
+                }
 		    } else {
 				for (int i= 0; i < dataPoints.length; i++) {
 				    DataPoint dp= dataPoints[i];
@@ -403,6 +536,40 @@ public class DB {
         return true;
     }
     
+    /*
+     * Merges the statistics of a new sample into the SCENARIO_BUILD_SUMMARY row of its variation,
+     * in the transaction of the sample. A missing row that another process inserts in the meantime
+     * fails the insert with a duplicate key, and the sample is merged into that row instead.
+     */
+    void storeBuildSummary(int variation_id, int scenario_id, int dim_id, double mean, double stddev, long count) throws SQLException {
+        try {
+            mergeBuildSummary(variation_id, scenario_id, dim_id, mean, stddev, count);
+        } catch (SQLException e) {
+            if (!"23505".equals(e.getSQLState())) //$NON-NLS-1$
+                throw e;
+            mergeBuildSummary(variation_id, scenario_id, dim_id, mean, stddev, count);
+        }
+    }
+
+    private void mergeBuildSummary(int variation_id, int scenario_id, int dim_id, double mean, double stddev, long count) throws SQLException {
+        BuildSummary summary= new BuildSummary();
+        boolean exists= false;
+        ResultSet rs= fSQL.queryBuildSummary(variation_id, scenario_id, dim_id);
+        try {
+            if (rs.next()) {
+                summary.add(rs.getDouble(1), rs.getLong(2), rs.getDouble(3));
+                exists= true;
+            }
+        } finally {
+            rs.close();
+        }
+        summary.addSample(mean, stddev, count);
+        if (exists)
+            fSQL.updateBuildSummary(variation_id, scenario_id, dim_id, summary);
+        else
+            fSQL.insertBuildSummary(variation_id, scenario_id, dim_id, summary);
+    }
+    
     private DataPoint[] internalQueryDataPoints(Variations variations, String scenarioName, Set dimSet) {
         if (fSQL == null)
             return null;
@@ -462,6 +629,67 @@ public class DB {
         return null;
     }
     
+    private Map internalQueryAllDataPoints(Variations variations, Set dimSet) {
+        if (fSQL == null)
+            return null;
+        
+        long start = System.currentTimeMillis();
+        if (DEBUG)
+        	System.out.print("	- query all data points from DB for variation "+variations+"..."); //$NON-NLS-1$ //$NON-NLS-2$
+        ResultSet rs= null;
+        try {
+            Map result= new HashMap();
+            String scenarioName= null;
+            ArrayList dataPoints= new ArrayList();
+            int datapoint_id= -1;
+            int step= 0;
+            HashMap map= new HashMap();
+            rs= fSQL.queryAllDataPoints(variations);
+	        while (rs.next()) {
+	            String name= rs.getString(1);
+	            int id= rs.getInt(2);
+	            if (id != datapoint_id || !name.equals(scenarioName)) {
+	                if (map.size() > 0)
+	                    dataPoints.add(new DataPoint(step, map));
+	                if (!name.equals(scenarioName)) {
+	                    if (scenarioName != null)
+	                        result.put(scenarioName, dataPoints.toArray(new DataPoint[dataPoints.size()]));
+	                    scenarioName= name;
+	                    dataPoints= new ArrayList();
+	                }
+	                datapoint_id= id;
+	                step= rs.getInt(3);
+	                map= new HashMap();
+	            }
+	            Dim dim= Dim.getDimension(rs.getInt(4));
+	            if (dim != null && (dimSet == null || dimSet.contains(dim)))
+	                map.put(dim, new Scalar(dim, rs.getBigDecimal(5).longValue()));
+	        }
+	        if (map.size() > 0)
+	            dataPoints.add(new DataPoint(step, map));
+	        if (scenarioName != null)
+	            result.put(scenarioName, dataPoints.toArray(new DataPoint[dataPoints.size()]));
+	        
+            if (DEBUG) {
+		        long time = System.currentTimeMillis();
+            	System.out.println("done in "+(time-start)+"ms"); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            return result;
+
+        } catch (SQLException e) {
+            PerformanceTestPlugin.log(e);
+
+        } finally {
+            if (rs != null)
+                try {
+                    rs.close();
+                } catch (SQLException e1) {
+                	// ignored
+                }
+        }
+        return null;
+    }
+    
     /*
      * Returns array of scenario names matching the given pattern.
      */
@@ -507,13 +735,12 @@ public class DB {
         if (DEBUG) System.out.print("	- query distinct values from DB for scenario pattern '"+scenarioPattern+"'..."); //$NON-NLS-1$ //$NON-NLS-2$
         ResultSet result= null;
         try {
-            result= fSQL.queryVariations(variations.toExactMatchString(), scenarioPattern);
+            Set known= new HashSet(values);
+            result= fSQL.queryDistinctValues(seriesKey, variations, scenarioPattern);
 			while (result.next()) {
-                Variations v= new Variations();
-                v.parseDB(result.getString(1));
-                String build= v.getProperty(seriesKey);
-                if (build != null && !values.contains(build))
-                    values.add(build);
+                String value= result.getString(1);
+                if (known.add(value))
+                    values.add(value);
             }
         } catch (SQLException e) {
 	        PerformanceTestPlugin.log(e);
@@ -533,6 +760,22 @@ public class DB {
         }
     }
     
+    /*
+     * Returns the cached comment with the given id, or caches the kind and text
+     * read from the outer join with COMMENT. The text is null if no comment exists.
+     */
+    private static Comment getComment(int comment_id, int kind, String text) {
+        synchronized (fgComments) {
+            Integer key= new Integer(comment_id);
+            Comment comment= (Comment) fgComments.get(key);
+            if (comment == null && text != null) {
+                comment= new Comment(kind, text);
+                fgComments.put(key, comment);
+            }
+            return comment;
+        }
+    }
+    
     private SummaryEntry[] internalQuerySummaries(Variations variationPatterns, String scenarioPattern) {
         if (fSQL == null)
             return null;
@@ -554,11 +797,11 @@ public class DB {
                 int commentKind= 0;
                 String comment= null;
                 if (comment_id != 0) {
-                		ResultSet rs2= fSQL.getComment(comment_id);
-                		if (rs2.next()) {
-                			commentKind= rs2.getInt(1);
-                			comment= rs2.getString(2);
-                		}
+                    Comment c= getComment(comment_id, result.getInt(6), result.getString(7));
+                    if (c != null) {
+                        commentKind= c.fKind;
+                        comment= c.fText;
+                    }
                 }
                 if (dim_id != 0) {
 	                fingerprints.add(new SummaryEntry(scenarioName, shortName, Dim.getDimension(dim_id), isGlobal, commentKind, comment));
@@ -611,37 +854,125 @@ public class DB {
         
         String[] names= (String[])values.toArray(new String[values.size()]);
         
-        boolean sort= true;
-        Pattern pattern= Pattern.compile("200[3-9][01][0-9][0-3][0-9]"); //$NON-NLS-1$
-        final Matcher matcher= pattern.matcher(""); //$NON-NLS-1$
-        for (int i= 0; i < names.length; i++) {
-            matcher.reset(names[i]);
-            if (! matcher.find()) {
-                sort= false;
-                break;
+        // values of a single pattern are already ordered by the database
+        if (seriesPatterns.length > 1)
+	        Arrays.sort(names, SERIES_VALUE_ORDER);
+        return names;
+    }
+
+    private Map internalQueryBuildSummaries(Variations variations, String scenarioPattern, String seriesKey, Set dims) {
+        if (fSQL == null)
+            return null;
+        long start = System.currentTimeMillis();
+        if (DEBUG) System.out.print("	- query build summaries from DB for scenario pattern '"+scenarioPattern+"'..."); //$NON-NLS-1$ //$NON-NLS-2$
+        
+        String[] seriesPatterns;
+        Object object= variations.get(seriesKey);
+        if (object instanceof String[])
+            seriesPatterns= (String[]) object;
+        else if (object instanceof String)
+            seriesPatterns= new String[] { (String) object };
+        else
+            seriesPatterns= new String[] { "%" }; //$NON-NLS-1$
+        
+        ResultSet result= null;
+        try {
+            Variations v= (Variations) variations.clone();
+            Map scenarios= new HashMap();
+            for (int i= 0; i < seriesPatterns.length; i++) {
+                v.put(seriesKey, seriesPatterns[i]);
+                result= fSQL.queryBuildSummaries(v, scenarioPattern, seriesKey);
+                while (result.next()) {
+                    Dim dim= Dim.getDimension(result.getInt(3));
+                    if (dim == null || (dims != null && !dims.contains(dim)))
+                        continue;
+                    String scenarioName= result.getString(1);
+                    Map series= (Map) scenarios.get(scenarioName);
+                    if (series == null) {
+                        series= new LinkedHashMap();
+                        scenarios.put(scenarioName, series);
+                    }
+                    String seriesValue= result.getString(2);
+                    Map summaries= (Map) series.get(seriesValue);
+                    if (summaries == null) {
+                        summaries= new HashMap();
+                        series.put(seriesValue, summaries);
+                    }
+                    // more than one variation may have the same series value if the other keys are patterns
+                    BuildSummary summary= (BuildSummary) summaries.get(dim);
+                    if (summary == null) {
+                        summary= new BuildSummary();
+                        summaries.put(dim, summary);
+                    }
+                    summary.add(result.getDouble(4), result.getLong(6), result.getDouble(7));
+                }
+                result.close();
+                result= null;
+            }
+            
+            // values of a single pattern are already ordered by the database
+            if (seriesPatterns.length > 1) {
+                for (Iterator iter= scenarios.entrySet().iterator(); iter.hasNext();) {
+                    Map.Entry entry= (Map.Entry) iter.next();
+                    Map series= (Map) entry.getValue();
+                    String[] values= (String[]) series.keySet().toArray(new String[series.size()]);
+                    Arrays.sort(values, SERIES_VALUE_ORDER);
+                    Map sorted= new LinkedHashMap();
+                    for (int i= 0; i < values.length; i++)
+                        sorted.put(values[i], series.get(values[i]));
+                    entry.setValue(sorted);
+                }
+            }
+            return scenarios;
+
+        } catch (SQLException e) {
+	        PerformanceTestPlugin.log(e);
+
+        } finally {
+            if (result != null) {
+                try {
+                    result.close();
+                } catch (SQLException e1) {
+                	// ignored
+                }
+            }
+            if (DEBUG) {
+		        long time = System.currentTimeMillis();
+            	System.out.println("done in "+(time-start)+"ms"); //$NON-NLS-1$ //$NON-NLS-2$
             }
         }
-        if (sort) {
-	        Arrays.sort(names,
-	            new Comparator() {
-	            	public int compare(Object o1, Object o2) {
-	            	    String s1= (String)o1;
-	            	    String s2= (String)o2;
-	            	    
-	            	    matcher.reset(s1);
-	            	    if (matcher.find())
-	            	        s1= s1.substring(matcher.start());
-
-		            	matcher.reset(s2);
-		            	if (matcher.find())
-		            	    s2= s2.substring(matcher.start());
-
-	            	    return s1.compareTo(s2);
-	            	}
-	        	}
-	        );
+        return null;
+    }
+
+    private Map internalQuerySampleStamps(Variations variationPatterns, String scenarioName) {
+        if (fSQL == null)
+            return null;
+        long start = System.currentTimeMillis();
+        if (DEBUG) System.out.print("	- query sample stamps from DB for scenario '"+scenarioName+"'..."); //$NON-NLS-1$ //$NON-NLS-2$
+        ResultSet result= null;
+        try {
+            Map map= new HashMap();
+            result= fSQL.querySampleStamps(variationPatterns, scenarioName);
+            while (result.next())
+                map.put(result.getString(1), new long[] { result.getLong(2), result.getLong(3) });
+            return map;
+        } catch (SQLException e) {
+	        PerformanceTestPlugin.log(e);
+
+        } finally {
+            if (result != null) {
+                try {
+                    result.close();
+                } catch (SQLException e1) {
+                	// ignored
+                }
+            }
+            if (DEBUG) {
+		        long time = System.currentTimeMillis();
+            	System.out.println("done in "+(time-start)+"ms"); //$NON-NLS-1$ //$NON-NLS-2$
+            }
         }
-        return names;
+        return null;
     }
 
     private Map internalQueryFailure(String scenarioPattern, Variations variations) {
@@ -678,6 +1009,46 @@ public class DB {
         return null;
     }
 
+    private Map internalQuerySeriesFailures(String scenarioPattern, Variations variations, String seriesKey) {
+        if (fSQL == null)
+            return null;
+        long start = System.currentTimeMillis();
+        if (DEBUG) System.out.print("	- query series failures from DB for scenario pattern '"+scenarioPattern+"'..."); //$NON-NLS-1$ //$NON-NLS-2$
+        ResultSet result= null;
+        try {
+            Variations v= (Variations) variations.clone();
+            v.put(seriesKey, "%"); //$NON-NLS-1$
+            Map map= new HashMap();
+            result= fSQL.queryFailures(v, scenarioPattern);
+            while (result.next()) {
+                String seriesValue= VariationKey.parseDB(result.getString(1)).getValue(seriesKey);
+                Map messages= (Map) map.get(seriesValue);
+                if (messages == null) {
+                    messages= new HashMap();
+                    map.put(seriesValue, messages);
+                }
+                messages.put(result.getString(2), result.getString(3));
+            }
+            return map;
+        } catch (SQLException e) {
+	        PerformanceTestPlugin.log(e);
+
+        } finally {
+            if (result != null) {
+                try {
+                    result.close();
+                } catch (SQLException e1) {
+                	// ignored
+                }
+            }
+            if (DEBUG) {
+		        long time = System.currentTimeMillis();
+            	System.out.println("done in "+(time-start)+"ms"); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+        }
+        return null;
+    }
+
     /**
      * dbloc=						embed in home directory
      * dbloc=/tmp/performance			embed given location
@@ -813,4 +1184,14 @@ public class DB {
 	        }
         }
     }
+
+    private static class Comment {
+        final int fKind;
+        final String fText;
+
+        Comment(int kind, String text) {
+            fKind= kind;
+            fText= text;
+        }
+    }
 }
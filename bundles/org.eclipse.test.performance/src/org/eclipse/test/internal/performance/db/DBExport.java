@@ -0,0 +1,284 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test.internal.performance.db;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.test.internal.performance.PerformanceTestPlugin;
+
+/**
+ * Exports the scalars of the performance database into a directory of column files
+ * for offline analysis. The rows are read with a single forward-only cursor and written
+ * as they arrive, so the memory needed does not depend on the size of the database.
+ * <p>
+ * Every column is a file of big-endian values, named after the column and its type:
+ * <pre>
+ *   variation.int32  index into variation.dict (KEYVALPAIRS, one per line)
+ *   build.int32      index into build.dict (value of the build key, one per line)
+ *   scenario.int32   index into scenario.dict (scenario name, one per line)
+ *   sample.int32     SAMPLE.ID
+ *   starttime.int64  SAMPLE.STARTTIME in milliseconds
+ *   step.int32       DATAPOINT.STEP
+ *   dim.int32        SCALAR.DIM_ID
+ *   value.int64      SCALAR.VALUE
+ * </pre>
+ * The dictionaries are written in UTF-8, in the order their entries are first used.
+ * The file <code>schema.txt</code> lists the columns and the number of rows.
+ * </p>
+ * <p>
+ * The build of a variation is taken from VARIATION_KEY, or from KEYVALPAIRS if its value
+ * is too long for that table. Variations without a build are exported with an empty build,
+ * unless a range of builds is given: then they are skipped, like builds without a date,
+ * and counted in {@link #getSkippedVariations()}.
+ * </p>
+ */
+public class DBExport {
+
+    private static final int FETCH_SIZE= 1000;
+    private static final int BUFFER_SIZE= 64 * 1024;
+
+    private Connection fConnection;
+    private File fDirectory;
+    private int fSkippedVariations;
+
+    /**
+     * Exports into the directory given as first argument. Optional arguments are a
+     * variations pattern (for example <code>config=eclipseperflnx3;build=I%</code>),
+     * and the first and last build to export.
+     * @param args
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("usage: DBExport <directory> [<variations pattern> [<first build> [<last build>]]]"); //$NON-NLS-1$
+            return;
+        }
+        Variations variations= new Variations();
+        if (args.length > 1)
+            variations.parsePairs(args[1]);
+
+        long start= System.currentTimeMillis();
+        DBExport export= new DBExport(new File(args[0]));
+        long rows= export.export(variations, "%", //$NON-NLS-1$
+                args.length > 2 ? args[2] : null, args.length > 3 ? args[3] : null);
+        System.out.println("exported " + rows + " rows in " + ((System.currentTimeMillis()-start)/1000.0) + "s"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        if (export.getSkippedVariations() > 0)
+            System.out.println("skipped " + export.getSkippedVariations() + " variations without a dated build"); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    public DBExport(File directory) {
+        fConnection= DB.getConnection();
+        fDirectory= directory;
+    }
+
+    /**
+     * Exports all scalars of the samples matching the given patterns.
+     * @param variations key/value pairs the variations must contain, values may contain '%'
+     * @param scenarioPattern
+     * @param firstBuild the oldest build to export, or <code>null</code>
+     * @param lastBuild the newest build to export, or <code>null</code>
+     * @return the number of rows written
+     * @throws SQLException
+     * @throws IOException
+     */
+    public long export(Variations variations, String scenarioPattern, String firstBuild, String lastBuild) throws SQLException, IOException {
+        if (fConnection == null)
+            return 0;
+        fDirectory.mkdirs();
+
+        boolean hasRange= firstBuild != null || lastBuild != null;
+        long firstTime= firstBuild != null ? SQL.getBuildTime(firstBuild) : 0;
+        long lastTime= lastBuild != null ? SQL.getBuildTime(lastBuild) : Long.MAX_VALUE;
+        fSkippedVariations= hasRange ? countUndatedVariations(variations) : 0;
+
+        // variations without a VARIATION_KEY row of the build are resolved below
+        PreparedStatement stmt= fConnection.prepareStatement("select VARIATION.ID, VARIATION.KEYVALPAIRS, VARIATION_KEY.VALUE, SCENARIO.ID, SCENARIO.NAME, " + //$NON-NLS-1$
+                "SAMPLE.ID, SAMPLE.STARTTIME, DATAPOINT.STEP, SCALAR.DIM_ID, SCALAR.VALUE " + //$NON-NLS-1$
+                "from VARIATION left outer join VARIATION_KEY on VARIATION_KEY.VARIATION_ID = VARIATION.ID and VARIATION_KEY.KEYNAME = ?, " + //$NON-NLS-1$
+                "SCENARIO, SAMPLE, DATAPOINT, SCALAR where " + //$NON-NLS-1$
+                "VARIATION.KEYVALPAIRS LIKE ? and " + //$NON-NLS-1$
+                "(VARIATION_KEY.BUILD_TIME is null or VARIATION_KEY.BUILD_TIME >= ? and VARIATION_KEY.BUILD_TIME <= ?) and " + //$NON-NLS-1$
+                "SAMPLE.VARIATION_ID = VARIATION.ID and SAMPLE.SCENARIO_ID = SCENARIO.ID and SCENARIO.NAME LIKE ? and " + //$NON-NLS-1$
+                "DATAPOINT.SAMPLE_ID = SAMPLE.ID and SCALAR.DATAPOINT_ID = DATAPOINT.ID", //$NON-NLS-1$
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+
+        DictionaryColumn variationColumn= new DictionaryColumn("variation"); //$NON-NLS-1$
+        DictionaryColumn buildColumn= new DictionaryColumn("build"); //$NON-NLS-1$
+        DictionaryColumn scenarioColumn= new DictionaryColumn("scenario"); //$NON-NLS-1$
+        DataOutputStream sampleColumn= createColumn("sample.int32"); //$NON-NLS-1$
+        DataOutputStream starttimeColumn= createColumn("starttime.int64"); //$NON-NLS-1$
+        DataOutputStream stepColumn= createColumn("step.int32"); //$NON-NLS-1$
+        DataOutputStream dimColumn= createColumn("dim.int32"); //$NON-NLS-1$
+        DataOutputStream valueColumn= createColumn("value.int64"); //$NON-NLS-1$
+
+        long rows= 0;
+        ResultSet rs= null;
+        try {
+            stmt.setString(1, PerformanceTestPlugin.BUILD);
+            stmt.setString(2, variations.toQueryPattern());
+            stmt.setLong(3, firstTime);
+            stmt.setLong(4, lastTime);
+            stmt.setString(5, scenarioPattern);
+            stmt.setFetchSize(FETCH_SIZE);
+            rs= stmt.executeQuery();
+            // the builds parsed from KEYVALPAIRS by variation id, null if the variation is skipped
+            Map parsedBuilds= new HashMap();
+            while (rs.next()) {
+                Integer variation= new Integer(rs.getInt(1));
+                String build= rs.getString(3);
+                if (build == null) {
+                    if (!parsedBuilds.containsKey(variation)) {
+                        build= VariationKey.parseDB(rs.getString(2)).getValue(PerformanceTestPlugin.BUILD);
+                        if (hasRange) {
+                            long time= build != null ? SQL.getBuildTime(build) : 0;
+                            if (time == 0 || time < firstTime || time > lastTime) {
+                                build= null;
+                                fSkippedVariations++;
+                            }
+                        } else if (build == null) {
+                            build= ""; //$NON-NLS-1$
+                        }
+                        parsedBuilds.put(variation, build);
+                    }
+                    build= (String) parsedBuilds.get(variation);
+                    if (build == null)
+                        continue;
+                }
+                variationColumn.write(variation, rs.getString(2));
+                buildColumn.write(build, build);
+                scenarioColumn.write(new Integer(rs.getInt(4)), rs.getString(5));
+                sampleColumn.writeInt(rs.getInt(6));
+                starttimeColumn.writeLong(rs.getTimestamp(7) != null ? rs.getTimestamp(7).getTime() : 0);
+                stepColumn.writeInt(rs.getInt(8));
+                dimColumn.writeInt(rs.getInt(9));
+                valueColumn.writeLong(rs.getBigDecimal(10).longValue());
+                rows++;
+            }
+        } finally {
+            if (rs != null)
+                rs.close();
+            stmt.close();
+            variationColumn.close();
+            buildColumn.close();
+            scenarioColumn.close();
+            sampleColumn.close();
+            starttimeColumn.close();
+            stepColumn.close();
+            dimColumn.close();
+            valueColumn.close();
+        }
+
+        PrintWriter schema= new PrintWriter(createWriter("schema.txt")); //$NON-NLS-1$
+        try {
+            schema.println("rows=" + rows); //$NON-NLS-1$
+            schema.println("variation.int32 -> variation.dict (" + variationColumn.size() + ")"); //$NON-NLS-1$ //$NON-NLS-2$
+            schema.println("build.int32 -> build.dict (" + buildColumn.size() + ")"); //$NON-NLS-1$ //$NON-NLS-2$
+            schema.println("scenario.int32 -> scenario.dict (" + scenarioColumn.size() + ")"); //$NON-NLS-1$ //$NON-NLS-2$
+            schema.println("sample.int32"); //$NON-NLS-1$
+            schema.println("starttime.int64"); //$NON-NLS-1$
+            schema.println("step.int32"); //$NON-NLS-1$
+            schema.println("dim.int32"); //$NON-NLS-1$
+            schema.println("value.int64"); //$NON-NLS-1$
+        } finally {
+            schema.close();
+        }
+        return rows;
+    }
+
+    /**
+     * Returns the number of variations that the last export skipped because
+     * their build has no date in the requested range.
+     * @return the number of skipped variations
+     */
+    public int getSkippedVariations() {
+        return fSkippedVariations;
+    }
+
+    private int countUndatedVariations(Variations variations) throws SQLException {
+        PreparedStatement stmt= fConnection.prepareStatement("select count(*) from VARIATION, VARIATION_KEY where " + //$NON-NLS-1$
+                "VARIATION.KEYVALPAIRS LIKE ? and VARIATION_KEY.VARIATION_ID = VARIATION.ID and " + //$NON-NLS-1$
+                "VARIATION_KEY.KEYNAME = ? and VARIATION_KEY.BUILD_TIME = 0"); //$NON-NLS-1$
+        try {
+            stmt.setString(1, variations.toQueryPattern());
+            stmt.setString(2, PerformanceTestPlugin.BUILD);
+            ResultSet rs= stmt.executeQuery();
+            try {
+                return rs.next() ? rs.getInt(1) : 0;
+            } finally {
+                rs.close();
+            }
+        } finally {
+            stmt.close();
+        }
+    }
+
+    private DataOutputStream createColumn(String name) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(fDirectory, name)), BUFFER_SIZE));
+    }
+
+    private Writer createWriter(String name) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(fDirectory, name)), "UTF-8")); //$NON-NLS-1$
+    }
+
+    /*
+     * A dictionary encoded string column. Only the keys seen so far are kept in memory,
+     * which are bounded by the number of distinct variations, builds, and scenarios.
+     */
+    private class DictionaryColumn {
+
+        private Map fIndices= new HashMap();
+        private DataOutputStream fIndexColumn;
+        private Writer fDictionary;
+
+        DictionaryColumn(String name) throws IOException {
+            fIndexColumn= createColumn(name + ".int32"); //$NON-NLS-1$
+            fDictionary= createWriter(name + ".dict"); //$NON-NLS-1$
+        }
+
+        /*
+         * Writes the index of the given key, and adds the given string to the
+         * dictionary if the key is new.
+         */
+        void write(Object key, String value) throws IOException {
+            Integer index= (Integer) fIndices.get(key);
+            if (index == null) {
+                index= new Integer(fIndices.size());
+                fIndices.put(key, index);
+                fDictionary.write(value);
+                fDictionary.write('\n');
+            }
+            fIndexColumn.writeInt(index.intValue());
+        }
+
+        int size() {
+            return fIndices.size();
+        }
+
+        void close() throws IOException {
+            fIndexColumn.close();
+            fDictionary.close();
+        }
+    }
+}
@@ -126,7 +126,7 @@ public class DBHelpers {
             ps.println("scalars with variation " + v + ": " + set.getInt(1)); //$NON-NLS-1$ //$NON-NLS-2$
     }
     
-    void removeSamples(Variations v) throws SQLException {
+    public void removeSamples(Variations v) throws SQLException {
         
         boolean delete= true;
         
@@ -146,6 +146,18 @@ public class DBHelpers {
         		return;
     		}
 
+        if (delete) {
+            // the rows that refer to the variation and its scenarios, the build summaries are stale without the samples
+            String[] tables= { "SUMMARYENTRY", "FAILURE", "SCENARIO_BUILD_SUMMARY" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            for (int i= 0; i < tables.length; i++) {
+                PreparedStatement deleteRows= fConnection.prepareStatement("delete from " + tables[i] + " where VARIATION_ID = ?"); //$NON-NLS-1$ //$NON-NLS-2$
+                deleteRows.setInt(1, variation_id);
+                deleteRows.executeUpdate();
+                deleteRows.close();
+            }
+            fConnection.commit();
+        }
+
         PreparedStatement iterSamples= fConnection.prepareStatement("select SAMPLE.ID, SAMPLE.SCENARIO_ID from SAMPLE where SAMPLE.VARIATION_ID = ?"); //$NON-NLS-1$
         PreparedStatement iterDatapoints= fConnection.prepareStatement("select DATAPOINT.ID from DATAPOINT where DATAPOINT.SAMPLE_ID = ?"); //$NON-NLS-1$
         
@@ -201,24 +213,26 @@ public class DBHelpers {
 	                deleteScenario.executeUpdate();
                     fConnection.commit();
                 } catch (SQLException e) {
-                    // System.err.println("removing scenario: " + e); //$NON-NLS-1$
+                    // still used by another variation
                 }
 	        }
 	        n--;
         }
         if (delete) {
-            PreparedStatement deleteSummaries= fConnection.prepareStatement("delete from SUMMARYENTRY where VARIATION_ID = ?"); //$NON-NLS-1$
-            deleteSummaries.setInt(1, variation_id);
-            deleteSummaries.executeUpdate();
-            deleteSummaries.close();
-            
+            PreparedStatement deleteKeys= fConnection.prepareStatement("delete from VARIATION_KEY where VARIATION_ID = ?"); //$NON-NLS-1$
+            deleteKeys.setInt(1, variation_id);
             PreparedStatement deleteVariation= fConnection.prepareStatement("delete from VARIATION where ID = ?"); //$NON-NLS-1$
             deleteVariation.setInt(1, variation_id);
             try {
+                // the keys of a variation are only removed together with it
+                deleteKeys.executeUpdate();
                 deleteVariation.executeUpdate();
+                fConnection.commit();
             } catch (SQLException e) {
                 System.err.println("removing variation: " + e); //$NON-NLS-1$
+                fConnection.rollback();
             }
+            deleteKeys.close();
             deleteVariation.close();
         }
 
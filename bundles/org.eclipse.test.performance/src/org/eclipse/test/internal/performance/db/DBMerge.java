@@ -0,0 +1,384 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test.internal.performance.db;
+
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.eclipse.test.internal.performance.InternalPerformanceMeter;
+
+/**
+ * Merges the samples of other performance databases into the database that is
+ * configured with <code>eclipse.perf.dbloc</code>.
+ * <p>
+ * The samples of a source database are read with a forward-only cursor and their
+ * scalars are written with batched inserts, so that the memory needed only depends
+ * on the number of variations, scenarios, and comments, whose ids are mapped to the
+ * ids of the target database. A sample is skipped if the target database already
+ * contains a sample of the same variation and scenario with the same start time.
+ * </p>
+ */
+public class DBMerge {
+
+    private static final int FETCH_SIZE= 1000;
+    private static final int BATCH_SIZE= 1000;
+    private static final int COMMIT_INTERVAL= 100;	// samples
+    private static final int REPORT_INTERVAL= 10000;	// samples
+
+    private DB fDB;
+    private Connection fConnection;
+    private SQL fSQL;
+    private PrintStream fLog;
+
+    private PreparedStatement fQuerySample, fInsertScalar, fQueryFailure;
+
+    private int fMergedSamples, fSkippedSamples;
+    private long fScalars, fBatchedScalars;
+
+    /**
+     * Merges the databases given as arguments into the target database.
+     * A source is either the location of an embedded Derby database or a JDBC URL.
+     * @param args
+     * @throws SQLException
+     */
+    public static void main(String[] args) throws SQLException {
+        if (args.length < 1) {
+            System.err.println("usage: DBMerge <source database>..."); //$NON-NLS-1$
+            return;
+        }
+        DBMerge merge= new DBMerge(System.out);
+        try {
+            for (int i= 0; i < args.length; i++)
+                merge.merge(args[i]);
+        } finally {
+            merge.dispose();
+        }
+    }
+
+    /**
+     * @param log the stream to report progress to, or <code>null</code>
+     */
+    public DBMerge(PrintStream log) {
+        fDB= DB.getDefault();
+        fConnection= DB.getConnection();
+        fSQL= fDB.getSQL();
+        fLog= log;
+    }
+
+    /**
+     * Merges the given database into the target database.
+     * @param source the location of an embedded Derby database, or a JDBC URL
+     * @throws SQLException
+     */
+    public void merge(String source) throws SQLException {
+        String url= source.startsWith("jdbc:") ? source : "jdbc:derby:" + source; //$NON-NLS-1$ //$NON-NLS-2$
+        Connection connection= DriverManager.getConnection(url);
+        try {
+            connection.setAutoCommit(false);
+            merge(connection);
+        } finally {
+            // nothing was changed in the source database, but Derby does not close active transactions
+            connection.rollback();
+            connection.close();
+        }
+    }
+
+    /**
+     * Merges the database of the given connection into the target database.
+     * @param source a connection to a performance database
+     * @throws SQLException
+     */
+    public void merge(Connection source) throws SQLException {
+        if (fSQL == null)
+            return;
+
+        int mergedSamples= fMergedSamples;
+        int skippedSamples= fSkippedSamples;
+        long scalars= fScalars;
+        long start= System.currentTimeMillis();
+        try {
+            Map variations= mapVariations(source);
+            Map scenarios= mapScenarios(source);
+            boolean hasComments= hasTable(source, "COMMENT"); //$NON-NLS-1$
+            Map comments= hasComments ? mapComments(source) : new HashMap();
+            mergeSamples(source, variations, scenarios);
+            if (hasTable(source, "SUMMARYENTRY")) //$NON-NLS-1$
+                mergeSummaryEntries(source, variations, scenarios, comments, hasComments);
+            if (hasTable(source, "FAILURE")) //$NON-NLS-1$
+                mergeFailures(source, variations, scenarios);
+            flushScalars();
+            fConnection.commit();
+        } catch (SQLException e) {
+            fConnection.rollback();
+            throw e;
+        }
+
+        long time= System.currentTimeMillis() - start;
+        report("merged " + (fMergedSamples - mergedSamples) + " samples with " + (fScalars - scalars) + " scalars, skipped " + //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                (fSkippedSamples - skippedSamples) + " duplicate samples in " + (time / 1000.0) + "s (" + getRate(fScalars - scalars, time) + " scalars/s)"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    }
+
+    public int getMergedSamples() {
+        return fMergedSamples;
+    }
+
+    public int getSkippedSamples() {
+        return fSkippedSamples;
+    }
+
+    public long getMergedScalars() {
+        return fScalars;
+    }
+
+    public void dispose() throws SQLException {
+        if (fQuerySample != null)
+            fQuerySample.close();
+        if (fInsertScalar != null)
+            fInsertScalar.close();
+        if (fQueryFailure != null)
+            fQueryFailure.close();
+    }
+
+    //---- private
+
+    private Map mapVariations(Connection source) throws SQLException {
+        Map ids= new HashMap();
+        Statement stmt= source.createStatement();
+        try {
+            ResultSet rs= stmt.executeQuery("select ID, KEYVALPAIRS from VARIATION"); //$NON-NLS-1$
+            while (rs.next()) {
+                Variations variations= new Variations();
+                variations.parseDB(rs.getString(2));
+                ids.put(new Integer(rs.getInt(1)), new Integer(fSQL.getVariations(variations)));
+            }
+            rs.close();
+        } finally {
+            stmt.close();
+        }
+        return ids;
+    }
+
+    private Map mapScenarios(Connection source) throws SQLException {
+        Map ids= new HashMap();
+        Statement stmt= source.createStatement();
+        try {
+            ResultSet rs= stmt.executeQuery("select ID, NAME, SHORT_NAME from SCENARIO"); //$NON-NLS-1$
+            while (rs.next()) {
+                int scenario_id= fSQL.getScenario(rs.getString(2));
+                String shortName= rs.getString(3);
+                if (shortName != null)
+                    fSQL.setScenarioShortName(scenario_id, shortName);
+                ids.put(new Integer(rs.getInt(1)), new Integer(scenario_id));
+            }
+            rs.close();
+        } finally {
+            stmt.close();
+        }
+        return ids;
+    }
+
+    private Map mapComments(Connection source) throws SQLException {
+        Map ids= new HashMap();
+        Statement stmt= source.createStatement();
+        try {
+            ResultSet rs= stmt.executeQuery("select ID, KIND, TEXT from COMMENT"); //$NON-NLS-1$
+            while (rs.next())
+                ids.put(new Integer(rs.getInt(1)), new Integer(fSQL.getCommentId(rs.getInt(2), rs.getString(3))));
+            rs.close();
+        } finally {
+            stmt.close();
+        }
+        return ids;
+    }
+
+    private void mergeSamples(Connection source, Map variations, Map scenarios) throws SQLException {
+        Statement samples= source.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        PreparedStatement scalars= source.prepareStatement("select DATAPOINT.ID, DATAPOINT.SEQ, DATAPOINT.STEP, SCALAR.DIM_ID, SCALAR.VALUE from DATAPOINT, SCALAR where " + //$NON-NLS-1$
+                "DATAPOINT.SAMPLE_ID = ? and SCALAR.DATAPOINT_ID = DATAPOINT.ID order by DATAPOINT.ID", //$NON-NLS-1$
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        long start= System.currentTimeMillis();
+        try {
+            samples.setFetchSize(FETCH_SIZE);
+            scalars.setFetchSize(FETCH_SIZE);
+            ResultSet rs= samples.executeQuery("select ID, VARIATION_ID, SCENARIO_ID, STARTTIME from SAMPLE"); //$NON-NLS-1$
+            while (rs.next()) {
+                int variation_id= ((Integer) variations.get(new Integer(rs.getInt(2)))).intValue();
+                int scenario_id= ((Integer) scenarios.get(new Integer(rs.getInt(3)))).intValue();
+                if (containsSample(variation_id, scenario_id, rs.getTimestamp(4))) {
+                    fSkippedSamples++;
+                    continue;
+                }
+                int sample_id= fSQL.createSample(variation_id, scenario_id, rs.getTimestamp(4));
+
+                // the aggregates of the sample by dim id: average, stddev, size
+                Map aggregates= new HashMap();
+                scalars.setInt(1, rs.getInt(1));
+                ResultSet rs2= scalars.executeQuery();
+                int source_datapoint_id= -1, datapoint_id= 0;
+                while (rs2.next()) {
+                    if (rs2.getInt(1) != source_datapoint_id) {
+                        source_datapoint_id= rs2.getInt(1);
+                        datapoint_id= fSQL.createDataPoint(sample_id, rs2.getInt(2), rs2.getInt(3));
+                    }
+                    int step= rs2.getInt(3);
+                    int dim_id= rs2.getInt(4);
+                    long value= rs2.getBigDecimal(5).longValue();
+                    insertScalar(datapoint_id, dim_id, value);
+                    if (step == InternalPerformanceMeter.AVERAGE || step == InternalPerformanceMeter.STDEV || step == InternalPerformanceMeter.SIZE)
+                        addAggregate(aggregates, dim_id, step, value);
+                }
+                rs2.close();
+
+                for (Iterator iter= aggregates.entrySet().iterator(); iter.hasNext();) {
+                    Map.Entry entry= (Map.Entry) iter.next();
+                    double[] aggregate= (double[]) entry.getValue();
+                    fDB.storeBuildSummary(variation_id, scenario_id, ((Integer) entry.getKey()).intValue(), aggregate[0], aggregate[1], (long) aggregate[2]);
+                }
+
+                fMergedSamples++;
+                if (fMergedSamples % COMMIT_INTERVAL == 0) {
+                    flushScalars();
+                    fConnection.commit();
+                }
+                if (fMergedSamples % REPORT_INTERVAL == 0)
+                    report("  " + fMergedSamples + " samples, " + fScalars + " scalars (" + getRate(fScalars, System.currentTimeMillis() - start) + " scalars/s)"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            }
+            rs.close();
+        } finally {
+            scalars.close();
+            samples.close();
+        }
+    }
+
+    private static void addAggregate(Map aggregates, int dim_id, int step, long value) {
+        Integer key= new Integer(dim_id);
+        double[] aggregate= (double[]) aggregates.get(key);
+        if (aggregate == null) {
+            aggregate= new double[3];
+            aggregates.put(key, aggregate);
+        }
+        switch (step) {
+            case InternalPerformanceMeter.AVERAGE:
+                aggregate[0]= value;
+                break;
+            case InternalPerformanceMeter.STDEV:
+                // see StatisticsSession
+                aggregate[1]= Double.longBitsToDouble(value);
+                break;
+            case InternalPerformanceMeter.SIZE:
+                aggregate[2]= value;
+                break;
+        }
+    }
+
+    private boolean containsSample(int variation_id, int scenario_id, Timestamp starttime) throws SQLException {
+        if (fQuerySample == null)
+            fQuerySample= fConnection.prepareStatement("select count(*) from SAMPLE where VARIATION_ID = ? and SCENARIO_ID = ? and STARTTIME = ?"); //$NON-NLS-1$
+        fQuerySample.setInt(1, variation_id);
+        fQuerySample.setInt(2, scenario_id);
+        fQuerySample.setTimestamp(3, starttime);
+        ResultSet rs= fQuerySample.executeQuery();
+        try {
+            return rs.next() && rs.getInt(1) > 0;
+        } finally {
+            rs.close();
+        }
+    }
+
+    private void insertScalar(int datapoint_id, int dim_id, long value) throws SQLException {
+        if (fInsertScalar == null)
+            fInsertScalar= fConnection.prepareStatement("insert into SCALAR values (?, ?, ?)"); //$NON-NLS-1$
+        fInsertScalar.setInt(1, datapoint_id);
+        fInsertScalar.setInt(2, dim_id);
+        fInsertScalar.setLong(3, value);
+        fInsertScalar.addBatch();
+        fScalars++;
+        if (++fBatchedScalars >= BATCH_SIZE)
+            flushScalars();
+    }
+
+    private void flushScalars() throws SQLException {
+        if (fBatchedScalars > 0) {
+            fInsertScalar.executeBatch();
+            fBatchedScalars= 0;
+        }
+    }
+
+    private void mergeSummaryEntries(Connection source, Map variations, Map scenarios, Map comments, boolean hasComments) throws SQLException {
+        Statement stmt= source.createStatement();
+        try {
+            // SUMMARYENTRY.COMMENT_ID was added together with table COMMENT
+            ResultSet rs= stmt.executeQuery("select VARIATION_ID, SCENARIO_ID, DIM_ID, IS_GLOBAL, " + (hasComments ? "COMMENT_ID" : "0") + " from SUMMARYENTRY"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+            while (rs.next()) {
+                Integer comment_id= (Integer) comments.get(new Integer(rs.getInt(5)));
+                fSQL.createSummaryEntry(((Integer) variations.get(new Integer(rs.getInt(1)))).intValue(),
+                        ((Integer) scenarios.get(new Integer(rs.getInt(2)))).intValue(),
+                        rs.getInt(3), rs.getShort(4) == 1, comment_id != null ? comment_id.intValue() : 0);
+            }
+            rs.close();
+        } finally {
+            stmt.close();
+        }
+    }
+
+    private void mergeFailures(Connection source, Map variations, Map scenarios) throws SQLException {
+        if (fQueryFailure == null)
+            fQueryFailure= fConnection.prepareStatement("select count(*) from FAILURE where VARIATION_ID = ? and SCENARIO_ID = ? and MESSAGE = ?"); //$NON-NLS-1$
+        Statement stmt= source.createStatement();
+        try {
+            ResultSet rs= stmt.executeQuery("select VARIATION_ID, SCENARIO_ID, MESSAGE from FAILURE"); //$NON-NLS-1$
+            while (rs.next()) {
+                int variation_id= ((Integer) variations.get(new Integer(rs.getInt(1)))).intValue();
+                int scenario_id= ((Integer) scenarios.get(new Integer(rs.getInt(2)))).intValue();
+                fQueryFailure.setInt(1, variation_id);
+                fQueryFailure.setInt(2, scenario_id);
+                fQueryFailure.setString(3, rs.getString(3));
+                ResultSet rs2= fQueryFailure.executeQuery();
+                boolean exists= rs2.next() && rs2.getInt(1) > 0;
+                rs2.close();
+                if (!exists)
+                    fSQL.insertFailure(variation_id, scenario_id, rs.getString(3));
+            }
+            rs.close();
+        } finally {
+            stmt.close();
+        }
+    }
+
+    private static boolean hasTable(Connection connection, String table) throws SQLException {
+        PreparedStatement stmt= connection.prepareStatement("select count(*) from SYS.SYSTABLES where SYS.SYSTABLES.TABLENAME = ?"); //$NON-NLS-1$
+        try {
+            stmt.setString(1, table);
+            ResultSet rs= stmt.executeQuery();
+            return rs.next() && rs.getInt(1) > 0;
+        } finally {
+            stmt.close();
+        }
+    }
+
+    private static long getRate(long count, long millis) {
+        return millis > 0 ? count * 1000 / millis : count;
+    }
+
+    private void report(String message) {
+        if (fLog != null)
+            fLog.println(message);
+    }
+}
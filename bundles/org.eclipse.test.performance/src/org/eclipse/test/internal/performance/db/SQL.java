@@ -17,6 +17,15 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.test.internal.performance.InternalPerformanceMeter;
 
 /*
  * Any SQL should only be used here.
@@ -29,11 +38,24 @@ public class SQL {
 
 	private PreparedStatement fInsertVariation, fInsertScenario, fInsertSample, fInsertDataPoint, fInsertScalar;
 	private PreparedStatement fQueryComment, fInsertComment, fQueryComment2;
-	private PreparedStatement fQueryVariation, fQueryVariations, fQueryScenario, fQueryAllScenarios, fQueryDatapoints,
+	private PreparedStatement fQueryVariation, fQueryScenario, fQueryAllScenarios, fQueryDatapoints,
 			fQueryScalars;
 	private PreparedStatement fInsertSummaryEntry, fUpdateScenarioShortName, fQuerySummaryEntry, fQueryGlobalSummaryEntries,
 			fQuerySummaryEntries;
-	private PreparedStatement fInsertFailure, fQueryFailure;
+	private PreparedStatement fInsertFailure, fQueryFailure, fQueryFailures;
+	private PreparedStatement fInsertVariationKey, fQueryDistinctValues;
+	private PreparedStatement fQueryBuildSummary, fInsertBuildSummary, fUpdateBuildSummary, fQueryBuildSummaries;
+	private PreparedStatement fQuerySampleStamps, fQueryAllDatapoints;
+
+	/*
+	 * A build date (yyyyMMdd) with an optional time (HHmm), as in I20130515-2000.
+	 */
+	private static final Pattern BUILD_TIME_PATTERN= Pattern.compile("((?:19|20)\\d\\d[01]\\d[0-3]\\d)(?:-?([0-2]\\d[0-5]\\d))?"); //$NON-NLS-1$
+
+	/*
+	 * Longest value stored in VARIATION_KEY; longer values are not indexed.
+	 */
+	private static final int MAX_KEY_VALUE_LENGTH= 1000;
 
 	protected SQL(Connection con) throws SQLException {
 		fConnection= con;
@@ -42,6 +64,8 @@ public class SQL {
 		boolean needsInitialization= true;
 		boolean needsFailures= true;
 		boolean needsComments= true;
+		boolean needsVariationKeys= true;
+		boolean needsBuildSummaries= true;
 
 		Statement statement= fConnection.createStatement();
 		ResultSet rs= statement.executeQuery("select SYS.SYSTABLES.TABLENAME from SYS.SYSTABLES where SYS.SYSTABLES.TABLENAME not like 'SYS%'"); //$NON-NLS-1$
@@ -57,6 +81,10 @@ public class SQL {
 				needsFailures= false;
 			else if ("COMMENT".equals(tablename)) //$NON-NLS-1$
 				needsComments= false;
+			else if ("VARIATION_KEY".equals(tablename)) //$NON-NLS-1$
+				needsVariationKeys= false;
+			else if ("SCENARIO_BUILD_SUMMARY".equals(tablename)) //$NON-NLS-1$
+				needsBuildSummaries= false;
 		}
 		if (!fCompatibility) {
 			// check whether table SAMPLE still has the CONFIG_ID column
@@ -76,6 +104,10 @@ public class SQL {
 			if (needsComments)
 				addCommentTable();
 		}
+		if (needsVariationKeys)
+			addVariationKeyTable();
+		if (needsBuildSummaries)
+			addBuildSummaryTable();
 	}
 
 	protected void dispose() throws SQLException {
@@ -107,14 +139,30 @@ public class SQL {
 			fQueryScenario.close();
 		if (fQueryAllScenarios != null)
 			fQueryAllScenarios.close();
-		if (fQueryVariations != null)
-			fQueryVariations.close();
 		if (fQueryGlobalSummaryEntries != null)
 			fQueryGlobalSummaryEntries.close();
 		if (fQuerySummaryEntries != null)
 			fQuerySummaryEntries.close();
 		if (fQueryFailure != null)
 			fQueryFailure.close();
+		if (fQueryFailures != null)
+			fQueryFailures.close();
+		if (fInsertVariationKey != null)
+			fInsertVariationKey.close();
+		if (fQueryDistinctValues != null)
+			fQueryDistinctValues.close();
+		if (fQueryBuildSummary != null)
+			fQueryBuildSummary.close();
+		if (fInsertBuildSummary != null)
+			fInsertBuildSummary.close();
+		if (fUpdateBuildSummary != null)
+			fUpdateBuildSummary.close();
+		if (fQueryBuildSummaries != null)
+			fQueryBuildSummaries.close();
+		if (fQuerySampleStamps != null)
+			fQuerySampleStamps.close();
+		if (fQueryAllDatapoints != null)
+			fQueryAllDatapoints.close();
 		if (fQueryComment != null)
 			fQueryComment.close();
 		if (fQueryComment2 != null)
@@ -261,6 +309,163 @@ public class SQL {
 		}
 	}
 
+	/*
+	 * VARIATION_KEY holds one row per key/value pair of every variation, so that the
+	 * distinct values of a series key can be enumerated and ordered by the database.
+	 * BUILD_TIME is the yyyyMMddHHmm time found in the value, or 0.
+	 */
+	private void addVariationKeyTable() throws SQLException {
+		Statement stmt= null;
+		try {
+			stmt= fConnection.createStatement();
+
+			stmt.executeUpdate("create table VARIATION_KEY (" + //$NON-NLS-1$
+					"VARIATION_ID int not null," + //$NON-NLS-1$
+					"KEYNAME varchar(256) not null," + //$NON-NLS-1$
+					"VALUE varchar(" + MAX_KEY_VALUE_LENGTH + ") not null," + //$NON-NLS-1$ //$NON-NLS-2$
+					"BUILD_TIME bigint not null" + //$NON-NLS-1$
+					")" //$NON-NLS-1$
+			);
+			stmt.executeUpdate("alter table VARIATION_KEY add constraint VK_CONSTRAINT " + //$NON-NLS-1$
+					"foreign key (VARIATION_ID) references VARIATION (ID)"); //$NON-NLS-1$
+			stmt.executeUpdate("create index VK_KEY_TIME on VARIATION_KEY (KEYNAME, BUILD_TIME, VALUE)"); //$NON-NLS-1$
+
+			ResultSet rs= stmt.executeQuery("select ID, KEYVALPAIRS from VARIATION"); //$NON-NLS-1$
+			while (rs.next()) {
+				insertVariationKeys(rs.getInt(1), VariationKey.parseDB(rs.getString(2)));
+			}
+			rs.close();
+
+			fConnection.commit();
+
+		} finally {
+			if (stmt != null)
+				stmt.close();
+		}
+	}
+
+	/*
+	 * SCENARIO_BUILD_SUMMARY holds the mean, standard deviation, count, and sum of squared
+	 * deviations (M2) of every dimension of a scenario per variation. It is updated whenever
+	 * a sample is stored, so that a time series can be read without aggregating the samples.
+	 * The rows of an existing database are computed from its aggregated data points.
+	 */
+	private void addBuildSummaryTable() throws SQLException {
+		Statement stmt= null;
+		try {
+			stmt= fConnection.createStatement();
+
+			stmt.executeUpdate("create table SCENARIO_BUILD_SUMMARY (" + //$NON-NLS-1$
+					"VARIATION_ID int not null," + //$NON-NLS-1$
+					"SCENARIO_ID int not null," + //$NON-NLS-1$
+					"DIM_ID int not null," + //$NON-NLS-1$
+					"MEAN double not null," + //$NON-NLS-1$
+					"STDDEV double not null," + //$NON-NLS-1$
+					"N bigint not null," + //$NON-NLS-1$
+					"M2 double not null" + //$NON-NLS-1$
+					")" //$NON-NLS-1$
+			);
+			stmt.executeUpdate("alter table SCENARIO_BUILD_SUMMARY add constraint SBS_KEY primary key (VARIATION_ID, SCENARIO_ID, DIM_ID)"); //$NON-NLS-1$
+			stmt.executeUpdate("alter table SCENARIO_BUILD_SUMMARY add constraint SBS_CONSTRAINT " + //$NON-NLS-1$
+					"foreign key (VARIATION_ID) references VARIATION (ID)"); //$NON-NLS-1$
+			stmt.executeUpdate("alter table SCENARIO_BUILD_SUMMARY add constraint SBS_CONSTRAINT2 " + //$NON-NLS-1$
+					"foreign key (SCENARIO_ID) references SCENARIO (ID)"); //$NON-NLS-1$
+
+			// one row per sample and dimension: average, stddev (as long bits), and size
+			Map summaries= new HashMap();
+			ResultSet rs= stmt.executeQuery("select SAMPLE.VARIATION_ID, SAMPLE.SCENARIO_ID, SAMPLE.ID, SCALAR.DIM_ID, DATAPOINT.STEP, SCALAR.VALUE " + //$NON-NLS-1$
+					"from SAMPLE, DATAPOINT, SCALAR where " + //$NON-NLS-1$
+					"DATAPOINT.SAMPLE_ID = SAMPLE.ID and SCALAR.DATAPOINT_ID = DATAPOINT.ID and " + //$NON-NLS-1$
+					"DATAPOINT.STEP in (" + InternalPerformanceMeter.AVERAGE + ", " + InternalPerformanceMeter.STDEV + ", " + InternalPerformanceMeter.SIZE + ") " + //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+					"order by SAMPLE.ID, SCALAR.DIM_ID"); //$NON-NLS-1$
+			List key= null;
+			int sample_id= 0;
+			double average= 0, stddev= 0;
+			long size= 0;
+			while (rs.next()) {
+				List rowKey= Arrays.asList(new Integer[] { new Integer(rs.getInt(1)), new Integer(rs.getInt(2)), new Integer(rs.getInt(4)) });
+				if (key == null || sample_id != rs.getInt(3) || !key.equals(rowKey)) {
+					if (key != null)
+						addSample(summaries, key, average, stddev, size);
+					key= rowKey;
+					sample_id= rs.getInt(3);
+					average= stddev= 0;
+					size= 0;
+				}
+				long value= rs.getBigDecimal(6).longValue();
+				switch (rs.getInt(5)) {
+					case InternalPerformanceMeter.AVERAGE:
+						average= value;
+						break;
+					case InternalPerformanceMeter.STDEV:
+						stddev= Double.longBitsToDouble(value);
+						break;
+					case InternalPerformanceMeter.SIZE:
+						size= value;
+						break;
+				}
+			}
+			if (key != null)
+				addSample(summaries, key, average, stddev, size);
+			rs.close();
+
+			for (Iterator iter= summaries.entrySet().iterator(); iter.hasNext();) {
+				Map.Entry entry= (Map.Entry) iter.next();
+				List ids= (List) entry.getKey();
+				insertBuildSummary(((Integer) ids.get(0)).intValue(), ((Integer) ids.get(1)).intValue(), ((Integer) ids.get(2)).intValue(), (BuildSummary) entry.getValue());
+			}
+
+			fConnection.commit();
+
+		} finally {
+			if (stmt != null)
+				stmt.close();
+		}
+	}
+
+	private static void addSample(Map summaries, List key, double average, double stddev, long size) {
+		BuildSummary summary= (BuildSummary) summaries.get(key);
+		if (summary == null) {
+			summary= new BuildSummary();
+			summaries.put(key, summary);
+		}
+		summary.addSample(average, stddev, size);
+	}
+
+	/**
+	 * Returns a time that orders build ids chronologically. The time is derived
+	 * from the first date (and optional time) in the given value, as in
+	 * <code>I20130515-2000</code> or <code>R-3.8-201206081200</code>.
+	 * 
+	 * @param value a series value, for example a build id
+	 * @return the time as yyyyMMddHHmm, or 0 if the value contains no date
+	 */
+	static long getBuildTime(String value) {
+		Matcher matcher= BUILD_TIME_PATTERN.matcher(value);
+		if (!matcher.find())
+			return 0;
+		long time= Long.parseLong(matcher.group(1)) * 10000;
+		if (matcher.group(2) != null)
+			time+= Long.parseLong(matcher.group(2));
+		return time;
+	}
+
+	private void insertVariationKeys(int variation_id, VariationKey variations) throws SQLException {
+		if (fInsertVariationKey == null)
+			fInsertVariationKey= fConnection.prepareStatement("insert into VARIATION_KEY (VARIATION_ID, KEYNAME, VALUE, BUILD_TIME) values (?, ?, ?, ?)"); //$NON-NLS-1$
+		for (int i= 0; i < variations.size(); i++) {
+			String key= variations.getKey(i);
+			String value= variations.getValue(i);
+			if (value == null || value.length() > MAX_KEY_VALUE_LENGTH)
+				continue;
+			fInsertVariationKey.setInt(1, variation_id);
+			fInsertVariationKey.setString(2, key);
+			fInsertVariationKey.setString(3, value);
+			fInsertVariationKey.setLong(4, getBuildTime(value));
+			fInsertVariationKey.executeUpdate();
+		}
+	}
+
 	private void addFailureTable() throws SQLException {
 		Statement stmt= null;
 		try {
@@ -319,7 +524,8 @@ public class SQL {
 	int getVariations(Variations variations) throws SQLException {
 		if (fQueryVariation == null)
 			fQueryVariation= fConnection.prepareStatement("select ID from VARIATION where KEYVALPAIRS = ?"); //$NON-NLS-1$
-		String exactMatchString= variations.toExactMatchString();
+		VariationKey key= variations.toKey();
+		String exactMatchString= key.toExactMatchString();
 		fQueryVariation.setString(1, exactMatchString);
 		ResultSet result= fQueryVariation.executeQuery();
 		while (result.next())
@@ -328,7 +534,9 @@ public class SQL {
 		if (fInsertVariation == null)
 			fInsertVariation= fConnection.prepareStatement("insert into VARIATION (KEYVALPAIRS) values (?)", Statement.RETURN_GENERATED_KEYS); //$NON-NLS-1$
 		fInsertVariation.setString(1, exactMatchString);
-		return create(fInsertVariation);
+		int id= create(fInsertVariation);
+		insertVariationKeys(id, key);
+		return id;
 	}
 
 	int createSample(int variation_id, int scenario_id, Timestamp starttime) throws SQLException {
@@ -378,6 +586,24 @@ public class SQL {
 		return fQueryDatapoints.executeQuery();
 	}
 
+	/*
+	 * Returns SCENARIO.NAME, DATAPOINT.ID, DATAPOINT.STEP, SCALAR.DIM_ID, and SCALAR.VALUE
+	 * of all scalars of the variations that match the given one, grouped by scenario and data point.
+	 * Values of the given variation may contain patterns.
+	 */
+	ResultSet queryAllDataPoints(Variations variations) throws SQLException {
+		if (fQueryAllDatapoints == null)
+			fQueryAllDatapoints= fConnection.prepareStatement("select SCENARIO.NAME, DATAPOINT.ID, DATAPOINT.STEP, SCALAR.DIM_ID, SCALAR.VALUE " + //$NON-NLS-1$
+					"from VARIATION, SCENARIO, SAMPLE, DATAPOINT, SCALAR where " + //$NON-NLS-1$
+					"SAMPLE.VARIATION_ID = VARIATION.ID and VARIATION.KEYVALPAIRS LIKE ? and " + //$NON-NLS-1$
+					"SAMPLE.SCENARIO_ID = SCENARIO.ID and " + //$NON-NLS-1$
+					"DATAPOINT.SAMPLE_ID = SAMPLE.ID and SCALAR.DATAPOINT_ID = DATAPOINT.ID " + //$NON-NLS-1$
+					"order by SCENARIO.NAME, DATAPOINT.ID" //$NON-NLS-1$
+			);
+		fQueryAllDatapoints.setString(1, variations.toExactMatchString());
+		return fQueryAllDatapoints.executeQuery();
+	}
+
 	ResultSet queryScalars(int datapointId) throws SQLException {
 		if (fQueryScalars == null)
 			fQueryScalars= fConnection.prepareStatement("select SCALAR.DIM_ID, SCALAR.VALUE from SCALAR where SCALAR.DATAPOINT_ID = ?"); //$NON-NLS-1$
@@ -385,6 +611,22 @@ public class SQL {
 		return fQueryScalars.executeQuery();
 	}
 
+	/*
+	 * Returns VARIATION.KEYVALPAIRS, the number of samples, and the largest SAMPLE.ID
+	 * of every variation of the given scenario
+	 */
+	ResultSet querySampleStamps(Variations variations, String scenarioName) throws SQLException {
+		if (fQuerySampleStamps == null)
+			fQuerySampleStamps= fConnection.prepareStatement("select VARIATION.KEYVALPAIRS, count(SAMPLE.ID), max(SAMPLE.ID) from VARIATION, SCENARIO, SAMPLE where " + //$NON-NLS-1$
+					"SAMPLE.VARIATION_ID = VARIATION.ID and VARIATION.KEYVALPAIRS LIKE ? and " + //$NON-NLS-1$
+					"SAMPLE.SCENARIO_ID = SCENARIO.ID and SCENARIO.NAME = ? " + //$NON-NLS-1$
+					"group by VARIATION.ID, VARIATION.KEYVALPAIRS" //$NON-NLS-1$
+			);
+		fQuerySampleStamps.setString(1, variations.toExactMatchString());
+		fQuerySampleStamps.setString(2, scenarioName);
+		return fQuerySampleStamps.executeQuery();
+	}
+
 	/*
 	 * Returns SCENARIO.NAME
 	 */
@@ -400,17 +642,79 @@ public class SQL {
 	}
 
 	/*
-	 * Returns VARIATION.KEYVALPAIRS
+	 * Returns the distinct values of the given key, ordered by VARIATION_KEY.BUILD_TIME and value
 	 */
-	ResultSet queryVariations(String variations, String scenarioPattern) throws SQLException {
-		if (fQueryVariations == null)
-			fQueryVariations= fConnection.prepareStatement("select distinct VARIATION.KEYVALPAIRS from VARIATION, SAMPLE, SCENARIO where " + //$NON-NLS-1$
+	ResultSet queryDistinctValues(String key, Variations variations, String scenarioPattern) throws SQLException {
+		if (fQueryDistinctValues == null)
+			fQueryDistinctValues= fConnection.prepareStatement("select distinct VARIATION_KEY.VALUE, VARIATION_KEY.BUILD_TIME from VARIATION_KEY, VARIATION, SAMPLE, SCENARIO where " + //$NON-NLS-1$
+					"VARIATION_KEY.KEYNAME = ? and VARIATION_KEY.VARIATION_ID = VARIATION.ID and " + //$NON-NLS-1$
 					"SAMPLE.VARIATION_ID = VARIATION.ID and VARIATION.KEYVALPAIRS LIKE ? and " + //$NON-NLS-1$
-					"SAMPLE.SCENARIO_ID = SCENARIO.ID and SCENARIO.NAME LIKE ?" //$NON-NLS-1$
+					"SAMPLE.SCENARIO_ID = SCENARIO.ID and SCENARIO.NAME LIKE ? " + //$NON-NLS-1$
+					"order by VARIATION_KEY.BUILD_TIME, VARIATION_KEY.VALUE" //$NON-NLS-1$
+			);
+		fQueryDistinctValues.setString(1, key);
+		fQueryDistinctValues.setString(2, variations.toExactMatchString());
+		fQueryDistinctValues.setString(3, scenarioPattern);
+		return fQueryDistinctValues.executeQuery();
+	}
+
+	/*
+	 * Returns MEAN, N, M2. The row stays locked until the transaction ends, so
+	 * that it can be updated without losing the update of another process.
+	 */
+	ResultSet queryBuildSummary(int variation_id, int scenario_id, int dim_id) throws SQLException {
+		if (fQueryBuildSummary == null)
+			fQueryBuildSummary= fConnection.prepareStatement("select MEAN, N, M2 from SCENARIO_BUILD_SUMMARY where VARIATION_ID = ? and SCENARIO_ID = ? and DIM_ID = ? for update"); //$NON-NLS-1$
+		fQueryBuildSummary.setInt(1, variation_id);
+		fQueryBuildSummary.setInt(2, scenario_id);
+		fQueryBuildSummary.setInt(3, dim_id);
+		return fQueryBuildSummary.executeQuery();
+	}
+
+	void insertBuildSummary(int variation_id, int scenario_id, int dim_id, BuildSummary summary) throws SQLException {
+		if (fInsertBuildSummary == null)
+			fInsertBuildSummary= fConnection.prepareStatement("insert into SCENARIO_BUILD_SUMMARY (VARIATION_ID, SCENARIO_ID, DIM_ID, MEAN, STDDEV, N, M2) values (?, ?, ?, ?, ?, ?, ?)"); //$NON-NLS-1$
+		fInsertBuildSummary.setInt(1, variation_id);
+		fInsertBuildSummary.setInt(2, scenario_id);
+		fInsertBuildSummary.setInt(3, dim_id);
+		fInsertBuildSummary.setDouble(4, summary.getMean());
+		fInsertBuildSummary.setDouble(5, summary.getStddev());
+		fInsertBuildSummary.setLong(6, summary.getCount());
+		fInsertBuildSummary.setDouble(7, summary.getM2());
+		fInsertBuildSummary.executeUpdate();
+	}
+
+	void updateBuildSummary(int variation_id, int scenario_id, int dim_id, BuildSummary summary) throws SQLException {
+		if (fUpdateBuildSummary == null)
+			fUpdateBuildSummary= fConnection.prepareStatement("update SCENARIO_BUILD_SUMMARY set MEAN = ?, STDDEV = ?, N = ?, M2 = ? where VARIATION_ID = ? and SCENARIO_ID = ? and DIM_ID = ?"); //$NON-NLS-1$
+		fUpdateBuildSummary.setDouble(1, summary.getMean());
+		fUpdateBuildSummary.setDouble(2, summary.getStddev());
+		fUpdateBuildSummary.setLong(3, summary.getCount());
+		fUpdateBuildSummary.setDouble(4, summary.getM2());
+		fUpdateBuildSummary.setInt(5, variation_id);
+		fUpdateBuildSummary.setInt(6, scenario_id);
+		fUpdateBuildSummary.setInt(7, dim_id);
+		fUpdateBuildSummary.executeUpdate();
+	}
+
+	/*
+	 * Returns SCENARIO.NAME, the value of the series key, DIM_ID, MEAN, STDDEV, N, M2
+	 * ordered by scenario name and the VARIATION_KEY.BUILD_TIME and value of the series key
+	 */
+	ResultSet queryBuildSummaries(Variations variations, String scenarioPattern, String seriesKey) throws SQLException {
+		if (fQueryBuildSummaries == null)
+			fQueryBuildSummaries= fConnection.prepareStatement("select SCENARIO.NAME, VARIATION_KEY.VALUE, SCENARIO_BUILD_SUMMARY.DIM_ID, " + //$NON-NLS-1$
+					"SCENARIO_BUILD_SUMMARY.MEAN, SCENARIO_BUILD_SUMMARY.STDDEV, SCENARIO_BUILD_SUMMARY.N, SCENARIO_BUILD_SUMMARY.M2 " + //$NON-NLS-1$
+					"from SCENARIO_BUILD_SUMMARY, VARIATION, VARIATION_KEY, SCENARIO where " + //$NON-NLS-1$
+					"SCENARIO_BUILD_SUMMARY.VARIATION_ID = VARIATION.ID and VARIATION.KEYVALPAIRS LIKE ? and " + //$NON-NLS-1$
+					"VARIATION_KEY.VARIATION_ID = VARIATION.ID and VARIATION_KEY.KEYNAME = ? and " + //$NON-NLS-1$
+					"SCENARIO_BUILD_SUMMARY.SCENARIO_ID = SCENARIO.ID and SCENARIO.NAME LIKE ? " + //$NON-NLS-1$
+					"order by SCENARIO.NAME, VARIATION_KEY.BUILD_TIME, VARIATION_KEY.VALUE" //$NON-NLS-1$
 			);
-		fQueryVariations.setString(1, variations);
-		fQueryVariations.setString(2, scenarioPattern);
-		return fQueryVariations.executeQuery();
+		fQueryBuildSummaries.setString(1, variations.toExactMatchString());
+		fQueryBuildSummaries.setString(2, seriesKey);
+		fQueryBuildSummaries.setString(3, scenarioPattern);
+		return fQueryBuildSummaries.executeQuery();
 	}
 
 	void createSummaryEntry(int variation_id, int scenario_id, int dim_id, boolean isGlobal, int comment_id) throws SQLException {
@@ -449,8 +753,8 @@ public class SQL {
 	ResultSet queryGlobalSummaryEntries(Variations variations) throws SQLException {
 		if (fQueryGlobalSummaryEntries == null)
 			fQueryGlobalSummaryEntries= fConnection.prepareStatement(
-					"select distinct SCENARIO.NAME, SCENARIO.SHORT_NAME, SUMMARYENTRY.DIM_ID, SUMMARYENTRY.IS_GLOBAL, SUMMARYENTRY.COMMENT_ID " + //$NON-NLS-1$
-					"from VARIATION, SCENARIO, SUMMARYENTRY " + //$NON-NLS-1$
+					"select distinct SCENARIO.NAME, SCENARIO.SHORT_NAME, SUMMARYENTRY.DIM_ID, SUMMARYENTRY.IS_GLOBAL, SUMMARYENTRY.COMMENT_ID, COMMENT.KIND, COMMENT.TEXT " + //$NON-NLS-1$
+					"from VARIATION, SCENARIO, SUMMARYENTRY left outer join COMMENT on SUMMARYENTRY.COMMENT_ID = COMMENT.ID " + //$NON-NLS-1$
 					"where SUMMARYENTRY.VARIATION_ID = VARIATION.ID " + //$NON-NLS-1$
 					"and VARIATION.KEYVALPAIRS LIKE ? " + //$NON-NLS-1$
 					"and SUMMARYENTRY.SCENARIO_ID = SCENARIO.ID " + //$NON-NLS-1$
@@ -464,8 +768,8 @@ public class SQL {
 	ResultSet querySummaryEntries(Variations variations, String scenarioPattern) throws SQLException {
 		if (fQuerySummaryEntries == null)
 			fQuerySummaryEntries= fConnection.prepareStatement(
-					"select distinct SCENARIO.NAME, SCENARIO.SHORT_NAME, SUMMARYENTRY.DIM_ID, SUMMARYENTRY.IS_GLOBAL, SUMMARYENTRY.COMMENT_ID " + //$NON-NLS-1$
-					"from VARIATION, SCENARIO, SUMMARYENTRY " + //$NON-NLS-1$
+					"select distinct SCENARIO.NAME, SCENARIO.SHORT_NAME, SUMMARYENTRY.DIM_ID, SUMMARYENTRY.IS_GLOBAL, SUMMARYENTRY.COMMENT_ID, COMMENT.KIND, COMMENT.TEXT " + //$NON-NLS-1$
+					"from VARIATION, SCENARIO, SUMMARYENTRY left outer join COMMENT on SUMMARYENTRY.COMMENT_ID = COMMENT.ID " + //$NON-NLS-1$
 					"where SUMMARYENTRY.VARIATION_ID = VARIATION.ID " + //$NON-NLS-1$
 					"and VARIATION.KEYVALPAIRS LIKE ? " + //$NON-NLS-1$
 					"and SUMMARYENTRY.SCENARIO_ID = SCENARIO.ID " + //$NON-NLS-1$
@@ -496,6 +800,21 @@ public class SQL {
 		fQueryFailure.setString(2, scenarioPattern);
 		return fQueryFailure.executeQuery();
 	}
+
+	/*
+	 * Like queryFailure, but also returns the KEYVALPAIRS of each failure's variation,
+	 * so that the failures of a whole series can be fetched with one query.
+	 */
+	ResultSet queryFailures(Variations variations, String scenarioPattern) throws SQLException {
+		if (fQueryFailures == null)
+			fQueryFailures= fConnection.prepareStatement("select VARIATION.KEYVALPAIRS, SCENARIO.NAME, FAILURE.MESSAGE from FAILURE, VARIATION, SCENARIO where " + //$NON-NLS-1$
+					"FAILURE.VARIATION_ID = VARIATION.ID and VARIATION.KEYVALPAIRS LIKE ? and " + //$NON-NLS-1$
+					"FAILURE.SCENARIO_ID = SCENARIO.ID and SCENARIO.NAME LIKE ?" //$NON-NLS-1$
+			);
+		fQueryFailures.setString(1, variations.toExactMatchString());
+		fQueryFailures.setString(2, scenarioPattern);
+		return fQueryFailures.executeQuery();
+	}
 	
 	int getCommentId(int commentKind, String comment) throws SQLException {
 		if (comment.length() > 400)
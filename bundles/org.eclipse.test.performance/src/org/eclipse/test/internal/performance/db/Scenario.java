@@ -16,6 +16,8 @@ import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import junit.framework.Assert;
@@ -37,6 +39,14 @@ public class Scenario {
     
     private final static boolean DEBUG= false;
     
+    private static final Comparator DIM_NAME_ORDER= new Comparator() {
+        public int compare(Object o1, Object o2) {
+            Dim d1= (Dim)o1;
+            Dim d2= (Dim)o2;
+            return d1.getName().compareTo(d2.getName());
+        }
+    };
+    
     public static class SharedState {
         
         private Variations fVariations;
@@ -44,9 +54,22 @@ public class Scenario {
         private Set fQueryDimensions;
         private String fScenarioPattern;
         private Map fMessages;
+        private boolean fFromSummaries;
+        private Map fSummaries;
+        private String fFirstValue, fLastValue;
+        private int fWindowSize;
         
       
         SharedState(Variations variations, String scenarioPattern, String seriesKey, Dim[] dimensions) {
+            this(variations, scenarioPattern, seriesKey, dimensions, false);
+        }
+        
+        /*
+         * If fromSummaries is true, the time series are read from the per build summaries
+         * of all scenarios matching the pattern, which are loaded with a single query.
+         */
+        SharedState(Variations variations, String scenarioPattern, String seriesKey, Dim[] dimensions, boolean fromSummaries) {
+            fFromSummaries= fromSummaries;
             fVariations= variations;
             fScenarioPattern= scenarioPattern;
             fSeriesKey= seriesKey;
@@ -57,15 +80,55 @@ public class Scenario {
             }
         }
         
-        String[] getFailures(String[] names, String scenarioId) {
+        /*
+         * Restricts the series to the values between firstValue and lastValue (in series order),
+         * of which only the last windowSize values are loaded initially.
+         */
+        void setWindow(String firstValue, String lastValue, int windowSize) {
+            fFirstValue= firstValue;
+            fLastValue= lastValue;
+            fWindowSize= windowSize;
+        }
+        
+        String[] filterRange(String[] values) {
+            if (fFirstValue == null && fLastValue == null)
+                return values;
+            ArrayList result= new ArrayList();
+            for (int i= 0; i < values.length; i++) {
+                if (fFirstValue != null && DB.SERIES_VALUE_ORDER.compare(values[i], fFirstValue) < 0)
+                    continue;
+                if (fLastValue != null && DB.SERIES_VALUE_ORDER.compare(values[i], fLastValue) > 0)
+                    continue;
+                result.add(values[i]);
+            }
+            return (String[]) result.toArray(new String[result.size()]);
+        }
+        
+        synchronized Map getSummaries() {
+            if (fSummaries == null) {
+                fSummaries= DB.queryBuildSummaries(fVariations, fScenarioPattern, fSeriesKey, fQueryDimensions);
+                if (fSummaries == null)
+                    fSummaries= new HashMap();
+            }
+            return fSummaries;
+        }
+        
+        String[] getSummaryScenarioNames() {
+            Set names= getSummaries().keySet();
+            String[] result= (String[]) names.toArray(new String[names.size()]);
+            Arrays.sort(result);
+            return result;
+        }
+        
+        /*
+         * Returns the failure messages of the given series values. The messages of all
+         * series values are read with a single query when they are first needed.
+         */
+        synchronized String[] getFailures(String[] names, String scenarioId) {
             if (fMessages == null) {
-	            fMessages= new HashMap();
-	            Variations v= (Variations) fVariations.clone();
-	            for (int i= 0; i < names.length; i++) {
-	                v.put(fSeriesKey, names[i]);
-	                Map map= DB.queryFailure(fScenarioPattern, v);
-	                fMessages.put(names[i], map);
-	            }
+                fMessages= DB.querySeriesFailures(fScenarioPattern, fVariations, fSeriesKey);
+                if (fMessages == null)
+                    fMessages= new HashMap();
             }
             String[] result= new String[names.length];
             for (int i= 0; i < names.length; i++) {
@@ -80,6 +143,8 @@ public class Scenario {
     private SharedState fSharedState;
     private String fScenarioName;
     private String[] fSeriesNames;
+    private String[] fAllSeriesNames;
+    private int fLoadedFrom;
     private StatisticsSession[] fSessions;
     private Map fSeries= new HashMap();
     private Dim[] fDimensions;
@@ -130,24 +195,89 @@ public class Scenario {
         return fSharedState.getFailures(fSeriesNames, fScenarioName);
     }
 
+    /**
+     * Returns the number of warmup iterations discarded from the samples of every
+     * series value, 0 where none were discarded or the values come from summaries.
+     * 
+     * @return the discarded iterations, in the order of the time series labels
+     */
+    public long[] getWarmupIterations() {
+        loadSessions();
+        long[] result= new long[fSeriesNames.length];
+        for (int i= 0; fSessions != null && i < fSessions.length; i++) {
+            for (int j= 0; j < fDimensions.length; j++)
+                result[i]= Math.max(result[i], fSessions[i].getWarmupIterations(fDimensions[j]));
+        }
+        return result;
+    }
+
     public TimeSeries getTimeSeries(Dim dim) {
         loadSessions();
         TimeSeries ts= (TimeSeries) fSeries.get(dim);
-        if (ts == null) {
+        if (ts == null && fSessions == null) {
+            // the summaries contain no values for this dimension
+            int n= fSeriesNames.length;
+            ts= new TimeSeries(fSeriesNames, new double[n], new double[n], new long[n]);
+            fSeries.put(dim, ts);
+        } else if (ts == null) {
             double[] ds= new double[fSessions.length];
             double[] sd= new double[fSessions.length];
             long[] sizes= new long[fSessions.length];
-            for (int i= 0; i < ds.length; i++) {
-                ds[i]= fSessions[i].getAverage(dim);
-                sd[i]= fSessions[i].getStddev(dim);                
-                sizes[i]= fSessions[i].getCount(dim);
-            }
+            getValues(fSessions, dim, ds, sd, sizes);
             ts= new TimeSeries(fSeriesNames, ds, sd, sizes);
             fSeries.put(dim, ts);
         }
         return ts;
     }
     
+    /**
+     * Loads up to the given number of series values that precede the loaded ones,
+     * and prepends their values to the time series and labels of this scenario.
+     * Time series returned before grow accordingly.
+     * 
+     * @param count the number of older series values to load
+     * @return <code>true</code> if older series values were loaded, <code>false</code>
+     *  if the whole history is already loaded
+     */
+    public boolean loadHistory(int count) {
+        if (fSharedState.fFromSummaries)
+            return false;
+        loadSessions();
+        if (fLoadedFrom == 0 || count <= 0)
+            return false;
+        
+        int from= Math.max(0, fLoadedFrom - count);
+        ArrayList sessions= new ArrayList();
+        ArrayList names= new ArrayList();
+        Set dims= new HashSet(Arrays.asList(fDimensions));
+        loadSessions(from, fLoadedFrom, sessions, names, dims);
+        fLoadedFrom= from;
+        
+        int n= sessions.size();
+        StatisticsSession[] older= (StatisticsSession[]) sessions.toArray(new StatisticsSession[n]);
+        StatisticsSession[] allSessions= new StatisticsSession[n + fSessions.length];
+        System.arraycopy(older, 0, allSessions, 0, n);
+        System.arraycopy(fSessions, 0, allSessions, n, fSessions.length);
+        fSessions= allSessions;
+        
+        String[] allNames= new String[n + fSeriesNames.length];
+        System.arraycopy(names.toArray(), 0, allNames, 0, n);
+        System.arraycopy(fSeriesNames, 0, allNames, n, fSeriesNames.length);
+        fSeriesNames= allNames;
+        
+        for (Iterator iter= fSeries.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry entry= (Map.Entry) iter.next();
+            double[] ds= new double[n];
+            double[] sd= new double[n];
+            long[] sizes= new long[n];
+            getValues(older, (Dim) entry.getKey(), ds, sd, sizes);
+            ((TimeSeries) entry.getValue()).prepend(fSeriesNames, ds, sd, sizes);
+        }
+        
+        setDimensions(dims);
+        return true;
+    }
+    
     public void dump(PrintStream ps, String key) {
 	    ps.println("Scenario: " + getScenarioName()); //$NON-NLS-1$
 	    Report r= new Report(2);
@@ -181,50 +311,142 @@ public class Scenario {
     //---- private
         
     private void loadSeriesNames() {
-        if (fSeriesNames == null) {
+        if (fSharedState.fFromSummaries) {
+            loadSummaries();
+            return;
+        }
+        if (fAllSeriesNames == null) {
             long start;
             if (DEBUG) start= System.currentTimeMillis();
-            fSeriesNames= DB.querySeriesValues(fScenarioName, fSharedState.fVariations, fSharedState.fSeriesKey);
+            fAllSeriesNames= fSharedState.filterRange(DB.querySeriesValues(fScenarioName, fSharedState.fVariations, fSharedState.fSeriesKey));
             if (DEBUG) System.err.println("names: " + (System.currentTimeMillis()-start)); //$NON-NLS-1$
+            
+            int from= getWindowStart();
+            fSeriesNames= new String[fAllSeriesNames.length - from];
+            System.arraycopy(fAllSeriesNames, from, fSeriesNames, 0, fSeriesNames.length);
         }
     }
     
+    /*
+     * Returns the index of the oldest series value in the initial window.
+     */
+    private int getWindowStart() {
+        int windowSize= fSharedState.fWindowSize;
+        if (windowSize <= 0 || windowSize >= fAllSeriesNames.length)
+            return 0;
+        return fAllSeriesNames.length - windowSize;
+    }
+    
     private void loadSessions() {
+        if (fSharedState.fFromSummaries) {
+            loadSummaries();
+            return;
+        }
         if (fSessions != null)
             return;
         
         loadSeriesNames();
         
+        ArrayList sessions= new ArrayList();
+        ArrayList names= new ArrayList();
+        Set dims= new HashSet();
+        fLoadedFrom= getWindowStart();
+        loadSessions(fLoadedFrom, fAllSeriesNames.length, sessions, names, dims);
+
+        fSessions= (StatisticsSession[]) sessions.toArray(new StatisticsSession[sessions.size()]);
+        fSeriesNames= (String[]) names.toArray(new String[sessions.size()]);
+        setDimensions(dims);
+    }
+    
+    /*
+     * Loads the sessions of the series values in fAllSeriesNames[from..to) that have data.
+     */
+    private void loadSessions(int from, int to, List sessions, List names, Set dims) {
         long start;
         Variations v= (Variations) fSharedState.fVariations.clone();
         if (DEBUG) start= System.currentTimeMillis();
-        ArrayList sessions= new ArrayList();
-        ArrayList names2= new ArrayList();
-        Set dims= new HashSet();
-        for (int t= 0; t < fSeriesNames.length; t++) {
-            v.put(fSharedState.fSeriesKey, fSeriesNames[t]);
-            DataPoint[] dps= DB.queryDataPoints(v, fScenarioName, fSharedState.fQueryDimensions);
+        
+        // the data points of all but the latest build are read from the cache while their samples are unchanged
+        SessionCache cache= fAllSeriesNames.length > 1 ? SessionCache.getDefault() : null;
+        Map stamps= null;
+        if (cache != null) {
+            v.put(fSharedState.fSeriesKey, "%"); //$NON-NLS-1$
+            stamps= DB.querySampleStamps(v, fScenarioName);
+        }
+        
+        for (int t= from; t < to; t++) {
+            v.put(fSharedState.fSeriesKey, fAllSeriesNames[t]);
+            long[] stamp= null;
+            String key= null;
+            DataPoint[] dps= null;
+            if (stamps != null && t < fAllSeriesNames.length - 1) {
+                stamp= (long[]) stamps.get(v.toExactMatchString());
+                if (stamp != null) {
+                    key= SessionCache.getKey(v, fScenarioName, fSharedState.fQueryDimensions);
+                    dps= cache.get(key, stamp);
+                }
+            }
+            if (dps == null) {
+                dps= DB.queryDataPoints(v, fScenarioName, fSharedState.fQueryDimensions);
+                if (key != null && dps != null)
+                    cache.put(key, stamp, dps);
+            }
             if (DEBUG) System.err.println("  dps length: " + dps.length); //$NON-NLS-1$
             if (dps.length > 0) {
                 dims.addAll(dps[0].getDimensions2());
                 sessions.add(new StatisticsSession(dps));
-                names2.add(fSeriesNames[t]);
+                names.add(fAllSeriesNames[t]);
             }
         }
         if (DEBUG) System.err.println("data: " + (System.currentTimeMillis()-start)); //$NON-NLS-1$
-
-        fSessions= (StatisticsSession[]) sessions.toArray(new StatisticsSession[sessions.size()]);
-        fSeriesNames= (String[]) names2.toArray(new String[sessions.size()]);
+    }
+    
+    private void setDimensions(Set dims) {
+        fDimensions= (Dim[]) dims.toArray(new Dim[dims.size()]);
+        Arrays.sort(fDimensions, DIM_NAME_ORDER);
+    }
+    
+    private static void getValues(StatisticsSession[] sessions, Dim dim, double[] ds, double[] sd, long[] sizes) {
+        for (int i= 0; i < sessions.length; i++) {
+            ds[i]= sessions[i].getAverage(dim);
+            sd[i]= sessions[i].getStddev(dim);
+            sizes[i]= sessions[i].getCount(dim);
+        }
+    }
+    
+    /*
+     * Creates the time series of all dimensions from the per build summaries,
+     * without reading any samples.
+     */
+    private void loadSummaries() {
+        if (fDimensions != null)
+            return;
+        
+        Map series= (Map) fSharedState.getSummaries().get(fScenarioName);
+        if (series == null)
+            series= new HashMap();
+        fSeriesNames= (String[]) series.keySet().toArray(new String[series.size()]);
         
+        Set dims= new HashSet();
+        for (Iterator iter= series.values().iterator(); iter.hasNext();)
+            dims.addAll(((Map) iter.next()).keySet());
         fDimensions= (Dim[]) dims.toArray(new Dim[dims.size()]);
-        Arrays.sort(fDimensions,
-        new Comparator() {
-            	public int compare(Object o1, Object o2) {
-            	    Dim d1= (Dim)o1;
-            	    Dim d2= (Dim)o2;
-            	    return d1.getName().compareTo(d2.getName());
-            	}
-        	}
-        );
+        Arrays.sort(fDimensions, DIM_NAME_ORDER);
+        
+        int n= fSeriesNames.length;
+        for (int d= 0; d < fDimensions.length; d++) {
+            double[] ds= new double[n];
+            double[] sd= new double[n];
+            long[] sizes= new long[n];
+            for (int i= 0; i < n; i++) {
+                BuildSummary summary= (BuildSummary) ((Map) series.get(fSeriesNames[i])).get(fDimensions[d]);
+                if (summary != null) {
+                    ds[i]= summary.getMean();
+                    sd[i]= summary.getStddev();
+                    sizes[i]= summary.getCount();
+                }
+            }
+            fSeries.put(fDimensions[d], new TimeSeries(fSeriesNames, ds, sd, sizes));
+        }
     }
 }
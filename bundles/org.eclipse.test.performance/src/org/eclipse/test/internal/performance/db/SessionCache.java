@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test.internal.performance.db;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.test.internal.performance.PerformanceTestPlugin;
+import org.eclipse.test.internal.performance.data.DataPoint;
+import org.eclipse.test.internal.performance.data.Dim;
+import org.eclipse.test.internal.performance.data.Scalar;
+
+/**
+ * A persistent cache of the aggregated data points of a scenario in one variation,
+ * as returned by DB.queryDataPoints. Every entry is a small binary file that is
+ * stamped with the number of samples and the last sample id of the variation when
+ * it was read, and is ignored once the stamp no longer matches the database.
+ * The least recently used entries are deleted when the cache exceeds its size.
+ */
+public class SessionCache {
+
+    private static final int MAGIC= 0x50455246;	// "PERF"
+    private static final int VERSION= 1;
+    private static final String SUFFIX= ".dps"; //$NON-NLS-1$
+
+    private static SessionCache fgDefault;
+
+    private final File fDirectory;
+    private final long fMaxSize;
+    private long fSize= -1;
+
+    /**
+     * Returns the cache configured with <code>eclipse.perf.cacheloc</code>.
+     * @return the cache, or <code>null</code> if query results are not cached
+     */
+    static synchronized SessionCache getDefault() {
+        if (fgDefault == null) {
+            String location= PerformanceTestPlugin.getCacheLocation();
+            if (location == null || location.length() == 0)
+                return null;
+            fgDefault= new SessionCache(new File(location), PerformanceTestPlugin.getCacheSize());
+        }
+        return fgDefault;
+    }
+
+    public SessionCache(File directory, long maxSize) {
+        fDirectory= directory;
+        fMaxSize= maxSize;
+    }
+
+    /**
+     * Returns the key of the data points of a scenario in the given variation.
+     * @param variations the exact variation
+     * @param scenarioName
+     * @param dims the queried dimensions, or <code>null</code>
+     * @return the key
+     */
+    static String getKey(Variations variations, String scenarioName, Set dims) {
+        StringBuffer key= new StringBuffer();
+        key.append(PerformanceTestPlugin.getDBLocation()).append(';');
+        key.append(PerformanceTestPlugin.getDBName()).append(';');
+        key.append(variations.toExactMatchString()).append(';');
+        key.append(scenarioName).append(';');
+        if (dims != null) {
+            int[] ids= new int[dims.size()];
+            int i= 0;
+            for (Iterator iter= dims.iterator(); iter.hasNext();)
+                ids[i++]= ((Dim) iter.next()).getId();
+            Arrays.sort(ids);
+            for (i= 0; i < ids.length; i++)
+                key.append(ids[i]).append(',');
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns the cached data points, if their stamp matches.
+     * @param key
+     * @param stamp the current sample count and last sample id
+     * @return the data points, or <code>null</code>
+     */
+    public synchronized DataPoint[] get(String key, long[] stamp) {
+        File file= getFile(key);
+        if (!file.isFile())
+            return null;
+        DataInputStream in= null;
+        try {
+            in= new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !key.equals(in.readUTF()))
+                return null;
+            if (in.readLong() != stamp[0] || in.readLong() != stamp[1])
+                return null;
+            DataPoint[] dataPoints= new DataPoint[in.readInt()];
+            for (int i= 0; i < dataPoints.length; i++) {
+                int step= in.readInt();
+                int n= in.readInt();
+                Map map= new HashMap();
+                for (int j= 0; j < n; j++) {
+                    Dim dim= Dim.getDimension(in.readInt());
+                    long value= in.readLong();
+                    if (dim != null)
+                        map.put(dim, new Scalar(dim, value));
+                }
+                dataPoints[i]= new DataPoint(step, map);
+            }
+            in.close();
+            in= null;
+            file.setLastModified(System.currentTimeMillis());
+            return dataPoints;
+        } catch (IOException e) {
+            PerformanceTestPlugin.logWarning("cannot read " + file + ": " + e); //$NON-NLS-1$ //$NON-NLS-2$
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // ignored
+                }
+            }
+        }
+    }
+
+    /**
+     * Stores the data points, and evicts the least recently used entries if the cache is full.
+     * @param key
+     * @param stamp the sample count and last sample id the data points were read with
+     * @param dataPoints
+     */
+    public synchronized void put(String key, long[] stamp, DataPoint[] dataPoints) {
+        File file= getFile(key);
+        File tmp= new File(fDirectory, file.getName() + ".tmp"); //$NON-NLS-1$
+        DataOutputStream out= null;
+        try {
+            fDirectory.mkdirs();
+            out= new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(key);
+            out.writeLong(stamp[0]);
+            out.writeLong(stamp[1]);
+            out.writeInt(dataPoints.length);
+            for (int i= 0; i < dataPoints.length; i++) {
+                Scalar[] scalars= dataPoints[i].getScalars();
+                out.writeInt(dataPoints[i].getStep());
+                out.writeInt(scalars.length);
+                for (int j= 0; j < scalars.length; j++) {
+                    out.writeInt(scalars[j].getDimension().getId());
+                    out.writeLong(scalars[j].getMagnitude());
+                }
+            }
+            out.close();
+            out= null;
+
+            long size= getSize();
+            if (file.exists()) {
+                size-= file.length();
+                file.delete();
+            }
+            fSize= size;
+            if (!tmp.renameTo(file))
+                return;
+            fSize+= file.length();
+            if (fSize > fMaxSize)
+                evict();
+        } catch (IOException e) {
+            PerformanceTestPlugin.logWarning("cannot write " + file + ": " + e); //$NON-NLS-1$ //$NON-NLS-2$
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // ignored
+                }
+            }
+            tmp.delete();
+        }
+    }
+
+    public long getSize() {
+        if (fSize < 0) {
+            fSize= 0;
+            File[] files= listEntries();
+            for (int i= 0; i < files.length; i++)
+                fSize+= files[i].length();
+        }
+        return fSize;
+    }
+
+    /*
+     * Deletes the least recently used entries until the cache is at most 3/4 full.
+     */
+    private void evict() {
+        File[] files= listEntries();
+        final Map fileTimes= new HashMap();
+        for (int i= 0; i < files.length; i++)
+            fileTimes.put(files[i], new Long(files[i].lastModified()));
+        Arrays.sort(files, new Comparator() {
+            public int compare(Object o1, Object o2) {
+                long t1= ((Long) fileTimes.get(o1)).longValue();
+                long t2= ((Long) fileTimes.get(o2)).longValue();
+                return t1 < t2 ? -1 : t1 == t2 ? 0 : 1;
+            }
+        });
+        long limit= fMaxSize / 4 * 3;
+        for (int i= 0; i < files.length && fSize > limit; i++) {
+            long length= files[i].length();
+            if (files[i].delete())
+                fSize-= length;
+        }
+    }
+
+    private File[] listEntries() {
+        File[] files= fDirectory.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.getName().endsWith(SUFFIX);
+            }
+        });
+        return files != null ? files : new File[0];
+    }
+
+    /*
+     * Keys with the same hash code share a file, which then holds the last one stored.
+     */
+    private File getFile(String key) {
+        return new File(fDirectory, Integer.toHexString(key.hashCode()) + '_' + Integer.toHexString(key.length()) + SUFFIX);
+    }
+}
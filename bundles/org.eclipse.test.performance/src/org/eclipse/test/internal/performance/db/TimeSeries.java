@@ -24,6 +24,26 @@ public class TimeSeries {
         fCount= sizes;
     }
     
+    /*
+     * Prepends the values of older series values. The given tags are the labels of the whole series.
+     */
+    void prepend(String[] tags, double[] averages, double[] stddev, long[] sizes) {
+        fBuildNames= tags;
+        fAverages= concat(averages, fAverages);
+        fStddev= concat(stddev, fStddev);
+        long[] count= new long[sizes.length + fCount.length];
+        System.arraycopy(sizes, 0, count, 0, sizes.length);
+        System.arraycopy(fCount, 0, count, sizes.length, fCount.length);
+        fCount= count;
+    }
+    
+    private static double[] concat(double[] first, double[] second) {
+        double[] result= new double[first.length + second.length];
+        System.arraycopy(first, 0, result, 0, first.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+    
     /**
      * Returns length of series.
      * @return length of series
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test.internal.performance.db;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * An immutable set of key/value pairs, as stored in VARIATION.KEYVALPAIRS.
+ * The keys are sorted, and the database representations are computed once.
+ * Instances are interned, so equal keys are usually identical.
+ * <p>
+ * A <code>VariationKey</code> is obtained with {@link Variations#toKey()},
+ * which caches it until the <code>Variations</code> are modified.
+ * </p>
+ */
+public final class VariationKey {
+
+    // exact match string -> WeakReference(VariationKey), the key string is the one held by the VariationKey
+    private static final Map fgKeys= new WeakHashMap();
+
+    private final String[] fKeys;
+    private final String[] fValues;
+    private final String fExactMatchString;
+    private final String fQueryPattern;
+
+    private VariationKey(String[] keys, String[] values, String exactMatchString) {
+        fKeys= keys;
+        fValues= values;
+        fExactMatchString= exactMatchString;
+        fQueryPattern= toDB(keys, values, true);
+    }
+
+    /**
+     * Returns the key of the given key/value pairs.
+     * @param keyValues
+     * @return the interned key
+     */
+    static VariationKey get(Properties keyValues) {
+        Set set= keyValues.keySet();
+        String[] keys= (String[]) set.toArray(new String[set.size()]);
+        Arrays.sort(keys);
+        String[] values= new String[keys.length];
+        for (int i= 0; i < keys.length; i++)
+            values[i]= keyValues.getProperty(keys[i]);
+        return intern(keys, values, toDB(keys, values, false));
+    }
+
+    /**
+     * Returns the key of the given VARIATION.KEYVALPAIRS value.
+     * @param exactMatchString
+     * @return the interned key
+     */
+    public static VariationKey parseDB(String exactMatchString) {
+        VariationKey key= lookup(exactMatchString);
+        if (key != null)
+            return key;
+        Variations variations= new Variations();
+        variations.parseDB(exactMatchString);
+        return variations.toKey();
+    }
+
+    private static synchronized VariationKey lookup(String exactMatchString) {
+        WeakReference ref= (WeakReference) fgKeys.get(exactMatchString);
+        return ref != null ? (VariationKey) ref.get() : null;
+    }
+
+    private static synchronized VariationKey intern(String[] keys, String[] values, String exactMatchString) {
+        VariationKey key= lookup(exactMatchString);
+        if (key == null) {
+            key= new VariationKey(keys, values, exactMatchString);
+            fgKeys.put(key.fExactMatchString, new WeakReference(key));
+        }
+        return key;
+    }
+
+    /**
+     * Returns the value of the given key.
+     * @param key
+     * @return the value, or <code>null</code> if there is no such key
+     */
+    public String getValue(String key) {
+        int i= Arrays.binarySearch(fKeys, key);
+        return i >= 0 ? fValues[i] : null;
+    }
+
+    /**
+     * Returns the number of key/value pairs.
+     * @return the number of key/value pairs
+     */
+    public int size() {
+        return fKeys.length;
+    }
+
+    /**
+     * Returns the key at the given index, keys are sorted.
+     * @param index
+     * @return the key
+     */
+    public String getKey(int index) {
+        return fKeys[index];
+    }
+
+    /**
+     * Returns the value at the given index.
+     * @param index
+     * @return the value, may be <code>null</code>
+     */
+    public String getValue(int index) {
+        return fValues[index];
+    }
+
+    public String toExactMatchString() {
+        return fExactMatchString;
+    }
+
+    public String toQueryPattern() {
+        return fQueryPattern;
+    }
+
+    public boolean equals(Object obj) {
+        return obj instanceof VariationKey && fExactMatchString.equals(((VariationKey) obj).fExactMatchString);
+    }
+
+    public int hashCode() {
+        return fExactMatchString.hashCode();
+    }
+
+    public String toString() {
+        StringBuffer sb= new StringBuffer("{"); //$NON-NLS-1$
+        for (int i= 0; i < fKeys.length; i++) {
+            if (i > 0)
+                sb.append(", "); //$NON-NLS-1$
+            sb.append(fKeys[i]).append('=').append(fValues[i]);
+        }
+        return sb.append('}').toString();
+    }
+
+    /*
+     * TODO: we need to escape '=' and ';' characters in key/values.
+     */
+    private static String toDB(String[] keys, String[] values, boolean asQuery) {
+        StringBuffer sb= new StringBuffer();
+        for (int i= 0; i < keys.length; i++) {
+            if (asQuery)
+                sb.append('%');
+            sb.append('|');
+            sb.append(keys[i]);
+            sb.append('=');
+            if (values[i] != null)
+                sb.append(values[i]);
+            sb.append('|');
+        }
+        if (asQuery)
+            sb.append('%');
+        return sb.toString();
+    }
+}
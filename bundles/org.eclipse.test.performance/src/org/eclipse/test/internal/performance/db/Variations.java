@@ -10,7 +10,11 @@
  *******************************************************************************/
 package org.eclipse.test.internal.performance.db;
 
-import java.util.Arrays;
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.StringTokenizer;
@@ -21,10 +25,16 @@ import org.eclipse.test.internal.performance.PerformanceTestPlugin;
  * The <code>Variations</code> class represents a set of key/value pairs
  * and is used to tag data stored in the performance database and when
  * querying for data from the database. 
+ * The database representation is computed by an immutable {@link VariationKey},
+ * which is cached until the key/value pairs are modified. The views returned by
+ * {@link #keySet()}, {@link #values()} and {@link #entrySet()} are unmodifiable,
+ * so all modifications go through the methods that invalidate the key.
  */
 public class Variations extends Properties {
     
     private static final long serialVersionUID= 1L;
+    
+    private transient VariationKey fKey;
 
     /**
      * Creates an empty set of key/value pairs.
@@ -58,12 +68,69 @@ public class Variations extends Properties {
         parsePairs(keyValuePairs);
     }
 
+    /**
+     * Returns the immutable key of the current key/value pairs.
+     * @return the key
+     */
+    public VariationKey toKey() {
+        VariationKey key= fKey;
+        if (key == null) {
+            key= VariationKey.get(this);
+            fKey= key;
+        }
+        return key;
+    }
+
     public String toExactMatchString() {
-        return toDB(this, false);
+        return toKey().toExactMatchString();
     }
     
     public String toQueryPattern() {
-        return toDB(this, true);
+        return toKey().toQueryPattern();
+    }
+    
+    public synchronized Object put(Object key, Object value) {
+        Object old= super.put(key, value);
+        if (!value.equals(old))
+            fKey= null;
+        return old;
+    }
+    
+    public synchronized void putAll(Map t) {
+        for (Iterator iter= t.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry entry= (Map.Entry) iter.next();
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+    
+    public synchronized Object remove(Object key) {
+        Object old= super.remove(key);
+        if (old != null)
+            fKey= null;
+        return old;
+    }
+    
+    public synchronized void clear() {
+        if (!isEmpty())
+            fKey= null;
+        super.clear();
+    }
+
+    public Set keySet() {
+        return Collections.unmodifiableSet(super.keySet());
+    }
+
+    public Collection values() {
+        return Collections.unmodifiableCollection(super.values());
+    }
+
+    public Set entrySet() {
+        // the unmodifiable map also protects Map.Entry.setValue
+        return Collections.unmodifiableMap(new AbstractMap() {
+            public Set entrySet() {
+                return Variations.super.entrySet();
+            }
+        }).entrySet();
     }
 
 	public void parsePairs(String keyvaluepairs) {
@@ -93,30 +160,4 @@ public class Variations extends Properties {
 			put(token, value);
 		}	    
 	}
-    
-	/*
-	 * TODO: we need to escape '=' and ';' characters in key/values.
-	 */
-    private static String toDB(Properties keyValues, boolean asQuery) {
-        Set set= keyValues.keySet();
-        String[] keys= (String[]) set.toArray(new String[set.size()]);
-        Arrays.sort(keys);
-        StringBuffer sb= new StringBuffer();
-        
-        for (int i= 0; i < keys.length; i++) {
-            if (asQuery)
-                sb.append('%');
-            String key= keys[i];
-            String value= keyValues.getProperty(key);
-            sb.append('|');
-            sb.append(key);
-            sb.append('=');
-            if (value != null)
-                sb.append(value);
-            sb.append('|');
-        }
-        if (asQuery)
-            sb.append('%');
-	    return sb.toString();
-    }
 }
@@ -11,6 +11,10 @@
 package org.eclipse.test.internal.performance.eval;
 
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
 import junit.framework.Assert;
 
 import org.eclipse.test.internal.performance.InternalPerformanceMeter;
@@ -19,6 +23,7 @@ import org.eclipse.test.internal.performance.data.DataPoint;
 import org.eclipse.test.internal.performance.data.Dim;
 import org.eclipse.test.internal.performance.data.Sample;
 import org.eclipse.test.internal.performance.db.DB;
+import org.eclipse.test.internal.performance.db.VariationKey;
 import org.eclipse.test.internal.performance.db.Variations;
 import org.eclipse.test.performance.PerformanceMeter;
 
@@ -29,7 +34,11 @@ import org.eclipse.test.performance.PerformanceMeter;
 public class Evaluator extends EmptyEvaluator {
 	
 	private AssertChecker[] fCheckers;
-
+	
+	// the data points of all scenarios of the reference variation, shared by all evaluators
+	private static VariationKey fgReferenceKey;
+	private static Set fgReferenceDimensions;
+	private static Map fgReferenceData;
 
 	public void setAssertCheckers(AssertChecker[] asserts) {
 		fCheckers= asserts;
@@ -52,7 +61,7 @@ public class Evaluator extends EmptyEvaluator {
 	        return;	// we cannot handle this.
 	    
         InternalPerformanceMeter ipm= (InternalPerformanceMeter) performanceMeter;
-	    Sample session= ipm.getSample();
+	    Sample session= ipm.getCommittedSample();
 		Assert.assertTrue("metering session is null", session != null); //$NON-NLS-1$
 	    String scenarioName= session.getScenarioID();
 		
@@ -65,20 +74,16 @@ public class Evaluator extends EmptyEvaluator {
 				allDimensions.add(dims[j]);
 		}
 		
-		// get data for this session
-		DataPoint[] sessionDatapoints;
+		// get data for this session, as it was stored
 		Variations config= PerformanceTestPlugin.getVariations();
-		if (config != null)
-		    sessionDatapoints= DB.queryDataPoints(config, scenarioName, allDimensions);
-		else
-			sessionDatapoints= session.getDataPoints();
+		DataPoint[] sessionDatapoints= session.getDataPoints();
 	    if (sessionDatapoints == null || sessionDatapoints.length == 0) {
 	        PerformanceTestPlugin.logWarning("no session data named '" + config + "' found"); //$NON-NLS-1$ //$NON-NLS-2$
 	        return;
 	    }
 
 		// get reference data
-		DataPoint[] datapoints= DB.queryDataPoints(refKeys, scenarioName, allDimensions);
+		DataPoint[] datapoints= getReferenceDataPoints(refKeys, scenarioName, allDimensions);
 	    if (datapoints == null || datapoints.length == 0) {
 	        PerformanceTestPlugin.logWarning("no reference data named '" + refKeys + "' found"); //$NON-NLS-1$ //$NON-NLS-2$
 	        return;
@@ -86,7 +91,12 @@ public class Evaluator extends EmptyEvaluator {
 		
 	    // calculate the average
 		StatisticsSession referenceStats= new StatisticsSession(datapoints);
-		StatisticsSession measuredStats= new StatisticsSession(sessionDatapoints);
+		StatisticsSession measuredStats= new StatisticsSession(sessionDatapoints, session.getMeterOverheadToSubtract());
+		for (Iterator iter= allDimensions.iterator(); iter.hasNext();) {
+		    Dim dim= (Dim) iter.next();
+		    if ((referenceStats.getMeterOverhead(dim) == 0) != (measuredStats.getMeterOverhead(dim) == 0))
+		        PerformanceTestPlugin.logWarning("the meter overhead of " + dim.getName() + " is subtracted from only one of '" + config + "' and '" + refKeys + "'"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+		}
 
 		StringBuffer failMesg= new StringBuffer("Performance criteria not met when compared to '" + refKeys + "':"); //$NON-NLS-1$ //$NON-NLS-2$ 
 		boolean pass= true;
@@ -96,10 +106,48 @@ public class Evaluator extends EmptyEvaluator {
 		}
 		
 		if (!pass) {
+		    long referenceWarmup= 0;
+		    for (Iterator iter= allDimensions.iterator(); iter.hasNext();)
+		        referenceWarmup= Math.max(referenceWarmup, referenceStats.getWarmupIterations((Dim) iter.next()));
+		    if (referenceWarmup > 0 || session.getWarmupIterations() > 0)
+		        failMesg.append("\n(warmup iterations discarded: " + referenceWarmup + " from '" + refKeys + "', " + session.getWarmupIterations() + " from this run)"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
 		    if (config != null)
 		        	DB.markAsFailed(config, session, failMesg.toString());
 //		    else
 //				Assert.assertTrue(failMesg.toString(), false);
 		}
 	}
+	
+	/**
+	 * Forgets the reference data read so far, called when the database is shut down.
+	 */
+	public static synchronized void clearReferenceData() {
+	    fgReferenceKey= null;
+	    fgReferenceDimensions= null;
+	    fgReferenceData= null;
+	}
+
+	/*
+	 * Returns the reference data points of the given scenario. The data points of all scenarios
+	 * of the reference variation are read with a single query when they are first needed; only
+	 * the dimensions checked so far are kept. Scenarios missing from that snapshot are read on their own.
+	 */
+	private static synchronized DataPoint[] getReferenceDataPoints(Variations refKeys, String scenarioName, HashSet dimensions) {
+	    VariationKey key= refKeys.toKey();
+	    if (!key.equals(fgReferenceKey) || !fgReferenceDimensions.containsAll(dimensions)) {
+	        Set dims= new HashSet(dimensions);
+	        if (key.equals(fgReferenceKey))
+	            dims.addAll(fgReferenceDimensions);
+	        Map data= DB.queryAllDataPoints(refKeys, dims);
+	        if (data == null)
+	            return DB.queryDataPoints(refKeys, scenarioName, dimensions);
+	        fgReferenceKey= key;
+	        fgReferenceDimensions= dims;
+	        fgReferenceData= data;
+	    }
+	    DataPoint[] dataPoints= (DataPoint[]) fgReferenceData.get(scenarioName);
+	    if (dataPoints == null)
+	        return DB.queryDataPoints(refKeys, scenarioName, dimensions);
+	    return dataPoints;
+	}
 }
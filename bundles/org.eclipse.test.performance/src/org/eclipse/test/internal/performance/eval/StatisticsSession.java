@@ -33,13 +33,29 @@ public class StatisticsSession {
 		public long sum;
 		public double average;
 		public double stddev;
+		public double overhead;
+		public long warmup;
 	}
 	
 	private final DataPoint[] fDataPoints;
+	private final Map fOverhead;
 	private final Map fStatistics= new HashMap();
 
 	public StatisticsSession(DataPoint[] datapoints) {
+	    this(datapoints, null);
+	}
+	
+	/**
+	 * Creates a statistics session that subtracts the given meter overhead
+	 * from every measured delta.
+	 * 
+	 * @param datapoints the data points
+	 * @param overhead a map from {@link Dim} to {@link Scalar} with the cost of an
+	 *  empty start/stop pair, or <code>null</code> to use the raw deltas
+	 */
+	public StatisticsSession(DataPoint[] datapoints, Map overhead) {
 	    fDataPoints= datapoints;
+	    fOverhead= overhead;
 	}
 	
 	public double getAverage(Dim dimension) {
@@ -58,6 +74,29 @@ public class StatisticsSession {
 		return getStats(dimension).stddev;
 	}
 	
+	/**
+	 * Returns the meter overhead that was subtracted from the values of the
+	 * given dimension, either by this session or before the aggregates were
+	 * stored, averaged over the aggregated samples.
+	 * 
+	 * @param dimension the dimension
+	 * @return the subtracted overhead, <code>0</code> if the values are not adjusted
+	 */
+	public double getMeterOverhead(Dim dimension) {
+		return getStats(dimension).overhead;
+	}
+	
+	/**
+	 * Returns the number of warmup iterations that were discarded from the
+	 * stored samples before their aggregates were computed.
+	 * 
+	 * @param dimension the dimension
+	 * @return the number of discarded iterations of all samples
+	 */
+	public long getWarmupIterations(Dim dimension) {
+		return getStats(dimension).warmup;
+	}
+	
 	double getStderr_mean(Dim dimension) {
 		return getStats(dimension).stddev / Math.sqrt(getStats(dimension).count);
 	}
@@ -124,6 +163,8 @@ public class StatisticsSession {
         double averageSum= 0;
         long countSum= 0;
         double stdevSum= 0;
+        double overheadSum= 0;
+        long warmupSum= 0;
         
 //        Set acquiredAggregates= new HashSet();
         for (int i= 0; i < fDataPoints.length; i++) {
@@ -150,8 +191,15 @@ public class StatisticsSession {
                 case InternalPerformanceMeter.SIZE:
                     countSum += magnitude;
                     break;
+                case InternalPerformanceMeter.OVERHEAD:
+                    // already subtracted from the average
+                    overheadSum += magnitude;
+                    break;
+                case InternalPerformanceMeter.WARMUP:
+                    warmupSum += magnitude;
+                    break;
                 default:
-                    Assert.fail("only average, stdev and size are supported in aggregate mode"); //$NON-NLS-1$
+                    Assert.fail("only average, stdev, size, overhead and warmup are supported in aggregate mode"); //$NON-NLS-1$
                     break;
             }
         }
@@ -160,6 +208,8 @@ public class StatisticsSession {
         stats.stddev= stdevSum / aggregateCount; // XXX this does not work! have to treat multiple runs like normal measurement data
         stats.count= countSum;
         stats.sum= Math.round(stats.count * stats.average);
+        stats.overhead= aggregateCount > 0 ? overheadSum / aggregateCount : 0;
+        stats.warmup= warmupSum;
         
         return stats;
     }
@@ -178,6 +228,8 @@ public class StatisticsSession {
                 break;
             case 2:
                 int count= fDataPoints.length / 2;
+                long overhead= getOverhead(dimension);
+                stats.overhead= overhead;
                 mags= new long[count];
                 for (int i= 0; i < count; i ++) {
                     DataPoint before= fDataPoints[2 * i];
@@ -186,7 +238,7 @@ public class StatisticsSession {
                     Assert.assertTrue("wrong order of steps", after.getStep() == InternalPerformanceMeter.AFTER); //$NON-NLS-1$
 
                     Scalar delta= getDelta(before, after, dimension);
-                    long magnitude= delta.getMagnitude();
+                    long magnitude= delta.getMagnitude() - overhead;
                     mags[i]= magnitude;
                 }
                 break;
@@ -220,6 +272,15 @@ public class StatisticsSession {
         return stats;
     }
 
+	private long getOverhead(Dim dimension) {
+		if (fOverhead != null) {
+			Scalar overhead= (Scalar) fOverhead.get(dimension);
+			if (overhead != null)
+				return overhead.getMagnitude();
+		}
+		return 0;
+	}
+
 	private Scalar getDelta(DataPoint before, DataPoint after, Dim dimension) {
 		Scalar one= before.getScalar(dimension);
 		Assert.assertTrue("reference has no value for dimension " + dimension, one != null); //$NON-NLS-1$
@@ -129,6 +129,39 @@ public final class StatisticsUtil {
         return -1;
     }
 
+    /**
+     * Returns the number of leading values that belong to the warmup phase of a
+     * measurement. The steady state is reached at the first window of
+     * <code>windowSize</code> consecutive values whose coefficient of variation
+     * (standard deviation divided by the mean) is at most
+     * <code>maxCoefficientOfVariation</code>.
+     * 
+     * @param values the measured values in the order of measurement
+     * @param windowSize the number of consecutive values that must be stable
+     * @param maxCoefficientOfVariation the maximum coefficient of variation of a stable window
+     * @return the index of the first value of the steady state, or <code>-1</code>
+     *         if no steady state has been reached yet
+     */
+    public static int getWarmupIterations(long[] values, int windowSize, double maxCoefficientOfVariation) {
+        if (windowSize < 2)
+            windowSize= 2;
+        for (int start= 0; start + windowSize <= values.length; start++) {
+            double sum= 0;
+            for (int i= start; i < start + windowSize; i++)
+                sum += values[i];
+            double mean= sum / windowSize;
+            double squaredDeviations= 0;
+            for (int i= start; i < start + windowSize; i++) {
+                double deviation= mean - values[i];
+                squaredDeviations += deviation * deviation;
+            }
+            double stddev= Math.sqrt(squaredDeviations / (windowSize - 1));
+            if (stddev == 0 || (mean != 0 && stddev / Math.abs(mean) <= maxCoefficientOfVariation))
+                return start;
+        }
+        return -1;
+    }
+
     public static double deviation(double[] values) {
     	return (values[1] - values[0]) / values[0];
     }
@@ -23,6 +23,9 @@ public class AllTests {
 		suite.addTestSuite(VariationsTests.class);
 		suite.addTestSuite(DBTests.class);
 		suite.addTestSuite(PerformanceMeterFactoryTest.class);
+		suite.addTestSuite(StatisticsSessionTests.class);
+		suite.addTestSuite(BenchmarkRunnerTests.class);
+		suite.addTestSuite(SessionCacheTests.class);
 		
 		return suite;
 	}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test.internal.performance.tests;
+
+import java.lang.reflect.Method;
+
+import org.eclipse.test.internal.performance.BenchmarkPerformanceMeter;
+import org.eclipse.test.internal.performance.BenchmarkRunner;
+import org.eclipse.test.internal.performance.InternalDimensions;
+import org.eclipse.test.internal.performance.data.DataPoint;
+import org.eclipse.test.internal.performance.data.Scalar;
+import org.eclipse.test.internal.performance.eval.StatisticsSession;
+import org.eclipse.test.performance.Blackhole;
+
+import junit.framework.TestCase;
+
+public class BenchmarkRunnerTests extends TestCase {
+
+    public static class Benchmarks {
+        public int benchHashCode() {
+            return "benchmark".hashCode(); //$NON-NLS-1$
+        }
+        public void benchConsume(Blackhole blackhole) {
+            blackhole.consume(System.identityHashCode(this));
+        }
+        public void benchWithArgument(int i) {
+            // not a benchmark method
+        }
+        public static void benchStatic() {
+            // not a benchmark method
+        }
+    }
+
+    public void testBenchmarkMethods() {
+        Method[] methods= BenchmarkRunner.getBenchmarkMethods(Benchmarks.class);
+        assertEquals(2, methods.length);
+        assertEquals("benchConsume", methods[0].getName()); //$NON-NLS-1$
+        assertEquals("benchHashCode", methods[1].getName()); //$NON-NLS-1$
+        assertEquals(Benchmarks.class.getName() + "#benchHashCode()", BenchmarkRunner.getScenarioId(Benchmarks.class, methods[1])); //$NON-NLS-1$
+    }
+
+    public void testRun() throws Exception {
+        Method method= BenchmarkRunner.getBenchmarkMethods(Benchmarks.class)[0];
+        BenchmarkRunner runner= new BenchmarkRunner(new Benchmarks(), method);
+        runner.setWarmupIterations(1);
+        runner.setIterations(3);
+        runner.setIterationTime(20);
+        BenchmarkPerformanceMeter meter= new BenchmarkPerformanceMeter("bar.testBenchmark"); //$NON-NLS-1$
+        runner.run(meter);
+        DataPoint[] dataPoints= meter.getSample().getDataPoints();
+        assertEquals(6, dataPoints.length);
+        StatisticsSession s= new StatisticsSession(dataPoints);
+        assertEquals(3, s.getCount(InternalDimensions.OPERATION_TIME));
+        assertTrue(s.getAverage(InternalDimensions.INVOCATION_COUNT) > 0);
+        meter.dispose();
+    }
+
+    public void testOperationTime() {
+        BenchmarkPerformanceMeter meter= new BenchmarkPerformanceMeter("bar.testOperationTime"); //$NON-NLS-1$
+        meter.addIteration(4000, 2);
+        StatisticsSession s= new StatisticsSession(meter.getSample().getDataPoints());
+        assertEquals(500.0, s.getAverage(InternalDimensions.OPERATION_TIME), 0.0);
+        assertEquals("500ns", InternalDimensions.OPERATION_TIME.getDisplayValue(500.0)); //$NON-NLS-1$
+        assertEquals("2us", InternalDimensions.OPERATION_TIME.getDisplayValue(new Scalar(InternalDimensions.OPERATION_TIME, 2000))); //$NON-NLS-1$
+        assertEquals("2ms", InternalDimensions.OPERATION_TIME.getDisplayValue(2000000.0)); //$NON-NLS-1$
+        // other times keep their millisecond display
+        assertEquals("0ms", InternalDimensions.CPU_TIME.getDisplayValue(0.5)); //$NON-NLS-1$
+        meter.dispose();
+    }
+}
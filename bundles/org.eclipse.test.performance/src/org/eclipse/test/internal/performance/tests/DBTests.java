@@ -10,22 +10,44 @@
  *******************************************************************************/
 package org.eclipse.test.internal.performance.tests;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.test.internal.performance.InternalDimensions;
+import org.eclipse.test.internal.performance.InternalPerformanceMeter;
 import org.eclipse.test.internal.performance.PerformanceTestPlugin;
 import org.eclipse.test.internal.performance.data.DataPoint;
 import org.eclipse.test.internal.performance.data.Dim;
+import org.eclipse.test.internal.performance.data.Sample;
 import org.eclipse.test.internal.performance.data.Scalar;
 import org.eclipse.test.internal.performance.db.DB;
+import org.eclipse.test.internal.performance.db.DBExport;
+import org.eclipse.test.internal.performance.db.DBHelpers;
+import org.eclipse.test.internal.performance.db.DBMerge;
+import org.eclipse.test.internal.performance.db.SQL;
 import org.eclipse.test.internal.performance.db.Scenario;
 import org.eclipse.test.internal.performance.db.SummaryEntry;
+import org.eclipse.test.internal.performance.db.TimeSeries;
 import org.eclipse.test.internal.performance.db.Variations;
+import org.eclipse.test.internal.performance.eval.AssertChecker;
+import org.eclipse.test.internal.performance.eval.Evaluator;
+import org.eclipse.test.internal.performance.eval.StatisticsSession;
 import org.eclipse.test.performance.Dimension;
 import org.eclipse.test.performance.Performance;
 
@@ -244,4 +266,456 @@ public class DBTests extends TestCase {
 	    assertEquals(Dimension.USED_JAVA_HEAP, fps2[1].dimension);
     }
     
+    public void testBuildSummaries() {
+        
+        Variations v= new Variations();
+        v.put(CONFIG, "summaries"); //$NON-NLS-1$
+        v.put(BUILD, "I20130102-1000"); //$NON-NLS-1$
+        DB.store(v, createSample(SCENARIO_NAME_0, new long[] { 500 }));
+        
+        // the summary of the first build merges two samples
+        v.put(BUILD, "I20130101-1000"); //$NON-NLS-1$
+        DB.store(v, createSample(SCENARIO_NAME_0, new long[] { 100, 300 }));
+        DB.store(v, createSample(SCENARIO_NAME_0, new long[] { 400 }));
+        
+        v.put(BUILD, "I%"); //$NON-NLS-1$
+        Scenario[] scenarios= DB.queryScenarioSummaries(v, "bar.%", BUILD, null); //$NON-NLS-1$
+        assertEquals(1, scenarios.length);
+        assertEquals(SCENARIO_NAME_0, scenarios[0].getScenarioName());
+        
+        Dim[] dimensions= scenarios[0].getDimensions();
+        assertEquals(1, dimensions.length);
+        assertEquals(InternalDimensions.CPU_TIME, dimensions[0]);
+        
+        TimeSeries ts= scenarios[0].getTimeSeries(InternalDimensions.CPU_TIME);
+        assertEquals(2, ts.getLength());
+        assertEquals("I20130101-1000", ts.getLabel(0)); //$NON-NLS-1$
+        assertEquals(800.0 / 3, ts.getValue(0), 1e-9);
+        assertEquals(Math.sqrt(140000.0 / 6), ts.getStddev(0), 1e-9);
+        assertEquals(3, ts.getCount(0));
+        assertEquals("I20130102-1000", ts.getLabel(1)); //$NON-NLS-1$
+        assertEquals(500, ts.getValue(1), 0);
+        assertEquals(0, ts.getStddev(1), 0);
+        assertEquals(1, ts.getCount(1));
+        
+        // a build with a single sample has the same series as the one aggregated from the samples
+        v.put(BUILD, "I20130102-1000"); //$NON-NLS-1$
+        TimeSeries expected= DB.queryScenarios(v, SCENARIO_NAME_0, BUILD, null)[0].getTimeSeries(InternalDimensions.CPU_TIME);
+        TimeSeries actual= DB.queryScenarioSummaries(v, SCENARIO_NAME_0, BUILD, null)[0].getTimeSeries(InternalDimensions.CPU_TIME);
+        assertEquals(1, actual.getLength());
+        assertEquals(expected.getLabel(0), actual.getLabel(0));
+        assertEquals(expected.getValue(0), actual.getValue(0), 0);
+        assertEquals(expected.getCount(0), actual.getCount(0));
+    }
+    
+    public void testExport() throws SQLException, IOException {
+        
+        Variations v= new Variations();
+        v.put(CONFIG, "export"); //$NON-NLS-1$
+        v.put(PerformanceTestPlugin.BUILD, "I20130101-1000"); //$NON-NLS-1$
+        DB.store(v, createSample(SCENARIO_NAME_0, new long[] { 100 }));
+        v.put(PerformanceTestPlugin.BUILD, "I20130102-1000"); //$NON-NLS-1$
+        DB.store(v, createSample(SCENARIO_NAME_0, new long[] { 200 }));
+        DB.store(v, createSample(SCENARIO_NAME_1, new long[] { 300 }));
+        v.put(PerformanceTestPlugin.BUILD, "I20130103-1000"); //$NON-NLS-1$
+        DB.store(v, createSample(SCENARIO_NAME_0, new long[] { 400 }));
+        
+        Variations pattern= new Variations();
+        pattern.put(CONFIG, "export"); //$NON-NLS-1$
+        File directory= new File(DBLOC, DBNAME + "_export"); //$NON-NLS-1$
+        long rows= new DBExport(directory).export(pattern, "%", "I20130102-0000", "I20130103-0000"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        
+        // the average, stddev, and size data points of two samples with one dimension
+        assertEquals(6, rows);
+        assertEquals(4 * rows, new File(directory, "scenario.int32").length()); //$NON-NLS-1$
+        assertEquals(8 * rows, new File(directory, "value.int64").length()); //$NON-NLS-1$
+        
+        BufferedReader reader= new BufferedReader(new FileReader(new File(directory, "build.dict"))); //$NON-NLS-1$
+        try {
+            assertEquals("I20130102-1000", reader.readLine()); //$NON-NLS-1$
+            assertNull(reader.readLine());
+        } finally {
+            reader.close();
+        }
+    }
+    
+    public void testExportWithoutBuildKey() throws SQLException, IOException {
+
+        // a build too long for VARIATION_KEY, an undated build, and no build at all
+        StringBuffer longBuild= new StringBuffer("I20130102-1000"); //$NON-NLS-1$
+        for (int i= 0; i < 1000; i++)
+            longBuild.append('x');
+        Variations v= new Variations();
+        v.put(CONFIG, "export2"); //$NON-NLS-1$
+        v.put(PerformanceTestPlugin.BUILD, longBuild.toString());
+        DB.store(v, createSample(SCENARIO_NAME_0, new long[] { 100 }));
+        v.put(PerformanceTestPlugin.BUILD, "ref"); //$NON-NLS-1$
+        DB.store(v, createSample(SCENARIO_NAME_0, new long[] { 200 }));
+        v.remove(PerformanceTestPlugin.BUILD);
+        DB.store(v, createSample(SCENARIO_NAME_0, new long[] { 300 }));
+
+        Variations pattern= new Variations();
+        pattern.put(CONFIG, "export2"); //$NON-NLS-1$
+        DBExport export= new DBExport(new File(DBLOC, DBNAME + "_export2")); //$NON-NLS-1$
+        assertEquals(9, export.export(pattern, "%", null, null)); //$NON-NLS-1$
+        assertEquals(0, export.getSkippedVariations());
+
+        // only the long build has a date in the range
+        assertEquals(3, export.export(pattern, "%", "I20130102-0000", "I20130103-0000")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        assertEquals(2, export.getSkippedVariations());
+    }
+
+    public void testMerge() throws SQLException {
+
+        String scenarioName= "bar.testMergedScenario"; //$NON-NLS-1$
+        Variations v= new Variations();
+        v.put(CONFIG, "merge"); //$NON-NLS-1$
+        v.put(BUILD, "I20130101-1000"); //$NON-NLS-1$
+        long starttime= 1357034400000L;
+        Sample sample= createSample(scenarioName, new long[] { 100 });
+        DB.store(v, new Sample(scenarioName, starttime, new HashMap(), sample.getDataPoints()));
+
+        // a source with a different variation id, and more samples than are committed at once
+        int samples= 150;
+        Connection source= DriverManager.getConnection("jdbc:derby:" + new File(DBLOC, DBNAME + "_merge").getAbsolutePath() + ";create=true"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        try {
+            source.setAutoCommit(false);
+            new SQL(source) {
+                // creates the tables
+            };
+            Statement stmt= source.createStatement();
+            stmt.executeUpdate("insert into VARIATION (KEYVALPAIRS) values ('|" + CONFIG + "=other|')"); //$NON-NLS-1$ //$NON-NLS-2$
+            stmt.executeUpdate("insert into VARIATION (KEYVALPAIRS) values ('" + v.toExactMatchString() + "')"); //$NON-NLS-1$ //$NON-NLS-2$
+            stmt.executeUpdate("insert into SCENARIO (NAME) values ('" + scenarioName + "')"); //$NON-NLS-1$ //$NON-NLS-2$
+            for (int i= 0; i < samples; i++) {
+                stmt.executeUpdate("insert into SAMPLE (VARIATION_ID, SCENARIO_ID, STARTTIME) values (2, 1, '" + new Timestamp(starttime + i) + "')"); //$NON-NLS-1$ //$NON-NLS-2$
+                insertDataPoint(stmt, i + 1, 3 * i + 1, InternalPerformanceMeter.AVERAGE, 200);
+                insertDataPoint(stmt, i + 1, 3 * i + 2, InternalPerformanceMeter.STDEV, Double.doubleToLongBits(0));
+                insertDataPoint(stmt, i + 1, 3 * i + 3, InternalPerformanceMeter.SIZE, 1);
+            }
+            stmt.close();
+            source.commit();
+
+            DBMerge merge= new DBMerge(null);
+            merge.merge(source);
+            assertEquals(samples - 1, merge.getMergedSamples());
+            assertEquals(1, merge.getSkippedSamples());
+            assertEquals(3 * (samples - 1), merge.getMergedScalars());
+
+            // merging again adds nothing
+            merge.merge(source);
+            assertEquals(samples - 1, merge.getMergedSamples());
+            assertEquals(samples + 1, merge.getSkippedSamples());
+            merge.dispose();
+        } finally {
+            source.rollback();
+            source.close();
+        }
+
+        assertEquals(3 * samples, DB.queryDataPoints(v, scenarioName, null).length);
+        TimeSeries ts= DB.queryScenarioSummaries(v, scenarioName, BUILD, null)[0].getTimeSeries(InternalDimensions.CPU_TIME);
+        assertEquals(samples, ts.getCount(0));
+        assertEquals((100 + 200 * (samples - 1)) / (double) samples, ts.getValue(0), 1e-9);
+    }
+
+    private static void insertDataPoint(Statement stmt, int sample_id, int datapoint_id, int step, long value) throws SQLException {
+        stmt.executeUpdate("insert into DATAPOINT (SAMPLE_ID, SEQ, STEP) values (" + sample_id + ", 0, " + step + ")"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        stmt.executeUpdate("insert into SCALAR values (" + datapoint_id + ", " + InternalDimensions.CPU_TIME.getId() + ", " + value + ")"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+    }
+
+    public void testCachedSeries() {
+
+        File cache= new File(DBLOC, DBNAME + "_cache"); //$NON-NLS-1$
+        System.setProperty("eclipse.perf.cacheloc", cache.getPath()); //$NON-NLS-1$
+        Variations v= new Variations();
+        v.put(CONFIG, "cache"); //$NON-NLS-1$
+        for (int i= 1; i <= 3; i++) {
+            v.put(BUILD, "I2013010" + i + "-1000"); //$NON-NLS-1$ //$NON-NLS-2$
+            DB.store(v, createSample(SCENARIO_NAME_0, new long[] { 100 * i }));
+        }
+
+        // all but the last build are cached
+        v.put(BUILD, "I%"); //$NON-NLS-1$
+        TimeSeries ts= DB.queryScenarios(v, SCENARIO_NAME_0, BUILD, null)[0].getTimeSeries(InternalDimensions.CPU_TIME);
+        assertEquals(100, ts.getValue(0), 0);
+        assertEquals(2, cache.list().length);
+
+        // a new sample of a cached build invalidates its entry
+        v.put(BUILD, "I20130101-1000"); //$NON-NLS-1$
+        DB.store(v, createSample(SCENARIO_NAME_0, new long[] { 300 }));
+        v.put(BUILD, "I%"); //$NON-NLS-1$
+        ts= DB.queryScenarios(v, SCENARIO_NAME_0, BUILD, null)[0].getTimeSeries(InternalDimensions.CPU_TIME);
+        assertEquals(200, ts.getValue(0), 0);
+        assertEquals(2, ts.getCount(0));
+        assertEquals(200, ts.getValue(1), 0);
+    }
+
+    public void testWindowedSeries() {
+
+        Variations v= new Variations();
+        v.put(CONFIG, "window"); //$NON-NLS-1$
+        for (int i= 1; i <= 5; i++) {
+            v.put(BUILD, "I2013010" + i + "-1000"); //$NON-NLS-1$ //$NON-NLS-2$
+            DB.store(v, createSample(SCENARIO_NAME_0, new long[] { 100 * i }));
+        }
+
+        // the builds after the last one in the range are ignored, of the others only the last two are loaded
+        v.put(BUILD, "I%"); //$NON-NLS-1$
+        Scenario scenario= DB.queryScenarios(v, SCENARIO_NAME_0, BUILD, null, null, "I20130104-1000", 2)[0]; //$NON-NLS-1$
+        TimeSeries ts= scenario.getTimeSeries(InternalDimensions.CPU_TIME);
+        assertEquals(2, ts.getLength());
+        assertEquals("I20130103-1000", ts.getLabel(0)); //$NON-NLS-1$
+        assertEquals(400, ts.getValue(1), 0);
+
+        // the series grows in place
+        assertTrue(scenario.loadHistory(1));
+        assertEquals(3, ts.getLength());
+        assertEquals("I20130102-1000", ts.getLabel(0)); //$NON-NLS-1$
+        assertEquals(200, ts.getValue(0), 0);
+        assertEquals(400, ts.getValue(2), 0);
+        assertEquals(3, scenario.getTimeSeriesLabels().length);
+
+        assertTrue(scenario.loadHistory(10));
+        assertEquals(4, ts.getLength());
+        assertEquals(100, ts.getValue(0), 0);
+        assertFalse(scenario.loadHistory(10));
+    }
+
+    public void testMeterOverhead() {
+
+        Variations v= new Variations();
+        v.put(CONFIG, "overhead"); //$NON-NLS-1$
+        v.put(BUILD, "I20130101-1000"); //$NON-NLS-1$
+        DB.store(v, createSample(SCENARIO_NAME_0, new long[] { 100, 200 }));
+
+        v.put(BUILD, "I20130102-1000"); //$NON-NLS-1$
+        Sample sample= createSample(SCENARIO_NAME_0, new long[] { 100, 200 });
+        Map overhead= new HashMap();
+        overhead.put(InternalDimensions.CPU_TIME, new Scalar(InternalDimensions.CPU_TIME, 10));
+        sample.setMeterOverhead(overhead);
+        System.setProperty("eclipse.perf.subtractOverhead", "true"); //$NON-NLS-1$ //$NON-NLS-2$
+        try {
+            DB.store(v, sample);
+        } finally {
+            System.getProperties().remove("eclipse.perf.subtractOverhead"); //$NON-NLS-1$
+        }
+
+        // the adjusted aggregates carry the overhead that was subtracted from them
+        StatisticsSession adjusted= new StatisticsSession(DB.queryDataPoints(v, SCENARIO_NAME_0, null));
+        assertEquals(140, adjusted.getAverage(InternalDimensions.CPU_TIME), 0);
+        assertEquals(10, adjusted.getMeterOverhead(InternalDimensions.CPU_TIME), 0);
+
+        v.put(BUILD, "I20130101-1000"); //$NON-NLS-1$
+        StatisticsSession raw= new StatisticsSession(DB.queryDataPoints(v, SCENARIO_NAME_0, null));
+        assertEquals(150, raw.getAverage(InternalDimensions.CPU_TIME), 0);
+        assertEquals(0, raw.getMeterOverhead(InternalDimensions.CPU_TIME), 0);
+    }
+
+    public void testFailureMessages() {
+
+        Variations v= new Variations();
+        v.put(CONFIG, "failures"); //$NON-NLS-1$
+        for (int i= 1; i <= 3; i++) {
+            v.put(BUILD, "I2013010" + i + "-1000"); //$NON-NLS-1$ //$NON-NLS-2$
+            Sample sample= createSample(SCENARIO_NAME_0, new long[] { 100 * i });
+            DB.store(v, sample);
+            if (i == 2)
+                DB.markAsFailed(v, sample, "too slow"); //$NON-NLS-1$
+        }
+
+        v.put(BUILD, "I%"); //$NON-NLS-1$
+        Scenario scenario= DB.queryScenarios(v, SCENARIO_NAME_0, BUILD, null)[0];
+        assertEquals(3, scenario.getTimeSeries(InternalDimensions.CPU_TIME).getLength());
+        String[] messages= scenario.getFailureMessages();
+        assertEquals(3, messages.length);
+        assertNull(messages[0]);
+        assertEquals("too slow", messages[1]); //$NON-NLS-1$
+        assertNull(messages[2]);
+    }
+
+    public void testBuildOrder() {
+
+        // stored in an order that is neither the time nor the name order
+        String[] builds= { "N20090612-2010", "arbitrary", "I20090611-0800", "3.5", "N20090610-2010" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+        Variations v= new Variations();
+        v.put(CONFIG, "order"); //$NON-NLS-1$
+        for (int i= 0; i < builds.length; i++) {
+            v.put(BUILD, builds[i]);
+            DB.store(v, createSample(SCENARIO_NAME_0, new long[] { 100 }));
+        }
+
+        // builds without a date first, by name, then by date and time
+        List buildNames= new ArrayList();
+        v.put(BUILD, "%"); //$NON-NLS-1$
+        DB.queryDistinctValues(buildNames, BUILD, v, "%"); //$NON-NLS-1$
+        assertEquals(Arrays.asList(new String[] { "3.5", "arbitrary", "N20090610-2010", "I20090611-0800", "N20090612-2010" }), buildNames); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+    }
+
+    public void testSummaryComments() {
+
+        Variations v= new Variations();
+        v.put(CONFIG, "comments"); //$NON-NLS-1$
+        v.put(BUILD, "b0001"); //$NON-NLS-1$
+        Dimension[] dims= { InternalDimensions.CPU_TIME };
+        String comment= "known degradation"; //$NON-NLS-1$
+        // both summaries refer to the same comment
+        for (int i= 0; i < 2; i++) {
+            Sample sample= createSample("comments.testScenario" + i, new long[] { 100 }); //$NON-NLS-1$
+            sample.tagAsSummary(false, "Commented" + i, dims, Performance.EXPLAINS_DEGRADATION_COMMENT, comment); //$NON-NLS-1$
+            DB.store(v, sample);
+        }
+        Sample sample= createSample("comments.testScenario2", new long[] { 100 }); //$NON-NLS-1$
+        sample.tagAsSummary(false, "Uncommented", dims, 0, null); //$NON-NLS-1$
+        DB.store(v, sample);
+
+        // the second query reads the comment from the cache
+        for (int n= 0; n < 2; n++) {
+            SummaryEntry[] entries= DB.querySummaries(v, "comments.%"); //$NON-NLS-1$
+            assertEquals(3, entries.length);
+            for (int i= 0; i < entries.length; i++) {
+                assertEquals(InternalDimensions.CPU_TIME, entries[i].dimension);
+                if (entries[i].scenarioName.endsWith("2")) { //$NON-NLS-1$
+                    assertEquals(0, entries[i].commentKind);
+                    assertNull(entries[i].comment);
+                } else {
+                    assertEquals(Performance.EXPLAINS_DEGRADATION_COMMENT, entries[i].commentKind);
+                    assertEquals(comment, entries[i].comment);
+                }
+            }
+        }
+    }
+
+    public void testWarmupIterations() {
+
+        Variations v= new Variations();
+        v.put(CONFIG, "warmup"); //$NON-NLS-1$
+        v.put(BUILD, "I20130101-1000"); //$NON-NLS-1$
+        DB.store(v, createSample(SCENARIO_NAME_0, new long[] { 100, 100 }));
+
+        v.put(BUILD, "I20130102-1000"); //$NON-NLS-1$
+        Sample sample= createSample(SCENARIO_NAME_0, new long[] { 500, 300, 100, 100 });
+        sample.discardWarmup(2);
+        DB.store(v, sample);
+
+        StatisticsSession stats= new StatisticsSession(DB.queryDataPoints(v, SCENARIO_NAME_0, null));
+        assertEquals(100, stats.getAverage(InternalDimensions.CPU_TIME), 0);
+        assertEquals(2, stats.getWarmupIterations(InternalDimensions.CPU_TIME));
+
+        v.put(BUILD, "I%"); //$NON-NLS-1$
+        long[] warmup= DB.queryScenarios(v, SCENARIO_NAME_0, BUILD, null)[0].getWarmupIterations();
+        assertEquals(2, warmup.length);
+        assertEquals(0, warmup[0]);
+        assertEquals(2, warmup[1]);
+    }
+
+    public void testRemoveVariation() throws SQLException {
+
+        String scenarioName= "foo.testRemovedScenario"; //$NON-NLS-1$
+        Variations v= new Variations();
+        v.put(CONFIG, "remove"); //$NON-NLS-1$
+        v.put(BUILD, "I20130101-1000"); //$NON-NLS-1$
+        DB.store(v, createSample(scenarioName, new long[] { 100 }));
+        DB.store(v, createSample(scenarioName, new long[] { 200 }));
+        assertEquals(1, DB.queryScenarioSummaries(v, scenarioName, BUILD, null).length);
+
+        Connection connection= DB.getConnection();
+        int variation_id= queryInt(connection, "select ID from VARIATION where KEYVALPAIRS = '" + v.toExactMatchString() + "'"); //$NON-NLS-1$ //$NON-NLS-2$
+        assertTrue(variation_id > 0);
+        new DBHelpers().removeSamples(v);
+
+        String[] tables= { "VARIATION_KEY", "SAMPLE", "SCENARIO_BUILD_SUMMARY" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        for (int i= 0; i < tables.length; i++)
+            assertEquals(tables[i], 0, queryInt(connection, "select count(*) from " + tables[i] + " where VARIATION_ID = " + variation_id)); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals(0, queryInt(connection, "select count(*) from VARIATION where ID = " + variation_id)); //$NON-NLS-1$
+        assertEquals(0, queryInt(connection, "select count(*) from SCENARIO where NAME = '" + scenarioName + "'")); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    public void testReferenceData() {
+
+        System.setProperty("eclipse.perf.config", CONFIG+"=reference;"+BUILD+"=run"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        System.setProperty("eclipse.perf.assertAgainst", BUILD+"=ref"); //$NON-NLS-1$ //$NON-NLS-2$
+        Variations ref= PerformanceTestPlugin.getAssertAgainst();
+        Dim[] dims= { InternalDimensions.CPU_TIME, InternalDimensions.WORKING_SET };
+        DB.store(ref, createSample(SCENARIO_NAME_0, new long[] { 100, 200 }, dims));
+
+        ReferenceChecker checker= new ReferenceChecker(new Dim[] { InternalDimensions.CPU_TIME });
+        assertEquals(150, evaluate(SCENARIO_NAME_0, checker), 0);
+
+        // later samples are not in the data read for the first scenario
+        DB.store(ref, createSample(SCENARIO_NAME_0, new long[] { 600 }, dims));
+        assertEquals(150, evaluate(SCENARIO_NAME_0, checker), 0);
+
+        // a scenario missing from that data is read on its own
+        DB.store(ref, createSample(SCENARIO_NAME_1, new long[] { 300 }));
+        assertEquals(300, evaluate(SCENARIO_NAME_1, checker), 0);
+
+        // checking another dimension reads the data again, the average of both samples' averages
+        checker= new ReferenceChecker(dims);
+        assertEquals(375, evaluate(SCENARIO_NAME_0, checker), 0);
+
+        // the reference may be a pattern
+        System.setProperty("eclipse.perf.assertAgainst", BUILD+"=re%"); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals(375, evaluate(SCENARIO_NAME_0, checker), 0);
+    }
+
+    /*
+     * Evaluates a measurement of the given scenario and returns the reference CPU time average.
+     */
+    private static double evaluate(String scenarioName, ReferenceChecker checker) {
+        TestPerformanceMeter pm= new TestPerformanceMeter(scenarioName);
+        pm.addPair(InternalDimensions.CPU_TIME, 0, 100);
+        pm.addPair(InternalDimensions.WORKING_SET, 0, 100);
+        pm.start();
+        pm.stop();
+        Evaluator evaluator= new Evaluator();
+        evaluator.setAssertCheckers(new AssertChecker[] { checker });
+        checker.fReferenceAverage= -1;
+        evaluator.evaluate(pm);
+        pm.dispose();
+        return checker.fReferenceAverage;
+    }
+
+    private static class ReferenceChecker extends AssertChecker {
+
+        double fReferenceAverage;
+
+        ReferenceChecker(Dim[] dimensions) {
+            super(dimensions);
+        }
+
+        public boolean test(StatisticsSession reference, StatisticsSession measured, StringBuffer message) {
+            fReferenceAverage= reference.getAverage(InternalDimensions.CPU_TIME);
+            return true;
+        }
+    }
+
+    private static int queryInt(Connection connection, String query) throws SQLException {
+        Statement stmt= connection.createStatement();
+        try {
+            ResultSet rs= stmt.executeQuery(query);
+            return rs.next() ? rs.getInt(1) : 0;
+        } finally {
+            stmt.close();
+        }
+    }
+
+    private static Sample createSample(String scenarioId, long[] cpuTimes) {
+        return createSample(scenarioId, cpuTimes, new Dim[] { InternalDimensions.CPU_TIME });
+    }
+
+    private static Sample createSample(String scenarioId, long[] values, Dim[] dims) {
+        DataPoint[] dataPoints= new DataPoint[2 * values.length];
+        for (int i= 0; i < values.length; i++) {
+            dataPoints[2 * i]= createDataPoint(InternalPerformanceMeter.BEFORE, 0, dims);
+            dataPoints[2 * i + 1]= createDataPoint(InternalPerformanceMeter.AFTER, values[i], dims);
+        }
+        return new Sample(scenarioId, System.currentTimeMillis(), new HashMap(), dataPoints);
+    }
+    
+    private static DataPoint createDataPoint(int step, long value, Dim[] dims) {
+        HashMap map= new HashMap();
+        for (int i= 0; i < dims.length; i++)
+            map.put(dims[i], new Scalar(dims[i], value));
+        return new DataPoint(step, map);
+    }
 }
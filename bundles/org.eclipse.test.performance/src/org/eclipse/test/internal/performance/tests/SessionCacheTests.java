@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test.internal.performance.tests;
+
+import java.io.File;
+
+import org.eclipse.test.internal.performance.InternalDimensions;
+import org.eclipse.test.internal.performance.data.DataPoint;
+import org.eclipse.test.internal.performance.db.SessionCache;
+
+import junit.framework.TestCase;
+
+public class SessionCacheTests extends TestCase {
+
+    private static final long[] STAMP= { 2, 10 };
+
+    private File fDirectory;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        fDirectory= new File("testDBs", "cache_" + System.currentTimeMillis()); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    protected void tearDown() throws Exception {
+        delete(fDirectory);
+        super.tearDown();
+    }
+
+    public void testStamp() {
+        SessionCache cache= new SessionCache(fDirectory, Long.MAX_VALUE);
+        cache.put("key", STAMP, createDataPoints()); //$NON-NLS-1$
+
+        DataPoint[] dataPoints= cache.get("key", new long[] { 2, 10 }); //$NON-NLS-1$
+        assertNotNull(dataPoints);
+        assertEquals(2, dataPoints.length);
+        assertEquals(1020, dataPoints[1].getScalar(InternalDimensions.CPU_TIME).getMagnitude());
+
+        // another sample was stored since
+        assertNull(cache.get("key", new long[] { 3, 11 })); //$NON-NLS-1$
+        // the last sample was replaced
+        assertNull(cache.get("key", new long[] { 2, 12 })); //$NON-NLS-1$
+    }
+
+    public void testKeyCollision() {
+        // same hash code and length
+        assertEquals("Aa".hashCode(), "BB".hashCode()); //$NON-NLS-1$ //$NON-NLS-2$
+
+        SessionCache cache= new SessionCache(fDirectory, Long.MAX_VALUE);
+        cache.put("Aa", STAMP, createDataPoints()); //$NON-NLS-1$
+        assertNull(cache.get("BB", STAMP)); //$NON-NLS-1$
+
+        cache.put("BB", STAMP, createDataPoints()); //$NON-NLS-1$
+        assertNotNull(cache.get("BB", STAMP)); //$NON-NLS-1$
+        assertNull(cache.get("Aa", STAMP)); //$NON-NLS-1$
+    }
+
+    public void testEviction() throws InterruptedException {
+        SessionCache sizer= new SessionCache(new File(fDirectory, "sizer"), Long.MAX_VALUE); //$NON-NLS-1$
+        sizer.put("k0", STAMP, createDataPoints()); //$NON-NLS-1$
+        long entrySize= sizer.getSize();
+
+        // room for two entries, evicting the least recently used down to 3/4 keeps two of three
+        SessionCache cache= new SessionCache(fDirectory, entrySize * 29 / 10);
+        cache.put("k1", STAMP, createDataPoints()); //$NON-NLS-1$
+        Thread.sleep(1100);
+        cache.put("k2", STAMP, createDataPoints()); //$NON-NLS-1$
+        Thread.sleep(1100);
+        assertNotNull(cache.get("k1", STAMP)); //$NON-NLS-1$
+        assertEquals(2 * entrySize, cache.getSize());
+
+        cache.put("k3", STAMP, createDataPoints()); //$NON-NLS-1$
+        assertEquals(2 * entrySize, cache.getSize());
+        assertNull(cache.get("k2", STAMP)); //$NON-NLS-1$
+        assertNotNull(cache.get("k1", STAMP)); //$NON-NLS-1$
+        assertNotNull(cache.get("k3", STAMP)); //$NON-NLS-1$
+    }
+
+    private static void delete(File file) {
+        File[] files= file.listFiles();
+        for (int i= 0; files != null && i < files.length; i++)
+            delete(files[i]);
+        file.delete();
+    }
+
+    private static DataPoint[] createDataPoints() {
+        return StatisticsSessionTests.createDataPoints(new long[] { 20 });
+    }
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test.internal.performance.tests;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.test.internal.performance.InternalDimensions;
+import org.eclipse.test.internal.performance.InternalPerformanceMeter;
+import org.eclipse.test.internal.performance.data.DataPoint;
+import org.eclipse.test.internal.performance.data.Dim;
+import org.eclipse.test.internal.performance.data.Sample;
+import org.eclipse.test.internal.performance.data.Scalar;
+import org.eclipse.test.internal.performance.eval.StatisticsSession;
+import org.eclipse.test.internal.performance.eval.StatisticsUtil;
+import org.eclipse.test.performance.Performance;
+
+import junit.framework.TestCase;
+
+public class StatisticsSessionTests extends TestCase {
+
+    private static final Dim DIM= InternalDimensions.CPU_TIME;
+
+    public void testMeasurements() {
+        StatisticsSession s= new StatisticsSession(createDataPoints(new long[] { 100, 110, 120 }));
+        assertEquals(3, s.getCount(DIM));
+        assertEquals(110.0, s.getAverage(DIM), 0.0);
+        assertEquals(10.0, s.getStddev(DIM), 0.0);
+    }
+
+    public void testOverheadSubtraction() {
+        Map overhead= new HashMap();
+        overhead.put(DIM, new Scalar(DIM, 10));
+        StatisticsSession s= new StatisticsSession(createDataPoints(new long[] { 100, 110, 120 }), overhead);
+        assertEquals(3, s.getCount(DIM));
+        assertEquals(100.0, s.getAverage(DIM), 0.0);
+        assertEquals(10.0, s.getStddev(DIM), 0.0);
+        assertEquals(10.0, s.getMeterOverhead(DIM), 0.0);
+    }
+
+    public void testWarmupDetection() {
+        long[] values= { 500, 300, 200, 101, 100, 99, 100, 101, 100 };
+        assertEquals(3, StatisticsUtil.getWarmupIterations(values, 5, 0.05));
+        assertEquals(-1, StatisticsUtil.getWarmupIterations(new long[] { 500, 300, 200, 101 }, 5, 0.05));
+
+        Sample sample= new Sample(createDataPoints(values));
+        sample.discardWarmup(3);
+        assertEquals(3, sample.getWarmupIterations());
+        StatisticsSession s= new StatisticsSession(sample.getDataPoints());
+        assertEquals(6, s.getCount(DIM));
+        assertEquals(100.0, s.getAverage(DIM), 0.5);
+    }
+
+    public void testMeasureAdaptively() {
+        TestPerformanceMeter pm= new TestPerformanceMeter("bar.testAdaptive"); //$NON-NLS-1$
+        pm.addPair(DIM, 100, 1000);
+        final int[] runs= new int[1];
+        Runnable block= new Runnable() {
+            public void run() {
+                runs[0]++;
+            }
+        };
+        int iterations= Performance.getDefault().measureAdaptively(pm, block, 5, 10000);
+        assertEquals(InternalPerformanceMeter.MIN_CONFIDENCE_ITERATIONS, iterations);
+        assertEquals(iterations, runs[0]);
+        assertEquals(0.0, pm.getRelativeConfidenceIntervalHalfWidth(), 0.0);
+        pm.dispose();
+    }
+
+    public void testMeasureAdaptivelyNoisy() {
+        final TestPerformanceMeter pm= new TestPerformanceMeter("bar.testAdaptiveNoisy"); //$NON-NLS-1$
+        pm.addPair(DIM, 0, 100);
+        final int[] runs= new int[1];
+        Runnable block= new Runnable() {
+            public void run() {
+                // alternates between 100 and 300, the interval never gets within 1%
+                runs[0]++;
+                pm.addPair(DIM, 0, runs[0] % 2 == 0 ? 100 : 300);
+            }
+        };
+        // the cap ends the loop
+        int iterations= Performance.getDefault().measureAdaptively(pm, block, 1, 60000, 50);
+        assertEquals(50, iterations);
+        assertEquals(50, pm.getIterationCount());
+        assertTrue(pm.getRelativeConfidenceIntervalHalfWidth() > 0.01);
+        pm.dispose();
+
+        // the budget ends the loop
+        final TestPerformanceMeter pm2= new TestPerformanceMeter("bar.testAdaptiveBudget"); //$NON-NLS-1$
+        pm2.addPair(DIM, 0, 100);
+        runs[0]= 0;
+        block= new Runnable() {
+            public void run() {
+                runs[0]++;
+                pm2.addPair(DIM, 0, runs[0] % 2 == 0 ? 100 : 300);
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    // measure anyway
+                }
+            }
+        };
+        iterations= Performance.getDefault().measureAdaptively(pm2, block, 1, 200, 1000);
+        assertTrue(iterations >= InternalPerformanceMeter.MIN_CONFIDENCE_ITERATIONS);
+        assertTrue(iterations < 1000);
+        pm2.dispose();
+    }
+
+    static DataPoint[] createDataPoints(long[] deltas) {
+        DataPoint[] dataPoints= new DataPoint[2 * deltas.length];
+        long time= 1000;
+        for (int i= 0; i < deltas.length; i++) {
+            dataPoints[2 * i]= createDataPoint(InternalPerformanceMeter.BEFORE, time);
+            time+= deltas[i];
+            dataPoints[2 * i + 1]= createDataPoint(InternalPerformanceMeter.AFTER, time);
+            time+= 7;
+        }
+        return dataPoints;
+    }
+
+    private static DataPoint createDataPoint(int step, long value) {
+        Map map= new HashMap();
+        map.put(DIM, new Scalar(DIM, value));
+        return new DataPoint(step, map);
+    }
+}
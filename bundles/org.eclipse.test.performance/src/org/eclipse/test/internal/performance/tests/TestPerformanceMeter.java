@@ -67,13 +67,13 @@ class TestPerformanceMeter extends InternalPerformanceMeter {
 	 * @see org.eclipse.test.performance.PerformanceMeter#start()
 	 */
 	public void start() {
-	    fDataPoints.add(new DataPoint(BEFORE, fStart));
+	    fDataPoints.add(new DataPoint(BEFORE, new HashMap(fStart)));
 	}
 		
     /*
 	 * @see org.eclipse.test.performance.PerformanceMeter#stop()
 	 */
 	public void stop() {
-	    fDataPoints.add(new DataPoint(AFTER, fStop));
+	    fDataPoints.add(new DataPoint(AFTER, new HashMap(fStop)));
 	}
 }
@@ -10,6 +10,9 @@
  *******************************************************************************/
 package org.eclipse.test.internal.performance.tests;
 
+import java.util.Map;
+
+import org.eclipse.test.internal.performance.db.VariationKey;
 import org.eclipse.test.internal.performance.db.Variations;
 
 import junit.framework.TestCase;
@@ -60,6 +63,64 @@ public class VariationsTests extends TestCase {
         assertEquals(v3, v);
     }
     
+    public void testVariationKey() {
+        Variations v1= new Variations("k2=bar;k1=foo"); //$NON-NLS-1$
+        VariationKey key= v1.toKey();
+        assertSame(key, v1.toKey());
+        assertEquals("|k1=foo||k2=bar|", key.toExactMatchString()); //$NON-NLS-1$
+        assertEquals("%|k1=foo|%|k2=bar|%", key.toQueryPattern()); //$NON-NLS-1$
+        assertEquals("k1", key.getKey(0)); //$NON-NLS-1$
+        assertEquals("bar", key.getValue("k2")); //$NON-NLS-1$ //$NON-NLS-2$
+        assertNull(key.getValue("k3")); //$NON-NLS-1$
+        
+        // equal variations share their key
+        Variations v2= new Variations("k1=foo;k2=bar"); //$NON-NLS-1$
+        assertSame(key, v2.toKey());
+        assertSame(key, VariationKey.parseDB(key.toExactMatchString()));
+        
+        // modifications invalidate the key, clones start with the same key
+        Variations v3= (Variations) v2.clone();
+        assertSame(key, v3.toKey());
+        v3.put("k3", "xyz"); //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals("|k1=foo||k2=bar||k3=xyz|", v3.toExactMatchString()); //$NON-NLS-1$
+        v3.remove("k1"); //$NON-NLS-1$
+        assertEquals("|k2=bar||k3=xyz|", v3.toExactMatchString()); //$NON-NLS-1$
+        assertSame(key, v2.toKey());
+        
+        // storing the same values keeps the key
+        v2.put("k1", "foo"); //$NON-NLS-1$ //$NON-NLS-2$
+        v2.putAll(new Variations("k2=bar")); //$NON-NLS-1$
+        v2.remove("k3"); //$NON-NLS-1$
+        assertSame(key, v2.toKey());
+        v2.putAll(new Variations("k2=baz")); //$NON-NLS-1$
+        assertEquals("|k1=foo||k2=baz|", v2.toExactMatchString()); //$NON-NLS-1$
+    }
+    
+    public void testUnmodifiableViews() {
+        Variations v= new Variations("k1=foo;k2=bar"); //$NON-NLS-1$
+        String exact= v.toExactMatchString();
+        try {
+            v.keySet().remove("k1"); //$NON-NLS-1$
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            v.values().clear();
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            ((Map.Entry) v.entrySet().iterator().next()).setValue("xyz"); //$NON-NLS-1$
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        assertEquals(exact, v.toExactMatchString());
+        assertEquals(v, new Variations("k2=bar;k1=foo")); //$NON-NLS-1$
+    }
+    
 //    public void testMaxLength() {
 //        StringBuffer sb= new StringBuffer();
 //        for (int i= 0; i < 1000; i++)
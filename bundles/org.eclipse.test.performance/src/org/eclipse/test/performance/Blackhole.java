@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test.performance;
+
+/**
+ * A <code>Blackhole</code> consumes the results of a benchmark operation so
+ * that the virtual machine cannot eliminate the computation that produced them.
+ * <p>
+ * A benchmark method receives a <code>Blackhole</code> by declaring it as its
+ * only parameter. Values returned from a benchmark method are consumed automatically.
+ * <pre>
+ * public void benchHashCode(Blackhole blackhole) {
+ * 	blackhole.consume(fString.hashCode());
+ * }
+ * </pre>
+ * </p>
+ * This class is not intended to be subclassed or instantiated by clients.
+ *
+ * @since 3.9
+ */
+public final class Blackhole {
+
+	private volatile Object fObject;
+	private volatile long fLong;
+	private volatile double fDouble;
+
+	/**
+	 * Creates a new blackhole. Not intended to be called by clients.
+	 */
+	public Blackhole() {
+		super();
+	}
+
+	/**
+	 * Consumes the given object.
+	 *
+	 * @param object the object to consume
+	 */
+	public void consume(Object object) {
+		fObject= object;
+	}
+
+	/**
+	 * Consumes the given value.
+	 *
+	 * @param value the value to consume
+	 */
+	public void consume(boolean value) {
+		fLong^= value ? 1 : 0;
+	}
+
+	/**
+	 * Consumes the given value.
+	 *
+	 * @param value the value to consume
+	 */
+	public void consume(int value) {
+		fLong^= value;
+	}
+
+	/**
+	 * Consumes the given value.
+	 *
+	 * @param value the value to consume
+	 */
+	public void consume(long value) {
+		fLong^= value;
+	}
+
+	/**
+	 * Consumes the given value.
+	 *
+	 * @param value the value to consume
+	 */
+	public void consume(double value) {
+		fDouble+= value;
+	}
+}
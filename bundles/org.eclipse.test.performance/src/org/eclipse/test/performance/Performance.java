@@ -291,6 +291,92 @@ public class Performance {
 	    }
 	}
 
+	/**
+	 * Returns whether the given performance meter needs no further measurements,
+	 * either because the measured iterations have reached a steady state or because
+	 * <code>maxIterations</code> iterations have been measured. Calling this method
+	 * also makes the meter discard the iterations measured before the steady state
+	 * when it is committed.
+	 * <p>
+	 * Performance meters that cannot detect a steady state always answer <code>true</code>.
+	 * </p>
+	 * 
+	 * @param pm the PerformanceMeter
+	 * @param maxIterations the maximum number of start/stop pairs to measure
+	 * @return <code>true</code> if no further measurements are needed
+	 */
+	public boolean isSteadyState(PerformanceMeter pm, int maxIterations) {
+	    if (pm instanceof InternalPerformanceMeter) {
+	        InternalPerformanceMeter ipm= (InternalPerformanceMeter) pm;
+	        ipm.setDiscardWarmup(true);
+	        return ipm.getIterationCount() >= maxIterations || ipm.isSteadyState();
+	    }
+	    return true;
+	}
+
+	/**
+	 * The maximum number of iterations of {@link #measureAdaptively(PerformanceMeter, Runnable, double, long)}.
+	 */
+	public static final int DEFAULT_MAX_ADAPTIVE_ITERATIONS= 1000;
+
+	/**
+	 * Repeatedly measures the given block with the given performance meter until
+	 * the 95% confidence interval of the mean is narrower than &plusmn;<code>targetPercentage</code>
+	 * percent of the mean, or until the time budget is used up. Noisy operations are
+	 * thereby measured more often than stable ones. The block is run at least
+	 * three times and at most {@link #DEFAULT_MAX_ADAPTIVE_ITERATIONS} times.
+	 * <p>
+	 * Performance meters that cannot compute a confidence interval run the block once.
+	 * </p>
+	 * 
+	 * @param pm the PerformanceMeter
+	 * @param block the operation to measure
+	 * @param targetPercentage the target half-width of the confidence interval in percent of the mean
+	 * @param timeBudget the maximum time in milliseconds to spend measuring
+	 * @return the number of times the block was run
+	 */
+	public int measureAdaptively(PerformanceMeter pm, Runnable block, double targetPercentage, long timeBudget) {
+	    return measureAdaptively(pm, block, targetPercentage, timeBudget, DEFAULT_MAX_ADAPTIVE_ITERATIONS);
+	}
+
+	/**
+	 * Like {@link #measureAdaptively(PerformanceMeter, Runnable, double, long)}, but
+	 * runs the block at most <code>maxIterations</code> times. The confidence interval
+	 * is computed over all iterations, so it is checked after a growing number of
+	 * iterations, about every tenth, to keep the cost of the checks linear.
+	 * 
+	 * @param pm the PerformanceMeter
+	 * @param block the operation to measure
+	 * @param targetPercentage the target half-width of the confidence interval in percent of the mean
+	 * @param timeBudget the maximum time in milliseconds to spend measuring
+	 * @param maxIterations the maximum number of times to run the block
+	 * @return the number of times the block was run
+	 */
+	public int measureAdaptively(PerformanceMeter pm, Runnable block, double targetPercentage, long timeBudget, int maxIterations) {
+	    long deadline= System.currentTimeMillis() + timeBudget;
+	    int minIterations= Math.min(InternalPerformanceMeter.MIN_CONFIDENCE_ITERATIONS, maxIterations);
+	    int iterations= 0;
+	    int nextCheck= InternalPerformanceMeter.MIN_CONFIDENCE_ITERATIONS;
+	    while (true) {
+	        pm.start();
+	        block.run();
+	        pm.stop();
+	        iterations++;
+
+	        if (!(pm instanceof InternalPerformanceMeter) || iterations >= maxIterations)
+	            break;
+	        if (System.currentTimeMillis() >= deadline && iterations >= minIterations)
+	            break;
+	        if (iterations < nextCheck)
+	            continue;
+	        nextCheck= iterations + Math.max(1, iterations / 10);
+	        InternalPerformanceMeter ipm= (InternalPerformanceMeter) pm;
+	        if (ipm.getRelativeConfidenceIntervalHalfWidth() * 100 <= targetPercentage)
+	            break;
+	    }
+	    return iterations;
+	}
+
 	/**
 	 * Set a comment for the scenario represented by the given PerformanceMeter.
 	 * Currently only comments with a commentKind of EXPLAINS_DEGRADATION_COMMENT are used.
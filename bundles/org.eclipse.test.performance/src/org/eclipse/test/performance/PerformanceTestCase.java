@@ -158,6 +158,63 @@ public class PerformanceTestCase extends TestCase {
 		fPerformanceMeter.stop();
 	}
 	
+	/**
+	 * Called from within a test case after {@link PerformanceTestCase#stopMeasuring()}
+	 * to run the measured operation until its performance is stable.
+	 * Iterations measured before the steady state was reached are not included
+	 * in the committed measurements.
+	 * <p>
+	 * Here is an example:
+	 * <pre>
+	 * do {
+	 *   startMeasuring();
+	 *   // my operation
+	 *   stopMeasuring();
+	 * } while (!isSteadyState(50));
+	 * commitMeasurements();
+	 * </pre>
+	 * </p>
+	 * 
+	 * @param maxIterations the maximum number of measurements to take
+	 * @return <code>true</code> if the measurements are stable or <code>maxIterations</code>
+	 *         measurements have been taken
+	 * @see Performance#isSteadyState(PerformanceMeter, int)
+	 */
+	protected boolean isSteadyState(int maxIterations) {
+		return Performance.getDefault().isSteadyState(fPerformanceMeter, maxIterations);
+	}
+	
+	/**
+	 * Called from within a test case to measure the given operation until the
+	 * confidence interval of its mean is narrower than &plusmn;<code>targetPercentage</code>
+	 * percent, or until <code>timeBudget</code> milliseconds have passed.
+	 * Must be followed by a call to {@link PerformanceTestCase#commitMeasurements()}.
+	 * 
+	 * @param block the operation to measure
+	 * @param targetPercentage the target half-width of the confidence interval in percent of the mean
+	 * @param timeBudget the maximum time in milliseconds to spend measuring
+	 * @return the number of times the operation was measured
+	 * @see Performance#measureAdaptively(PerformanceMeter, Runnable, double, long)
+	 */
+	protected int measureAdaptively(Runnable block, double targetPercentage, long timeBudget) {
+		return Performance.getDefault().measureAdaptively(fPerformanceMeter, block, targetPercentage, timeBudget);
+	}
+	
+	/**
+	 * Like {@link #measureAdaptively(Runnable, double, long)}, but measures the
+	 * operation at most <code>maxIterations</code> times.
+	 * 
+	 * @param block the operation to measure
+	 * @param targetPercentage the target half-width of the confidence interval in percent of the mean
+	 * @param timeBudget the maximum time in milliseconds to spend measuring
+	 * @param maxIterations the maximum number of times to measure the operation
+	 * @return the number of times the operation was measured
+	 * @see Performance#measureAdaptively(PerformanceMeter, Runnable, double, long, int)
+	 */
+	protected int measureAdaptively(Runnable block, double targetPercentage, long timeBudget, int maxIterations) {
+		return Performance.getDefault().measureAdaptively(fPerformanceMeter, block, targetPercentage, timeBudget, maxIterations);
+	}
+	
 	/**
 	 * Called exactly once after repeated measurements are done and before
 	 * their analysis. Afterwards {@link PerformanceTestCase#startMeasuring()} and
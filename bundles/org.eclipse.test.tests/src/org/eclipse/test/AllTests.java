@@ -0,0 +1,30 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * The tests of org.eclipse.test. They are in the package of the classes they
+ * test, most of which are not public.
+ */
+public class AllTests {
+
+	public static Test suite() {
+		TestSuite suite = new TestSuite("Automated Testing plugin tests");
+		suite.addTestSuite(RegressionTestTests.class);
+		suite.addTestSuite(TestHistoryTests.class);
+		suite.addTestSuite(CoverageMapTests.class);
+		suite.addTestSuite(TestResultAggregatorTests.class);
+		return suite;
+	}
+}
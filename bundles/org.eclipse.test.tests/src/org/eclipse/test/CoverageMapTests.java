@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class CoverageMapTests extends TestCase {
+
+	public static class Sample extends TestCase {
+		public Sample(String name) {
+			super(name);
+		}
+
+		public void testCore() {
+			// only filtered
+		}
+
+		public void testUi() {
+			// only filtered
+		}
+
+		public void testUncovered() {
+			// only filtered
+		}
+	}
+
+	private static final String CORE_SUITE = "tests.CoreSuite";
+	private static final String UI_SUITE = "tests.UiSuite";
+
+	private File fFile;
+	private CoverageMap fMap;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		fFile = File.createTempFile("coveragemap", ".txt");
+		String test = Sample.class.getName() + '#';
+		Writer writer = new OutputStreamWriter(new FileOutputStream(fFile), "UTF-8");
+		try {
+			writer.write("# org.eclipse.test coverage map 1\n"
+					+ "B\tb.core\n"
+					+ "B\tb.ui\n"
+					+ "B\tb.tests\n"
+					+ "C\torg.eclipse.core.Foo\t0\n"
+					+ "C\torg.eclipse.core.Bar\t0\n"
+					+ "C\torg.eclipse.ui.View\t1\n"
+					+ "C\torg.other.Helper\t-1\n"
+					+ "S\t" + CORE_SUITE + "\tb.tests\t3\n"
+					+ "T\t" + test + "testCore\t0\n"
+					+ "T\t" + test + "testUi\t1,2\n"
+					+ "S\t" + UI_SUITE + "\tb.tests\t\n"
+					+ "T\t" + test + "testUi\t2\n");
+		} finally {
+			writer.close();
+		}
+		fMap = new CoverageMap(fFile);
+		fMap.load();
+	}
+
+	protected void tearDown() throws Exception {
+		fFile.delete();
+		super.tearDown();
+	}
+
+	public void testChangedClass() {
+		CoverageMap.Selection selection = select(new String[] { "org.eclipse.core.Foo" }, new String[0]);
+		assertTrue(selection.isAffected(CORE_SUITE, "b.tests"));
+		assertFalse(selection.isAffected(UI_SUITE, "b.tests"));
+		// tests without coverage still run
+		assertEquals("testCore, testUncovered", filter(selection, CORE_SUITE));
+	}
+
+	public void testClassNames() {
+		String[] names = { "src/org/eclipse/core/Bar.java",
+				"bin\\org\\eclipse\\core\\Bar$1.class", "org.eclipse.core.Bar$Inner" };
+		for (int i = 0; i < names.length; i++) {
+			CoverageMap.Selection selection = select(new String[] { names[i] }, new String[0]);
+			assertTrue(names[i], selection.isAffected(CORE_SUITE, "b.tests"));
+			assertFalse(names[i], selection.isAffected(UI_SUITE, "b.tests"));
+			assertEquals(names[i], "testUi, testUncovered", filter(selection, CORE_SUITE));
+		}
+	}
+
+	public void testUnknownClassOfKnownPackage() {
+		// counts as a change of the bundle of the other classes of the package
+		CoverageMap.Selection selection = select(new String[] { "org.eclipse.ui.NewView" }, new String[0]);
+		assertTrue(selection.isAffected(CORE_SUITE, "b.tests"));
+		assertTrue(selection.isAffected(UI_SUITE, "b.tests"));
+		assertEquals("testUi, testUncovered", filter(selection, CORE_SUITE));
+	}
+
+	public void testUnknownClass() {
+		// a package of classes without bundle does not help
+		String[] names = { "com.acme.Unknown", "org.other.Helper2" };
+		for (int i = 0; i < names.length; i++) {
+			CoverageMap.Selection selection = select(new String[] { names[i] }, new String[0]);
+			assertTrue(names[i], selection.isAffected(UI_SUITE, "b.tests"));
+			assertEquals(names[i], "testCore, testUi, testUncovered", filter(selection, CORE_SUITE));
+		}
+	}
+
+	public void testChangedBundles() {
+		CoverageMap.Selection selection = select(new String[0], new String[] { "b.ui" });
+		assertTrue(selection.isAffected(CORE_SUITE, "b.tests"));
+		assertTrue(selection.isAffected(UI_SUITE, "b.tests"));
+		assertEquals("testUi, testUncovered", filter(selection, CORE_SUITE));
+
+		// the bundle of a suite runs it as a whole
+		selection = select(new String[0], new String[] { "b.tests" });
+		assertEquals("testCore, testUi, testUncovered", filter(selection, CORE_SUITE));
+
+		// a bundle that was not installed when the map was recorded
+		selection = select(new String[0], new String[] { "b.new" });
+		assertTrue(selection.isAffected(UI_SUITE, "b.tests"));
+		assertEquals("testCore, testUi, testUncovered", filter(selection, CORE_SUITE));
+	}
+
+	public void testUnknownSuite() {
+		CoverageMap.Selection selection = select(new String[] { "org.eclipse.core.Foo" }, new String[0]);
+		assertTrue(selection.isAffected("tests.NewSuite", null));
+		Test test = new Sample("testCore");
+		assertSame(test, selection.filter("tests.NewSuite", null, test));
+	}
+
+	public void testParseChanges() throws IOException {
+		assertEquals(Collections.EMPTY_LIST, CoverageMap.parseChanges(null));
+		assertEquals(Arrays.asList(new String[] { "a", "b" }), CoverageMap.parseChanges(" a,,b "));
+		File file = File.createTempFile("changes", ".txt");
+		try {
+			Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+			try {
+				writer.write("# changed\nsrc/a/B.java\n\n c.D \n");
+			} finally {
+				writer.close();
+			}
+			List<String> changes = CoverageMap.parseChanges("@" + file.getPath());
+			assertEquals(Arrays.asList(new String[] { "src/a/B.java", "c.D" }), changes);
+		} finally {
+			file.delete();
+		}
+	}
+
+	private CoverageMap.Selection select(String[] classes, String[] bundles) {
+		return fMap.select(Arrays.asList(classes), Arrays.asList(bundles));
+	}
+
+	private static String filter(CoverageMap.Selection selection, String suiteName) {
+		TestSuite suite = new TestSuite(suiteName);
+		suite.addTest(new Sample("testCore"));
+		suite.addTest(new Sample("testUi"));
+		suite.addTest(new Sample("testUncovered"));
+		TestSuite filtered = (TestSuite) selection.filter(suiteName, "b.tests", suite);
+		StringBuilder sb = new StringBuilder();
+		for (Enumeration<?> e = filtered.tests(); e.hasMoreElements();) {
+			if (sb.length() > 0)
+				sb.append(", ");
+			sb.append(((TestCase) e.nextElement()).getName());
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class RegressionTestTests extends TestCase {
+
+	private final List<File> fFiles = new ArrayList<File>();
+
+	protected void tearDown() throws Exception {
+		for (File file : fFiles)
+			file.delete();
+		super.tearDown();
+	}
+
+	public void testChunkSorted() throws IOException {
+		List<String> tests = new ArrayList<String>();
+		for (int i = 0; i < 50; i++)
+			tests.add("test" + (1000 + i) + (i % 3 == 0 ? " fail" : " pass"));
+		File sorted = write(tests);
+		Collections.shuffle(tests, new Random(4711));
+		File shuffled = write(tests);
+
+		assertTrue(RegressionTest.isSorted(sorted.getPath()));
+		assertFalse(RegressionTest.isSorted(shuffled.getPath()));
+		List<String> expected = read(RegressionTest.openSorted(sorted.getPath()));
+		assertEquals(50, expected.size());
+		// 8 chunks, the last one shorter
+		assertEquals(expected, read(RegressionTest.openSorted(shuffled.getPath(), 7)));
+		assertEquals(expected, read(RegressionTest.openSorted(shuffled.getPath(), 1)));
+		assertEquals(expected, read(RegressionTest.openSorted(shuffled.getPath())));
+	}
+
+	public void testRegressionsOfUnsortedFiles() throws IOException {
+		List<String> oldTests = new ArrayList<String>();
+		List<String> newTests = new ArrayList<String>();
+		for (int i = 0; i < 30; i++) {
+			if (i != 5)
+				oldTests.add("test" + (100 + i) + " pass");
+			if (i != 7)
+				newTests.add("test" + (100 + i) + (i == 9 ? " fail" : " pass"));
+		}
+		String sortedResult = regressions(write(oldTests), write(newTests));
+		Collections.shuffle(oldTests, new Random(1));
+		Collections.shuffle(newTests, new Random(2));
+		assertEquals(sortedResult, regressions(write(oldTests), write(newTests)));
+		assertEquals(RegressionTest.testAdded(new String[] { "test105", "pass" }) + "\n"
+				+ RegressionTest.testNotRun(new String[] { "test107", "pass" }) + "\n"
+				+ RegressionTest.testChanged(new String[] { "test109", "fail" }) + "\n",
+				sortedResult);
+	}
+
+	public void testNothingChanged() throws IOException {
+		List<String> tests = new ArrayList<String>();
+		tests.add("b pass");
+		tests.add("a fail");
+		File file = write(tests);
+		assertEquals(RegressionTest.NOTHING_CHANGED_MSG + "\n", regressions(file, file));
+		assertEquals(RegressionTest.NOTHING_CHANGED_MSG + "\n", firstDivergence(file, file));
+	}
+
+	public void testFirstDivergence() throws IOException {
+		List<String> oldTests = new ArrayList<String>();
+		oldTests.add("c pass");
+		oldTests.add("a pass");
+		oldTests.add("b pass");
+		List<String> newTests = new ArrayList<String>(oldTests);
+		newTests.set(1, "a fail");
+		// the files are compared in their order, not by name
+		assertEquals(RegressionTest.firstDivergence(1, new String[] { "a", "pass" },
+				new String[] { "a", "fail" }) + "\n",
+				firstDivergence(write(oldTests), write(newTests)));
+
+		newTests = oldTests.subList(0, 2);
+		String result = firstDivergence(write(oldTests), write(newTests));
+		assertEquals("First divergence at test 3: b, pass -> end of file\n", result);
+	}
+
+	private File write(List<String> lines) throws IOException {
+		File file = File.createTempFile("regressiontest", ".txt");
+		fFiles.add(file);
+		Writer writer = new FileWriter(file);
+		try {
+			for (String line : lines)
+				writer.write(line + '\n');
+		} finally {
+			writer.close();
+		}
+		return file;
+	}
+
+	private static List<String> read(RegressionTest.TestSource source) throws IOException {
+		List<String> tests = new ArrayList<String>();
+		try {
+			String[] test;
+			while ((test = source.next()) != null)
+				tests.add(test[0] + ' ' + test[1]);
+		} finally {
+			source.close();
+		}
+		return tests;
+	}
+
+	private String regressions(File oldFile, File newFile) throws IOException {
+		File out = File.createTempFile("regressiontest", ".out");
+		fFiles.add(out);
+		new RegressionTest(oldFile.getPath(), newFile.getPath(), out.getPath())
+				.testRegressions();
+		return readOutput(out);
+	}
+
+	private String firstDivergence(File oldFile, File newFile) throws IOException {
+		File out = File.createTempFile("regressiontest", ".out");
+		fFiles.add(out);
+		new RegressionTest(oldFile.getPath(), newFile.getPath(), out.getPath())
+				.testFirstDivergence();
+		return readOutput(out);
+	}
+
+	private static String readOutput(File file) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null)
+				sb.append(line).append('\n');
+		} finally {
+			reader.close();
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Enumeration;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class TestHistoryTests extends TestCase {
+
+	public static class Sample extends TestCase {
+		public Sample(String name) {
+			super(name);
+		}
+
+		public void testSlow() {
+			// only reordered
+		}
+
+		public void testFast() {
+			// only reordered
+		}
+
+		public void testFailed() {
+			// only reordered
+		}
+
+		public void testNew() {
+			// only reordered
+		}
+	}
+
+	private File fFile;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		fFile = File.createTempFile("testhistory", ".txt");
+	}
+
+	protected void tearDown() throws Exception {
+		fFile.delete();
+		super.tearDown();
+	}
+
+	public void testLoadVersions() throws IOException {
+		write("# org.eclipse.test history 1\n"
+				+ "a.Suite\t100\t0\t0\n"
+				+ "# org.eclipse.test history 2\n"
+				+ "b.Suite\t300\t1\t42\t100,200,300\n"
+				+ "b.Suite#testX\tinvalid\t0\t0\n"
+				+ "c.Suite\t1\t0\n");
+		TestHistory history = new TestHistory(fFile);
+		history.load();
+
+		TestHistory.Entry a = history.get("a.Suite");
+		assertEquals(100, a.fDuration);
+		assertFalse(a.hasFailed());
+		// version 1 lines have no recent durations, the last one stands in
+		assertEquals(1, a.fRecent.length);
+		assertEquals(100, a.fRecent[0]);
+
+		TestHistory.Entry b = history.get("b.Suite");
+		assertEquals(300, b.fDuration);
+		assertEquals(TestHistory.FAILED, b.fOutcome);
+		assertEquals(42, b.fLastFailure);
+		assertTrue(Arrays.equals(new long[] { 100, 200, 300 }, b.fRecent));
+		assertEquals(200, history.getPercentile("b.Suite", 50));
+		assertEquals(300, history.getPercentile("b.Suite", 99));
+
+		assertNull(history.get("b.Suite#testX"));
+		assertNull(history.get("c.Suite"));
+		assertEquals(-1, history.getPercentile("c.Suite", 99));
+	}
+
+	public void testSaveAndLoad() {
+		TestHistory history = new TestHistory(fFile);
+		for (int i = 1; i <= 25; i++)
+			history.put("a.Suite", i, TestHistory.PASSED, i);
+		history.put("a.Suite#testX", 5, TestHistory.ERROR, 7);
+		history.save();
+
+		TestHistory loaded = new TestHistory(fFile);
+		loaded.load();
+		TestHistory.Entry a = loaded.get("a.Suite");
+		assertEquals(25, a.fDuration);
+		assertEquals(0, a.fLastFailure);
+		// only the last 20 durations are kept
+		assertEquals(20, a.fRecent.length);
+		assertEquals(6, a.fRecent[0]);
+		assertEquals(25, a.fRecent[19]);
+		TestHistory.Entry x = loaded.get("a.Suite#testX");
+		assertEquals(TestHistory.ERROR, x.fOutcome);
+		assertEquals(7, x.fLastFailure);
+	}
+
+	public void testOrder() {
+		TestHistory history = new TestHistory(fFile);
+		history.put("Slow", 500, TestHistory.PASSED, 0);
+		history.put("Fast", 10, TestHistory.PASSED, 0);
+		history.put("Failed", 1000, TestHistory.FAILED, 0);
+		String[] suites = { "Slow", "Fast", "New", "Failed" };
+		int[] order = history.order(suites);
+		// failed first, then unknown and from the fastest to the slowest
+		assertTrue(Arrays.equals(new int[] { 3, 2, 1, 0 }, order));
+		assertEquals(10, history.getExpectedDuration("Fast", -1));
+		assertEquals(-1, history.getExpectedDuration("New", -1));
+	}
+
+	public void testReorder() {
+		TestHistory history = new TestHistory(fFile);
+		String prefix = Sample.class.getName() + '#';
+		history.put(prefix + "testSlow", 500, TestHistory.PASSED, 0);
+		history.put(prefix + "testFast", 10, TestHistory.PASSED, 0);
+		history.put(prefix + "testFailed", 1000, TestHistory.ERROR, 0);
+
+		TestSuite suite = new TestSuite("all");
+		suite.addTest(new Sample("testSlow"));
+		suite.addTest(new Sample("testFast"));
+		suite.addTest(new Sample("testFailed"));
+		suite.addTest(new Sample("testNew"));
+		// subclasses of TestSuite keep their order
+		TestSuite nested = new TestSuite("nested") {
+			// a subclass
+		};
+		nested.addTest(new Sample("testSlow"));
+		nested.addTest(new Sample("testFast"));
+		suite.addTest(nested);
+
+		Test reordered = history.reorder(suite);
+		assertNotSame(suite, reordered);
+		assertEquals("testFailed, testNew, (testSlow, testFast), testFast, testSlow",
+				names(reordered));
+	}
+
+	private static String names(Test test) {
+		if (!(test instanceof TestSuite))
+			return ((TestCase) test).getName();
+		StringBuilder sb = new StringBuilder();
+		for (Enumeration<?> e = ((TestSuite) test).tests(); e.hasMoreElements();) {
+			Test t = (Test) e.nextElement();
+			if (sb.length() > 0)
+				sb.append(", ");
+			sb.append(t instanceof TestSuite ? "(" + names(t) + ")" : names(t));
+		}
+		return sb.toString();
+	}
+
+	private void write(String content) throws IOException {
+		Writer writer = new OutputStreamWriter(new FileOutputStream(fFile), "UTF-8");
+		try {
+			writer.write(content);
+		} finally {
+			writer.close();
+		}
+	}
+}
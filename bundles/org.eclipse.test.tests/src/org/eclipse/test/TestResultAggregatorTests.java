@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.AssertionFailedError;
+import junit.framework.TestCase;
+
+import org.apache.tools.ant.taskdefs.optional.junit.JUnitResultFormatter;
+import org.apache.tools.ant.taskdefs.optional.junit.JUnitTest;
+
+public class TestResultAggregatorTests extends TestCase {
+
+	private static final String FAILED_TEST = "test\u00e4";
+
+	private static final String MESSAGE = "expected:\t<a\\tb>\nbut was:\r\n<c\\\\d>\\";
+
+	public static class Sample extends TestCase {
+		public Sample(String name) {
+			super(name);
+		}
+	}
+
+	private final List<File> fFiles = new ArrayList<File>();
+
+	protected void tearDown() throws Exception {
+		for (File file : fFiles)
+			file.delete();
+		super.tearDown();
+	}
+
+	public void testEscaping() {
+		String[] fields = { "plain", "tab\there", "line\nbreak", "cr\rlf\r\n",
+				"back\\slash", "\\t\\n", "\\", "", MESSAGE };
+		String line = TestResultAggregator.join(fields);
+		assertTrue(line.endsWith("\n"));
+		line = line.substring(0, line.length() - 1);
+		assertEquals(-1, line.indexOf('\n'));
+		assertEquals(-1, line.indexOf('\r'));
+		String[] split = line.split("\t", -1);
+		assertEquals(fields.length, split.length);
+		for (int i = 0; i < fields.length; i++)
+			assertEquals(fields[i], TestResultAggregator.unescape(split[i]));
+	}
+
+	public void testLocalAndForwardedSuites() throws IOException {
+		TestResultAggregator local = new TestResultAggregator();
+		report(local.createFormatter());
+		List<String> summary = write(local);
+		assertEquals(TestResultAggregator.HEADER, summary.get(0));
+		assertEquals("S\ta.Suite\t2\t1\t0\t7\t0\t2\t0\t1", summary.get(2));
+		String[] test = split(summary.get(4));
+		assertEquals(TestHistory.getName(new Sample(FAILED_TEST)), test[1]);
+		assertEquals(TestResultAggregator.FAILURE, test[2]);
+		String[] problem = split(summary.get(5));
+		assertEquals(5, problem.length);
+		assertEquals("1", problem[1]);
+		assertEquals(TestResultAggregator.FAILURE, problem[2]);
+		assertEquals(AssertionFailedError.class.getName(), problem[3]);
+		assertEquals(MESSAGE, problem[4]);
+
+		// the events of a shard go through the service and give the same summary
+		TestResultAggregator parent = new TestResultAggregator();
+		TestResultAggregator.Forwarder forwarder = new TestResultAggregator.Forwarder(
+				parent.startService());
+		report(forwarder);
+		forwarder.close();
+		parent.stopService();
+		assertTrue(parent.hasSuite("a.Suite"));
+		assertEquals(summary, write(parent));
+	}
+
+	private static void report(JUnitResultFormatter formatter) {
+		JUnitTest suite = new JUnitTest("a.Suite");
+		formatter.startTestSuite(suite);
+		Sample passed = new Sample("passed");
+		formatter.startTest(passed);
+		formatter.endTest(passed);
+		Sample failed = new Sample(FAILED_TEST);
+		formatter.startTest(failed);
+		formatter.addFailure(failed, new AssertionFailedError(MESSAGE));
+		formatter.endTest(failed);
+		suite.setCounts(2, 1, 0);
+		suite.setRunTime(7);
+		formatter.endTestSuite(suite);
+	}
+
+	private List<String> write(TestResultAggregator aggregator) throws IOException {
+		File file = File.createTempFile("resultsummary", ".txt");
+		fFiles.add(file);
+		aggregator.write(file);
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(file), "UTF-8"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null)
+				lines.add(line);
+		} finally {
+			reader.close();
+		}
+		// the test times are measured
+		for (int i = 0; i < lines.size(); i++) {
+			String line = lines.get(i);
+			if (line.startsWith("T\t"))
+				lines.set(i, line.substring(0, line.lastIndexOf('\t')));
+		}
+		return lines;
+	}
+
+	private static String[] split(String line) {
+		String[] fields = line.split("\t", -1);
+		for (int i = 0; i < fields.length; i++)
+			fields[i] = TestResultAggregator.unescape(fields[i]);
+		return fields;
+	}
+}
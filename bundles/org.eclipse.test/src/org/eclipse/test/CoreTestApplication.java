@@ -29,6 +29,13 @@ public class CoreTestApplication implements IPlatformRunnable {
 	 */
 	public Object run(Object arguments) throws Exception {
 		String[] args= Platform.getCommandLineArgs();//getCommand//processCommandLine((String[]) arguments);
+		if (TestDaemon.getPort(args) != -1) {
+			return new Integer(new TestDaemon(args).serve(new TestDaemon.TestRun() {
+				public int run(String[] runArgs) throws IOException {
+					return runTests(runArgs);
+				}
+			}));
+		}
 		return new Integer(runTests(args));
 	}
 
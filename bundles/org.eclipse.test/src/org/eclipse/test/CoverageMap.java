@@ -0,0 +1,550 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import org.eclipse.core.runtime.Platform;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.packageadmin.ExportedPackage;
+import org.osgi.service.packageadmin.PackageAdmin;
+
+/**
+ * The classes covered by every test, recorded with -coveragemap file in a run
+ * with the JaCoCo agent, see TestCoverageRecorder. With -readcoveragemap file
+ * and the changed classes or bundles, only the suites and tests whose coverage
+ * contains one of them are run.
+ * <p>
+ * Classes are recorded as their top level class, together with the bundle
+ * that exports their package. The coverage outside of the tests of a suite,
+ * like its creation or a TestSetup, belongs to the whole suite. The selection
+ * runs more tests rather than fewer: suites and tests without coverage are
+ * run, so are all suites if a bundle changed that was not installed when the
+ * map was recorded, and whole suites if their own bundle changed. A changed
+ * class that is not in the map counts as a change of the bundle of the other
+ * classes of its package, or of all bundles if none of them is in the map.
+ * </p>
+ * <p>
+ * The file has the installed bundles, the covered classes with the index of
+ * their bundle (-1 if it is not known), and the suites with their bundle and
+ * the coverage outside of their tests, each followed by its tests. The
+ * coverage is a list of class indices, and lines are separated by tabs:
+ * </p>
+ * <pre>
+ * B bundle
+ * C class bundle
+ * S suite bundle classes
+ * T test classes
+ * </pre>
+ */
+class CoverageMap {
+
+	private static final String HEADER = "# org.eclipse.test coverage map 1";
+
+	/*
+	 * The bundle of a class that is not looked up yet.
+	 */
+	private static final int UNRESOLVED = -2;
+
+	private final File fFile;
+	private final List<String> fBundles = new ArrayList<String>();
+	private final Map<String, Integer> fBundleIndices = new HashMap<String, Integer>();
+	private final List<String> fClasses = new ArrayList<String>();
+	private final List<Integer> fClassBundles = new ArrayList<Integer>();
+	private final Map<String, Integer> fClassIndices = new HashMap<String, Integer>();
+	private final Map<String, SuiteCoverage> fSuites = new TreeMap<String, SuiteCoverage>();
+
+	private static class SuiteCoverage {
+		final String fBundle;
+		/** The coverage outside of the tests. */
+		final BitSet fClasses = new BitSet();
+		final Map<String, BitSet> fTests = new LinkedHashMap<String, BitSet>();
+
+		SuiteCoverage(String bundle) {
+			fBundle = bundle;
+		}
+	}
+
+	CoverageMap(File file) {
+		fFile = file;
+	}
+
+	File getFile() {
+		return fFile;
+	}
+
+	/**
+	 * Reads the map file, if it exists.
+	 */
+	void load() {
+		read(fFile);
+	}
+
+	/**
+	 * Adds the suites of the given map file, which replace the suites of the
+	 * same name.
+	 */
+	void read(File file) {
+		if (!file.isFile())
+			return;
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					new FileInputStream(file), "UTF-8"));
+			try {
+				List<Integer> bundles = new ArrayList<Integer>();
+				List<Integer> classes = new ArrayList<Integer>();
+				SuiteCoverage suite = null;
+				String line;
+				while ((line = reader.readLine()) != null) {
+					String[] fields = line.split("\t", -1);
+					if (fields[0].equals("B") && fields.length == 2) {
+						bundles.add(new Integer(addBundle(fields[1])));
+					} else if (fields[0].equals("C") && fields.length == 3) {
+						int bundle = Integer.parseInt(fields[2]);
+						classes.add(new Integer(addClass(fields[1],
+								bundle >= 0 ? bundles.get(bundle).intValue() : bundle)));
+					} else if (fields[0].equals("S") && fields.length == 4) {
+						suite = new SuiteCoverage(fields[2]);
+						fSuites.put(fields[1], suite);
+						parseClasses(fields[3], classes, suite.fClasses);
+					} else if (fields[0].equals("T") && fields.length == 3
+							&& suite != null) {
+						BitSet tested = new BitSet();
+						parseClasses(fields[2], classes, tested);
+						suite.fTests.put(fields[1], tested);
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			System.err.println("cannot read coverage map " + file + ": " + e);
+		} catch (RuntimeException e) {
+			System.err.println("invalid coverage map " + file + ": " + e);
+		}
+	}
+
+	private static void parseClasses(String field, List<Integer> classes,
+			BitSet bits) {
+		if (field.length() == 0)
+			return;
+		String[] indices = field.split(",");
+		for (int i = 0; i < indices.length; i++)
+			bits.set(classes.get(Integer.parseInt(indices[i])).intValue());
+	}
+
+	private int addBundle(String name) {
+		Integer index = fBundleIndices.get(name);
+		if (index == null) {
+			index = new Integer(fBundles.size());
+			fBundles.add(name);
+			fBundleIndices.put(name, index);
+		}
+		return index.intValue();
+	}
+
+	private int addClass(String name, int bundle) {
+		Integer index = fClassIndices.get(name);
+		if (index == null) {
+			index = new Integer(fClasses.size());
+			fClasses.add(name);
+			fClassBundles.add(new Integer(bundle));
+			fClassIndices.put(name, index);
+		} else if (bundle >= 0) {
+			fClassBundles.set(index.intValue(), new Integer(bundle));
+		}
+		return index.intValue();
+	}
+
+	/**
+	 * Starts recording a suite, whose earlier coverage is dropped.
+	 */
+	void startSuite(String suite, String bundle) {
+		fSuites.put(suite, new SuiteCoverage(bundle != null ? bundle : ""));
+	}
+
+	/**
+	 * Adds the classes covered by a test of a started suite, or outside of
+	 * its tests if the test name is empty.
+	 */
+	void add(String suite, String test, Set<String> classes) {
+		SuiteCoverage coverage = fSuites.get(suite);
+		if (coverage == null)
+			return;
+		BitSet bits = coverage.fClasses;
+		if (test.length() > 0) {
+			bits = coverage.fTests.get(test);
+			if (bits == null) {
+				bits = new BitSet();
+				coverage.fTests.put(test, bits);
+			}
+		}
+		for (String name : classes)
+			bits.set(addClass(name, UNRESOLVED));
+	}
+
+	/**
+	 * Records the installed bundles, and the bundles of the classes recorded
+	 * since the last call. Must run in Eclipse.
+	 */
+	void resolveBundles() {
+		BundleContext context = Platform.getBundle("org.eclipse.osgi")
+				.getBundleContext();
+		Bundle[] bundles = context.getBundles();
+		for (int i = 0; i < bundles.length; i++) {
+			if (bundles[i].getSymbolicName() != null)
+				addBundle(bundles[i].getSymbolicName());
+		}
+		ServiceReference reference = context
+				.getServiceReference(PackageAdmin.class.getName());
+		PackageAdmin packageAdmin = reference != null ? (PackageAdmin) context
+				.getService(reference) : null;
+		try {
+			Map<String, Integer> packages = new HashMap<String, Integer>();
+			for (int i = 0; i < fClasses.size(); i++) {
+				if (fClassBundles.get(i).intValue() != UNRESOLVED)
+					continue;
+				String packageName = getPackageName(fClasses.get(i));
+				Integer bundle = packages.get(packageName);
+				if (bundle == null) {
+					ExportedPackage exported = packageAdmin != null ? packageAdmin
+							.getExportedPackage(packageName) : null;
+					bundle = new Integer(exported != null
+							&& exported.getExportingBundle().getSymbolicName() != null ? addBundle(exported
+							.getExportingBundle().getSymbolicName())
+							: -1);
+					packages.put(packageName, bundle);
+				}
+				fClassBundles.set(i, bundle);
+			}
+		} finally {
+			if (packageAdmin != null)
+				context.ungetService(reference);
+		}
+	}
+
+	/**
+	 * Writes the map. The suites of the file that were not recorded again are
+	 * kept, so that partial runs do not lose coverage.
+	 */
+	void save() {
+		CoverageMap merged = new CoverageMap(fFile);
+		merged.read(fFile);
+		merged.addAll(this);
+		merged.write();
+	}
+
+	private void addAll(CoverageMap other) {
+		int[] bundles = new int[other.fBundles.size()];
+		for (int i = 0; i < bundles.length; i++)
+			bundles[i] = addBundle(other.fBundles.get(i));
+		int[] classes = new int[other.fClasses.size()];
+		for (int i = 0; i < classes.length; i++) {
+			int bundle = other.fClassBundles.get(i).intValue();
+			classes[i] = addClass(other.fClasses.get(i), bundle >= 0 ? bundles[bundle]
+					: bundle);
+		}
+		for (Map.Entry<String, SuiteCoverage> e : other.fSuites.entrySet()) {
+			SuiteCoverage suite = new SuiteCoverage(e.getValue().fBundle);
+			map(e.getValue().fClasses, classes, suite.fClasses);
+			for (Map.Entry<String, BitSet> test : e.getValue().fTests.entrySet()) {
+				BitSet bits = new BitSet();
+				map(test.getValue(), classes, bits);
+				suite.fTests.put(test.getKey(), bits);
+			}
+			fSuites.put(e.getKey(), suite);
+		}
+	}
+
+	private static void map(BitSet source, int[] indices, BitSet target) {
+		for (int i = source.nextSetBit(0); i >= 0; i = source.nextSetBit(i + 1))
+			target.set(indices[i]);
+	}
+
+	private void write() {
+		File tmp = null;
+		try {
+			File directory = fFile.getAbsoluteFile().getParentFile();
+			directory.mkdirs();
+			tmp = File.createTempFile(fFile.getName(), ".tmp", directory);
+			Writer out = new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(tmp), "UTF-8"));
+			try {
+				out.write(HEADER + '\n');
+				for (String bundle : fBundles)
+					out.write("B\t" + bundle + '\n');
+				for (int i = 0; i < fClasses.size(); i++) {
+					int bundle = fClassBundles.get(i).intValue();
+					out.write("C\t" + fClasses.get(i) + '\t'
+							+ Math.max(bundle, -1) + '\n');
+				}
+				for (Map.Entry<String, SuiteCoverage> e : fSuites.entrySet()) {
+					SuiteCoverage suite = e.getValue();
+					out.write("S\t" + e.getKey() + '\t' + suite.fBundle + '\t'
+							+ toString(suite.fClasses) + '\n');
+					for (Map.Entry<String, BitSet> test : suite.fTests.entrySet())
+						out.write("T\t" + test.getKey() + '\t'
+								+ toString(test.getValue()) + '\n');
+				}
+			} finally {
+				out.close();
+			}
+			fFile.delete();
+			if (!tmp.renameTo(fFile))
+				System.err.println("cannot write coverage map " + fFile);
+		} catch (IOException e) {
+			System.err.println("cannot write coverage map " + fFile + ": " + e);
+		} finally {
+			if (tmp != null)
+				tmp.delete();
+		}
+	}
+
+	private static String getPackageName(String className) {
+		return className.substring(0, Math.max(className.lastIndexOf('.'), 0));
+	}
+
+	private static String toString(BitSet bits) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+			if (sb.length() > 0)
+				sb.append(',');
+			sb.append(i);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the selection of the tests affected by the given changes.
+	 *
+	 * @param changedClasses
+	 *            class names, or paths of source or class files, which may
+	 *            start with the path of their source folder
+	 * @param changedBundles
+	 *            bundle symbolic names
+	 */
+	Selection select(Collection<String> changedClasses,
+			Collection<String> changedBundles) {
+		return new Selection(changedClasses, changedBundles);
+	}
+
+	/**
+	 * The suites and tests affected by a set of changes.
+	 */
+	class Selection {
+		private final BitSet fChanged = new BitSet();
+		private final Set<String> fChangedBundles = new HashSet<String>();
+		private Map<String, Integer> fPackageBundles;
+		private boolean fAll;
+
+		Selection(Collection<String> changedClasses,
+				Collection<String> changedBundles) {
+			Set<String> bundles = new LinkedHashSet<String>(changedBundles);
+			for (String name : changedClasses) {
+				String className = getClassName(name);
+				Integer index = findClass(className);
+				if (index != null) {
+					fChanged.set(index.intValue());
+					continue;
+				}
+				String bundle = findBundle(className);
+				if (bundle == null) {
+					System.out.println("INFO: " + name
+							+ " is not in the coverage map, running all tests");
+					fAll = true;
+				} else {
+					System.out.println("INFO: " + name
+							+ " is not in the coverage map, running the tests of "
+							+ bundle);
+					bundles.add(bundle);
+				}
+			}
+			for (String bundle : bundles) {
+				Integer index = fBundleIndices.get(bundle);
+				if (index == null) {
+					System.out.println("INFO: " + bundle
+							+ " is not in the coverage map, running all tests");
+					fAll = true;
+				}
+				fChangedBundles.add(bundle);
+				for (int i = 0; index != null && i < fClasses.size(); i++) {
+					if (fClassBundles.get(i).equals(index))
+						fChanged.set(i);
+				}
+			}
+		}
+
+		/*
+		 * Returns the top level class of a name like org.eclipse.Foo,
+		 * org/eclipse/Foo$1.class, or src/org/eclipse/Foo.java, which may
+		 * still start with its source folder.
+		 */
+		private String getClassName(String name) {
+			name = name.replace('\\', '/');
+			if (name.endsWith(".java") || name.endsWith(".class"))
+				name = name.substring(0, name.lastIndexOf('.'));
+			int nested = name.indexOf('$');
+			if (nested != -1)
+				name = name.substring(0, nested);
+			return name.replace('/', '.');
+		}
+
+		/*
+		 * Finds the given class, without the segments of its source folder.
+		 */
+		private Integer findClass(String name) {
+			while (true) {
+				Integer index = fClassIndices.get(name);
+				int dot = name.indexOf('.');
+				if (index != null || dot == -1)
+					return index;
+				name = name.substring(dot + 1);
+			}
+		}
+
+		/*
+		 * Returns the bundle of the classes in the map that are in the package
+		 * of the given class, or null if there are none.
+		 */
+		private String findBundle(String name) {
+			if (fPackageBundles == null) {
+				fPackageBundles = new HashMap<String, Integer>();
+				for (int i = 0; i < fClasses.size(); i++) {
+					if (fClassBundles.get(i).intValue() >= 0)
+						fPackageBundles.put(getPackageName(fClasses.get(i)),
+								fClassBundles.get(i));
+				}
+			}
+			String packageName = getPackageName(name);
+			while (packageName.length() > 0) {
+				Integer bundle = fPackageBundles.get(packageName);
+				if (bundle != null)
+					return fBundles.get(bundle.intValue());
+				int dot = packageName.indexOf('.');
+				if (dot == -1)
+					return null;
+				packageName = packageName.substring(dot + 1);
+			}
+			return null;
+		}
+
+		/*
+		 * Whether all tests of the suite have to run.
+		 */
+		private boolean isAffectedAsWhole(String suite, String bundle) {
+			SuiteCoverage coverage = fSuites.get(suite);
+			return fAll || coverage == null
+					|| fChangedBundles.contains(bundle)
+					|| fChangedBundles.contains(coverage.fBundle)
+					|| coverage.fClasses.intersects(fChanged);
+		}
+
+		/**
+		 * Returns whether any test of the given suite is affected.
+		 *
+		 * @param bundle
+		 *            the bundle of the suite, or <code>null</code>
+		 */
+		boolean isAffected(String suite, String bundle) {
+			if (isAffectedAsWhole(suite, bundle))
+				return true;
+			for (BitSet classes : fSuites.get(suite).fTests.values()) {
+				if (classes.intersects(fChanged))
+					return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Returns the given test of a suite without the tests that are not
+		 * affected. Like in TestHistory.reorder, only the tests of instances
+		 * of TestSuite are filtered.
+		 */
+		Test filter(String suite, String bundle, Test test) {
+			if (isAffectedAsWhole(suite, bundle))
+				return test;
+			return filter(fSuites.get(suite), test);
+		}
+
+		private Test filter(SuiteCoverage coverage, Test test) {
+			if (test == null || test.getClass() != TestSuite.class)
+				return test;
+			TestSuite suite = (TestSuite) test;
+			TestSuite filtered = new TestSuite(suite.getName());
+			for (Enumeration<?> e = suite.tests(); e.hasMoreElements();) {
+				Test t = (Test) e.nextElement();
+				if (t instanceof TestSuite) {
+					filtered.addTest(filter(coverage, t));
+				} else {
+					BitSet classes = coverage.fTests.get(TestHistory.getName(t));
+					if (classes == null || classes.intersects(fChanged))
+						filtered.addTest(t);
+				}
+			}
+			return filtered;
+		}
+	}
+
+	/**
+	 * Returns the entries of a -changedclasses or -changedbundles argument,
+	 * separated by commas, or read from the file after an '@', one per line.
+	 */
+	static List<String> parseChanges(String arg) throws IOException {
+		List<String> changes = new ArrayList<String>();
+		if (arg == null)
+			return changes;
+		if (!arg.startsWith("@")) {
+			String[] split = arg.split(",");
+			for (int i = 0; i < split.length; i++) {
+				if (split[i].trim().length() > 0)
+					changes.add(split[i].trim());
+			}
+			return changes;
+		}
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(arg.substring(1)), "UTF-8"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.trim().length() > 0 && !line.startsWith("#"))
+					changes.add(line.trim());
+			}
+		} finally {
+			reader.close();
+		}
+		return changes;
+	}
+}
@@ -11,33 +11,34 @@
  *******************************************************************************/
 package org.eclipse.test;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.lang.annotation.Annotation;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Dictionary;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.Vector;
 
 import junit.framework.AssertionFailedError;
 import junit.framework.Test;
 import junit.framework.TestListener;
+import junit.framework.TestCase;
 import junit.framework.TestResult;
 import junit.framework.TestSuite;
 
@@ -128,6 +129,19 @@ public class EclipseTestRunner implements TestListener {
 	 * Formatters from the command line.
 	 */
 	private static Vector<JUnitResultFormatter> fgFromCmdLine = new Vector<JUnitResultFormatter>();
+	/**
+	 * The index of resolved suites from the command line, or null.
+	 */
+	private static SuiteIndex fgSuiteIndex;
+	/**
+	 * The coverage map recorded with -coveragemap, or null.
+	 */
+	private static CoverageMap fgCoverageMap;
+	private static TestCoverageRecorder fgCoverageRecorder;
+	/**
+	 * The tests affected by the changes given with -readcoveragemap, or null.
+	 */
+	private static CoverageMap.Selection fgCoverageSelection;
 	/**
 	 * Holds the registered formatters.
 	 */
@@ -160,6 +174,14 @@ public class EclipseTestRunner implements TestListener {
 	 * Returncode
 	 */
 	private int fRetCode = SUCCESS;
+	/**
+	 * The history used to order the tests, or null.
+	 */
+	private TestHistory fHistory;
+	/**
+	 * Measures the resources used by every test.
+	 */
+	private TestResourceMonitor fResources;
 
 	/**
 	 * The main entry point (the parameters are not yet consistent with the Ant
@@ -174,6 +196,27 @@ public class EclipseTestRunner implements TestListener {
 	 * 		print a warning that this option is deprecated
 	 * formatter: a JUnitResultFormatter given as classname,filename. 
 	 *  	If filename is ommitted, System.out is assumed.
+	 * 		Only org.eclipse.test.StreamingXMLResultFormatter writes the CPU
+	 * 		time, garbage collection time and allocated bytes of every test
+	 * 		as attributes of its testcase element, the Ant
+	 * 		XMLJUnitResultFormatter does not.
+	 * -shards count: run the suites of -testpluginsnames/-classesnames in
+	 * 		count child Eclipse processes, see ShardedTestRunner
+	 * -testhistory file: run the suites and tests that failed last time first,
+	 * 		then the fastest ones, and record the results, see TestHistory
+	 * -readtesthistory file: like -testhistory, without recording the results
+	 * -suiteindex file: remember how the suites are created and how many tests
+	 * 		they have, see SuiteIndex
+	 * -resultsummary file: write the results of all suites to one file, see
+	 * 		TestResultAggregator
+	 * -resultaggregator port: send the results to the aggregator of the parent
+	 * 		process, used by ShardedTestRunner
+	 * -coveragemap file: record the classes covered by every test, in a VM
+	 * 		with the JaCoCo agent, see TestCoverageRecorder and CoverageMap
+	 * -readcoveragemap file: only run the suites and tests whose coverage
+	 * 		contains a class of -changedclasses or a bundle of -changedbundles
+	 * -changedclasses classes, -changedbundles bundles: separated by commas,
+	 * 		or @file with one per line
 	 * </pre>
 	 */
 	public static void main(String[] args) throws IOException {
@@ -188,10 +231,23 @@ public class EclipseTestRunner implements TestListener {
 		String formatterString = null;
 		String timeoutString = null;
 		String junitReportOutput = null;
+		String shardsString = null;
+		String historyFile = null;
+		boolean updateHistory = false;
+		String suiteIndexFile = null;
+		String resultSummaryFile = null;
+		String aggregatorPort = null;
+		String coverageMapFile = null;
+		String readCoverageMapFile = null;
+		String changedClasses = null;
+		String changedBundles = null;
 
 		boolean haltError = false;
 		boolean haltFail = false;
 
+		// a test daemon calls run repeatedly
+		fgFromCmdLine.clear();
+
 		Properties props = new Properties();
 
 		int startArgs = 0;
@@ -241,6 +297,44 @@ public class EclipseTestRunner implements TestListener {
 				if (i < args.length - 1)
 					timeoutString = args[i + 1];
 				i++;
+			} else if (args[i].toLowerCase().equals("-shards")) {
+				if (i < args.length - 1)
+					shardsString = args[i + 1];
+				i++;
+			} else if (args[i].toLowerCase().equals("-testhistory")
+					|| args[i].toLowerCase().equals("-readtesthistory")) {
+				if (i < args.length - 1)
+					historyFile = args[i + 1];
+				updateHistory = args[i].toLowerCase().equals("-testhistory");
+				i++;
+			} else if (args[i].toLowerCase().equals("-suiteindex")) {
+				if (i < args.length - 1)
+					suiteIndexFile = args[i + 1];
+				i++;
+			} else if (args[i].toLowerCase().equals("-resultsummary")) {
+				if (i < args.length - 1)
+					resultSummaryFile = args[i + 1];
+				i++;
+			} else if (args[i].toLowerCase().equals("-resultaggregator")) {
+				if (i < args.length - 1)
+					aggregatorPort = args[i + 1];
+				i++;
+			} else if (args[i].toLowerCase().equals("-coveragemap")) {
+				if (i < args.length - 1)
+					coverageMapFile = args[i + 1];
+				i++;
+			} else if (args[i].toLowerCase().equals("-readcoveragemap")) {
+				if (i < args.length - 1)
+					readCoverageMapFile = args[i + 1];
+				i++;
+			} else if (args[i].toLowerCase().equals("-changedclasses")) {
+				if (i < args.length - 1)
+					changedClasses = args[i + 1];
+				i++;
+			} else if (args[i].toLowerCase().equals("-changedbundles")) {
+				if (i < args.length - 1)
+					changedBundles = args[i + 1];
+				i++;
 			}
 		}
 		// Add/overlay system properties on the properties from the Ant project
@@ -265,11 +359,95 @@ public class EclipseTestRunner implements TestListener {
 					timeoutScreenOutputDir), className);
 		}
 
+		TestHistory history = null;
+		if (historyFile != null) {
+			history = new TestHistory(new File(historyFile));
+			history.load();
+		}
+		fgSuiteIndex = null;
+		if (suiteIndexFile != null) {
+			fgSuiteIndex = new SuiteIndex(new File(suiteIndexFile));
+			fgSuiteIndex.load();
+		}
+		fgCoverageMap = null;
+		if (coverageMapFile != null)
+			fgCoverageMap = new CoverageMap(new File(coverageMapFile));
+		fgCoverageSelection = null;
+		if (readCoverageMapFile != null) {
+			if (changedClasses == null && changedBundles == null) {
+				System.err.println("INFO: no -changedclasses or -changedbundles, running all tests.");
+			} else {
+				CoverageMap map = new CoverageMap(new File(readCoverageMapFile));
+				map.load();
+				fgCoverageSelection = map.select(CoverageMap
+						.parseChanges(changedClasses), CoverageMap
+						.parseChanges(changedBundles));
+			}
+		}
+		TestResultAggregator aggregator = null;
+		if (resultSummaryFile != null)
+			aggregator = new TestResultAggregator();
+		TestResultAggregator.Forwarder forwarder = null;
+		if (aggregatorPort != null) {
+			try {
+				forwarder = new TestResultAggregator.Forwarder(Integer
+						.parseInt(aggregatorPort));
+			} catch (NumberFormatException e) {
+				System.err.println("-resultaggregator must be a port number: "
+						+ aggregatorPort);
+				return ERRORS;
+			} catch (IOException e) {
+				// the TEST-*.xml files are still written
+				System.err.println("cannot connect to the result aggregator: "
+						+ e);
+			}
+		}
+
 		if (testPluginsNames != null && classesNames != null) {
 			// we have several plugins to look tests for, let's parse their
 			// names
 			String[] testPlugins = testPluginsNames.split(",");
 			String[] suiteClasses = classesNames.split(",");
+			if (fgCoverageSelection != null) {
+				List<String> plugins = new ArrayList<String>();
+				List<String> classes = new ArrayList<String>();
+				for (int i = 0; i < suiteClasses.length; i++) {
+					if (fgCoverageSelection.isAffected(suiteClasses[i], testPlugins[i])) {
+						plugins.add(testPlugins[i]);
+						classes.add(suiteClasses[i]);
+					}
+				}
+				System.out.println("INFO: the changes affect " + classes.size()
+						+ " of " + suiteClasses.length + " suites");
+				testPlugins = plugins.toArray(new String[plugins.size()]);
+				suiteClasses = classes.toArray(new String[classes.size()]);
+			}
+			int shards = 1;
+			if (shardsString != null) {
+				try {
+					shards = Integer.parseInt(shardsString);
+				} catch (NumberFormatException e) {
+					System.err.println("-shards must be a number: " + shardsString);
+					return ERRORS;
+				}
+			}
+			if (shards > 1 && suiteClasses.length > 1) {
+				if (formatterString == null || formatterString.indexOf(',') == -1) {
+					System.err.println("-shards needs a formatter=<classname>,<directory> argument");
+					return ERRORS;
+				}
+				int returnCode = new ShardedTestRunner(shards, testPlugins,
+						suiteClasses, formatterString, history, fgSuiteIndex,
+						aggregator, fgCoverageMap).run();
+				if (fgSuiteIndex != null)
+					fgSuiteIndex.save();
+				if (fgCoverageMap != null)
+					fgCoverageMap.save();
+				if (updateHistory)
+					updateHistory(history, formatterString, suiteClasses);
+				endResults(aggregator, resultSummaryFile, forwarder);
+				return returnCode;
+			}
 			try {
 				createAndStoreFormatter(formatterString, suiteClasses);
 			} catch (BuildException be) {
@@ -277,19 +455,30 @@ public class EclipseTestRunner implements TestListener {
 				return ERRORS;
 			}
 			int returnCode = 0;
-			int j = 0;
-			for (String oneClassName : suiteClasses) {
-				JUnitTest t = new JUnitTest(oneClassName);
+			int[] order = null;
+			if (history != null)
+				order = history.order(suiteClasses);
+			startCoverageMap();
+			for (int i = 0; i < suiteClasses.length; i++) {
+				int j = order != null ? order[i] : i;
+				JUnitTest t = new JUnitTest(suiteClasses[j]);
 				t.setProperties(props);
 				EclipseTestRunner runner = new EclipseTestRunner(t, testPlugins[j],
 						haltError, haltFail);
+				runner.setTestHistory(history);
 				transferFormatters(runner, j);
+				addResultFormatters(runner, aggregator, forwarder);
 				runner.run();
-				j++;
 				if (runner.getRetCode() != 0) {
 					returnCode = runner.getRetCode();
 				}
 			}
+			if (fgSuiteIndex != null)
+				fgSuiteIndex.save();
+			endCoverageMap();
+			if (updateHistory)
+				updateHistory(history, formatterString, suiteClasses);
+			endResults(aggregator, resultSummaryFile, forwarder);
 			return returnCode;
 		}
 		try {
@@ -306,14 +495,104 @@ public class EclipseTestRunner implements TestListener {
 		t.setProperties(props);
 
 	    EclipseTestRunner runner= new EclipseTestRunner(t, testPluginName, haltError, haltFail);
+		runner.setTestHistory(history);
 		transferFormatters(runner);
+		addResultFormatters(runner, aggregator, forwarder);
+		startCoverageMap();
 		runner.run();
+		if (fgSuiteIndex != null)
+			fgSuiteIndex.save();
+		endCoverageMap();
+		if (updateHistory) {
+			int pos = formatterString.indexOf(',');
+			if (pos != -1) {
+				history.addResults(new File(formatterString.substring(pos + 1)));
+				history.save();
+			}
+		}
+		endResults(aggregator, resultSummaryFile, forwarder);
 		return runner.getRetCode();
 	}
 
+	private static void addResultFormatters(EclipseTestRunner runner,
+			TestResultAggregator aggregator,
+			TestResultAggregator.Forwarder forwarder) {
+		if (aggregator != null)
+			runner.addFormatter(aggregator.createFormatter());
+		if (forwarder != null)
+			runner.addFormatter(forwarder);
+	}
+
+	/*
+	 * Writes the summary of -resultsummary, and closes the connection of
+	 * -resultaggregator.
+	 */
+	private static void endResults(TestResultAggregator aggregator,
+			String resultSummaryFile, TestResultAggregator.Forwarder forwarder) {
+		if (aggregator != null)
+			aggregator.write(new File(resultSummaryFile));
+		if (forwarder != null)
+			forwarder.close();
+	}
+
+	/*
+	 * Connects to the JaCoCo agent to record the -coveragemap. Without it, the
+	 * tests run without recording.
+	 */
+	private static void startCoverageMap() {
+		if (fgCoverageMap == null)
+			return;
+		try {
+			fgCoverageRecorder = TestCoverageRecorder.connect();
+		} catch (IOException e) {
+			System.err.println("cannot record the coverage map: " + e.getMessage());
+			fgCoverageMap = null;
+		}
+	}
+
+	private static void endCoverageMap() {
+		if (fgCoverageRecorder == null)
+			return;
+		fgCoverageRecorder.close();
+		fgCoverageRecorder = null;
+		fgCoverageMap.resolveBundles();
+		fgCoverageMap.save();
+	}
+
+	/*
+	 * Records the classes covered since the last call for the given test of
+	 * the current suite, or for the suite itself if the name is empty.
+	 */
+	private void recordCoverage(String test) {
+		if (fgCoverageRecorder == null)
+			return;
+		try {
+			fgCoverageMap.add(fJunitTest.getName(), test, fgCoverageRecorder
+					.dump());
+		} catch (IOException e) {
+			System.err.println("cannot record the coverage map: " + e);
+			fgCoverageRecorder.close();
+			fgCoverageRecorder = null;
+			fgCoverageMap = null;
+		}
+	}
+
+	/*
+	 * Records the TEST-*.xml files in the directory of the formatter=<classname>,<directory> argument.
+	 */
+	private static void updateHistory(TestHistory history,
+			String formatterString, String[] suiteClasses) {
+		int pos = formatterString.indexOf(',');
+		if (pos == -1)
+			return;
+		history.addResults(new File(formatterString.substring(pos + 1)),
+				suiteClasses);
+		history.save();
+	}
+
 	/**
-	 * Starts a timer that dumps interesting debugging information shortly
-	 * before the given timeout expires.
+	 * Schedules a dump of interesting debugging information shortly before
+	 * the given timeout expires, in the thread of the TestWatchdog.
 	 * 
 	 * @param timeoutArg
 	 *            the -timeout argument from the command line
@@ -336,12 +615,11 @@ public class EclipseTestRunner implements TestListener {
 			int timeout = Integer.parseInt(timeoutArg) - delay;
 			String time0 = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss Z",
 					Locale.US).format(new Date());
-			System.err.println("starting EclipseTestRunnerTimer with timeout="
+			System.err.println("starting EclipseTestRunnerWatchdog with timeout="
 					+ timeout + " at " + time0);
 			if (timeout > 0) {
-				new Timer("EclipseTestRunnerTimer", true).schedule(
-						new TimerTask() {
-							@Override
+				TestWatchdog.getDefault().schedule(
+						new Runnable() {
 							public void run() {
 								dump(0);
 								try {
@@ -498,6 +776,17 @@ public class EclipseTestRunner implements TestListener {
 		}
 	}
 
+	/**
+	 * Sets the history used to order the tests of the suite.
+	 * 
+	 * @param history
+	 *            the history, or <code>null</code> to keep the order of the
+	 *            suite
+	 */
+	void setTestHistory(TestHistory history) {
+		fHistory = history;
+	}
+
 	/**
 	 * Returns the Test corresponding to the given suite.
 	 */
@@ -522,36 +811,28 @@ public class EclipseTestRunner implements TestListener {
 			runFailed(e);
 			return null;
 		}
+		Bundle bundle = null;
+		SuiteIndex.Entry entry = null;
+		if (fgSuiteIndex != null && fTestPluginName != null) {
+			try {
+				bundle = getTestBundle(suiteClassName);
+				entry = fgSuiteIndex.get(bundle, testClass);
+			} catch (ClassNotFoundException e) {
+				// the class was loaded, so the bundle exists
+			}
+		}
+		if (entry != null && !SuiteIndex.SUITE_METHOD.equals(entry.fKind)) {
+			// the class has no suite() method
+			clearStatus();
+			return createSuite(testClass, bundle, entry);
+		}
 		Method suiteMethod = null;
 		try {
 			suiteMethod = testClass.getMethod(SUITE_METHODNAME, new Class[0]);
 		} catch (Exception e) {
 			// try to extract a test suite automatically
 			clearStatus();
-
-			Class<?> jUnit4TestAdapterClass = null;
-			try {
-				jUnit4TestAdapterClass = loadSuiteClass("junit.framework.JUnit4TestAdapter");
-			} catch (ClassNotFoundException e1) {
-				// JUnit4 is not available
-			} catch (UnsupportedClassVersionError e1) {
-				// running with a VM < 1.5
-			}
-			if (jUnit4TestAdapterClass != null) {
-				try {
-					Constructor<?> jUnit4TestAdapterCtor = jUnit4TestAdapterClass
-							.getConstructor(new Class[] { Class.class });
-					return (Test) jUnit4TestAdapterCtor
-							.newInstance(new Object[] { testClass });
-				} catch (Exception e1) {
-					runFailed(new InvocationTargetException(e1,
-							"Failed to create a JUnit4TestAdapter for \""
-									+ suiteClassName + "\":"));
-					return null;
-				}
-			} else { // the JUnit 3 way
-				return new TestSuite(testClass);
-			}
+			return createSuite(testClass, bundle, null);
 		}
 		if (!Modifier.isStatic(suiteMethod.getModifiers())) {
 			runFailed("suite() method must be static");
@@ -572,9 +853,78 @@ public class EclipseTestRunner implements TestListener {
 			return null;
 		}
 		clearStatus();
+		if (bundle != null && entry == null)
+			fgSuiteIndex.put(bundle, testClass, SuiteIndex.SUITE_METHOD, test);
+		return test;
+	}
+
+	/*
+	 * Creates the suite of a class without suite() method, with the
+	 * JUnit4TestAdapter if JUnit 4 is available and the class is not a plain
+	 * JUnit 3 TestCase. A JUnit 3 suite in the index is created from the
+	 * recorded test methods.
+	 */
+	private Test createSuite(Class<?> testClass, Bundle bundle,
+			SuiteIndex.Entry entry) throws TestFailedException {
+		if (entry != null && entry.fTests != null) {
+			TestSuite suite = new TestSuite(testClass.getName());
+			for (int i = 0; i < entry.fTests.length; i++)
+				suite.addTest(TestSuite.createTest(testClass, entry.fTests[i]));
+			return suite;
+		}
+		Class<?> jUnit4TestAdapterClass = null;
+		if (entry == null ? !isJUnit3TestCase(testClass)
+				: SuiteIndex.JUNIT4.equals(entry.fKind)) {
+			try {
+				jUnit4TestAdapterClass = loadSuiteClass("junit.framework.JUnit4TestAdapter");
+			} catch (ClassNotFoundException e1) {
+				// JUnit4 is not available
+			} catch (UnsupportedClassVersionError e1) {
+				// running with a VM < 1.5
+			}
+		}
+		Test test;
+		String kind;
+		if (jUnit4TestAdapterClass != null) {
+			try {
+				Constructor<?> jUnit4TestAdapterCtor = jUnit4TestAdapterClass
+						.getConstructor(new Class[] { Class.class });
+				test = (Test) jUnit4TestAdapterCtor
+						.newInstance(new Object[] { testClass });
+				kind = SuiteIndex.JUNIT4;
+			} catch (Exception e1) {
+				runFailed(new InvocationTargetException(e1,
+						"Failed to create a JUnit4TestAdapter for \""
+								+ testClass.getName() + "\":"));
+				return null;
+			}
+		} else { // the JUnit 3 way
+			test = new TestSuite(testClass);
+			kind = SuiteIndex.JUNIT3;
+		}
+		if (bundle != null && entry == null)
+			fgSuiteIndex.put(bundle, testClass, kind, test);
 		return test;
 	}
 
+	/*
+	 * Returns whether the JUnit4TestAdapter would only run the TestSuite of the
+	 * given class, which has no suite() method: a TestCase that is not ignored
+	 * and has no runner of its own.
+	 */
+	private static boolean isJUnit3TestCase(Class<?> testClass) {
+		if (!TestCase.class.isAssignableFrom(testClass))
+			return false;
+		Annotation[] annotations = testClass.getAnnotations();
+		for (int i = 0; i < annotations.length; i++) {
+			String name = annotations[i].annotationType().getName();
+			if (name.equals("org.junit.runner.RunWith")
+					|| name.equals("org.junit.Ignore"))
+				return false;
+		}
+		return true;
+	}
+
 	protected void runFailed(String message) throws TestFailedException {
 		System.err.println(message);
 		throw new TestFailedException(message);
@@ -596,6 +946,14 @@ public class EclipseTestRunner implements TestListener {
 			throws ClassNotFoundException {
 		if (fTestPluginName == null)
 			return Class.forName(suiteClassName);
+		return getTestBundle(suiteClassName).loadClass(suiteClassName);
+	}
+
+	/*
+	 * Returns the bundle of the test plugin, or its host if it is a fragment.
+	 */
+	private Bundle getTestBundle(String suiteClassName)
+			throws ClassNotFoundException {
 		Bundle bundle = Platform.getBundle(fTestPluginName);
 		if (bundle == null) {
 			throw new ClassNotFoundException(suiteClassName, new Exception(
@@ -620,8 +978,7 @@ public class EclipseTestRunner implements TestListener {
 			// we really want to get the host not the fragment
 			bundle = host;
 		}
-
-		return bundle.loadClass(suiteClassName);
+		return bundle;
 	}
 
 	public void run() {
@@ -629,14 +986,25 @@ public class EclipseTestRunner implements TestListener {
 		// PerfMsrCorePlugin.getPerformanceMonitor(true);
 
 		fTestResult = new TestResult();
+		fResources = new TestResourceMonitor();
 		fTestResult.addListener(this);
 		for (int i = 0; i < formatters.size(); i++) {
-			fTestResult.addListener(formatters.elementAt(i));
+			JUnitResultFormatter formatter = formatters.elementAt(i);
+			if (formatter instanceof StreamingXMLResultFormatter)
+				((StreamingXMLResultFormatter) formatter)
+						.setResourceMonitor(fResources);
+			else if (formatter instanceof TestResultAggregator.EventFormatter)
+				((TestResultAggregator.EventFormatter) formatter)
+						.setResourceMonitor(fResources);
+			fTestResult.addListener(formatter);
 		}
 
 		long start = System.currentTimeMillis();
 		fireStartTestSuite();
 
+		SpillingOutputStream outStrm = null;
+		SpillingOutputStream errStrm = null;
+
 		if (fException != null) { // had an exception in the constructor
 			for (int i = 0; i < formatters.size(); i++) {
 				formatters.elementAt(i).addError(null, fException);
@@ -644,29 +1012,47 @@ public class EclipseTestRunner implements TestListener {
 			fJunitTest.setCounts(1, 0, 1);
 			fJunitTest.setRunTime(0);
 		} else {
-			ByteArrayOutputStream errStrm = new ByteArrayOutputStream();
+			// captured output beyond the threshold is spilled to temporary files
+			int threshold = SpillingOutputStream.getThreshold();
+			errStrm = new SpillingOutputStream(threshold);
 			fSystemError = new PrintStream(errStrm);
 
-			ByteArrayOutputStream outStrm = new ByteArrayOutputStream();
+			outStrm = new SpillingOutputStream(threshold);
 			fSystemOut = new PrintStream(outStrm);
 
+			if (fgCoverageRecorder != null) {
+				fgCoverageMap.startSuite(fJunitTest.getName(), fTestPluginName);
+				// the creation of the suite
+				recordCoverage("");
+			}
 			try {
+				if (fgCoverageSelection != null)
+					fSuite = fgCoverageSelection.filter(fJunitTest.getName(),
+							fTestPluginName, fSuite);
+				if (fHistory != null)
+					fSuite = fHistory.reorder(fSuite);
 				// pm.snapshot(1); // before
 				fSuite.run(fTestResult);
+				// like a TestSetup, outside of the tests
+				recordCoverage("");
 			} finally {
 				// pm.snapshot(2); // after
 				fSystemError.close();
 				fSystemError = null;
 				fSystemOut.close();
 				fSystemOut = null;
-				sendOutAndErr(new String(outStrm.toByteArray()), new String(
-						errStrm.toByteArray()));
+				sendOutAndErr(outStrm, errStrm);
 				fJunitTest.setCounts(fTestResult.runCount(),
 						fTestResult.failureCount(), fTestResult.errorCount());
 				fJunitTest.setRunTime(System.currentTimeMillis() - start);
 			}
 		}
 		fireEndTestSuite();
+		fResources.dispose();
+		if (outStrm != null) {
+			outStrm.dispose();
+			errStrm.dispose();
+		}
 
 		if (fRetCode != SUCCESS || fTestResult.errorCount() != 0) {
 			fRetCode = ERRORS;
@@ -690,12 +1076,26 @@ public class EclipseTestRunner implements TestListener {
 	 * @see TestListener.addFailure
 	 */
 	public void startTest(Test t) {
+		if (fHistory != null) {
+			String name = TestHistory.getName(t);
+			TestWatchdog.getDefault().startTest(name,
+					fHistory.getPercentile(name, 99));
+		}
+		// what ran since the last test belongs to the suite
+		recordCoverage("");
+		fResources.startTest(t);
 	}
 
 	/*
 	 * @see TestListener.addFailure
 	 */
 	public void endTest(Test test) {
+		// this listener is added before the formatters, so the usage is
+		// available to them
+		fResources.endTest(test);
+		recordCoverage(TestHistory.getName(test));
+		if (fHistory != null)
+			TestWatchdog.getDefault().endTest();
 	}
 
 	/*
@@ -795,7 +1195,7 @@ public class EclipseTestRunner implements TestListener {
 	/*
 	 * DUPLICATED from FormatterElement, since it is package visible only
 	 */
-	private static JUnitResultFormatter createFormatter(String classname,
+	static JUnitResultFormatter createFormatter(String classname,
 			File outfile) throws BuildException {
 		OutputStream out = System.out;
 
@@ -836,12 +1236,25 @@ public class EclipseTestRunner implements TestListener {
 		return r;
 	}
 
-	private void sendOutAndErr(String out, String err) {
+	private void sendOutAndErr(SpillingOutputStream outStrm,
+			SpillingOutputStream errStrm) {
+		// the output is only turned into strings for formatters that cannot stream it
+		String out = null;
+		String err = null;
 		for (int i = 0; i < formatters.size(); i++) {
 			JUnitResultFormatter formatter = formatters.elementAt(i);
 
-			formatter.setSystemOutput(out);
-			formatter.setSystemError(err);
+			if (formatter instanceof StreamingXMLResultFormatter) {
+				((StreamingXMLResultFormatter) formatter).setSystemOutput(
+						outStrm, errStrm);
+			} else {
+				if (out == null) {
+					out = outStrm.toString();
+					err = errStrm.toString();
+				}
+				formatter.setSystemOutput(out);
+				formatter.setSystemError(err);
+			}
 		}
 	}
 
@@ -11,16 +11,33 @@
 package org.eclipse.test;
 
 import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
-import java.util.StringTokenizer;
-import java.io.ByteArrayOutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
 
 /**
  * Check the output of several tests for regressions.
+ * <p>
+ * The files contain pairs of test name and status separated by white space.
+ * They are read as streams: files sorted by test name are compared in a single
+ * pass, other files are first sorted in chunks of {@link #CHUNK_SIZE} tests
+ * that are merged from temporary files, so the memory used does not depend on
+ * the size of the files.
+ * </p>
  */
 public class RegressionTest {
 
@@ -28,6 +45,11 @@ public class RegressionTest {
 	String oldFilename, newFilename, outFilename;
 	public static final String NOTHING_CHANGED_MSG
 		= "All tests unchanged.";	
+	/**
+	 * The number of tests of an unsorted file that are sorted in memory.
+	 */
+	static final int CHUNK_SIZE = 100000;
+
 	/**
 	 * Constructor for RegressionTest
 	 */
@@ -40,13 +62,18 @@ public class RegressionTest {
 	}
 
 	public static void main(String[] argv) {
-		if (argv.length < 3) {
+		boolean firstDivergence = argv.length > 0 && argv[0].equals("-firstdivergence");
+		int first = firstDivergence ? 1 : 0;
+		if (argv.length - first < 3) {
 			System.err.println("Error: too few arguments");
-			System.err.println("Usage: (progname) oldfile newfile outfile");
+			System.err.println("Usage: (progname) [-firstdivergence] oldfile newfile outfile");
 		} else {
 			// ASSERT: The program has at least the correct number of arguments
-			RegressionTest rt = new RegressionTest(argv[0], argv[1], argv[2]);
-			rt.testRegressions();
+			RegressionTest rt = new RegressionTest(argv[first], argv[first + 1], argv[first + 2]);
+			if (firstDivergence)
+				rt.testFirstDivergence();
+			else
+				rt.testRegressions();
 		}
 	}
 
@@ -54,78 +81,133 @@ public class RegressionTest {
 	 * Test for regressions in the test suite.
 	 */
 	public void testRegressions() {
-		// Read the old and new files
-		String oldPass = "";
-		String newPass = "";
+		// Open the old and new files
+		TestSource oldst = null;
+		TestSource newst = null;
 		try {
-			oldPass = readFile(oldFilename);
-			newPass = readFile(newFilename);
-		} catch (Exception e) {
+			oldst = openSorted(oldFilename);
+			newst = openSorted(newFilename);
+		} catch (IOException e) {
 			System.err.println("Error opening input file");
 			System.err.println(e.getMessage());
 			System.exit(-1);
 		}
 
+		openOutput();
 		try {
-			output = new PrintStream(
-						new BufferedOutputStream(
-							new FileOutputStream(
-								new File(outFilename))));
-		} catch (Exception e) {
-			System.err.println("Error opening output file");
-			System.err.println(e.getMessage());
-			System.exit(-1);
-		}
-		// Establish their relationship
-		StringTokenizer oldst = new StringTokenizer(oldPass);
-		StringTokenizer newst = new StringTokenizer(newPass);
-
-		String[] oldTest = nextTest(oldst);
-		String[] newTest = nextTest(newst);
+			// Establish their relationship
+			String[] oldTest = oldst.next();
+			String[] newTest = newst.next();
 
-		boolean nothingChanged = true;
-		while (oldTest != null && newTest != null) {
+			boolean nothingChanged = true;
+			while (oldTest != null && newTest != null) {
 
-			// Compare the two test names
-			int compareName = oldTest[0].compareTo(newTest[0]);
-			if (compareName == 0) {
-				int compareStatus = oldTest[1].compareTo(newTest[1]);
-				if (compareStatus != 0) {
+				// Compare the two test names
+				int compareName = oldTest[0].compareTo(newTest[0]);
+				if (compareName == 0) {
+					int compareStatus = oldTest[1].compareTo(newTest[1]);
+					if (compareStatus != 0) {
+						nothingChanged = false;
+						output.println(testChanged(newTest));
+					}
+					oldTest = oldst.next();
+					newTest = newst.next();
+				} else if (compareName < 0) {
+					// oldTestName comes first
+					output.println(testNotRun(oldTest));
+					oldTest = oldst.next();
+					nothingChanged = false;
+				} else {
+					// newTestName comes first
+					output.println(testAdded(newTest));
+					newTest = newst.next();
 					nothingChanged = false;
-					output.println(testChanged(newTest));
 				}
-				oldTest = nextTest(oldst);
-				newTest = nextTest(newst);
-			} else if (compareName < 0) {
+			}
+			// Make sure all tests are parsed
+			while (oldTest != null) {
 				// oldTestName comes first
 				output.println(testNotRun(oldTest));
-				oldTest = nextTest(oldst);
+				oldTest = oldst.next();
 				nothingChanged = false;
-			} else {
+			}
+			while (newTest != null) {
 				// newTestName comes first
 				output.println(testAdded(newTest));
-				newTest = nextTest(newst);
+				newTest = newst.next();
 				nothingChanged = false;
 			}
+			// Make sure that there is always some output.
+			if (nothingChanged) {
+				output.println(NOTHING_CHANGED_MSG);
+			}
+		} catch (IOException e) {
+			System.err.println("Error reading input file");
+			System.err.println(e.getMessage());
+			System.exit(-1);
+		} finally {
+			oldst.close();
+			newst.close();
+			output.close();
 		}
-		// Make sure all tests are parsed
-		while (oldTest != null) {
-			// oldTestName comes first
-			output.println(testNotRun(oldTest));
-			oldTest = nextTest(oldst);
-			nothingChanged = false;
+	}
+
+	/**
+	 * Compares the files in their order and stops at the first test whose
+	 * name or status differs, so that only the files up to there are read.
+	 */
+	public void testFirstDivergence() {
+		TestReader oldst = null;
+		TestReader newst = null;
+		try {
+			oldst = new TestReader(oldFilename);
+			newst = new TestReader(newFilename);
+		} catch (IOException e) {
+			System.err.println("Error opening input file");
+			System.err.println(e.getMessage());
+			System.exit(-1);
 		}
-		while (newTest != null) {
-			// newTestName comes first
-			output.println(testAdded(newTest));
-			newTest = nextTest(newst);
-			nothingChanged = false;
+
+		openOutput();
+		try {
+			int index = 0;
+			while (true) {
+				String[] oldTest = oldst.next();
+				String[] newTest = newst.next();
+				if (oldTest == null && newTest == null) {
+					output.println(NOTHING_CHANGED_MSG);
+					break;
+				}
+				if (oldTest == null || newTest == null
+						|| !oldTest[0].equals(newTest[0])
+						|| !oldTest[1].equals(newTest[1])) {
+					output.println(firstDivergence(index, oldTest, newTest));
+					break;
+				}
+				index++;
+			}
+		} catch (IOException e) {
+			System.err.println("Error reading input file");
+			System.err.println(e.getMessage());
+			System.exit(-1);
+		} finally {
+			oldst.close();
+			newst.close();
+			output.close();
 		}
-		// Make sure that there is always some output.
-		if (nothingChanged) {
-			output.println(NOTHING_CHANGED_MSG);
+	}
+
+	private void openOutput() {
+		try {
+			output = new PrintStream(
+						new BufferedOutputStream(
+							new FileOutputStream(
+								new File(outFilename))));
+		} catch (Exception e) {
+			System.err.println("Error opening output file");
+			System.err.println(e.getMessage());
+			System.exit(-1);
 		}
-		output.close();
 	}
 
 	/**
@@ -150,38 +232,223 @@ public class RegressionTest {
 	}
 
 	/**
-	 * Read the file given by s, and return its contents.
+	 * Get the message for the first test that differs.
 	 */
-	static String readFile(String s) throws IOException {
-		byte[] buf = new byte[8192];
-		FileInputStream r = new FileInputStream(s);
-		ByteArrayOutputStream aStream = new ByteArrayOutputStream();
-		int n;
-		while ((n = r.read(buf)) != -1) {
-			aStream.write(buf, 0, n);
+	static String firstDivergence(int index, String[] oldTest, String[] newTest) {
+		return "First divergence at test " + (index + 1) + ": "
+				+ (oldTest != null ? oldTest[0] + ", " + oldTest[1] : "end of file")
+				+ " -> "
+				+ (newTest != null ? newTest[0] + ", " + newTest[1] : "end of file");
+	}
+
+	/**
+	 * Returns the tests of the given file sorted by name. A file that is
+	 * already sorted is read as it is, others are sorted in chunks.
+	 */
+	static TestSource openSorted(String filename) throws IOException {
+		return openSorted(filename, CHUNK_SIZE);
+	}
+
+	/**
+	 * Like {@link #openSorted(String)}, with the given number of tests sorted
+	 * in memory.
+	 */
+	static TestSource openSorted(String filename, int chunkSize) throws IOException {
+		if (isSorted(filename))
+			return new TestReader(filename);
+		return sort(new TestReader(filename), chunkSize);
+	}
+
+	static boolean isSorted(String filename) throws IOException {
+		TestReader reader = new TestReader(filename);
+		try {
+			String previous = null;
+			String[] test;
+			while ((test = reader.next()) != null) {
+				if (previous != null && previous.compareTo(test[0]) > 0)
+					return false;
+				previous = test[0];
+			}
+			return true;
+		} finally {
+			reader.close();
 		}
-		r.close();
-		return aStream.toString();
 	}
-	
-	
+
+	/*
+	 * Sorts chunks of chunkSize tests into temporary files, and merges them.
+	 */
+	private static TestSource sort(TestReader reader, int chunkSize) throws IOException {
+		Comparator<String[]> byName = new Comparator<String[]>() {
+			public int compare(String[] test1, String[] test2) {
+				return test1[0].compareTo(test2[0]);
+			}
+		};
+		List<File> runs = new ArrayList<File>();
+		try {
+			List<String[]> chunk = new ArrayList<String[]>();
+			String[] test = reader.next();
+			while (test != null) {
+				chunk.add(test);
+				test = reader.next();
+				if (chunk.size() == chunkSize || test == null) {
+					// stable, so equal names keep their order
+					Collections.sort(chunk, byName);
+					File run = File.createTempFile("regression", ".txt");
+					run.deleteOnExit();
+					runs.add(run);
+					Writer writer = new BufferedWriter(new OutputStreamWriter(
+							new FileOutputStream(run), "UTF-8"));
+					try {
+						for (String[] t : chunk)
+							writer.write(t[0] + ' ' + t[1] + '\n');
+					} finally {
+						writer.close();
+					}
+					chunk.clear();
+				}
+			}
+		} catch (IOException e) {
+			for (File run : runs)
+				run.delete();
+			throw e;
+		} finally {
+			reader.close();
+		}
+		return new MergingSource(runs, byName);
+	}
+
 	/**
-	 * Returns the next 2 tokens in st, if they exist.
-	 * Returns null if they do not.
+	 * A stream of tests, as pairs of name and status.
 	 */
-	static String[] nextTest(StringTokenizer st) {
-		String[] test = new String[2];
-		if (st.hasMoreTokens()) {
-			test[0] = st.nextToken();
-		} else {
-			return null;
+	interface TestSource {
+		/**
+		 * Returns the next test, or null at the end.
+		 */
+		String[] next() throws IOException;
+
+		void close();
+	}
+
+	/**
+	 * Reads the tests of a file. Like StringTokenizer, tokens are separated by
+	 * white space, and a name without status at the end is ignored.
+	 */
+	static class TestReader implements TestSource {
+		private final Reader fReader;
+		private final File fDeleteOnClose;
+		private final StringBuilder fToken = new StringBuilder();
+
+		/*
+		 * Result files are read with the default encoding, the temporary files
+		 * of sorted chunks with UTF-8.
+		 */
+		TestReader(String filename) throws IOException {
+			this(new File(filename), Charset.defaultCharset().name(), false);
 		}
-		if (st.hasMoreTokens()) {
-			test[1] = st.nextToken();
-		} else {
-			return null;
+
+		TestReader(File file, String encoding, boolean deleteOnClose)
+				throws IOException {
+			fReader = new BufferedReader(new InputStreamReader(
+					new FileInputStream(file), encoding));
+			fDeleteOnClose = deleteOnClose ? file : null;
+		}
+
+		public String[] next() throws IOException {
+			String name = nextToken();
+			String status = nextToken();
+			if (name == null || status == null)
+				return null;
+			return new String[] { name, status };
+		}
+
+		private String nextToken() throws IOException {
+			fToken.setLength(0);
+			int c;
+			while ((c = fReader.read()) != -1 && isWhitespace(c)) {
+				// skip
+			}
+			while (c != -1 && !isWhitespace(c)) {
+				fToken.append((char) c);
+				c = fReader.read();
+			}
+			return fToken.length() > 0 ? fToken.toString() : null;
+		}
+
+		/*
+		 * The default delimiters of StringTokenizer.
+		 */
+		private static boolean isWhitespace(int c) {
+			return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+		}
+
+		public void close() {
+			try {
+				fReader.close();
+			} catch (IOException e) {
+				// ignore
+			}
+			if (fDeleteOnClose != null)
+				fDeleteOnClose.delete();
 		}
-		return test;
 	}
-}
 
+	/*
+	 * Merges sorted runs. Equal names come from the earlier run first.
+	 */
+	private static class MergingSource implements TestSource {
+		private final PriorityQueue<Head> fHeads;
+		private final List<TestReader> fRuns = new ArrayList<TestReader>();
+
+		private static class Head {
+			String[] fTest;
+			final int fRun;
+
+			Head(String[] test, int run) {
+				fTest = test;
+				fRun = run;
+			}
+		}
+
+		MergingSource(List<File> runs, final Comparator<String[]> comparator)
+				throws IOException {
+			fHeads = new PriorityQueue<Head>(Math.max(runs.size(), 1),
+					new Comparator<Head>() {
+						public int compare(Head head1, Head head2) {
+							int result = comparator.compare(head1.fTest, head2.fTest);
+							return result != 0 ? result : head1.fRun - head2.fRun;
+						}
+					});
+			try {
+				for (File run : runs) {
+					TestReader reader = new TestReader(run, "UTF-8", true);
+					fRuns.add(reader);
+					String[] test = reader.next();
+					if (test != null)
+						fHeads.add(new Head(test, fRuns.size() - 1));
+				}
+			} catch (IOException e) {
+				close();
+				for (File run : runs)
+					run.delete();
+				throw e;
+			}
+		}
+
+		public String[] next() throws IOException {
+			Head head = fHeads.poll();
+			if (head == null)
+				return null;
+			String[] test = head.fTest;
+			head.fTest = fRuns.get(head.fRun).next();
+			if (head.fTest != null)
+				fHeads.add(head);
+			return test;
+		}
+
+		public void close() {
+			for (TestReader run : fRuns)
+				run.close();
+		}
+	}
+}
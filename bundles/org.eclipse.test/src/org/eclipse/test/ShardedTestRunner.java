@@ -0,0 +1,520 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.taskdefs.optional.junit.JUnitResultFormatter;
+import org.apache.tools.ant.taskdefs.optional.junit.JUnitTest;
+
+/**
+ * Runs the suites given with -testpluginsnames and -classesnames in several
+ * child Eclipse processes at the same time. Every child gets a share of the
+ * suites, its own workspace, and its own configuration area, which shares the
+ * bundles of the configuration of this process. The TEST-*.xml files of the
+ * children are moved into the formatter output directory of this process, so
+ * the result looks like the one of a sequential run.
+ * <p>
+ * With a TestHistory, the suites are distributed by their expected duration,
+ * and every shard runs them in the order of the history. Suites without
+ * history are estimated from their number of tests in the SuiteIndex, without
+ * loading their classes. With only an index, the suites are distributed by
+ * their number of tests. Every shard starts from a copy of the index and
+ * writes its own file, which is merged into the index when the shard is done,
+ * like the coverage map.
+ * </p>
+ */
+class ShardedTestRunner {
+
+	/**
+	 * The command line arguments whose value differs for every shard.
+	 */
+	private static final String[] SHARD_ARGS = { "-testpluginsnames",
+			"-classesnames", "-junitReportOutput", "-data", "-configuration",
+			"-testhistory", "-readtesthistory", "-resultsummary",
+			"-resultaggregator", "-coveragemap", "-suiteindex" };
+
+	private final int fShardCount;
+	private final String[] fTestPlugins;
+	private final String[] fSuiteClasses;
+	private final String fFormatterClassName;
+	private final File fOutputDirectory;
+	private final File fShardsDirectory;
+	private final TestHistory fHistory;
+	private final SuiteIndex fIndex;
+	private final TestResultAggregator fAggregator;
+	private int fAggregatorPort;
+	private final CoverageMap fCoverageMap;
+
+	/**
+	 * @param shardCount
+	 *            the number of child processes
+	 * @param testPlugins
+	 *            the plugin of every suite
+	 * @param suiteClasses
+	 *            the suites to run
+	 * @param formatter
+	 *            the formatter argument, formatter=&lt;classname&gt;,&lt;directory&gt;
+	 * @param history
+	 *            the history, or <code>null</code>
+	 * @param index
+	 *            the suite index, or <code>null</code>
+	 * @param aggregator
+	 *            the aggregator that receives the results of the shards, or
+	 *            <code>null</code>
+	 * @param coverageMap
+	 *            the coverage map that the shards record, or <code>null</code>
+	 */
+	ShardedTestRunner(int shardCount, String[] testPlugins,
+			String[] suiteClasses, String formatter, TestHistory history,
+			SuiteIndex index, TestResultAggregator aggregator,
+			CoverageMap coverageMap) {
+		int pos = formatter.indexOf(',');
+		fShardCount = Math.min(shardCount, suiteClasses.length);
+		fTestPlugins = testPlugins;
+		fSuiteClasses = suiteClasses;
+		fFormatterClassName = formatter.substring(0, pos);
+		fOutputDirectory = new File(formatter.substring(pos + 1)).getAbsoluteFile();
+		fShardsDirectory = new File(fOutputDirectory, "shards");
+		fHistory = history;
+		fIndex = index;
+		fAggregator = aggregator;
+		fCoverageMap = coverageMap;
+	}
+
+	/**
+	 * Runs all shards and waits for them to finish.
+	 *
+	 * @return the worst return code of all shards
+	 */
+	int run() throws IOException {
+		fOutputDirectory.mkdirs();
+		List<Shard> shards = new ArrayList<Shard>();
+		for (int i = 0; i < fShardCount; i++)
+			shards.add(new Shard(i));
+		if (fHistory != null || fIndex != null) {
+			distributeByDuration(shards);
+		} else {
+			// deal the suites round robin, so that the suites of one plugin are spread over all shards
+			for (int i = 0; i < fSuiteClasses.length; i++)
+				shards.get(i % fShardCount).add(fTestPlugins[i], fSuiteClasses[i]);
+		}
+
+		if (fAggregator != null)
+			fAggregatorPort = fAggregator.startService();
+		List<String> command = getLaunchCommand();
+		for (Shard shard : shards)
+			shard.start(command);
+
+		int returnCode = EclipseTestRunner.SUCCESS;
+		for (Shard shard : shards)
+			returnCode = Math.max(returnCode, shard.finish());
+		if (fAggregator != null) {
+			fAggregator.stopService();
+			for (String suiteClass : fSuiteClasses) {
+				if (!fAggregator.hasSuite(suiteClass))
+					System.err.println("INFO: the result summary has no results for " + suiteClass);
+			}
+		}
+		fShardsDirectory.delete();
+		return returnCode;
+	}
+
+	/*
+	 * Gives every suite, from the longest to the shortest, to the shard that is expected
+	 * to finish first, and then orders the suites of every shard by the history.
+	 */
+	private void distributeByDuration(List<Shard> shards) {
+		final long[] durations = estimateDurations();
+		Integer[] indices = new Integer[fSuiteClasses.length];
+		for (int i = 0; i < indices.length; i++)
+			indices[i] = new Integer(i);
+		Arrays.sort(indices, new Comparator<Integer>() {
+			public int compare(Integer i1, Integer i2) {
+				long d1 = durations[i1.intValue()];
+				long d2 = durations[i2.intValue()];
+				return d1 > d2 ? -1 : d1 == d2 ? 0 : 1;
+			}
+		});
+
+		List<List<Integer>> assigned = new ArrayList<List<Integer>>();
+		long[] loads = new long[shards.size()];
+		for (int i = 0; i < shards.size(); i++)
+			assigned.add(new ArrayList<Integer>());
+		for (Integer index : indices) {
+			int min = 0;
+			for (int i = 1; i < loads.length; i++) {
+				if (loads[i] < loads[min])
+					min = i;
+			}
+			loads[min] += durations[index.intValue()];
+			assigned.get(min).add(index);
+		}
+
+		for (int i = 0; i < shards.size(); i++) {
+			List<Integer> suites = assigned.get(i);
+			String[] names = new String[suites.size()];
+			for (int j = 0; j < names.length; j++)
+				names[j] = fSuiteClasses[suites.get(j).intValue()];
+			int[] order = fHistory != null ? fHistory.order(names) : null;
+			for (int j = 0; j < names.length; j++) {
+				int index = suites.get(order != null ? order[j] : j).intValue();
+				shards.get(i).add(fTestPlugins[index], fSuiteClasses[index]);
+			}
+			if (fHistory != null)
+				System.out.println("INFO: shard " + i + " is expected to take "
+						+ loads[i] / 1000 + "s");
+			else
+				System.out.println("INFO: shard " + i + " has " + loads[i] + " tests");
+		}
+	}
+
+	/*
+	 * Returns the duration of every suite from the history. Suites without
+	 * history but with a known number of tests take the average duration of a
+	 * test of the other suites, or 1 without history. The others take the
+	 * average of the estimated suites.
+	 */
+	private long[] estimateDurations() {
+		long[] durations = new long[fSuiteClasses.length];
+		int[] testCounts = new int[fSuiteClasses.length];
+		long knownDuration = 0;
+		long knownTests = 0;
+		for (int i = 0; i < fSuiteClasses.length; i++) {
+			durations[i] = fHistory != null ? fHistory.getExpectedDuration(fSuiteClasses[i], -1) : -1;
+			testCounts[i] = fIndex != null ? fIndex.getTestCount(fSuiteClasses[i]) : -1;
+			if (durations[i] >= 0 && testCounts[i] > 0) {
+				knownDuration += durations[i];
+				knownTests += testCounts[i];
+			}
+		}
+		long durationPerTest = knownTests > 0 ? Math.max(knownDuration / knownTests, 1) : 1;
+
+		long sum = 0;
+		int count = 0;
+		for (int i = 0; i < durations.length; i++) {
+			if (durations[i] < 0 && testCounts[i] >= 0)
+				durations[i] = testCounts[i] * durationPerTest;
+			if (durations[i] >= 0) {
+				sum += durations[i];
+				count++;
+			}
+		}
+		long defaultDuration = count > 0 ? sum / count : 0;
+		for (int i = 0; i < durations.length; i++) {
+			if (durations[i] < 0)
+				durations[i] = defaultDuration;
+		}
+		return durations;
+	}
+
+	/*
+	 * Returns the command that launched this process, from the properties set by the launcher.
+	 */
+	private static List<String> getLaunchCommand() {
+		List<String> command = new ArrayList<String>();
+		String vm = System.getProperty("eclipse.vm");
+		if (vm == null || !new File(vm).getName().startsWith("java"))
+			vm = System.getProperty("java.home") + File.separator + "bin"
+					+ File.separator + "java";
+		command.add(vm);
+
+		String vmargs = System.getProperty("eclipse.vmargs");
+		String configurationArea = System.getProperty("osgi.configuration.area");
+		if (configurationArea != null)
+			command.add("-Dosgi.sharedConfiguration.area=" + configurationArea);
+		if (vmargs != null && vmargs.indexOf("-jar") != -1) {
+			addLines(command, vmargs);
+		} else {
+			if (vmargs != null)
+				addLines(command, vmargs);
+			command.add("-classpath");
+			command.add(System.getProperty("java.class.path"));
+			command.add("org.eclipse.equinox.launcher.Main");
+		}
+
+		String commands = System.getProperty("eclipse.commands");
+		if (commands != null)
+			addLines(command, commands);
+		return command;
+	}
+
+	private static void addLines(List<String> list, String lines) {
+		String[] split = lines.split("\n");
+		for (int i = 0; i < split.length; i++) {
+			String line = split[i].trim();
+			if (line.length() > 0)
+				list.add(line);
+		}
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (int i = 0; i < children.length; i++)
+				delete(children[i]);
+		}
+		file.delete();
+	}
+
+	/**
+	 * A child process and the suites it runs.
+	 */
+	private class Shard {
+
+		private final int fIndex;
+		private final File fDirectory;
+		private final List<String> fPlugins = new ArrayList<String>();
+		private final List<String> fClasses = new ArrayList<String>();
+		private Process fProcess;
+		private Thread fOutputPump;
+
+		Shard(int index) {
+			fIndex = index;
+			fDirectory = new File(fShardsDirectory, "shard" + index);
+		}
+
+		void add(String plugin, String suiteClass) {
+			fPlugins.add(plugin);
+			fClasses.add(suiteClass);
+		}
+
+		void start(List<String> launchCommand) throws IOException {
+			delete(fDirectory);
+			fDirectory.mkdirs();
+			if (ShardedTestRunner.this.fIndex != null
+					&& ShardedTestRunner.this.fIndex.getFile().isFile())
+				copy(ShardedTestRunner.this.fIndex.getFile(), getSuiteIndexFile());
+			List<String> command = getCommand(launchCommand);
+			System.out.println("INFO: starting shard " + fIndex + " with "
+					+ fClasses.size() + " suites: " + command);
+
+			ProcessBuilder builder = new ProcessBuilder(command);
+			builder.redirectErrorStream(true);
+			fProcess = builder.start();
+			fProcess.getOutputStream().close();
+			fOutputPump = new Thread(new Runnable() {
+				public void run() {
+					pumpOutput(fProcess.getInputStream());
+				}
+			}, "EclipseTestRunner shard " + fIndex);
+			fOutputPump.start();
+		}
+
+		/*
+		 * Copies the launch command, with the per shard arguments replaced.
+		 */
+		private List<String> getCommand(List<String> launchCommand) {
+			List<String> command = new ArrayList<String>();
+			// every shard records its coverage with its own JaCoCo agent
+			int agentPort = fCoverageMap != null ? TestCoverageRecorder
+					.getAgentPort() : -1;
+			for (int i = 0; i < launchCommand.size(); i++) {
+				String arg = launchCommand.get(i);
+				if (arg.equalsIgnoreCase("-shards") || isShardArg(arg)) {
+					i++; // skip the value
+				} else if (arg.startsWith("formatter=")) {
+					// replaced below
+				} else if (agentPort != -1) {
+					command.add(TestCoverageRecorder.getShardArgument(arg,
+							agentPort + 1 + fIndex));
+				} else {
+					command.add(arg);
+				}
+			}
+			command.add("-data");
+			command.add(new File(fDirectory, "workspace").getAbsolutePath());
+			command.add("-configuration");
+			command.add(new File(fDirectory, "configuration").getAbsolutePath());
+			command.add("-testpluginsnames");
+			command.add(join(fPlugins));
+			command.add("-classesnames");
+			command.add(join(fClasses));
+			command.add("-junitReportOutput");
+			command.add(fDirectory.getAbsolutePath());
+			command.add("formatter=" + fFormatterClassName + ","
+					+ getResultsDirectory().getAbsolutePath());
+			if (fHistory != null) {
+				// the results are recorded by this process, when all shards are done
+				command.add("-readtesthistory");
+				command.add(fHistory.getFile().getAbsolutePath());
+			}
+			if (fAggregator != null) {
+				command.add("-resultaggregator");
+				command.add(String.valueOf(fAggregatorPort));
+			}
+			if (fCoverageMap != null) {
+				command.add("-coveragemap");
+				command.add(getCoverageMapFile().getAbsolutePath());
+			}
+			if (ShardedTestRunner.this.fIndex != null) {
+				command.add("-suiteindex");
+				command.add(getSuiteIndexFile().getAbsolutePath());
+			}
+			return command;
+		}
+
+		private boolean isShardArg(String arg) {
+			for (int i = 0; i < SHARD_ARGS.length; i++) {
+				if (SHARD_ARGS[i].equalsIgnoreCase(arg))
+					return true;
+			}
+			return false;
+		}
+
+		private String join(List<String> values) {
+			StringBuilder sb = new StringBuilder();
+			for (String value : values) {
+				if (sb.length() > 0)
+					sb.append(',');
+				sb.append(value);
+			}
+			return sb.toString();
+		}
+
+		private File getResultsDirectory() {
+			return new File(fDirectory, "results");
+		}
+
+		private File getCoverageMapFile() {
+			return new File(fDirectory, "coveragemap.txt");
+		}
+
+		private File getSuiteIndexFile() {
+			return new File(fDirectory, "suiteindex.txt");
+		}
+
+		private void pumpOutput(InputStream in) {
+			String prefix = "[shard " + fIndex + "] ";
+			try {
+				BufferedReader reader = new BufferedReader(
+						new InputStreamReader(in));
+				String line;
+				while ((line = reader.readLine()) != null)
+					System.out.println(prefix + line);
+			} catch (IOException e) {
+				System.err.println(prefix + "cannot read output: " + e);
+			}
+		}
+
+		/**
+		 * Waits for the process, and moves its results into the output
+		 * directory. Suites without results are reported as errors.
+		 *
+		 * @return the return code of the shard
+		 */
+		int finish() {
+			int exitCode;
+			try {
+				exitCode = fProcess.waitFor();
+				fOutputPump.join();
+			} catch (InterruptedException e) {
+				fProcess.destroy();
+				exitCode = EclipseTestRunner.ERRORS;
+			}
+			System.out.println("INFO: shard " + fIndex + " exited with code "
+					+ exitCode);
+
+			int returnCode = exitCode == EclipseTestRunner.SUCCESS
+					|| exitCode == EclipseTestRunner.FAILURES ? exitCode
+					: EclipseTestRunner.ERRORS;
+			for (String suiteClass : fClasses) {
+				String name = "TEST-" + suiteClass + ".xml";
+				File result = new File(getResultsDirectory(), name);
+				File target = new File(fOutputDirectory, name);
+				target.delete();
+				if (!result.isFile()) {
+					reportMissingResult(suiteClass, target, exitCode);
+					returnCode = EclipseTestRunner.ERRORS;
+				} else if (!result.renameTo(target)) {
+					try {
+						copy(result, target);
+					} catch (IOException e) {
+						System.err.println("cannot copy " + result + ": " + e);
+						returnCode = EclipseTestRunner.ERRORS;
+					}
+				}
+			}
+			if (fCoverageMap != null) {
+				fCoverageMap.read(getCoverageMapFile());
+				getCoverageMapFile().delete();
+			}
+			if (ShardedTestRunner.this.fIndex != null) {
+				ShardedTestRunner.this.fIndex.read(getSuiteIndexFile());
+				getSuiteIndexFile().delete();
+			}
+			delete(new File(fDirectory, "workspace"));
+			delete(new File(fDirectory, "configuration"));
+			// only kept if there is something left to look at, like timeout screenshots
+			getResultsDirectory().delete();
+			fDirectory.delete();
+			return returnCode;
+		}
+
+		/*
+		 * Writes a result with a single error for a suite the shard did not report on.
+		 */
+		private void reportMissingResult(String suiteClass, File target,
+				int exitCode) {
+			try {
+				List<JUnitResultFormatter> formatters = new ArrayList<JUnitResultFormatter>();
+				formatters.add(EclipseTestRunner.createFormatter(
+						fFormatterClassName, target));
+				if (fAggregator != null)
+					formatters.add(fAggregator.createFormatter());
+				JUnitTest test = new JUnitTest(suiteClass);
+				test.setProperties(System.getProperties());
+				Exception error = new Exception("shard " + fIndex
+						+ " exited with code " + exitCode
+						+ " without results for " + suiteClass
+						+ ", see its output");
+				test.setCounts(1, 0, 1);
+				test.setRunTime(0);
+				for (JUnitResultFormatter formatter : formatters) {
+					formatter.startTestSuite(test);
+					formatter.addError(null, error);
+					formatter.endTestSuite(test);
+				}
+			} catch (BuildException e) {
+				System.err.println(e.getMessage());
+			}
+		}
+	}
+
+	private static void copy(File source, File target) throws IOException {
+		InputStream in = new FileInputStream(source);
+		try {
+			OutputStream out = new FileOutputStream(target);
+			try {
+				byte[] buffer = new byte[8192];
+				int n;
+				while ((n = in.read(buffer)) != -1)
+					out.write(buffer, 0, n);
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Captures output in memory up to a threshold, and in a temporary file beyond
+ * it, so that the memory used does not depend on the amount of output.
+ */
+class SpillingOutputStream extends OutputStream {
+
+	/**
+	 * The system property with the number of bytes kept in memory, 1 MB by
+	 * default.
+	 */
+	static final String THRESHOLD_PROPERTY = "eclipse.test.spillThreshold";
+
+	private static final int DEFAULT_THRESHOLD = 1024 * 1024;
+
+	private final int fThreshold;
+	private ByteArrayOutputStream fMemory = new ByteArrayOutputStream();
+	private File fFile;
+	private OutputStream fOut;
+	private long fSize;
+
+	SpillingOutputStream(int threshold) {
+		fThreshold = threshold;
+		fOut = fMemory;
+	}
+
+	static int getThreshold() {
+		return Integer.getInteger(THRESHOLD_PROPERTY, DEFAULT_THRESHOLD)
+				.intValue();
+	}
+
+	public synchronized void write(int b) throws IOException {
+		spillIfNeeded(1);
+		fOut.write(b);
+		fSize++;
+	}
+
+	public synchronized void write(byte[] b, int off, int len)
+			throws IOException {
+		spillIfNeeded(len);
+		fOut.write(b, off, len);
+		fSize += len;
+	}
+
+	public synchronized void flush() throws IOException {
+		fOut.flush();
+	}
+
+	public synchronized void close() throws IOException {
+		fOut.close();
+	}
+
+	private void spillIfNeeded(int len) throws IOException {
+		if (fFile != null || fSize + len <= fThreshold)
+			return;
+		fFile = File.createTempFile("junit-output", ".txt");
+		fFile.deleteOnExit();
+		fOut = new BufferedOutputStream(new FileOutputStream(fFile));
+		fMemory.writeTo(fOut);
+		fMemory = null;
+	}
+
+	/**
+	 * @return the number of bytes written
+	 */
+	synchronized long size() {
+		return fSize;
+	}
+
+	/**
+	 * Returns the captured output. The stream must be closed.
+	 */
+	synchronized InputStream getInputStream() throws IOException {
+		if (fFile == null)
+			return new ByteArrayInputStream(fMemory.toByteArray());
+		return new BufferedInputStream(new FileInputStream(fFile));
+	}
+
+	/**
+	 * Returns the captured output as a string, for formatters that cannot
+	 * stream it. The stream must be closed.
+	 */
+	public synchronized String toString() {
+		if (fFile == null)
+			return new String(fMemory.toByteArray());
+		try {
+			InputStream in = getInputStream();
+			try {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				byte[] buffer = new byte[8192];
+				int n;
+				while ((n = in.read(buffer)) != -1)
+					out.write(buffer, 0, n);
+				return new String(out.toByteArray());
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			return "cannot read " + fFile + ": " + e;
+		}
+	}
+
+	/**
+	 * Deletes the temporary file, if any.
+	 */
+	synchronized void dispose() {
+		if (fFile != null) {
+			fFile.delete();
+			fFile = null;
+		}
+		fMemory = new ByteArrayOutputStream();
+		fOut = fMemory;
+		fSize = 0;
+	}
+}
@@ -0,0 +1,366 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TimeZone;
+
+import junit.framework.AssertionFailedError;
+import junit.framework.Test;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.taskdefs.optional.junit.JUnitResultFormatter;
+import org.apache.tools.ant.taskdefs.optional.junit.JUnitTest;
+import org.apache.tools.ant.taskdefs.optional.junit.JUnitTestRunner;
+import org.apache.tools.ant.taskdefs.optional.junit.JUnitVersionHelper;
+import org.apache.tools.ant.taskdefs.optional.junit.XMLConstants;
+
+/**
+ * A JUnitResultFormatter that writes the same XML as Ant's
+ * XMLJUnitResultFormatter without building the document in memory. Every
+ * &lt;testcase&gt; element is written to a temporary file when its test ends;
+ * the suite element, whose attributes are only known at the end, is written to
+ * the output when the suite ends, followed by the test cases and the captured
+ * output. Output captured by EclipseTestRunner is streamed from where it was
+ * spilled instead of being passed as a string. The &lt;testcase&gt; elements
+ * of tests run by EclipseTestRunner also have the attributes
+ * {@value #ATTR_CPU_TIME} and {@value #ATTR_GC_TIME} in seconds, and
+ * {@value #ATTR_ALLOCATED_BYTES}, for the measurements supported by the VM.
+ * Example call:
+ * formatter=org.eclipse.test.StreamingXMLResultFormatter,results/xml
+ */
+public class StreamingXMLResultFormatter implements JUnitResultFormatter,
+		XMLConstants {
+
+	/**
+	 * The CPU time of the thread of the test in seconds.
+	 */
+	public static final String ATTR_CPU_TIME = "cputime";
+
+	/**
+	 * The bytes allocated by the thread of the test.
+	 */
+	public static final String ATTR_ALLOCATED_BYTES = "allocatedbytes";
+
+	/**
+	 * The time spent in garbage collection while the test ran in seconds.
+	 */
+	public static final String ATTR_GC_TIME = "gctime";
+
+	private static final String ENCODING = "UTF-8";
+
+	private OutputStream fOut;
+	private File fTestCasesFile;
+	private Writer fTestCases;
+	private final Map<Test, Long> fStartTimes = new IdentityHashMap<Test, Long>();
+	private Test fCurrentTest;
+	private StringBuilder fCurrentResults = new StringBuilder();
+	private String fTimestamp;
+
+	private String fSystemOutput;
+	private String fSystemError;
+	private SpillingOutputStream fSystemOutputStream;
+	private SpillingOutputStream fSystemErrorStream;
+	private TestResourceMonitor fResources;
+
+	public void setOutput(OutputStream out) {
+		fOut = out;
+	}
+
+	public void setSystemOutput(String out) {
+		fSystemOutput = out;
+	}
+
+	public void setSystemError(String err) {
+		fSystemError = err;
+	}
+
+	/*
+	 * Called by EclipseTestRunner instead of setSystemOutput/setSystemError.
+	 * The streams must stay available until the end of the suite.
+	 */
+	void setSystemOutput(SpillingOutputStream out, SpillingOutputStream err) {
+		fSystemOutputStream = out;
+		fSystemErrorStream = err;
+	}
+
+	/*
+	 * Called by EclipseTestRunner, which measures the resources of every test.
+	 */
+	void setResourceMonitor(TestResourceMonitor resources) {
+		fResources = resources;
+	}
+
+	public void startTestSuite(JUnitTest suite) throws BuildException {
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		fTimestamp = format.format(new Date());
+		try {
+			fTestCasesFile = File.createTempFile("junit-testcases", ".xml");
+			fTestCasesFile.deleteOnExit();
+			fTestCases = new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(fTestCasesFile), ENCODING));
+		} catch (IOException e) {
+			throw new BuildException(e);
+		}
+	}
+
+	public void startTest(Test test) {
+		fStartTimes.put(test, new Long(System.currentTimeMillis()));
+		fCurrentTest = test;
+		fCurrentResults.setLength(0);
+	}
+
+	public void endTest(Test test) {
+		Long start = fStartTimes.remove(test);
+		long time = start != null ? System.currentTimeMillis() - start.longValue() : 0;
+		TestResourceMonitor.Usage usage = fResources != null ? fResources.getUsage(test) : null;
+		StringBuilder sb = new StringBuilder();
+		sb.append("  <").append(TESTCASE);
+		appendAttribute(sb, ATTR_CLASSNAME, JUnitVersionHelper.getTestCaseClassName(test));
+		appendAttribute(sb, ATTR_NAME, JUnitVersionHelper.getTestCaseName(test));
+		if (usage != null) {
+			appendAttribute(sb, ATTR_TIME, formatSeconds(usage.fWallTime));
+			if (usage.fCpuTime >= 0)
+				appendAttribute(sb, ATTR_CPU_TIME, formatSeconds(usage.fCpuTime));
+			if (usage.fAllocatedBytes >= 0)
+				appendAttribute(sb, ATTR_ALLOCATED_BYTES, String.valueOf(usage.fAllocatedBytes));
+			if (usage.fGcTime >= 0)
+				appendAttribute(sb, ATTR_GC_TIME, String.valueOf(usage.fGcTime / 1000.0));
+		} else {
+			appendAttribute(sb, ATTR_TIME, String.valueOf(time / 1000.0));
+		}
+		if (test == fCurrentTest && fCurrentResults.length() > 0) {
+			sb.append(">\n").append(fCurrentResults).append("  </").append(TESTCASE).append(">\n");
+		} else {
+			sb.append(" />\n");
+		}
+		fCurrentTest = null;
+		fCurrentResults.setLength(0);
+		writeTestCases(sb.toString());
+	}
+
+	public void addFailure(Test test, AssertionFailedError t) {
+		addProblem(test, t, FAILURE);
+	}
+
+	public void addError(Test test, Throwable t) {
+		addProblem(test, t, ERROR);
+	}
+
+	private void addProblem(Test test, Throwable t, String type) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(test != null ? "    <" : "  <").append(type);
+		if (t.getMessage() != null)
+			appendAttribute(sb, ATTR_MESSAGE, t.getMessage());
+		appendAttribute(sb, ATTR_TYPE, t.getClass().getName());
+		sb.append('>');
+		appendText(sb, JUnitTestRunner.getFilteredTrace(t));
+		sb.append("</").append(type).append(">\n");
+		if (test != null && test == fCurrentTest) {
+			fCurrentResults.append(sb);
+		} else {
+			// errors outside of a test, like a failing suite() method, belong to the suite
+			writeTestCases(sb.toString());
+		}
+	}
+
+	public void endTestSuite(JUnitTest suite) throws BuildException {
+		if (fOut == null)
+			return;
+		try {
+			fTestCases.close();
+			Writer out = new BufferedWriter(new OutputStreamWriter(fOut, ENCODING));
+			StringBuilder sb = new StringBuilder();
+			sb.append("<?xml version=\"1.0\" encoding=\"").append(ENCODING).append("\" ?>\n");
+			sb.append('<').append(TESTSUITE);
+			appendAttribute(sb, ATTR_ERRORS, String.valueOf(suite.errorCount()));
+			appendAttribute(sb, ATTR_FAILURES, String.valueOf(suite.failureCount()));
+			appendAttribute(sb, HOSTNAME, getHostname());
+			appendAttribute(sb, ATTR_NAME, suite.getName());
+			appendAttribute(sb, ATTR_TESTS, String.valueOf(suite.runCount()));
+			appendAttribute(sb, ATTR_TIME, String.valueOf(suite.getRunTime() / 1000.0));
+			appendAttribute(sb, TIMESTAMP, fTimestamp);
+			sb.append(">\n");
+			out.write(sb.toString());
+			writeProperties(out, suite.getProperties());
+
+			Reader testCases = new InputStreamReader(new FileInputStream(fTestCasesFile), ENCODING);
+			try {
+				copy(testCases, out, false);
+			} finally {
+				testCases.close();
+			}
+
+			writeOutput(out, SYSTEM_OUT, fSystemOutputStream, fSystemOutput);
+			writeOutput(out, SYSTEM_ERR, fSystemErrorStream, fSystemError);
+			out.write("</" + TESTSUITE + ">\n");
+			out.flush();
+		} catch (IOException e) {
+			throw new BuildException("Unable to write log file", e);
+		} finally {
+			fTestCasesFile.delete();
+			fSystemOutputStream = null;
+			fSystemErrorStream = null;
+			fSystemOutput = null;
+			fSystemError = null;
+			if (fOut != System.out && fOut != System.err) {
+				try {
+					fOut.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	private void writeTestCases(String xml) {
+		try {
+			fTestCases.write(xml);
+		} catch (IOException e) {
+			throw new BuildException(e);
+		}
+	}
+
+	private void writeProperties(Writer out, Properties properties)
+			throws IOException {
+		StringBuilder sb = new StringBuilder();
+		sb.append("  <").append(PROPERTIES).append(">\n");
+		if (properties != null) {
+			for (Enumeration<?> e = properties.propertyNames(); e.hasMoreElements();) {
+				String name = (String) e.nextElement();
+				sb.append("    <").append(PROPERTY);
+				appendAttribute(sb, ATTR_NAME, name);
+				appendAttribute(sb, ATTR_VALUE, properties.getProperty(name));
+				sb.append(" />\n");
+			}
+		}
+		sb.append("  </").append(PROPERTIES).append(">\n");
+		out.write(sb.toString());
+	}
+
+	private void writeOutput(Writer out, String element,
+			SpillingOutputStream stream, String string) throws IOException {
+		out.write("  <" + element + ">");
+		if (stream != null) {
+			InputStream in = stream.getInputStream();
+			try {
+				copy(new InputStreamReader(in), out, true);
+			} finally {
+				in.close();
+			}
+		} else if (string != null) {
+			copy(new StringReader(string), out, true);
+		}
+		out.write("</" + element + ">\n");
+	}
+
+	private static void copy(Reader in, Writer out, boolean escape)
+			throws IOException {
+		BufferedReader reader = new BufferedReader(in);
+		char[] buffer = new char[8192];
+		StringBuilder sb = new StringBuilder();
+		int n;
+		while ((n = reader.read(buffer)) != -1) {
+			if (escape) {
+				sb.setLength(0);
+				for (int i = 0; i < n; i++)
+					appendEscaped(sb, buffer[i], false);
+				out.write(sb.toString());
+			} else {
+				out.write(buffer, 0, n);
+			}
+		}
+	}
+
+	/*
+	 * Formats nanoseconds as seconds with microsecond precision, without the
+	 * exponent String.valueOf(double) uses for small values.
+	 */
+	private static String formatSeconds(long nanos) {
+		long micros = nanos / 1000;
+		String fraction = String.valueOf(1000000 + micros % 1000000).substring(1);
+		return micros / 1000000 + "." + fraction;
+	}
+
+	private static void appendAttribute(StringBuilder sb, String name,
+			String value) {
+		sb.append(' ').append(name).append("=\"");
+		for (int i = 0; value != null && i < value.length(); i++)
+			appendEscaped(sb, value.charAt(i), true);
+		sb.append('"');
+	}
+
+	private static void appendText(StringBuilder sb, String text) {
+		for (int i = 0; i < text.length(); i++)
+			appendEscaped(sb, text.charAt(i), false);
+	}
+
+	private static void appendEscaped(StringBuilder sb, char c,
+			boolean attribute) {
+		switch (c) {
+		case '<':
+			sb.append("&lt;");
+			break;
+		case '>':
+			sb.append("&gt;");
+			break;
+		case '&':
+			sb.append("&amp;");
+			break;
+		case '"':
+			sb.append(attribute ? "&quot;" : "\"");
+			break;
+		case '\n':
+		case '\r':
+		case '\t':
+			if (attribute)
+				sb.append("&#").append((int) c).append(';');
+			else
+				sb.append(c);
+			break;
+		default:
+			// characters that are not allowed in XML 1.0
+			if (c < 0x20 || c == 0xFFFE || c == 0xFFFF)
+				sb.append('\uFFFD');
+			else
+				sb.append(c);
+		}
+	}
+
+	private static String getHostname() {
+		try {
+			return InetAddress.getLocalHost().getHostName();
+		} catch (UnknownHostException e) {
+			return "localhost";
+		}
+	}
+}
@@ -0,0 +1,284 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+
+/**
+ * The shape of every suite resolved by EclipseTestRunner, read from and
+ * written to a file given with -suiteindex: how the suite is created and its
+ * number of tests, and for plain JUnit 3 test classes the names of the test
+ * methods. Entries are valid as long as the version and the modification time
+ * of the bundle of the suite, and the modification times of the class files of
+ * the suite class and its superclasses do not change. The class files catch
+ * tests compiled into the bin folders of a dev launch, where the bundle stays
+ * the same.
+ * <p>
+ * The suite class is still loaded to check its entry. A valid entry lets the
+ * runner skip the lookup of a suite() method, and create a JUnit 3 suite from
+ * the method names instead of searching the class hierarchy for test methods.
+ * The number of tests lets ShardedTestRunner estimate suites without history,
+ * without loading their classes.
+ * </p>
+ * <p>
+ * The file has one line per suite: the bundle symbolic name and the suite
+ * class separated by '#', the bundle version, the bundle modification time and
+ * a hash of the class file modification times separated by '@', the kind, the
+ * number of tests, and the test method names separated by commas, separated by
+ * tabs.
+ * </p>
+ */
+class SuiteIndex {
+
+	/** The class has a static suite() method. */
+	static final String SUITE_METHOD = "suite";
+	/** A JUnit 3 TestCase, run without the JUnit4TestAdapter. */
+	static final String JUNIT3 = "junit3";
+	/** A class run with the JUnit4TestAdapter. */
+	static final String JUNIT4 = "junit4";
+
+	private static final String HEADER = "# org.eclipse.test suite index 1";
+
+	private final File fFile;
+	private final Map<String, Entry> fEntries = new HashMap<String, Entry>();
+	private boolean fChanged;
+
+	static class Entry {
+		final String fStamp;
+		final String fKind;
+		final int fTestCount;
+		/** The test method names of a JUNIT3 suite, or null. */
+		final String[] fTests;
+
+		Entry(String stamp, String kind, int testCount, String[] tests) {
+			fStamp = stamp;
+			fKind = kind;
+			fTestCount = testCount;
+			fTests = tests;
+		}
+	}
+
+	SuiteIndex(File file) {
+		fFile = file;
+	}
+
+	File getFile() {
+		return fFile;
+	}
+
+	/**
+	 * Reads the index file, if it exists.
+	 */
+	synchronized void load() {
+		read(fFile, fEntries);
+	}
+
+	/**
+	 * Adds the entries of the given index file, like the one of a shard, which
+	 * replace the entries of the same suites.
+	 */
+	synchronized void read(File file) {
+		Map<String, Entry> entries = new HashMap<String, Entry>();
+		read(file, entries);
+		for (Map.Entry<String, Entry> e : entries.entrySet()) {
+			Entry old = fEntries.put(e.getKey(), e.getValue());
+			if (old == null || !old.fStamp.equals(e.getValue().fStamp))
+				fChanged = true;
+		}
+	}
+
+	private void read(File file, Map<String, Entry> entries) {
+		if (!file.isFile())
+			return;
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					new FileInputStream(file), "UTF-8"));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					String[] fields = line.split("\t", -1);
+					if (line.startsWith("#") || fields.length != 5)
+						continue;
+					try {
+						String[] tests = fields[4].length() > 0 ? fields[4].split(",") : null;
+						entries.put(fields[0], new Entry(fields[1], fields[2],
+								Integer.parseInt(fields[3]), tests));
+					} catch (NumberFormatException e) {
+						// skip the line
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			System.err.println("cannot read suite index " + file + ": " + e);
+		}
+	}
+
+	/**
+	 * Writes the index file if it changed. The entries of the file that are
+	 * not in this index are kept, so that test runs can share a file.
+	 */
+	synchronized void save() {
+		if (!fChanged)
+			return;
+		Map<String, Entry> entries = new TreeMap<String, Entry>();
+		read(fFile, entries);
+		entries.putAll(fEntries);
+		File tmp = null;
+		try {
+			File directory = fFile.getAbsoluteFile().getParentFile();
+			directory.mkdirs();
+			tmp = File.createTempFile(fFile.getName(), ".tmp", directory);
+			Writer out = new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(tmp), "UTF-8"));
+			try {
+				out.write(HEADER);
+				out.write('\n');
+				for (Map.Entry<String, Entry> e : entries.entrySet()) {
+					Entry entry = e.getValue();
+					StringBuilder sb = new StringBuilder();
+					sb.append(e.getKey()).append('\t').append(entry.fStamp)
+							.append('\t').append(entry.fKind).append('\t')
+							.append(entry.fTestCount).append('\t');
+					for (int i = 0; entry.fTests != null && i < entry.fTests.length; i++) {
+						if (i > 0)
+							sb.append(',');
+						sb.append(entry.fTests[i]);
+					}
+					out.write(sb.append('\n').toString());
+				}
+			} finally {
+				out.close();
+			}
+			fFile.delete();
+			if (!tmp.renameTo(fFile))
+				System.err.println("cannot write suite index " + fFile);
+			fChanged = false;
+		} catch (IOException e) {
+			System.err.println("cannot write suite index " + fFile + ": " + e);
+		} finally {
+			if (tmp != null)
+				tmp.delete();
+		}
+	}
+
+	/**
+	 * Returns the stamp that identifies the state of the given bundle and
+	 * suite class.
+	 */
+	static String getStamp(Bundle bundle, Class<?> suiteClass) {
+		long hash = 0;
+		for (Class<?> c = suiteClass; c != null && c != TestCase.class
+				&& c != Object.class; c = c.getSuperclass()) {
+			hash = 31 * hash + getLastModified(c);
+		}
+		return bundle.getHeaders().get(Constants.BUNDLE_VERSION) + "@"
+				+ bundle.getLastModified() + "@" + Long.toHexString(hash);
+	}
+
+	/*
+	 * Returns the modification time of the class file of the given class, or 0
+	 * if it is unknown.
+	 */
+	private static long getLastModified(Class<?> c) {
+		URL url = c.getResource('/' + c.getName().replace('.', '/') + ".class");
+		if (url == null)
+			return 0;
+		try {
+			return url.openConnection().getLastModified();
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Returns the entry of the given suite, or <code>null</code> if there is
+	 * none or the bundle or the classes of the suite changed since it was
+	 * recorded.
+	 */
+	synchronized Entry get(Bundle bundle, Class<?> suiteClass) {
+		Entry entry = fEntries.get(getKey(bundle, suiteClass.getName()));
+		return entry != null
+				&& entry.fStamp.equals(getStamp(bundle, suiteClass)) ? entry
+				: null;
+	}
+
+	/**
+	 * Returns the number of tests last recorded for the given suite in any
+	 * bundle, or -1 if it is unknown.
+	 */
+	synchronized int getTestCount(String suiteClass) {
+		String suffix = '#' + suiteClass;
+		for (Map.Entry<String, Entry> e : fEntries.entrySet()) {
+			if (e.getKey().endsWith(suffix))
+				return e.getValue().fTestCount;
+		}
+		return -1;
+	}
+
+	/**
+	 * Records the shape of a suite that was created the given way.
+	 */
+	synchronized void put(Bundle bundle, Class<?> suiteClass, String kind,
+			Test test) {
+		// without the names, a JUnit 3 suite is created the usual way
+		String[] tests = JUNIT3.equals(kind) ? getTestMethods(suiteClass, test)
+				: null;
+		Entry entry = new Entry(getStamp(bundle, suiteClass), kind, test
+				.countTestCases(), tests);
+		fEntries.put(getKey(bundle, suiteClass.getName()), entry);
+		fChanged = true;
+	}
+
+	/*
+	 * Returns the test methods of a TestSuite created from the given class, or
+	 * null if it contains anything else, like the warnings of TestSuite.
+	 */
+	private static String[] getTestMethods(Class<?> suiteClass, Test test) {
+		if (!(test instanceof TestSuite))
+			return null;
+		TestSuite suite = (TestSuite) test;
+		String[] tests = new String[suite.testCount()];
+		int i = 0;
+		for (Enumeration<?> e = suite.tests(); e.hasMoreElements();) {
+			Object t = e.nextElement();
+			if (t.getClass() != suiteClass)
+				return null;
+			tests[i++] = ((TestCase) t).getName();
+		}
+		return tests;
+	}
+
+	private static String getKey(Bundle bundle, String suiteClass) {
+		return bundle.getSymbolicName() + '#' + suiteClass;
+	}
+}
@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads the classes covered since the last call from the JaCoCo agent of this
+ * VM (lib/jacocoagent.jar), which must be started with the tcpserver output:
+ * <code>-javaagent:jacocoagent.jar=output=tcpserver</code>, optionally with
+ * <code>address</code> and <code>port</code>. The agent is asked for its
+ * execution data and reset at every call, in the remote control protocol of
+ * JaCoCo, so no JaCoCo classes are needed here. Since the data of all
+ * instrumented classes is transferred every time, it helps to restrict the
+ * agent to the interesting classes with its <code>includes</code> option.
+ * The execution data file written by the agent only contains the coverage
+ * since the last reset.
+ */
+class TestCoverageRecorder {
+
+	private static final String AGENT_PREFIX = "-javaagent:";
+	private static final String AGENT_JAR = "jacocoagent";
+	private static final int DEFAULT_PORT = 6300;
+
+	/**
+	 * The time the agent has to answer, in milliseconds.
+	 */
+	private static final int TIMEOUT = 60 * 1000;
+
+	/*
+	 * The blocks of the execution data and the remote control protocol.
+	 */
+	private static final byte BLOCK_HEADER = 0x01;
+	private static final byte BLOCK_SESSIONINFO = 0x10;
+	private static final byte BLOCK_EXECUTIONDATA = 0x11;
+	private static final byte BLOCK_CMDOK = 0x20;
+	private static final byte BLOCK_CMDDUMP = 0x40;
+	private static final char MAGIC_NUMBER = 0xC0C0;
+
+	private final Socket fSocket;
+	private final DataInputStream fIn;
+	private final DataOutputStream fOut;
+	private char fVersion;
+	private byte[] fName = new byte[256];
+
+	private TestCoverageRecorder(String address, int port) throws IOException {
+		fSocket = new Socket(InetAddress.getByName(address), port);
+		fSocket.setTcpNoDelay(true);
+		fSocket.setSoTimeout(TIMEOUT);
+		fOut = new DataOutputStream(new BufferedOutputStream(fSocket
+				.getOutputStream()));
+		fIn = new DataInputStream(new BufferedInputStream(
+				new AcknowledgingInputStream(fSocket.getInputStream())));
+		// the agent sends its header first, ours has to have the same version
+		if (fIn.readByte() != BLOCK_HEADER || fIn.readChar() != MAGIC_NUMBER)
+			throw new IOException("not a JaCoCo agent at port " + port);
+		fVersion = fIn.readChar();
+		writeHeader();
+	}
+
+	private void writeHeader() throws IOException {
+		fOut.writeByte(BLOCK_HEADER);
+		fOut.writeChar(MAGIC_NUMBER);
+		fOut.writeChar(fVersion);
+		fOut.flush();
+	}
+
+	/**
+	 * Connects to the JaCoCo agent given on the command line of this VM, and
+	 * resets its data.
+	 *
+	 * @throws IOException
+	 *             if there is no agent with the tcpserver output or it cannot
+	 *             be reached
+	 */
+	static TestCoverageRecorder connect() throws IOException {
+		String options = getAgentOptions();
+		if (options == null || !"tcpserver".equals(getOption(options, "output")))
+			throw new IOException("the JaCoCo agent is not running with output=tcpserver");
+		String address = getOption(options, "address");
+		if (address == null || address.equals("*"))
+			address = null; // the loopback address
+		String port = getOption(options, "port");
+		TestCoverageRecorder recorder = new TestCoverageRecorder(address,
+				port != null ? Integer.parseInt(port) : DEFAULT_PORT);
+		// the start of Eclipse does not belong to any test
+		recorder.dump();
+		return recorder;
+	}
+
+	/**
+	 * Returns the classes that were covered since the last call, as the names
+	 * of their top level classes, and resets the coverage.
+	 */
+	Set<String> dump() throws IOException {
+		fOut.writeByte(BLOCK_CMDDUMP);
+		fOut.writeBoolean(true); // dump
+		fOut.writeBoolean(true); // reset
+		fOut.flush();
+		Set<String> classes = new HashSet<String>();
+		while (true) {
+			byte block = fIn.readByte();
+			switch (block) {
+			case BLOCK_HEADER:
+				fIn.readChar();
+				fIn.readChar();
+				break;
+			case BLOCK_SESSIONINFO:
+				fIn.readUTF();
+				fIn.readLong();
+				fIn.readLong();
+				break;
+			case BLOCK_EXECUTIONDATA:
+				readExecutionData(classes);
+				break;
+			case BLOCK_CMDOK:
+				return classes;
+			default:
+				throw new IOException("unknown block type " + block
+						+ " from the JaCoCo agent");
+			}
+		}
+	}
+
+	/*
+	 * The name is only decoded if a probe of the class was executed.
+	 */
+	private void readExecutionData(Set<String> classes) throws IOException {
+		fIn.readLong(); // class id
+		int length = fIn.readUnsignedShort();
+		if (length > fName.length)
+			fName = new byte[length];
+		fIn.readFully(fName, 0, length);
+		int probes = readVarInt();
+		boolean covered = false;
+		for (int i = 0; i < (probes + 7) / 8; i++)
+			covered |= fIn.readByte() != 0;
+		if (!covered)
+			return;
+		String name = new String(fName, 0, length, "UTF-8");
+		int nested = name.indexOf('$');
+		if (nested != -1)
+			name = name.substring(0, nested);
+		classes.add(name.replace('/', '.'));
+	}
+
+	private int readVarInt() throws IOException {
+		int value = 0xFF & fIn.readByte();
+		if ((value & 0x80) == 0)
+			return value;
+		return (value & 0x7F) | (readVarInt() << 7);
+	}
+
+	/*
+	 * The agent writes its response unbuffered, in many small packets. With
+	 * Nagle's algorithm, each of them waits until the previous one is
+	 * acknowledged, which the receiver delays unless it has something to send.
+	 * So before waiting for more, a header block is sent, which the agent
+	 * ignores.
+	 */
+	private class AcknowledgingInputStream extends FilterInputStream {
+		AcknowledgingInputStream(InputStream in) {
+			super(in);
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			// the header needs the version of the agent
+			if (fVersion != 0 && in.available() == 0)
+				writeHeader();
+			return super.read(b, off, len);
+		}
+	}
+
+	void close() {
+		try {
+			fSocket.close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+
+	/**
+	 * Returns the -javaagent argument of a child process, in which the port of
+	 * the JaCoCo agent is replaced by the given one, so that every shard has
+	 * its own. Other arguments are returned as they are.
+	 */
+	static String getShardArgument(String arg, int port) {
+		int pos = arg.indexOf('=');
+		if (!arg.startsWith(AGENT_PREFIX) || arg.indexOf(AGENT_JAR) == -1
+				|| pos == -1)
+			return arg;
+		StringBuilder sb = new StringBuilder(arg.substring(0, pos + 1));
+		String[] options = arg.substring(pos + 1).split(",");
+		for (int i = 0; i < options.length; i++) {
+			if (!options[i].startsWith("port="))
+				sb.append(options[i]).append(',');
+		}
+		return sb.append("port=").append(port).toString();
+	}
+
+	/**
+	 * Returns the port of the JaCoCo agent of this VM, or -1.
+	 */
+	static int getAgentPort() {
+		String options = getAgentOptions();
+		if (options == null)
+			return -1;
+		String port = getOption(options, "port");
+		try {
+			return port != null ? Integer.parseInt(port) : DEFAULT_PORT;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static String getAgentOptions() {
+		List<String> args = ManagementFactory.getRuntimeMXBean()
+				.getInputArguments();
+		for (String arg : args) {
+			int pos = arg.indexOf('=');
+			if (arg.startsWith(AGENT_PREFIX) && arg.indexOf(AGENT_JAR) != -1)
+				return pos != -1 ? arg.substring(pos + 1) : "";
+		}
+		return null;
+	}
+
+	private static String getOption(String options, String name) {
+		String[] split = options.split(",");
+		for (int i = 0; i < split.length; i++) {
+			if (split[i].startsWith(name + "="))
+				return split[i].substring(name.length() + 1);
+		}
+		return null;
+	}
+}
@@ -0,0 +1,431 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.Platform;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.FrameworkListener;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.packageadmin.PackageAdmin;
+
+/**
+ * Keeps a launched test application alive and runs suites on request, so
+ * that repeated runs do not pay for starting Eclipse every time. The
+ * application is started in daemon mode with <code>-daemon port</code>, a port
+ * of 0 picks a free one. Like a normal launch, it first runs the launch
+ * arguments once, with the output on the console. The daemon only accepts
+ * connections from the local host and serves one request at a time.
+ * <p>
+ * Since a request runs arbitrary runner arguments as the user of the daemon,
+ * the daemon writes a random token to a file that only this user can read,
+ * see {@link #getTokenFile(int)}, and a request starts with a line with the
+ * token. The next line has the arguments of {@link EclipseTestRunner},
+ * separated by tabs, or by spaces if there is no tab. An empty line repeats
+ * the launch arguments, and <code>quit</code> ends the application. The
+ * output of the run is streamed back in the default encoding, followed by a
+ * line <code>#exit &lt;return code&gt;</code>. Results written by formatters
+ * without a file are part of the output. After every run, all projects of the
+ * workspace are deleted.
+ * </p>
+ * <p>
+ * Before a request runs, the bundles named with -testpluginname are updated
+ * and refreshed, so that test classes changed since the last run are used,
+ * like the classes compiled into the bin folders of a dev launch.
+ * </p>
+ * 
+ * @see TestDaemonClient
+ */
+class TestDaemon {
+
+	static final String DAEMON_ARG = "-daemon";
+
+	static final String QUIT = "quit";
+
+	static final String EXIT_PREFIX = "#exit ";
+
+	/**
+	 * The time a client has to send its request, in milliseconds.
+	 */
+	private static final int REQUEST_TIMEOUT = 10 * 1000;
+
+	/**
+	 * The time a refresh of the test bundles may take, in seconds.
+	 */
+	private static final int REFRESH_TIMEOUT = 60;
+
+	/**
+	 * Runs the tests of a request in the test application.
+	 */
+	interface TestRun {
+		int run(String[] args) throws IOException;
+	}
+
+	private final int fPort;
+	private final String[] fLaunchArgs;
+
+	/**
+	 * @param args
+	 *            the command line of the application, which contains
+	 *            <code>-daemon port</code>
+	 */
+	TestDaemon(String[] args) {
+		fPort = getPort(args);
+		// -timeout is for a single run, it would fire in a later one
+		List<String> launchArgs = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals(DAEMON_ARG) || args[i].equals("-timeout"))
+				i++;
+			else
+				launchArgs.add(args[i]);
+		}
+		fLaunchArgs = launchArgs.toArray(new String[launchArgs.size()]);
+	}
+
+	/**
+	 * Returns the port of the -daemon argument, or -1 if the application
+	 * does not run as a daemon.
+	 */
+	static int getPort(String[] args) {
+		for (int i = 0; i < args.length - 1; i++) {
+			if (args[i].equals(DAEMON_ARG)) {
+				try {
+					return Integer.parseInt(args[i + 1]);
+				} catch (NumberFormatException e) {
+					System.err.println(DAEMON_ARG + " must be a port number: "
+							+ args[i + 1]);
+					return -1;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Runs the launch arguments, then serves requests until a client sends
+	 * <code>quit</code>.
+	 *
+	 * @return the return code of the last run
+	 */
+	int serve(TestRun testRun) throws IOException {
+		ServerSocket server = new ServerSocket(fPort, 0, InetAddress
+				.getByName(null));
+		File tokenFile = getTokenFile(server.getLocalPort());
+		try {
+			byte[] token = writeToken(tokenFile);
+			System.out.println("TestDaemon: listening on port "
+					+ server.getLocalPort() + ", token in " + tokenFile);
+			// requests wait in the backlog until the launch arguments ran
+			int returnCode = run(testRun, fLaunchArgs);
+			while (true) {
+				Socket socket = server.accept();
+				try {
+					socket.setSoTimeout(REQUEST_TIMEOUT);
+					BufferedReader reader = new BufferedReader(
+							new InputStreamReader(socket.getInputStream(),
+									"UTF-8"));
+					String requestToken = reader.readLine();
+					if (requestToken == null
+							|| !MessageDigest.isEqual(token, requestToken
+									.trim().getBytes("UTF-8"))) {
+						System.err.println("TestDaemon: rejected a request without the token");
+						reply(socket, "TestDaemon: invalid token");
+						continue;
+					}
+					String request = reader.readLine();
+					if (request == null)
+						continue;
+					if (request.trim().equals(QUIT)) {
+						reply(socket, EXIT_PREFIX + returnCode);
+						return returnCode;
+					}
+					String[] args = parseArgs(request);
+					refreshTestBundles(args);
+					returnCode = run(testRun, args, socket.getOutputStream());
+				} catch (IOException e) {
+					System.err.println("TestDaemon: " + e);
+				} finally {
+					socket.close();
+				}
+			}
+		} finally {
+			tokenFile.delete();
+			server.close();
+		}
+	}
+
+	/**
+	 * Returns the file with the token of the daemon listening on the given
+	 * port, in the home directory of the user.
+	 */
+	static File getTokenFile(int port) {
+		return new File(System.getProperty("user.home"),
+				".eclipse-test-daemon-" + port);
+	}
+
+	/*
+	 * Writes a new random token to the given file, which only the owner can
+	 * read and write.
+	 */
+	private static byte[] writeToken(File file) throws IOException {
+		byte[] random = new byte[16];
+		new SecureRandom().nextBytes(random);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < random.length; i++)
+			sb.append(Integer.toHexString(0x100 | (random[i] & 0xff)).substring(1));
+		byte[] token = sb.toString().getBytes("UTF-8");
+
+		file.delete();
+		OutputStream out = new FileOutputStream(file);
+		try {
+			// restrict the empty file before it holds the token
+			if (!setOwnerOnly(file))
+				System.err.println("TestDaemon: cannot restrict the access to "
+						+ file + ", other users may read the token");
+			out.write(token);
+			out.write('\n');
+		} finally {
+			out.close();
+		}
+		return token;
+	}
+
+	/*
+	 * File.setReadable and setWritable are not available on all VMs.
+	 */
+	private static boolean setOwnerOnly(File file) {
+		try {
+			Method setReadable = File.class.getMethod("setReadable",
+					boolean.class, boolean.class);
+			Method setWritable = File.class.getMethod("setWritable",
+					boolean.class, boolean.class);
+			return ((Boolean) setReadable.invoke(file, Boolean.FALSE, Boolean.FALSE)).booleanValue()
+					&& ((Boolean) setReadable.invoke(file, Boolean.TRUE, Boolean.TRUE)).booleanValue()
+					&& ((Boolean) setWritable.invoke(file, Boolean.FALSE, Boolean.FALSE)).booleanValue()
+					&& ((Boolean) setWritable.invoke(file, Boolean.TRUE, Boolean.TRUE)).booleanValue();
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	/*
+	 * Updates the bundles given with -testpluginname, and refreshes them and
+	 * the bundles that depend on them. Waits until the refresh is done.
+	 */
+	private static void refreshTestBundles(String[] args) {
+		List<Bundle> bundles = new ArrayList<Bundle>();
+		for (int i = 0; i < args.length - 1; i++) {
+			if (!args[i].equalsIgnoreCase("-testpluginname"))
+				continue;
+			Bundle bundle = Platform.getBundle(args[++i]);
+			if (bundle == null)
+				continue;
+			try {
+				bundle.update();
+				bundles.add(bundle);
+			} catch (BundleException e) {
+				System.err.println("TestDaemon: cannot update " + args[i]
+						+ ": " + e.getMessage());
+			}
+		}
+		if (bundles.isEmpty())
+			return;
+		BundleContext context = Platform.getBundle("org.eclipse.osgi")
+				.getBundleContext();
+		ServiceReference reference = context
+				.getServiceReference(PackageAdmin.class.getName());
+		if (reference == null)
+			return;
+		final CountDownLatch refreshed = new CountDownLatch(1);
+		FrameworkListener listener = new FrameworkListener() {
+			public void frameworkEvent(FrameworkEvent event) {
+				if (event.getType() == FrameworkEvent.PACKAGES_REFRESHED)
+					refreshed.countDown();
+			}
+		};
+		context.addFrameworkListener(listener);
+		try {
+			PackageAdmin packageAdmin = (PackageAdmin) context
+					.getService(reference);
+			packageAdmin.refreshPackages(bundles.toArray(new Bundle[bundles
+					.size()]));
+			if (!refreshed.await(REFRESH_TIMEOUT, TimeUnit.SECONDS))
+				System.err.println("TestDaemon: the refresh of the test bundles did not end in "
+						+ REFRESH_TIMEOUT + " seconds");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			context.removeFrameworkListener(listener);
+			context.ungetService(reference);
+		}
+	}
+
+	private String[] parseArgs(String request) {
+		if (request.trim().length() == 0)
+			return fLaunchArgs;
+		return request.trim().split(request.indexOf('\t') != -1 ? "\t" : " +");
+	}
+
+	/*
+	 * Runs the tests with System.out and System.err copied to the client.
+	 */
+	private int run(TestRun testRun, String[] args, OutputStream client) {
+		PrintStream out = System.out;
+		PrintStream err = System.err;
+		TeeOutputStream tee = new TeeOutputStream(client);
+		int returnCode;
+		System.setOut(new PrintStream(tee.to(out), true));
+		System.setErr(new PrintStream(tee.to(err), true));
+		try {
+			returnCode = run(testRun, args);
+		} finally {
+			System.out.flush();
+			System.err.flush();
+			System.setOut(out);
+			System.setErr(err);
+		}
+		tee.writeLine(EXIT_PREFIX + returnCode);
+		return returnCode;
+	}
+
+	/*
+	 * Runs the tests, then deletes the projects they left.
+	 */
+	private static int run(TestRun testRun, String[] args) {
+		int returnCode;
+		try {
+			returnCode = testRun.run(args);
+		} catch (IOException e) {
+			e.printStackTrace();
+			returnCode = EclipseTestRunner.ERRORS;
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			returnCode = EclipseTestRunner.ERRORS;
+		}
+		resetWorkspace();
+		return returnCode;
+	}
+
+	/*
+	 * Deletes all projects, so that the next run starts with an empty
+	 * workspace like a new launch.
+	 */
+	private static void resetWorkspace() {
+		IProject[] projects = ResourcesPlugin.getWorkspace().getRoot()
+				.getProjects();
+		for (int i = 0; i < projects.length; i++) {
+			try {
+				projects[i].delete(IResource.ALWAYS_DELETE_PROJECT_CONTENT
+						| IResource.FORCE, null);
+			} catch (CoreException e) {
+				System.err.println("TestDaemon: cannot delete " + projects[i]
+						+ ": " + e.getMessage());
+			}
+		}
+	}
+
+	private static void reply(Socket socket, String line) throws IOException {
+		OutputStream out = socket.getOutputStream();
+		out.write((line + '\n').getBytes());
+		out.flush();
+	}
+
+	/*
+	 * Copies the output of a run to the client. Once the client is gone, the
+	 * output only goes to the original streams.
+	 */
+	private static class TeeOutputStream {
+		private final OutputStream fClient;
+		private boolean fClosed;
+		private boolean fAtLineStart = true;
+
+		TeeOutputStream(OutputStream client) {
+			fClient = client;
+		}
+
+		/*
+		 * Writes a line to the client only, on a line of its own.
+		 */
+		synchronized void writeLine(String line) {
+			if (fClosed)
+				return;
+			try {
+				if (!fAtLineStart)
+					fClient.write('\n');
+				fClient.write((line + '\n').getBytes());
+				fClient.flush();
+			} catch (IOException e) {
+				fClosed = true;
+			}
+		}
+
+		OutputStream to(final OutputStream original) {
+			return new OutputStream() {
+				public void write(int b) throws IOException {
+					write(new byte[] { (byte) b }, 0, 1);
+				}
+
+				public void write(byte[] b, int off, int len)
+						throws IOException {
+					original.write(b, off, len);
+					synchronized (TeeOutputStream.this) {
+						if (fClosed)
+							return;
+						try {
+							fClient.write(b, off, len);
+							if (len > 0)
+								fAtLineStart = b[off + len - 1] == '\n';
+						} catch (IOException e) {
+							fClosed = true;
+						}
+					}
+				}
+
+				public void flush() throws IOException {
+					original.flush();
+					synchronized (TeeOutputStream.this) {
+						if (fClosed)
+							return;
+						try {
+							fClient.flush();
+						} catch (IOException e) {
+							fClosed = true;
+						}
+					}
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * Sends a request to a test application started with <code>-daemon port</code>,
+ * prints the output of the run and exits with its return code. It only needs
+ * the JRE: <code>java -cp automated.jar org.eclipse.test.TestDaemonClient port
+ * [quit | args]</code>. Without args, the daemon repeats its launch arguments.
+ * The token of the daemon is read from {@link TestDaemon#getTokenFile(int)}.
+ *
+ * @see TestDaemon
+ */
+public class TestDaemonClient {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("usage: TestDaemonClient port [quit | args]");
+			System.exit(EclipseTestRunner.ERRORS);
+		}
+		int port = Integer.parseInt(args[0]);
+		BufferedReader tokenReader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(TestDaemon.getTokenFile(port)), "UTF-8"));
+		String token;
+		try {
+			token = tokenReader.readLine();
+		} finally {
+			tokenReader.close();
+		}
+		Socket socket = new Socket(InetAddress.getByName(null), port);
+		int returnCode = EclipseTestRunner.ERRORS;
+		try {
+			StringBuilder request = new StringBuilder(token).append('\n');
+			for (int i = 1; i < args.length; i++) {
+				if (i > 1)
+					request.append('\t');
+				request.append(args[i]);
+			}
+			Writer writer = new OutputStreamWriter(socket.getOutputStream(),
+					"UTF-8");
+			writer.write(request.append('\n').toString());
+			writer.flush();
+
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					socket.getInputStream()));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith(TestDaemon.EXIT_PREFIX)) {
+					try {
+						returnCode = Integer.parseInt(line
+								.substring(TestDaemon.EXIT_PREFIX.length()));
+					} catch (NumberFormatException e) {
+						// keep ERRORS
+					}
+				} else {
+					System.out.println(line);
+				}
+			}
+		} finally {
+			socket.close();
+		}
+		System.exit(returnCode);
+	}
+}
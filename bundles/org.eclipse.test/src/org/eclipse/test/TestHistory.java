@@ -0,0 +1,372 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import org.apache.tools.ant.taskdefs.optional.junit.JUnitVersionHelper;
+import org.apache.tools.ant.taskdefs.optional.junit.XMLConstants;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * The last duration and outcome of every suite and test, read from and
+ * written to a file given with -testhistory. It is updated from the TEST-*.xml
+ * files of a run, and used to run the suites and tests that failed last time
+ * first, followed by the others from the fastest to the slowest, and to balance
+ * shards by expected duration. The recent durations of every test give the
+ * budget after which TestWatchdog considers it hung.
+ * <p>
+ * The file has one line per suite or test: the suite class name, or the suite
+ * class name and test name separated by '#', the duration in milliseconds,
+ * the outcome (0 passed, 1 failed, 2 error), the time of the last failure, and
+ * the last durations separated by commas, separated by tabs. Lines of version 1
+ * files have no recent durations.
+ * </p>
+ */
+class TestHistory {
+
+	static final int PASSED = 0;
+	static final int FAILED = 1;
+	static final int ERROR = 2;
+
+	private static final String HEADER = "# org.eclipse.test history 2";
+
+	/**
+	 * The number of recent durations kept per suite or test.
+	 */
+	private static final int MAX_RECENT = 20;
+
+	private final File fFile;
+	private final Map<String, Entry> fEntries = new HashMap<String, Entry>();
+
+	static class Entry {
+		long fDuration;
+		int fOutcome;
+		long fLastFailure;
+		long[] fRecent = new long[0];
+
+		boolean hasFailed() {
+			return fOutcome != PASSED;
+		}
+	}
+
+	TestHistory(File file) {
+		fFile = file;
+	}
+
+	File getFile() {
+		return fFile;
+	}
+
+	/**
+	 * Reads the history file, if it exists.
+	 */
+	void load() {
+		if (!fFile.isFile())
+			return;
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					new FileInputStream(fFile), "UTF-8"));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					String[] fields = line.split("\t");
+					if (line.startsWith("#") || fields.length < 4 || fields.length > 5)
+						continue;
+					try {
+						Entry entry = new Entry();
+						entry.fDuration = Long.parseLong(fields[1]);
+						entry.fOutcome = Integer.parseInt(fields[2]);
+						entry.fLastFailure = Long.parseLong(fields[3]);
+						if (fields.length == 5) {
+							String[] recent = fields[4].split(",");
+							entry.fRecent = new long[recent.length];
+							for (int i = 0; i < recent.length; i++)
+								entry.fRecent[i] = Long.parseLong(recent[i]);
+						} else {
+							entry.fRecent = new long[] { entry.fDuration };
+						}
+						fEntries.put(fields[0], entry);
+					} catch (NumberFormatException e) {
+						// skip the line
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			System.err.println("cannot read test history " + fFile + ": " + e);
+		}
+	}
+
+	/**
+	 * Writes the history file.
+	 */
+	void save() {
+		File tmp = new File(fFile.getAbsolutePath() + ".tmp");
+		try {
+			if (fFile.getAbsoluteFile().getParentFile() != null)
+				fFile.getAbsoluteFile().getParentFile().mkdirs();
+			Writer out = new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(tmp), "UTF-8"));
+			try {
+				out.write(HEADER);
+				out.write('\n');
+				// sorted, so that the file diffs well between runs
+				for (Map.Entry<String, Entry> e : new TreeMap<String, Entry>(fEntries).entrySet()) {
+					Entry entry = e.getValue();
+					StringBuilder sb = new StringBuilder();
+					sb.append(e.getKey()).append('\t').append(entry.fDuration)
+							.append('\t').append(entry.fOutcome).append('\t')
+							.append(entry.fLastFailure).append('\t');
+					for (int i = 0; i < entry.fRecent.length; i++) {
+						if (i > 0)
+							sb.append(',');
+						sb.append(entry.fRecent[i]);
+					}
+					out.write(sb.append('\n').toString());
+				}
+			} finally {
+				out.close();
+			}
+			fFile.delete();
+			if (!tmp.renameTo(fFile))
+				System.err.println("cannot write test history " + fFile);
+		} catch (IOException e) {
+			System.err.println("cannot write test history " + fFile + ": " + e);
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	Entry get(String name) {
+		return fEntries.get(name);
+	}
+
+	void put(String name, long duration, int outcome, long time) {
+		Entry entry = fEntries.get(name);
+		if (entry == null) {
+			entry = new Entry();
+			fEntries.put(name, entry);
+		}
+		entry.fDuration = duration;
+		entry.fOutcome = outcome;
+		int kept = Math.min(entry.fRecent.length, MAX_RECENT - 1);
+		long[] recent = new long[kept + 1];
+		System.arraycopy(entry.fRecent, entry.fRecent.length - kept, recent, 0, kept);
+		recent[kept] = duration;
+		entry.fRecent = recent;
+		if (outcome != PASSED)
+			entry.fLastFailure = time;
+	}
+
+	/**
+	 * Records the results of the given suites from their TEST-&lt;suite&gt;.xml
+	 * files in the given directory. Suites without results are left unchanged.
+	 */
+	void addResults(File directory, String[] suiteClasses) {
+		for (int i = 0; i < suiteClasses.length; i++) {
+			File file = new File(directory, "TEST-" + suiteClasses[i] + ".xml");
+			if (file.isFile())
+				addResults(file);
+		}
+	}
+
+	/**
+	 * Records the results of a TEST-*.xml file.
+	 */
+	void addResults(File file) {
+		final long time = file.lastModified();
+		try {
+			SAXParserFactory.newInstance().newSAXParser().parse(file,
+					new DefaultHandler() {
+						private String fTestCase;
+						private long fTestCaseDuration;
+						private int fTestCaseOutcome;
+
+						public void startElement(String uri, String localName,
+								String qName, Attributes attributes) {
+							if (XMLConstants.TESTSUITE.equals(qName)) {
+								int outcome = PASSED;
+								if (getInt(attributes, XMLConstants.ATTR_ERRORS) > 0)
+									outcome = ERROR;
+								else if (getInt(attributes, XMLConstants.ATTR_FAILURES) > 0)
+									outcome = FAILED;
+								put(attributes.getValue(XMLConstants.ATTR_NAME),
+										getMillis(attributes), outcome, time);
+							} else if (XMLConstants.TESTCASE.equals(qName)) {
+								fTestCase = attributes.getValue(XMLConstants.ATTR_CLASSNAME)
+										+ '#' + attributes.getValue(XMLConstants.ATTR_NAME);
+								fTestCaseDuration = getMillis(attributes);
+								fTestCaseOutcome = PASSED;
+							} else if (fTestCase != null && XMLConstants.FAILURE.equals(qName)) {
+								fTestCaseOutcome = Math.max(fTestCaseOutcome, FAILED);
+							} else if (fTestCase != null && XMLConstants.ERROR.equals(qName)) {
+								fTestCaseOutcome = ERROR;
+							}
+						}
+
+						public void endElement(String uri, String localName,
+								String qName) {
+							if (XMLConstants.TESTCASE.equals(qName)) {
+								put(fTestCase, fTestCaseDuration, fTestCaseOutcome, time);
+								fTestCase = null;
+							}
+						}
+					});
+		} catch (Exception e) {
+			System.err.println("cannot read test results " + file + ": " + e);
+		}
+	}
+
+	private static int getInt(Attributes attributes, String name) {
+		String value = attributes.getValue(name);
+		try {
+			return value != null ? Integer.parseInt(value) : 0;
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	private static long getMillis(Attributes attributes) {
+		String value = attributes.getValue(XMLConstants.ATTR_TIME);
+		try {
+			return value != null ? Math.round(Double.parseDouble(value) * 1000) : 0;
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Orders names so that the ones that failed last time come first, and the
+	 * others from the fastest to the slowest. Unknown names are expected to be
+	 * fast, so that new tests run early.
+	 */
+	Comparator<String> getComparator() {
+		return new Comparator<String>() {
+			public int compare(String name1, String name2) {
+				Entry entry1 = get(name1);
+				Entry entry2 = get(name2);
+				boolean failed1 = entry1 != null && entry1.hasFailed();
+				boolean failed2 = entry2 != null && entry2.hasFailed();
+				if (failed1 != failed2)
+					return failed1 ? -1 : 1;
+				long duration1 = entry1 != null ? entry1.fDuration : 0;
+				long duration2 = entry2 != null ? entry2.fDuration : 0;
+				return duration1 < duration2 ? -1 : duration1 == duration2 ? 0 : 1;
+			}
+		};
+	}
+
+	/**
+	 * Returns the indices of the given suites in the order they should run.
+	 */
+	int[] order(final String[] suiteClasses) {
+		Integer[] indices = new Integer[suiteClasses.length];
+		for (int i = 0; i < indices.length; i++)
+			indices[i] = new Integer(i);
+		final Comparator<String> comparator = getComparator();
+		Arrays.sort(indices, new Comparator<Integer>() {
+			public int compare(Integer i1, Integer i2) {
+				return comparator.compare(suiteClasses[i1.intValue()], suiteClasses[i2.intValue()]);
+			}
+		});
+		int[] order = new int[indices.length];
+		for (int i = 0; i < order.length; i++)
+			order[i] = indices[i].intValue();
+		return order;
+	}
+
+	/**
+	 * Returns the expected duration of the given suite, or the given default
+	 * for suites without history.
+	 */
+	long getExpectedDuration(String suiteClass, long defaultDuration) {
+		Entry entry = get(suiteClass);
+		return entry != null ? entry.fDuration : defaultDuration;
+	}
+
+	/**
+	 * Returns the given percentile of the recent durations of the given suite
+	 * or test, using the nearest rank. With fewer than 100 recent durations,
+	 * the 99th percentile is the longest one.
+	 * 
+	 * @return the duration in milliseconds, or -1 if there is no history
+	 */
+	long getPercentile(String name, int percentile) {
+		Entry entry = get(name);
+		if (entry == null || entry.fRecent.length == 0)
+			return -1;
+		long[] sorted = entry.fRecent.clone();
+		Arrays.sort(sorted);
+		int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+		return sorted[Math.max(rank, 1) - 1];
+	}
+
+	/**
+	 * Returns a copy of the given test in which the tests of every plain
+	 * TestSuite are reordered. Subclasses of TestSuite and decorators are kept
+	 * as they are, since they may depend on the order of their tests.
+	 */
+	Test reorder(Test test) {
+		if (test == null || test.getClass() != TestSuite.class)
+			return test;
+		TestSuite suite = (TestSuite) test;
+		List<Test> tests = new ArrayList<Test>();
+		for (Enumeration<?> e = suite.tests(); e.hasMoreElements();)
+			tests.add(reorder((Test) e.nextElement()));
+
+		final Comparator<String> comparator = getComparator();
+		Collections.sort(tests, new Comparator<Test>() {
+			public int compare(Test t1, Test t2) {
+				return comparator.compare(getName(t1), getName(t2));
+			}
+		});
+		TestSuite reordered = new TestSuite(suite.getName());
+		for (Test t : tests)
+			reordered.addTest(t);
+		return reordered;
+	}
+
+	/*
+	 * Returns the history name of a test, as it appears in the TEST-*.xml files.
+	 * Nested suites are not recorded and keep their relative order.
+	 */
+	static String getName(Test test) {
+		if (test instanceof TestSuite)
+			return "";
+		return JUnitVersionHelper.getTestCaseClassName(test) + '#'
+				+ JUnitVersionHelper.getTestCaseName(test);
+	}
+}
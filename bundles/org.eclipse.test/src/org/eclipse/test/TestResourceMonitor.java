@@ -0,0 +1,231 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.List;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import junit.framework.Test;
+
+/**
+ * Measures the resources used by every test between
+ * {@link #startTest(Test)} and {@link #endTest(Test)}: the wall time, the CPU
+ * time and the bytes allocated by the thread of the test, and the time spent
+ * in garbage collection by the whole VM. Measurements the VM does not support
+ * are -1. Tests are expected to run one after the other, as they do in a
+ * suite, and only the usage of the last test is kept.
+ * <p>
+ * The allocated bytes come from
+ * <code>com.sun.management.ThreadMXBean.getThreadAllocatedBytes</code>, which
+ * is looked up reflectively since it is not available on all VMs. The time
+ * spent in garbage collection is polled from the collectors until the first
+ * notification of a collection arrives, and added up from the notifications
+ * after that, so that it costs nothing per test. Some VMs accept the listener
+ * but never send notifications. Notifications are delivered asynchronously, so
+ * a collection at the very end of a test may be counted for the next one.
+ * </p>
+ */
+class TestResourceMonitor {
+
+	/**
+	 * The resources used by a test.
+	 */
+	static class Usage {
+		/** Wall time in nanoseconds. */
+		long fWallTime;
+		/** CPU time of the test thread in nanoseconds, or -1. */
+		long fCpuTime;
+		/** Bytes allocated by the test thread, or -1. */
+		long fAllocatedBytes;
+		/** Garbage collection time in milliseconds, or -1. */
+		long fGcTime;
+	}
+
+	/**
+	 * The type of the notifications sent by the garbage collectors of
+	 * HotSpot and J9 after every collection.
+	 */
+	private static final String GC_NOTIFICATION = "com.sun.management.gc.notification";
+
+	private final ThreadMXBean fThreadMXBean;
+	private final boolean fCpuTimeSupported;
+	private final Method fGetThreadAllocatedBytes;
+	private final GarbageCollectorMXBean[] fGarbageCollectors;
+	private NotificationListener fGcListener;
+	private volatile long fNotifiedGcTime;
+	private volatile boolean fGcNotified;
+
+	private Test fTest;
+	private boolean fEnded;
+	private boolean fNotifiedGc;
+	private final Usage fUsage = new Usage();
+
+	TestResourceMonitor() {
+		fThreadMXBean = ManagementFactory.getThreadMXBean();
+		fCpuTimeSupported = fThreadMXBean.isCurrentThreadCpuTimeSupported()
+				&& fThreadMXBean.isThreadCpuTimeEnabled();
+		fGetThreadAllocatedBytes = getThreadAllocatedBytesMethod(fThreadMXBean);
+		List<GarbageCollectorMXBean> collectors = ManagementFactory
+				.getGarbageCollectorMXBeans();
+		fGarbageCollectors = collectors
+				.toArray(new GarbageCollectorMXBean[collectors.size()]);
+		addGcListener();
+	}
+
+	/*
+	 * Listens to the notifications of all collectors, or of none.
+	 */
+	private void addGcListener() {
+		for (int i = 0; i < fGarbageCollectors.length; i++) {
+			if (!(fGarbageCollectors[i] instanceof NotificationEmitter))
+				return;
+		}
+		fGcListener = new NotificationListener() {
+			public void handleNotification(Notification notification,
+					Object handback) {
+				if (!GC_NOTIFICATION.equals(notification.getType())
+						|| !(notification.getUserData() instanceof CompositeData))
+					return;
+				try {
+					CompositeData info = (CompositeData) notification.getUserData();
+					CompositeData gcInfo = (CompositeData) info.get("gcInfo");
+					long duration = ((Long) gcInfo.get("duration")).longValue();
+					synchronized (TestResourceMonitor.this) {
+						fNotifiedGcTime += duration;
+					}
+					fGcNotified = true;
+				} catch (RuntimeException e) {
+					// not the expected data, ignore it
+				}
+			}
+		};
+		for (int i = 0; i < fGarbageCollectors.length; i++)
+			((NotificationEmitter) fGarbageCollectors[i])
+					.addNotificationListener(fGcListener, null, null);
+	}
+
+	/**
+	 * Stops listening to the garbage collectors.
+	 */
+	void dispose() {
+		if (fGcListener == null)
+			return;
+		for (int i = 0; i < fGarbageCollectors.length; i++) {
+			try {
+				((NotificationEmitter) fGarbageCollectors[i])
+						.removeNotificationListener(fGcListener);
+			} catch (ListenerNotFoundException e) {
+				// already removed
+			}
+		}
+		fGcListener = null;
+	}
+
+	private static Method getThreadAllocatedBytesMethod(ThreadMXBean bean) {
+		try {
+			Class<?> sunBean = Class.forName("com.sun.management.ThreadMXBean");
+			if (!sunBean.isInstance(bean))
+				return null;
+			if (!((Boolean) sunBean.getMethod("isThreadAllocatedMemorySupported")
+					.invoke(bean)).booleanValue())
+				return null;
+			Method method = sunBean.getMethod("getThreadAllocatedBytes",
+					long.class);
+			// the implementation class is not public
+			method.setAccessible(true);
+			return method;
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Starts measuring the given test, which runs in the current thread. The
+	 * usage of the previous test is forgotten.
+	 */
+	void startTest(Test test) {
+		fTest = test;
+		fEnded = false;
+		// both ends of a test use the same source
+		fNotifiedGc = fGcNotified;
+		// the wall time is read last, so that it covers the least of the
+		// monitor itself
+		fUsage.fGcTime = getGcTime();
+		fUsage.fAllocatedBytes = getAllocatedBytes();
+		fUsage.fCpuTime = getCpuTime();
+		fUsage.fWallTime = System.nanoTime();
+	}
+
+	/**
+	 * Stops measuring the given test. Its usage stays available with
+	 * {@link #getUsage(Test)} until the next test starts.
+	 */
+	void endTest(Test test) {
+		long wallTime = System.nanoTime();
+		if (test != fTest || fEnded)
+			return;
+		fUsage.fWallTime = wallTime - fUsage.fWallTime;
+		fUsage.fCpuTime = difference(getCpuTime(), fUsage.fCpuTime);
+		fUsage.fAllocatedBytes = difference(getAllocatedBytes(),
+				fUsage.fAllocatedBytes);
+		fUsage.fGcTime = difference(getGcTime(), fUsage.fGcTime);
+		fEnded = true;
+	}
+
+	/**
+	 * Returns the usage of the given test, or <code>null</code> if the test
+	 * has not ended or its usage has been forgotten.
+	 */
+	Usage getUsage(Test test) {
+		return test == fTest && fEnded ? fUsage : null;
+	}
+
+	private static long difference(long end, long start) {
+		return end >= 0 && start >= 0 ? end - start : -1;
+	}
+
+	private long getCpuTime() {
+		return fCpuTimeSupported ? fThreadMXBean.getCurrentThreadCpuTime() : -1;
+	}
+
+	private long getAllocatedBytes() {
+		if (fGetThreadAllocatedBytes == null)
+			return -1;
+		try {
+			return ((Long) fGetThreadAllocatedBytes.invoke(fThreadMXBean,
+					Thread.currentThread().getId())).longValue();
+		} catch (Exception e) {
+			return -1;
+		}
+	}
+
+	private long getGcTime() {
+		if (fNotifiedGc)
+			return fNotifiedGcTime;
+		long sum = 0;
+		for (int i = 0; i < fGarbageCollectors.length; i++) {
+			long time = fGarbageCollectors[i].getCollectionTime();
+			if (time < 0)
+				return -1;
+			sum += time;
+		}
+		return sum;
+	}
+}
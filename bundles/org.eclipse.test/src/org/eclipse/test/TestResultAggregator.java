@@ -0,0 +1,603 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import junit.framework.AssertionFailedError;
+import junit.framework.Test;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.taskdefs.optional.junit.JUnitResultFormatter;
+import org.apache.tools.ant.taskdefs.optional.junit.JUnitTest;
+
+/**
+ * Collects the results of all suites of a run, given with
+ * <code>-resultsummary file</code>, and writes them to one summary file, so
+ * that tools do not have to parse a TEST-*.xml file per suite. The TEST-*.xml
+ * files are still written by the formatters.
+ * <p>
+ * The results come from the formatters returned by {@link #createFormatter()}
+ * in this process, and from the child processes of ShardedTestRunner, which
+ * send the events of their suites to the service started with
+ * {@link #startService()}. A suite is only recorded when it ends, and replaces
+ * an earlier result of the same suite. Every suite keeps its tests in arrays,
+ * and only the type and the message of problems; the stack traces are in the
+ * TEST-*.xml files.
+ * </p>
+ * <p>
+ * The summary is a UTF-8 text file with tab separated fields, in which
+ * backslashes, tabs and line breaks are escaped with a backslash. After the
+ * header line {@value #HEADER}, it has four sections:
+ * </p>
+ * <pre>
+ * totals suites tests failures errors time
+ * S name tests failures errors time firstTest testCount firstProblem problemCount
+ * T name status time
+ * P test kind type message
+ * </pre>
+ * <p>
+ * The S lines are sorted by suite name, and refer to their T and P lines by
+ * the index of the first one within its section and their number. The status
+ * of a test is {@value #PASS}, {@value #FAILURE} or {@value #ERROR}, the test
+ * of a problem is the index of its T line, or -1 for a problem of the suite
+ * itself. Times are in milliseconds. A dashboard can read the totals and the
+ * suites, and stop there.
+ * </p>
+ */
+class TestResultAggregator {
+
+	static final String HEADER = "# org.eclipse.test result summary 1";
+
+	static final String PASS = "pass";
+	static final String FAILURE = "failure";
+	static final String ERROR = "error";
+
+	/**
+	 * The number of characters of a problem message that are kept.
+	 */
+	static final int MAX_MESSAGE_LENGTH = 1000;
+
+	/*
+	 * The events sent by a Forwarder, one per line.
+	 */
+	private static final String EVENT_SUITE = "suite";
+	private static final String EVENT_TEST = "test";
+	private static final String EVENT_END_TEST = "end";
+	private static final String EVENT_END_SUITE = "endsuite";
+
+	private static final byte STATUS_PASS = 0;
+	private static final byte STATUS_FAILURE = 1;
+	private static final byte STATUS_ERROR = 2;
+
+	private final Map<String, SuiteResult> fSuites = new TreeMap<String, SuiteResult>();
+
+	private ServerSocket fServer;
+	private final List<Thread> fConnections = new ArrayList<Thread>();
+
+	/**
+	 * The results of a suite.
+	 */
+	private static class SuiteResult {
+		final String fName;
+		long fRuns;
+		long fFailures;
+		long fErrors;
+		long fTime;
+
+		int fTestCount;
+		String[] fTestNames = new String[16];
+		byte[] fStatus = new byte[16];
+		long[] fTimes = new long[16];
+
+		/** Problems as test index, -1 for the suite, and the problem. */
+		final List<Object[]> fProblems = new ArrayList<Object[]>();
+
+		SuiteResult(String name) {
+			fName = name;
+		}
+
+		void startTest(String name) {
+			if (fTestCount == fTestNames.length) {
+				int length = 2 * fTestCount;
+				String[] names = new String[length];
+				byte[] status = new byte[length];
+				long[] times = new long[length];
+				System.arraycopy(fTestNames, 0, names, 0, fTestCount);
+				System.arraycopy(fStatus, 0, status, 0, fTestCount);
+				System.arraycopy(fTimes, 0, times, 0, fTestCount);
+				fTestNames = names;
+				fStatus = status;
+				fTimes = times;
+			}
+			fTestNames[fTestCount] = name;
+			fStatus[fTestCount] = STATUS_PASS;
+			fTimes[fTestCount] = 0;
+			fTestCount++;
+		}
+
+		void addProblem(boolean inTest, String kind, String type,
+				String message) {
+			int test = inTest && fTestCount > 0 ? fTestCount - 1 : -1;
+			if (test >= 0) {
+				byte status = ERROR.equals(kind) ? STATUS_ERROR : STATUS_FAILURE;
+				fStatus[test] = (byte) Math.max(fStatus[test], status);
+			}
+			if (message.length() > MAX_MESSAGE_LENGTH)
+				message = message.substring(0, MAX_MESSAGE_LENGTH);
+			fProblems.add(new Object[] { new Integer(test), kind, type,
+					message });
+		}
+
+		void endTest(long time) {
+			if (fTestCount > 0)
+				fTimes[fTestCount - 1] = time;
+		}
+
+		void end(long runs, long failures, long errors, long time) {
+			fRuns = runs;
+			fFailures = failures;
+			fErrors = errors;
+			fTime = time;
+		}
+	}
+
+	/**
+	 * Turns the events of JUnit into the events of a suite, with the test
+	 * names of the TestHistory and the times measured by TestResourceMonitor,
+	 * if the runner provides one.
+	 */
+	abstract static class EventFormatter implements JUnitResultFormatter {
+		private TestResourceMonitor fResources;
+		private Test fCurrentTest;
+		private long fStart;
+
+		/*
+		 * Called by EclipseTestRunner, which measures the resources of every test.
+		 */
+		void setResourceMonitor(TestResourceMonitor resources) {
+			fResources = resources;
+		}
+
+		public void setOutput(OutputStream out) {
+			// the summary is written by the aggregator
+		}
+
+		public void setSystemOutput(String out) {
+			// the output is only in the TEST-*.xml files
+		}
+
+		public void setSystemError(String err) {
+			// the output is only in the TEST-*.xml files
+		}
+
+		public void startTestSuite(JUnitTest suite) throws BuildException {
+			suiteStarted(suite.getName());
+		}
+
+		public void startTest(Test test) {
+			fCurrentTest = test;
+			fStart = System.currentTimeMillis();
+			testStarted(TestHistory.getName(test));
+		}
+
+		public void addFailure(Test test, AssertionFailedError t) {
+			addProblem(test, t, FAILURE);
+		}
+
+		public void addError(Test test, Throwable t) {
+			addProblem(test, t, ERROR);
+		}
+
+		private void addProblem(Test test, Throwable t, String kind) {
+			String message = t.getMessage();
+			problem(test != null && test == fCurrentTest, kind, t.getClass()
+					.getName(), message != null ? message : "");
+		}
+
+		public void endTest(Test test) {
+			TestResourceMonitor.Usage usage = fResources != null ? fResources
+					.getUsage(test) : null;
+			long time = usage != null ? usage.fWallTime / 1000000 : System
+					.currentTimeMillis() - fStart;
+			fCurrentTest = null;
+			testEnded(time);
+		}
+
+		public void endTestSuite(JUnitTest suite) throws BuildException {
+			suiteEnded(suite.runCount(), suite.failureCount(), suite
+					.errorCount(), suite.getRunTime());
+		}
+
+		abstract void suiteStarted(String name);
+
+		abstract void testStarted(String name);
+
+		/**
+		 * @param inTest
+		 *            whether the problem belongs to the current test, or to
+		 *            the suite
+		 */
+		abstract void problem(boolean inTest, String kind, String type,
+				String message);
+
+		abstract void testEnded(long time);
+
+		abstract void suiteEnded(long runs, long failures, long errors,
+				long time);
+	}
+
+	/*
+	 * Records the events of one source, one suite after the other.
+	 */
+	private class Collector extends EventFormatter {
+		private SuiteResult fSuite;
+
+		void suiteStarted(String name) {
+			fSuite = new SuiteResult(name);
+		}
+
+		void testStarted(String name) {
+			if (fSuite != null)
+				fSuite.startTest(name);
+		}
+
+		void problem(boolean inTest, String kind, String type, String message) {
+			if (fSuite != null)
+				fSuite.addProblem(inTest, kind, type, message);
+		}
+
+		void testEnded(long time) {
+			if (fSuite != null)
+				fSuite.endTest(time);
+		}
+
+		void suiteEnded(long runs, long failures, long errors, long time) {
+			if (fSuite == null)
+				return;
+			fSuite.end(runs, failures, errors, time);
+			add(fSuite);
+			fSuite = null;
+		}
+
+		/*
+		 * Applies an event sent by a Forwarder.
+		 */
+		void apply(String line) {
+			String[] fields = line.split("\t", -1);
+			for (int i = 0; i < fields.length; i++)
+				fields[i] = unescape(fields[i]);
+			try {
+				String event = fields[0];
+				if (event.equals(EVENT_SUITE)) {
+					suiteStarted(fields[1]);
+				} else if (event.equals(EVENT_TEST)) {
+					testStarted(fields[1]);
+				} else if (event.equals(FAILURE) || event.equals(ERROR)) {
+					problem(Boolean.valueOf(fields[1]).booleanValue(), event,
+							fields[2], fields[3]);
+				} else if (event.equals(EVENT_END_TEST)) {
+					testEnded(Long.parseLong(fields[1]));
+				} else if (event.equals(EVENT_END_SUITE)) {
+					suiteEnded(Long.parseLong(fields[1]), Long
+							.parseLong(fields[2]), Long.parseLong(fields[3]),
+							Long.parseLong(fields[4]));
+				}
+			} catch (RuntimeException e) {
+				System.err.println("TestResultAggregator: invalid event: "
+						+ line);
+			}
+		}
+	}
+
+	/**
+	 * Sends the events of the suites of a child process to the service of
+	 * the aggregator of its parent. The events of a suite are sent when it
+	 * ends, so the parent only gets complete suites.
+	 */
+	static class Forwarder extends EventFormatter {
+		private final Socket fSocket;
+		private final Writer fWriter;
+		private boolean fFailed;
+
+		Forwarder(int port) throws IOException {
+			fSocket = new Socket(InetAddress.getByName(null), port);
+			fWriter = new BufferedWriter(new OutputStreamWriter(fSocket
+					.getOutputStream(), "UTF-8"));
+		}
+
+		void suiteStarted(String name) {
+			send(new Object[] { EVENT_SUITE, name });
+		}
+
+		void testStarted(String name) {
+			send(new Object[] { EVENT_TEST, name });
+		}
+
+		void problem(boolean inTest, String kind, String type, String message) {
+			send(new Object[] { kind, String.valueOf(inTest), type, message });
+		}
+
+		void testEnded(long time) {
+			send(new Object[] { EVENT_END_TEST, new Long(time) });
+		}
+
+		void suiteEnded(long runs, long failures, long errors, long time) {
+			send(new Object[] { EVENT_END_SUITE, new Long(runs),
+					new Long(failures), new Long(errors), new Long(time) });
+			if (fFailed)
+				return;
+			try {
+				fWriter.flush();
+			} catch (IOException e) {
+				failed(e);
+			}
+		}
+
+		private void send(Object[] fields) {
+			if (fFailed)
+				return;
+			try {
+				fWriter.write(join(fields));
+			} catch (IOException e) {
+				failed(e);
+			}
+		}
+
+		private void failed(IOException e) {
+			// the TEST-*.xml files are still written
+			System.err.println("TestResultAggregator: cannot send results: " + e);
+			fFailed = true;
+		}
+
+		/**
+		 * Closes the connection, at the end of the run.
+		 */
+		void close() {
+			try {
+				fSocket.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * Returns a formatter that records the suites it runs in this aggregator.
+	 * A formatter runs one suite at a time.
+	 */
+	EventFormatter createFormatter() {
+		return new Collector();
+	}
+
+	private synchronized void add(SuiteResult suite) {
+		fSuites.put(suite.fName, suite);
+	}
+
+	/**
+	 * Returns whether the given suite has ended.
+	 */
+	synchronized boolean hasSuite(String name) {
+		return fSuites.containsKey(name);
+	}
+
+	/**
+	 * Starts accepting the events of Forwarders on the local host.
+	 *
+	 * @return the port
+	 */
+	synchronized int startService() throws IOException {
+		fServer = new ServerSocket(0, 0, InetAddress.getByName(null));
+		final ServerSocket server = fServer;
+		Thread acceptor = new Thread(new Runnable() {
+			public void run() {
+				try {
+					while (true)
+						receive(server.accept());
+				} catch (IOException e) {
+					// closed by stopService
+				}
+			}
+		}, "TestResultAggregator");
+		acceptor.setDaemon(true);
+		acceptor.start();
+		return fServer.getLocalPort();
+	}
+
+	private synchronized void receive(final Socket socket) {
+		Thread connection = new Thread(new Runnable() {
+			public void run() {
+				Collector collector = new Collector();
+				try {
+					BufferedReader reader = new BufferedReader(
+							new InputStreamReader(socket.getInputStream(),
+									"UTF-8"));
+					String line;
+					while ((line = reader.readLine()) != null)
+						collector.apply(line);
+				} catch (IOException e) {
+					System.err.println("TestResultAggregator: " + e);
+				} finally {
+					try {
+						socket.close();
+					} catch (IOException e) {
+						// ignore
+					}
+				}
+			}
+		}, "TestResultAggregator connection");
+		connection.setDaemon(true);
+		connection.start();
+		fConnections.add(connection);
+	}
+
+	/**
+	 * Stops accepting connections, and waits until the connected processes
+	 * are done. To be called when they have exited.
+	 */
+	void stopService() {
+		List<Thread> connections;
+		synchronized (this) {
+			if (fServer == null)
+				return;
+			try {
+				fServer.close();
+			} catch (IOException e) {
+				// ignore
+			}
+			fServer = null;
+			connections = new ArrayList<Thread>(fConnections);
+			fConnections.clear();
+		}
+		for (Thread connection : connections) {
+			try {
+				connection.join();
+			} catch (InterruptedException e) {
+				// write what we have
+			}
+		}
+	}
+
+	/**
+	 * Writes the summary of all suites that ended.
+	 */
+	synchronized void write(File file) {
+		File tmp = null;
+		try {
+			File directory = file.getAbsoluteFile().getParentFile();
+			directory.mkdirs();
+			tmp = File.createTempFile(file.getName(), ".tmp", directory);
+			Writer out = new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(tmp), "UTF-8"));
+			try {
+				writeSummary(out);
+			} finally {
+				out.close();
+			}
+			file.delete();
+			if (!tmp.renameTo(file))
+				System.err.println("cannot write result summary " + file);
+		} catch (IOException e) {
+			System.err.println("cannot write result summary " + file + ": " + e);
+		} finally {
+			if (tmp != null)
+				tmp.delete();
+		}
+	}
+
+	private void writeSummary(Writer out) throws IOException {
+		long runs = 0, failures = 0, errors = 0, time = 0;
+		for (SuiteResult suite : fSuites.values()) {
+			runs += suite.fRuns;
+			failures += suite.fFailures;
+			errors += suite.fErrors;
+			time += suite.fTime;
+		}
+		out.write(HEADER + '\n');
+		out.write(join(new Object[] { "totals", new Integer(fSuites.size()),
+				new Long(runs), new Long(failures), new Long(errors),
+				new Long(time) }));
+
+		int firstTest = 0;
+		int firstProblem = 0;
+		for (SuiteResult suite : fSuites.values()) {
+			out.write(join(new Object[] { "S", suite.fName,
+					new Long(suite.fRuns), new Long(suite.fFailures),
+					new Long(suite.fErrors), new Long(suite.fTime),
+					new Integer(firstTest), new Integer(suite.fTestCount),
+					new Integer(firstProblem),
+					new Integer(suite.fProblems.size()) }));
+			firstTest += suite.fTestCount;
+			firstProblem += suite.fProblems.size();
+		}
+
+		String[] status = { PASS, FAILURE, ERROR };
+		for (SuiteResult suite : fSuites.values()) {
+			for (int i = 0; i < suite.fTestCount; i++)
+				out.write(join(new Object[] { "T", suite.fTestNames[i],
+						status[suite.fStatus[i]], new Long(suite.fTimes[i]) }));
+		}
+
+		firstTest = 0;
+		for (SuiteResult suite : fSuites.values()) {
+			for (Object[] problem : suite.fProblems) {
+				int test = ((Integer) problem[0]).intValue();
+				out.write(join(new Object[] { "P",
+						new Integer(test >= 0 ? firstTest + test : -1),
+						problem[1], problem[2], problem[3] }));
+			}
+			firstTest += suite.fTestCount;
+		}
+	}
+
+	/*
+	 * Returns the fields as an escaped, tab separated line.
+	 */
+	static String join(Object[] fields) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < fields.length; i++) {
+			if (i > 0)
+				sb.append('\t');
+			String field = String.valueOf(fields[i]);
+			for (int j = 0; j < field.length(); j++) {
+				char c = field.charAt(j);
+				switch (c) {
+				case '\\':
+					sb.append("\\\\");
+					break;
+				case '\t':
+					sb.append("\\t");
+					break;
+				case '\n':
+					sb.append("\\n");
+					break;
+				case '\r':
+					sb.append("\\r");
+					break;
+				default:
+					sb.append(c);
+				}
+			}
+		}
+		return sb.append('\n').toString();
+	}
+
+	static String unescape(String field) {
+		if (field.indexOf('\\') == -1)
+			return field;
+		StringBuilder sb = new StringBuilder(field.length());
+		for (int i = 0; i < field.length(); i++) {
+			char c = field.charAt(i);
+			if (c == '\\' && i + 1 < field.length()) {
+				c = field.charAt(++i);
+				sb.append(c == 't' ? '\t' : c == 'n' ? '\n' : c == 'r' ? '\r' : c);
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+}
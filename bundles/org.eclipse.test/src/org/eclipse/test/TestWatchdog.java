@@ -0,0 +1,267 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A single daemon thread that watches the running tests and runs the actions
+ * scheduled with {@link #schedule(Runnable, long)}, like the dump shortly
+ * before the global -timeout.
+ * <p>
+ * A test that is registered with {@link #startTest(String, long)} and runs
+ * longer than the 99th percentile of its recent durations gets its threads
+ * dumped with the ThreadMXBean, every {@link #SECONDS_BETWEEN_DUMPS} seconds at
+ * most. A test that runs longer than its budget,
+ * <code>max(ABORT_FACTOR * p99, p99 + minAbortSlack)</code>, is interrupted
+ * once. A test that waits interruptibly then fails, and the run continues with
+ * the next test, so such a hung test costs its own budget instead of the rest
+ * of the run.
+ * </p>
+ * <p>
+ * The thread of a test is never stopped: Thread.stop can leave locks and shared
+ * state of the tests that follow broken, and newer VMs no longer support it. A
+ * test that ignores the interrupt keeps getting dumped until it ends or the
+ * global -timeout ends the run.
+ * </p>
+ */
+class TestWatchdog implements Runnable {
+
+	/**
+	 * The budget of a test is at least ABORT_FACTOR times its p99.
+	 */
+	static final int ABORT_FACTOR = 3;
+
+	/**
+	 * The system property with the number of milliseconds the budget of a test
+	 * is at least longer than its p99, so that short tests are not aborted by a
+	 * slow machine, 60 seconds by default.
+	 */
+	static final String MIN_ABORT_SLACK_PROPERTY = "eclipse.test.minAbortSlack";
+
+	private static final long DEFAULT_MIN_ABORT_SLACK = 60 * 1000;
+
+	/**
+	 * The minimal time between two dumps of the same test.
+	 */
+	static final int SECONDS_BETWEEN_DUMPS = 30;
+
+	private static TestWatchdog fgDefault;
+
+	private final Object fLock = new Object();
+	private final Map<Thread, Watch> fWatches = new HashMap<Thread, Watch>();
+	private final List<Scheduled> fScheduled = new ArrayList<Scheduled>();
+	private final ThreadMXBean fThreadMXBean = ManagementFactory
+			.getThreadMXBean();
+	private final long fMinAbortSlack = Long.getLong(MIN_ABORT_SLACK_PROPERTY,
+			DEFAULT_MIN_ABORT_SLACK).longValue();
+
+	private static class Watch {
+		final String fName;
+		final long fStart;
+		final long fPercentile99;
+		final long fBudget;
+		long fNextDump;
+		boolean fInterrupted;
+
+		Watch(String name, long start, long percentile99, long budget) {
+			fName = name;
+			fStart = start;
+			fPercentile99 = percentile99;
+			fBudget = budget;
+			fNextDump = start + percentile99;
+		}
+	}
+
+	private static class Scheduled {
+		final long fTime;
+		final Runnable fAction;
+
+		Scheduled(long time, Runnable action) {
+			fTime = time;
+			fAction = action;
+		}
+	}
+
+	/**
+	 * Returns the watchdog, and starts its thread the first time.
+	 */
+	static synchronized TestWatchdog getDefault() {
+		if (fgDefault == null) {
+			fgDefault = new TestWatchdog();
+			Thread thread = new Thread(fgDefault, "EclipseTestRunnerWatchdog");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		return fgDefault;
+	}
+
+	/**
+	 * Runs the given action in the watchdog thread after the given delay. The
+	 * tests are not watched while the action runs.
+	 *
+	 * @param delay
+	 *            the delay in milliseconds
+	 */
+	void schedule(Runnable action, long delay) {
+		synchronized (fLock) {
+			fScheduled.add(new Scheduled(System.currentTimeMillis() + delay,
+					action));
+			fLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Starts watching the test that runs in the current thread.
+	 *
+	 * @param name
+	 *            the name of the test, as it appears in the TEST-*.xml files
+	 * @param percentile99
+	 *            the 99th percentile of the recent durations of the test in
+	 *            milliseconds, or -1 if it is unknown, in which case the test is
+	 *            not watched
+	 */
+	void startTest(String name, long percentile99) {
+		if (percentile99 < 0)
+			return;
+		synchronized (fLock) {
+			long budget = Math.max(ABORT_FACTOR * percentile99, percentile99
+					+ fMinAbortSlack);
+			fWatches.put(Thread.currentThread(), new Watch(name, System
+					.currentTimeMillis(), percentile99, budget));
+			fLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Stops watching the test that runs in the current thread.
+	 */
+	void endTest() {
+		synchronized (fLock) {
+			Watch watch = fWatches.remove(Thread.currentThread());
+			if (watch != null && watch.fInterrupted) {
+				// don't let the interrupt leak into the next test
+				Thread.interrupted();
+			}
+		}
+	}
+
+	public void run() {
+		while (true) {
+			List<Runnable> actions = new ArrayList<Runnable>();
+			synchronized (fLock) {
+				long now = System.currentTimeMillis();
+				long next = Long.MAX_VALUE;
+				for (Iterator<Scheduled> it = fScheduled.iterator(); it.hasNext();) {
+					Scheduled scheduled = it.next();
+					if (scheduled.fTime <= now) {
+						actions.add(scheduled.fAction);
+						it.remove();
+					} else {
+						next = Math.min(next, scheduled.fTime);
+					}
+				}
+				if (actions.isEmpty()) {
+					for (Map.Entry<Thread, Watch> e : fWatches.entrySet())
+						next = Math.min(next, check(e.getKey(), e.getValue(), now));
+					try {
+						if (next == Long.MAX_VALUE)
+							fLock.wait();
+						else if (next > now)
+							fLock.wait(next - now);
+					} catch (InterruptedException e) {
+						// check again
+					}
+				}
+			}
+			for (Runnable action : actions) {
+				try {
+					action.run();
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/*
+	 * Dumps or interrupts the test running in the given thread, if it is due.
+	 * Returns the time of the next check of this test.
+	 */
+	private long check(Thread thread, Watch watch, long now) {
+		long elapsed = now - watch.fStart;
+		if (!watch.fInterrupted && elapsed >= watch.fBudget) {
+			System.err.println("EclipseTestRunnerWatchdog: " + watch.fName
+					+ " exceeded its budget of " + watch.fBudget
+					+ " ms, interrupting it.");
+			dump(thread, watch, elapsed);
+			watch.fInterrupted = true;
+			thread.interrupt();
+			watch.fNextDump = now + SECONDS_BETWEEN_DUMPS * 1000;
+			return watch.fNextDump;
+		}
+		if (now >= watch.fNextDump) {
+			if (watch.fInterrupted)
+				System.err.println("EclipseTestRunnerWatchdog: " + watch.fName
+						+ " still runs after being interrupted.");
+			else
+				System.err.println("EclipseTestRunnerWatchdog: " + watch.fName
+						+ " runs longer than its p99 of " + watch.fPercentile99
+						+ " ms.");
+			dump(thread, watch, elapsed);
+			watch.fNextDump = now + SECONDS_BETWEEN_DUMPS * 1000;
+		}
+		if (watch.fInterrupted)
+			return watch.fNextDump;
+		return Math.min(watch.fNextDump, watch.fStart + watch.fBudget);
+	}
+
+	private void dump(Thread testThread, Watch watch, long elapsed) {
+		String time = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss Z", Locale.US)
+				.format(new Date());
+		StringBuilder sb = new StringBuilder();
+		sb.append("Thread dump of ").append(watch.fName).append(" after ")
+				.append(elapsed).append(" ms at ").append(time).append(":\n");
+		ThreadInfo[] infos = fThreadMXBean.getThreadInfo(fThreadMXBean
+				.getAllThreadIds(), Integer.MAX_VALUE);
+		for (int i = 0; i < infos.length; i++) {
+			ThreadInfo info = infos[i];
+			if (info == null) // ended in the meantime
+				continue;
+			sb.append('"').append(info.getThreadName()).append('"');
+			if (info.getThreadId() == testThread.getId())
+				sb.append(" (test)");
+			sb.append(' ').append(info.getThreadState());
+			if (info.getLockName() != null) {
+				sb.append(" on ").append(info.getLockName());
+				if (info.getLockOwnerName() != null)
+					sb.append(" owned by \"").append(info.getLockOwnerName())
+							.append('"');
+			}
+			sb.append('\n');
+			StackTraceElement[] stack = info.getStackTrace();
+			for (int j = 0; j < stack.length; j++)
+				sb.append("\tat ").append(stack[j]).append('\n');
+			sb.append('\n');
+		}
+		System.err.print(sb.toString());
+	}
+}
@@ -25,6 +25,7 @@ import org.eclipse.core.runtime.Platform;
 
 import org.eclipse.ui.IWindowListener;
 import org.eclipse.ui.IWorkbench;
+import org.eclipse.ui.IWorkbenchPage;
 import org.eclipse.ui.IWorkbenchWindow;
 import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.testing.ITestHarness;
@@ -191,6 +192,12 @@ public class UITestApplication  implements IPlatformRunnable, ITestHarness, IApp
 	 */
 	public void runTests() {
 		fTestableObject.testingStarting();
+		String[] args = Platform.getCommandLineArgs();
+		if (TestDaemon.getPort(args) != -1) {
+			serveTests(args);
+			fTestableObject.testingFinished();
+			return;
+		}
 		fTestableObject.runTest(new Runnable() {
 			public void run() {
 				try {
@@ -203,6 +210,38 @@ public class UITestApplication  implements IPlatformRunnable, ITestHarness, IApp
 		fTestableObject.testingFinished();
 	}
 
+	/*
+	 * Runs the tests of every request of a TestDaemon in the UI thread, and
+	 * closes the editors they left open.
+	 */
+	private void serveTests(String[] args) {
+		try {
+			fTestRunnerResult = new TestDaemon(args).serve(new TestDaemon.TestRun() {
+				public int run(final String[] runArgs) {
+					final int[] result = { EclipseTestRunner.ERRORS };
+					fTestableObject.runTest(new Runnable() {
+						public void run() {
+							try {
+								result[0] = EclipseTestRunner.run(runArgs);
+							} catch (IOException e) {
+								e.printStackTrace();
+							}
+							IWorkbenchWindow[] windows = PlatformUI.getWorkbench().getWorkbenchWindows();
+							for (int i = 0; i < windows.length; i++) {
+								IWorkbenchPage[] pages = windows[i].getPages();
+								for (int j = 0; j < pages.length; j++)
+									pages[j].closeAllEditors(false);
+							}
+						}
+					});
+					return result[0];
+				}
+			});
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
 
 	public Object start(IApplicationContext context) throws Exception {
 		this.appContext = context;